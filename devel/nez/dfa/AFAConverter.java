@@ -35,6 +35,10 @@ public class AFAConverter extends VisitorMap<DefaultVisitor> {
 	}
 
 	public void build() {
+		build(true);
+	}
+
+	public void build(boolean writeDot) {
 		Production p = grammar.getProduction(StartProduction);
 		if (p == null) {
 			System.out.println("ERROR : START PRODUCTION \"" + StartProduction + "\" ... NOT FOUND");
@@ -43,7 +47,9 @@ public class AFAConverter extends VisitorMap<DefaultVisitor> {
 		}
 		this.afa = visitProduction(p);
 		this.afa = eliminateEpsilonCycle(this.afa);
-		DOTGenerator.writeAFA(this.afa);
+		if (writeDot) {
+			DOTGenerator.writeAFA(this.afa);
+		}
 	}
 
 	/*
@@ -67,6 +73,12 @@ public class AFAConverter extends VisitorMap<DefaultVisitor> {
 		return dfaConverter.convert();
 	}
 
+	/** builds the DFA on a pool of threads and minimizes it */
+	public DFA computeDFA(int threads) {
+		DFAConverter dfaConverter = new DFAConverter(this.afa);
+		return dfaConverter.convert(threads).minimize();
+	}
+
 	// <----- Visitor ----->
 
 	private AFA visitProduction(Production rule) {
@@ -182,7 +194,7 @@ public class AFAConverter extends VisitorMap<DefaultVisitor> {
 			S.add(new State(t));
 
 			for (int i = 0; i < 256; i++) {
-				if (((nez.lang.expr.Cset) e).byteMap[i]) {
+				if (((nez.lang.expr.Cset) e).byteMap.is(i)) {
 					transitions.add(new Transition(s, t, i, -1));
 				}
 			}
@@ -15,11 +15,11 @@ public class And extends BooleanExpression {
 	}
 
 	@Override
-	public int traverse() {
+	public int traverse(BDD bdd) {
 		// System.out.println("And");
-		int F = this.left.traverse();
-		int G = this.right.traverse();
-		return BDD.apply('&', F, G);
+		int F = this.left.traverse(bdd);
+		int G = this.right.traverse(bdd);
+		return bdd.apply('&', F, G);
 	}
 
 	@Override
@@ -1,155 +1,339 @@
 package nez.dfa;
 
-import java.util.TreeMap;
+import java.util.Arrays;
 
 //Reference : http://www-erato.ist.hokudai.ac.jp/html/php/seminar5_docs/minato_alg2010-5.pdf
-//変数の展開は論理変数のIDを昇順に行う
 //!,&,| のみ対応 ( 論理記号の追加は容易だがAFAにおいてこれ以上必要ない )
+
+/**
+ * BDD is a manager of reduced ordered binary decision diagrams. Each converter
+ * owns its manager, so conversions can run side by side. Nodes live in
+ * parallel int arrays and are found through an open-addressed unique table;
+ * apply results are kept in a direct-mapped cache. Nodes that no protected
+ * root reaches are collected when the table grows past a threshold.
+ *
+ * Node 0 is the constant false and node 1 is the constant true. A node keeps
+ * the level of its variable; the variable order is the order of
+ * setVariableOrder, and variables not listed there are placed below in the
+ * order they first appear.
+ */
+
 public class BDD {
-	public static int MAX_TABLE_SIZE = 10000000;
-	private static int topOfNodeTable;
-	public static BDDNode[] nodeTable = null; // 0番地は0定数節点,1番地は1定数節点
-	public static TreeMap<BDDNode, Integer> nodeTableCache;
-	public static TreeMap<BinaryOperatorMemoState, Integer> binaryOperatorCache;
+	private final static int Terminal = Integer.MAX_VALUE; // level of constants
+	private final static int Free = -1;
+	private final static int InitSize = 1 << 12;
+	private final static int CacheSize = 1 << 16;
 
-	public int addressOfNodeTable; // BooleanExpression の nodeTable 内のアドレス
+	private int[] level = new int[InitSize];
+	private int[] lo = new int[InitSize];
+	private int[] hi = new int[InitSize];
+	private int top = 2;
+	private int freeList = 0; // chained through lo; 0 is never free
+	private int live = 2;
+	private int gcThreshold = InitSize;
 
-	public BDD() {
-		if (nodeTable == null) {
-			nodeTable = new BDDNode[MAX_TABLE_SIZE];
-			nodeTable[0] = new BDDNode(-1, -1, -1);
-			nodeTable[1] = new BDDNode(-1, -1, -1);
-			topOfNodeTable = 2;
-			nodeTableCache = new TreeMap<BDDNode, Integer>();
-			binaryOperatorCache = new TreeMap<BinaryOperatorMemoState, Integer>();
-		}
-	}
+	private int[] unique = new int[InitSize * 2];
 
-	public BDD(BooleanExpression be) {
-		this();
-		addressOfNodeTable = build(be);
+	private final char[] cacheOp = new char[CacheSize];
+	private final int[] cacheF = new int[CacheSize];
+	private final int[] cacheG = new int[CacheSize];
+	private final int[] cacheR = new int[CacheSize];
+
+	private int[] varLevel = new int[64]; // level + 1 by zigzag(var)
+	private int[] levelVar = new int[64];
+	private int levelSize = 0;
+
+	private int[] roots = new int[64];
+	private int rootSize = 0;
+
+	public BDD() {
+		level[0] = level[1] = Terminal;
 	}
 
 	public int build(BooleanExpression be) {
-		return be.traverse();
+		if (live >= gcThreshold) {
+			gc();
+			if (live * 2 > gcThreshold) {
+				gcThreshold *= 2;
+			}
+		}
+		return be.traverse(this);
 	}
 
-	public static int getNode(BDDNode bn) {
-		if (bn.zeroID == bn.oneID) {
-			return bn.zeroID;
+	/* variable order */
+
+	/** places vars at the top levels, in this order */
+	public void setVariableOrder(int[] vars) {
+		if (top > 2 || levelSize > 0) {
+			throw new IllegalStateException("variable order is fixed after the first node");
+		}
+		for (int var : vars) {
+			levelOf(var);
 		}
+	}
 
-		if (nodeTableCache.containsKey(bn.deepCopy())) {
-			return nodeTableCache.get(bn.deepCopy());
+	private int levelOf(int var) {
+		int idx = var >= 0 ? var * 2 : -var * 2 - 1;
+		if (idx >= varLevel.length) {
+			varLevel = Arrays.copyOf(varLevel, Math.max(idx + 1, varLevel.length * 2));
 		}
-		if (topOfNodeTable >= MAX_TABLE_SIZE) {
-			System.out.println("FATAL ERROR : NODE TABLE => OVERFLOW : size : " + topOfNodeTable + " capacity : " + MAX_TABLE_SIZE);
+		if (varLevel[idx] == 0) {
+			if (levelSize == levelVar.length) {
+				levelVar = Arrays.copyOf(levelVar, levelSize * 2);
+			}
+			levelVar[levelSize] = var;
+			varLevel[idx] = ++levelSize;
 		}
+		return varLevel[idx] - 1;
+	}
+
+	/* nodes */
 
-		nodeTable[topOfNodeTable] = bn.deepCopy();
-		nodeTableCache.put(bn.deepCopy(), topOfNodeTable);
-		return topOfNodeTable++;
+	public final static boolean isConst(int f) {
+		return f == 0 || f == 1;
 	}
 
-	public static boolean isConst(int address) {
-		return address == 0 || address == 1;
+	public int variable(int var) {
+		return getNode(levelOf(var), 0, 1);
 	}
 
-	public static int apply(char op, int F, int G) {
-		// 1. F,Gのいずれかが定数のとき、およびF=Gのとき
-		if (isConst(F) || isConst(G) || F == G) {
-			if (F == G) {
-				return F;
+	private static int hash(int lv, int f0, int f1) {
+		int h = lv * 0x9E3779B1 + f0 * 0x85EBCA77 + f1 * 0xC2B2AE3D;
+		return h ^ (h >>> 15);
+	}
+
+	private int getNode(int lv, int f0, int f1) {
+		if (f0 == f1) {
+			return f0;
+		}
+		int mask = unique.length - 1;
+		int i = hash(lv, f0, f1) & mask;
+		for (int id = unique[i]; id != 0; id = unique[i]) {
+			if (level[id] == lv && lo[id] == f0 && hi[id] == f1) {
+				return id;
 			}
-			if (op == '|') {
-				if (isConst(F) && isConst(G))
-					return F | G;
-				if (isConst(F)) {
-					int tmp = F;
-					F = G;
-					G = tmp;
-				}
-				if (G == 0) {
-					return F;
-				} else {
-					return 1;
-				}
-			} else if (op == '&') {
-				if (isConst(F) && isConst(G))
-					return F & G;
-				if (isConst(F)) {
-					int tmp = F;
-					F = G;
-					G = tmp;
-				}
-				if (G == 0) {
-					return 0;
-				} else {
-					return F;
+			i = (i + 1) & mask;
+		}
+		int id;
+		if (freeList != 0) {
+			id = freeList;
+			freeList = lo[id];
+		} else {
+			if (top == level.length) {
+				grow();
+				mask = unique.length - 1;
+				i = hash(lv, f0, f1) & mask;
+				while (unique[i] != 0) {
+					i = (i + 1) & mask;
 				}
-			} else {
-				System.out.println("INVALID OPERATOR : WHAT IS " + op + "?");
 			}
+			id = top++;
 		}
+		level[id] = lv;
+		lo[id] = f0;
+		hi[id] = f1;
+		unique[i] = id;
+		live++;
+		return id;
+	}
+
+	private void grow() {
+		int size = level.length * 2;
+		level = Arrays.copyOf(level, size);
+		lo = Arrays.copyOf(lo, size);
+		hi = Arrays.copyOf(hi, size);
+		rehash(new int[size * 2]);
+	}
 
-		BinaryOperatorMemoState boms = new BinaryOperatorMemoState(op, F, G);
-		if (binaryOperatorCache.containsKey(boms)) {
-			return binaryOperatorCache.get(boms);
+	private void rehash(int[] table) {
+		int mask = table.length - 1;
+		for (int id = 2; id < top; id++) {
+			if (level[id] != Free) {
+				int i = hash(level[id], lo[id], hi[id]) & mask;
+				while (table[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				table[i] = id;
+			}
 		}
+		this.unique = table;
+	}
 
-		// 2.両者の最上位変数F.vとG.vが同じとき
-		BDDNode bnF = nodeTable[F].deepCopy(); // deepCopyでないと手順４を実行した場合にnodeTableの値が書きかわるので注意
-		BDDNode bnG = nodeTable[G].deepCopy();
-		if (bnF.variableID == bnG.variableID) {
-			int H0 = apply(op, bnF.zeroID, bnG.zeroID);
-			int H1 = apply(op, bnF.oneID, bnG.oneID);
-			if (H0 == H1) {
-				binaryOperatorCache.put(boms, H0);
-				return H0;
+	/* operators */
+
+	public int apply(char op, int F, int G) {
+		if (F == G) {
+			return F;
+		}
+		if (isConst(F) || isConst(G)) {
+			if (isConst(F)) {
+				int tmp = F;
+				F = G;
+				G = tmp;
 			}
-			int address = getNode(new BDDNode(bnF.variableID, H0, H1));
-			binaryOperatorCache.put(boms, address);
-			return address;
-		}
-		// 変数の番号が大きいほど下位であることに注意
-		// 4.F.vがG.vよりも下位のとき
-		// FとGを入れ替えて、3.と同様に処理
-		if (bnF.variableID > bnG.variableID) {
+			if (op == '|') {
+				return G == 0 ? F : 1;
+			}
+			if (op == '&') {
+				return G == 0 ? 0 : F;
+			}
+			throw new IllegalArgumentException("invalid operator: " + op);
+		}
+		if (F > G) { // commutative
 			int tmp = F;
 			F = G;
 			G = tmp;
-			bnF = nodeTable[F].deepCopy();
-			bnG = nodeTable[G].deepCopy();
 		}
+		int c = cacheIndex(op, F, G);
+		if (cacheOp[c] == op && cacheF[c] == F && cacheG[c] == G) {
+			return cacheR[c];
+		}
+		int lF = level[F];
+		int lG = level[G];
+		int H0, H1;
+		if (lF == lG) {
+			H0 = apply(op, lo[F], lo[G]);
+			H1 = apply(op, hi[F], hi[G]);
+		} else if (lF < lG) {
+			H0 = apply(op, lo[F], G);
+			H1 = apply(op, hi[F], G);
+		} else {
+			H0 = apply(op, F, lo[G]);
+			H1 = apply(op, F, hi[G]);
+		}
+		int r = getNode(Math.min(lF, lG), H0, H1);
+		cacheOp[c] = op;
+		cacheF[c] = F;
+		cacheG[c] = G;
+		cacheR[c] = r;
+		return r;
+	}
+
+	public int not(int F) {
+		if (isConst(F)) {
+			return F == 0 ? 1 : 0;
+		}
+		int c = cacheIndex('!', F, 0);
+		if (cacheOp[c] == '!' && cacheF[c] == F) {
+			return cacheR[c];
+		}
+		int H0 = not(lo[F]);
+		int H1 = not(hi[F]);
+		int r = getNode(level[F], H0, H1);
+		cacheOp[c] = '!';
+		cacheF[c] = F;
+		cacheG[c] = 0;
+		cacheR[c] = r;
+		return r;
+	}
+
+	private static int cacheIndex(char op, int F, int G) {
+		return hash(op, F, G) & (CacheSize - 1);
+	}
+
+	/* export */
+
+	private int[] exportSeen = new int[InitSize];
+	private int[] exportIndex = new int[InitSize];
+	private int exportStamp = 0;
+	private int[] exportBuf = new int[48];
+	private int exportSize;
+
+	/**
+	 * returns f as (variable, low, high) triples in post order, where 0 and 1
+	 * are the constants and 2 + i is the i-th triple. Managers with the same
+	 * variable order export the same function to the same array.
+	 */
+	public int[] export(int f) {
+		if (isConst(f)) {
+			return new int[] { f };
+		}
+		if (exportSeen.length < level.length) {
+			exportSeen = new int[level.length];
+			exportIndex = new int[level.length];
+			exportStamp = 0;
+		}
+		exportStamp++;
+		exportSize = 0;
+		exportNode(f);
+		return Arrays.copyOf(exportBuf, exportSize);
+	}
 
-		// 3.F.vがG.vよりも上位のとき
-		int H0 = apply(op, bnF.zeroID, G);
-		int H1 = apply(op, bnF.oneID, G);
-		if (H0 == H1) {
-			binaryOperatorCache.put(boms, H0);
-			return H0;
+	private int exportNode(int f) {
+		if (isConst(f)) {
+			return f;
+		}
+		if (exportSeen[f] == exportStamp) {
+			return exportIndex[f];
 		}
-		int address = getNode(new BDDNode(bnF.variableID, H0, H1));
-		binaryOperatorCache.put(boms, address);
-		return address;
+		int f0 = exportNode(lo[f]);
+		int f1 = exportNode(hi[f]);
+		if (exportSize + 3 > exportBuf.length) {
+			exportBuf = Arrays.copyOf(exportBuf, exportBuf.length * 2);
+		}
+		exportBuf[exportSize++] = levelVar[level[f]];
+		exportBuf[exportSize++] = f0;
+		exportBuf[exportSize++] = f1;
+		exportSeen[f] = exportStamp;
+		exportIndex[f] = 2 + exportSize / 3 - 1;
+		return exportIndex[f];
 	}
 
-	public static void printNodeTable() {
-		System.out.println("table size = " + topOfNodeTable);
-		for (int i = 0; i < topOfNodeTable; i++) {
-			BDDNode bn = nodeTable[i];
-			System.out.println(i + "-th : " + bn);
+	/* garbage collection */
+
+	/** keeps f and its nodes alive across collections */
+	public void protect(int f) {
+		if (isConst(f)) {
+			return;
 		}
+		if (rootSize == roots.length) {
+			roots = Arrays.copyOf(roots, rootSize * 2);
+		}
+		roots[rootSize++] = f;
 	}
 
-	public boolean equals(BDD bdd) {
-		// System.out.println("bdd1 = " + this.addressOfNodeTable);
-		// System.out.println("bdd2 = " + bdd.addressOfNodeTable);
-		return this.addressOfNodeTable == bdd.addressOfNodeTable;
+	/** frees every node that no protected root reaches */
+	public void gc() {
+		boolean[] marked = new boolean[top];
+		int[] stack = new int[64];
+		for (int r = 0; r < rootSize; r++) {
+			int sp = 0;
+			stack[sp++] = roots[r];
+			while (sp > 0) {
+				int id = stack[--sp];
+				if (isConst(id) || marked[id]) {
+					continue;
+				}
+				marked[id] = true;
+				if (sp + 2 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[sp++] = lo[id];
+				stack[sp++] = hi[id];
+			}
+		}
+		for (int id = 2; id < top; id++) {
+			if (level[id] != Free && !marked[id]) {
+				level[id] = Free;
+				lo[id] = freeList;
+				freeList = id;
+				live--;
+			}
+		}
+		rehash(new int[unique.length]);
+		Arrays.fill(cacheOp, (char) 0);
 	}
 
-	public static int getNodeTableSize() {
-		return topOfNodeTable;
+	public int getNodeTableSize() {
+		return live;
 	}
 
+	public void printNodeTable() {
+		System.out.println("table size = " + live);
+		for (int id = 2; id < top; id++) {
+			if (level[id] != Free) {
+				System.out.println(id + "-th : (" + level[id] + "," + lo[id] + "," + hi[id] + ")");
+			}
+		}
+	}
 }
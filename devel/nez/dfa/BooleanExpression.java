@@ -15,7 +15,7 @@ public class BooleanExpression {
 		return this.assignBooleanValueToLogicVariable(booleanValue, logicVariable);
 	}
 
-	public int traverse() {
+	public int traverse(BDD bdd) {
 		System.out.println("WARNING");
 		return -1;
 	}
@@ -0,0 +1,159 @@
+package nez.dfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import nez.io.SourceContext;
+
+/**
+ * CompiledDFA is the table-driven form of a DFA. Bytes that no state
+ * distinguishes share a byte class, so the transition table is a dense
+ * int[state * classes] with one row per state. Table entries are row offsets
+ * (state * classes), which saves a multiply per byte; Dead (-1) rejects.
+ * Accepting states are kept in a bitset.
+ */
+
+public class CompiledDFA {
+	public final static int Dead = -1;
+
+	private final int[] classMap = new int[256];
+	private final int classSize;
+	private final int stateSize;
+	private final int[] table;
+	private final long[] accept;
+	private final int start; // row offset
+
+	public CompiledDFA(DFA dfa) {
+		HashMap<Integer, Integer> index = new HashMap<Integer, Integer>();
+		for (State s : dfa.getS()) {
+			index.put(s.getID(), 0);
+		}
+		Integer[] ids = index.keySet().toArray(new Integer[index.size()]);
+		Arrays.sort(ids);
+		for (int i = 0; i < ids.length; i++) {
+			index.put(ids[i], i);
+		}
+		this.stateSize = ids.length;
+
+		/* dst[byte][state]; transitions on any character fill the rest */
+		int[][] dst = new int[256][stateSize];
+		for (int[] column : dst) {
+			Arrays.fill(column, Dead);
+		}
+		for (Transition t : dfa.getTau()) {
+			int label = t.getLabel();
+			if (label >= 0 && label < 256) {
+				dst[label][index.get(t.getSrc())] = index.get(t.getDst());
+			}
+		}
+		for (Transition t : dfa.getTau()) {
+			if (t.getLabel() == AFA.anyCharacter) {
+				int src = index.get(t.getSrc());
+				for (int c = 0; c < 256; c++) {
+					if (dst[c][src] == Dead) {
+						dst[c][src] = index.get(t.getDst());
+					}
+				}
+			}
+		}
+
+		/* byte classes: bytes with identical columns */
+		HashMap<String, Integer> classes = new HashMap<String, Integer>();
+		int[] representative = new int[256];
+		for (int c = 0; c < 256; c++) {
+			String key = Arrays.toString(dst[c]);
+			Integer id = classes.get(key);
+			if (id == null) {
+				id = classes.size();
+				classes.put(key, id);
+				representative[id] = c;
+			}
+			classMap[c] = id;
+		}
+		this.classSize = classes.size();
+
+		this.table = new int[stateSize * classSize];
+		for (int s = 0; s < stateSize; s++) {
+			for (int k = 0; k < classSize; k++) {
+				int d = dst[representative[k]][s];
+				table[s * classSize + k] = d == Dead ? Dead : d * classSize;
+			}
+		}
+		this.accept = new long[(stateSize + 63) / 64];
+		for (State s : dfa.getF()) {
+			int i = index.get(s.getID());
+			accept[i >> 6] |= 1L << i;
+		}
+		this.start = index.get(dfa.getf().getID()) * classSize;
+	}
+
+	public final int getStateSize() {
+		return stateSize;
+	}
+
+	public final int getClassSize() {
+		return classSize;
+	}
+
+	public final int getByteClass(int byteChar) {
+		return classMap[byteChar];
+	}
+
+	public final int getStartState() {
+		return start / classSize;
+	}
+
+	/** returns the next state on a byte class, or Dead */
+	public final int next(int state, int byteClass) {
+		int row = table[state * classSize + byteClass];
+		return row == Dead ? Dead : row / classSize;
+	}
+
+	public final boolean isAccepting(int state) {
+		return (accept[state >> 6] & (1L << state)) != 0;
+	}
+
+	/** returns the state after reading bytes [pos, end) or Dead */
+	public final int run(SourceContext sc, long pos, long end) {
+		final int[] table = this.table;
+		final int[] classMap = this.classMap;
+		int row = start;
+		for (; pos < end; pos++) {
+			row = table[row + classMap[sc.byteAt(pos)]];
+			if (row == Dead) {
+				return Dead;
+			}
+		}
+		return row / classSize;
+	}
+
+	/** matches the whole input from the current position */
+	public final boolean exec(SourceContext sc) {
+		int state = run(sc, sc.getPosition(), sc.length());
+		return state != Dead && isAccepting(state);
+	}
+
+	/** returns the end of the longest accepted prefix from pos, or -1 */
+	public final long longestMatch(SourceContext sc, long pos) {
+		final int[] table = this.table;
+		final int[] classMap = this.classMap;
+		long end = sc.length();
+		long matched = isAccepting(start / classSize) ? pos : -1;
+		int row = start;
+		for (; pos < end; pos++) {
+			row = table[row + classMap[sc.byteAt(pos)]];
+			if (row == Dead) {
+				break;
+			}
+			if (isAccepting(row / classSize)) {
+				matched = pos + 1;
+			}
+		}
+		return matched;
+	}
+
+	@Override
+	public String toString() {
+		return "DFA(" + stateSize + " states, " + classSize + " byte classes, " + (table.length * 4) + " bytes)";
+	}
+}
@@ -4,13 +4,14 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.TreeSet;
 
-import nez.io.StringContext;
+import nez.io.SourceContext;
 
 public class DFA {
 	private HashSet<State> S = null;
 	private TreeSet<Transition> tau = null;
 	private State f = null;
 	private HashSet<State> F = null;
+	private CompiledDFA compiled = null;
 
 	public DFA() {
 		S = new HashSet<State>();
@@ -88,28 +89,25 @@ public class DFA {
 
 	// Brzozowski's algorithm
 	// min(A) = det(rev(det(rev(A))))
-	public DFA minimize() {
+	public DFA minimizeByBrzozowski() {
 		return rev(rev(new DFA(S, tau, f, F)).det()).det();
 	}
 
-	public boolean exec(StringContext context) {
-		ArrayList<ArrayList<Transition>> adjacencyList = toAdjacencyList();
-		int stateID = getf().getID();
-		for (int i = 0; i < context.length(); i++) {
-			boolean found = false;
-			for (Transition transition : adjacencyList.get(stateID)) {
-				if (transition.getLabel() == context.charAt(i)) {
-					stateID = transition.getDst();
-					found = true;
-					break;
-				}
-			}
-			if (!found) {
-				return false;
-			}
+	// Hopcroft's algorithm (see DFAMinimizer)
+	public DFA minimize() {
+		return DFAMinimizer.minimize(this);
+	}
+
+	/** returns the table-driven form, built on first use */
+	public CompiledDFA compile() {
+		if (compiled == null) {
+			compiled = new CompiledDFA(this);
 		}
+		return compiled;
+	}
 
-		return getF().contains(new State(stateID));
+	public boolean exec(SourceContext context) {
+		return compile().exec(context);
 	}
 
 }
@@ -2,11 +2,17 @@ package nez.dfa;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // AFA を DFA に変換する
 public class DFAConverter {
@@ -262,6 +268,37 @@ public class DFAConverter {
 		return top;
 	}
 
+	/*
+	 * BDD の変数順序 : 初期状態から幅優先で訪れた順に並べる
+	 * (遷移で隣り合う状態が近い順位になり、節点数が小さくなりやすい)
+	 */
+	private int[] variableOrder() {
+		int[] order = new int[theNumberOfStates];
+		boolean[] visited = new boolean[theNumberOfStates];
+		int size = 0;
+		int head = 0;
+		int f = afa.getf().getID();
+		if (f >= 0 && f < theNumberOfStates) {
+			visited[f] = true;
+			order[size++] = f;
+		}
+		while (head < size) {
+			for (Transition t : adjacencyList.get(order[head++])) {
+				int dst = t.getDst();
+				if (dst >= 0 && dst < theNumberOfStates && !visited[dst]) {
+					visited[dst] = true;
+					order[size++] = dst;
+				}
+			}
+		}
+		for (int i = 0; i < theNumberOfStates; i++) {
+			if (!visited[i]) {
+				order[size++] = i;
+			}
+		}
+		return order;
+	}
+
 	public DFA convert() {
 
 		HashSet<State> S = new HashSet<State>();
@@ -270,6 +307,7 @@ public class DFAConverter {
 		HashSet<State> F = new HashSet<State>();
 
 		BDD bdd = new BDD();
+		bdd.setVariableOrder(variableOrder());
 		Map<Integer, Integer> BDDIDtoVertexID = new HashMap<Integer, Integer>();
 		int vertexID = 0;
 		Deque<BooleanExpression> deq = new ArrayDeque<BooleanExpression>();
@@ -288,6 +326,7 @@ public class DFAConverter {
 			if (ef.eval(afa.getF(), afa.getL())) {
 				F.add(new State(vertexID));
 			}
+			bdd.protect(bddID);
 			BDDIDtoVertexID.put(bddID, vertexID++);
 		}
 
@@ -298,6 +337,7 @@ public class DFAConverter {
 				continue;
 			}
 
+			int src = BDDIDtoVertexID.get(bdd.build(be));
 			// for (char c = '!'; c <= '~'; c++) {
 			// for (char c = 'a'; c <= 'd'; c++) {
 			for (int i = 0; i < 256; i++) {
@@ -321,15 +361,15 @@ public class DFAConverter {
 				// " already exists?? -> " + BDDIDtoVertexID.containsKey(new
 				// Integer(bddID)));
 
-				int src = BDDIDtoVertexID.get(bdd.build(be));
 				int dst = -1;
 				if (!BDDIDtoVertexID.containsKey(new Integer(bddID))) { // 初めて現れた状態ならば追加する
-					System.out.println("vertexID = " + vertexID);
+					// System.out.println("vertexID = " + vertexID);
 					S.add(new State(vertexID));
 					if (epsilonExpansionTransitBe.eval(afa.getF(), afa.getL())) {
 						F.add(new State(vertexID));
 					}
 					dst = vertexID;
+					bdd.protect(bddID);
 					BDDIDtoVertexID.put(bddID, vertexID++);
 					deq.addLast(epsilonExpansionTransitBe);
 				} else {
@@ -341,6 +381,178 @@ public class DFAConverter {
 		return new DFA(S, tau, f, F);
 	}
 
+	/*
+	 * 並列版の部分集合構成 : 幅優先の各段で (状態, バイトクラス) ごとの遷移先を fork-join
+	 * で求める。遷移先はスレッドごとの BDD から書き出した正規形をキーに並行に登録する。
+	 * AFA のラベルに現れないバイトは同じ遷移をするので、ひとつのクラスにまとめる。
+	 */
+	public DFA convert(int threads) {
+		int[] classOf = new int[256];
+		int[] representative = new int[256];
+		int classSize = byteClasses(classOf, representative);
+
+		final int[] order = variableOrder();
+		ThreadLocal<BDD> local = new ThreadLocal<BDD>() {
+			@Override
+			protected BDD initialValue() {
+				BDD bdd = new BDD();
+				bdd.setVariableOrder(order);
+				return bdd;
+			}
+		};
+		ConcurrentHashMap<StateKey, StateKey> stateMap = new ConcurrentHashMap<StateKey, StateKey>();
+		AtomicInteger counter = new AtomicInteger();
+		ConcurrentLinkedQueue<StateKey> next = new ConcurrentLinkedQueue<StateKey>();
+
+		HashSet<State> S = new HashSet<State>();
+		TreeSet<Transition> tau = new TreeSet<Transition>();
+		HashSet<State> F = new HashSet<State>();
+
+		BooleanExpression ef = epsilonExpansion(new LogicVariable(afa.getf().getID()));
+		StateKey init = new StateKey(local.get().export(local.get().build(ef)));
+		init.intern(stateMap, counter, ef, ef.eval(afa.getF(), afa.getL()), next);
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			while (!next.isEmpty()) {
+				ArrayList<StateKey> frontier = new ArrayList<StateKey>();
+				for (StateKey key : next) {
+					S.add(new State(key.id));
+					if (key.accepting) {
+						F.add(new State(key.id));
+					}
+					if (!(key.be instanceof LogicVariable && ((LogicVariable) key.be).hasValue())) {
+						frontier.add(key);
+					}
+				}
+				next.clear();
+				StateKey[] dst = new StateKey[frontier.size() * classSize];
+				pool.invoke(new TransitTask(this, local, frontier, representative, classSize, dst, stateMap, counter, next, 0, dst.length));
+				for (int i = 0; i < frontier.size(); i++) {
+					int src = frontier.get(i).id;
+					for (int c = 0; c < 256; c++) {
+						tau.add(new Transition(src, dst[i * classSize + classOf[c]].id, c, -1));
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return new DFA(S, tau, new State(init.id), F);
+	}
+
+	/* bytes on AFA labels get a class each; the others share one */
+	private int byteClasses(int[] classOf, int[] representative) {
+		boolean[] labeled = new boolean[256];
+		for (Transition t : afa.getTau()) {
+			if (t.getLabel() >= 0 && t.getLabel() < 256) {
+				labeled[t.getLabel()] = true;
+			}
+		}
+		int classSize = 0;
+		int others = -1;
+		for (int c = 0; c < 256; c++) {
+			if (labeled[c]) {
+				representative[classSize] = c;
+				classOf[c] = classSize++;
+			} else {
+				if (others == -1) {
+					representative[classSize] = c;
+					others = classSize++;
+				}
+				classOf[c] = others;
+			}
+		}
+		return classSize;
+	}
+
+	final static class StateKey {
+		final int[] code; // BDD.export
+		final int hash;
+		int id;
+		BooleanExpression be;
+		boolean accepting;
+
+		StateKey(int[] code) {
+			this.code = code;
+			this.hash = Arrays.hashCode(code);
+		}
+
+		/* returns the registered key; a new key is numbered and queued */
+		StateKey intern(ConcurrentHashMap<StateKey, StateKey> stateMap, AtomicInteger counter, BooleanExpression be, boolean accepting, ConcurrentLinkedQueue<StateKey> next) {
+			StateKey key = stateMap.putIfAbsent(this, this);
+			if (key != null) {
+				return key;
+			}
+			this.be = be;
+			this.accepting = accepting;
+			this.id = counter.getAndIncrement();
+			next.add(this);
+			return this;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof StateKey && Arrays.equals(code, ((StateKey) o).code);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	final static class TransitTask extends RecursiveAction {
+		final static int SplitSize = 64;
+		final DFAConverter conv;
+		final ThreadLocal<BDD> local;
+		final ArrayList<StateKey> frontier;
+		final int[] representative;
+		final int classSize;
+		final StateKey[] dst;
+		final ConcurrentHashMap<StateKey, StateKey> stateMap;
+		final AtomicInteger counter;
+		final ConcurrentLinkedQueue<StateKey> next;
+		final int start;
+		final int end;
+
+		TransitTask(DFAConverter conv, ThreadLocal<BDD> local, ArrayList<StateKey> frontier, int[] representative, int classSize, StateKey[] dst, ConcurrentHashMap<StateKey, StateKey> stateMap, AtomicInteger counter,
+				ConcurrentLinkedQueue<StateKey> next, int start, int end) {
+			this.conv = conv;
+			this.local = local;
+			this.frontier = frontier;
+			this.representative = representative;
+			this.classSize = classSize;
+			this.dst = dst;
+			this.stateMap = stateMap;
+			this.counter = counter;
+			this.next = next;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > SplitSize) {
+				int mid = (start + end) / 2;
+				invokeAll(new TransitTask(conv, local, frontier, representative, classSize, dst, stateMap, counter, next, start, mid), //
+						new TransitTask(conv, local, frontier, representative, classSize, dst, stateMap, counter, next, mid, end));
+				return;
+			}
+			BDD bdd = local.get();
+			AFA afa = conv.afa;
+			for (int i = start; i < end; i++) {
+				BooleanExpression be = frontier.get(i / classSize).be;
+				char c = (char) representative[i % classSize];
+				BooleanExpression eetb = conv.epsilonExpansion(conv.transit(be, c));
+				StateKey key = new StateKey(bdd.export(bdd.build(eetb)));
+				StateKey registered = stateMap.get(key);
+				dst[i] = registered != null ? registered : key.intern(stateMap, counter, eetb, eetb.eval(afa.getF(), afa.getL()), next);
+			}
+		}
+	}
+
 	// <--- new epsilon expansion : it accepts epsilon cycle
 
 	public BooleanExpression epsilonExpansionWithEpsilonCycle(BooleanExpression arg) {
@@ -348,6 +560,7 @@ public class DFAConverter {
 		BDD bdd = new BDD();
 		HashSet<Integer> isAlreadyGenerated = new HashSet<Integer>();
 		int bddID = bdd.build(be.recoverPredicate());
+		bdd.protect(bddID);
 		isAlreadyGenerated.add(new Integer(bddID));
 
 		while (true) {
@@ -358,6 +571,7 @@ public class DFAConverter {
 			if (isAlreadyGenerated.contains(new Integer(bddID))) {
 				return be.recoverPredicate();
 			}
+			bdd.protect(bddID);
 			isAlreadyGenerated.add(new Integer(bddID));
 		}
 	}
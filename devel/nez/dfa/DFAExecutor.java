@@ -1,27 +1,9 @@
 package nez.dfa;
 
-import java.util.ArrayList;
-
-import nez.io.StringContext;
+import nez.io.SourceContext;
 
 public class DFAExecutor {
-	public static boolean exec(StringContext context, DFA dfa) {
-		ArrayList<ArrayList<Transition>> adjacencyList = dfa.toAdjacencyList();
-		int stateID = dfa.getf().getID();
-		for (int i = 0; i < context.length(); i++) {
-			boolean found = false;
-			for (Transition transition : adjacencyList.get(stateID)) {
-				if (transition.getLabel() == context.charAt(i)) {
-					stateID = transition.getDst();
-					found = true;
-					break;
-				}
-			}
-			if (!found) {
-				return false;
-			}
-		}
-
-		return dfa.getF().contains(new State(stateID));
+	public static boolean exec(SourceContext context, DFA dfa) {
+		return dfa.compile().exec(context);
 	}
 }
@@ -0,0 +1,202 @@
+package nez.dfa;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+/**
+ * DFAMinimizer merges equivalent states by Hopcroft's partition refinement
+ * over the byte classes of the compiled DFA, in O(m n log n) for n states and
+ * m classes. Missing transitions go to an implicit dead state whose block is
+ * dropped from the result; the states of the result are numbered
+ * breadth-first from the start state.
+ */
+
+public class DFAMinimizer {
+
+	public static DFA minimize(DFA dfa) {
+		return new DFAMinimizer(dfa.compile()).build();
+	}
+
+	private final CompiledDFA c;
+	private final int n; // states + dead
+	private final int m; // byte classes
+	private final int dead;
+	private final int[] delta;
+
+	/* refinable partition */
+	private final int[] elems;
+	private final int[] pos;
+	private final int[] blk;
+	private final int[] first;
+	private final int[] end;
+	private final int[] mid; // [first, mid) is marked
+	private int blockSize = 0;
+
+	private DFAMinimizer(CompiledDFA c) {
+		this.c = c;
+		this.n = c.getStateSize() + 1;
+		this.m = c.getClassSize();
+		this.dead = n - 1;
+		this.delta = new int[n * m];
+		for (int s = 0; s < n; s++) {
+			for (int k = 0; k < m; k++) {
+				int d = s == dead ? CompiledDFA.Dead : c.next(s, k);
+				delta[s * m + k] = d == CompiledDFA.Dead ? dead : d;
+			}
+		}
+		this.elems = new int[n];
+		this.pos = new int[n];
+		this.blk = new int[n];
+		this.first = new int[n];
+		this.end = new int[n];
+		this.mid = new int[n];
+	}
+
+	private boolean isAccepting(int s) {
+		return s != dead && c.isAccepting(s);
+	}
+
+	private DFA build() {
+		/* predecessors by class: src of inv[k * (n + 1) + t] .. */
+		int[] invStart = new int[m * (n + 1) + 1];
+		for (int s = 0; s < n; s++) {
+			for (int k = 0; k < m; k++) {
+				invStart[k * (n + 1) + delta[s * m + k] + 1]++;
+			}
+		}
+		for (int i = 1; i < invStart.length; i++) {
+			invStart[i] += invStart[i - 1];
+		}
+		int[] invSrc = new int[n * m];
+		int[] fill = Arrays.copyOf(invStart, invStart.length);
+		for (int s = 0; s < n; s++) {
+			for (int k = 0; k < m; k++) {
+				invSrc[fill[k * (n + 1) + delta[s * m + k]]++] = s;
+			}
+		}
+
+		/* initial partition: accepting and the others */
+		int size = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			int start = size;
+			for (int s = 0; s < n; s++) {
+				if (isAccepting(s) == (pass == 0)) {
+					elems[size] = s;
+					pos[s] = size++;
+					blk[s] = blockSize;
+				}
+			}
+			if (size > start) {
+				first[blockSize] = mid[blockSize] = start;
+				end[blockSize] = size;
+				blockSize++;
+			}
+		}
+
+		int[] worklist = new int[n * m];
+		boolean[] inWorklist = new boolean[n * m];
+		int wlSize = 0;
+		if (blockSize == 2) {
+			int b = (end[0] - first[0] <= end[1] - first[1]) ? 0 : 1;
+			for (int k = 0; k < m; k++) {
+				worklist[wlSize++] = b * m + k;
+				inWorklist[b * m + k] = true;
+			}
+		}
+		int[] splitter = new int[n];
+		int[] touched = new int[n];
+		while (wlSize > 0) {
+			int x = worklist[--wlSize];
+			inWorklist[x] = false;
+			int b = x / m;
+			int k = x % m;
+			int sz = end[b] - first[b];
+			System.arraycopy(elems, first[b], splitter, 0, sz);
+			int touchedSize = 0;
+			for (int i = 0; i < sz; i++) {
+				int t = splitter[i];
+				for (int j = invStart[k * (n + 1) + t]; j < invStart[k * (n + 1) + t + 1]; j++) {
+					int p = invSrc[j];
+					int pb = blk[p];
+					int pp = pos[p];
+					if (pp < mid[pb]) {
+						continue; // already marked
+					}
+					int q = elems[mid[pb]];
+					elems[mid[pb]] = p;
+					pos[p] = mid[pb];
+					elems[pp] = q;
+					pos[q] = pp;
+					if (mid[pb]++ == first[pb]) {
+						touched[touchedSize++] = pb;
+					}
+				}
+			}
+			for (int i = 0; i < touchedSize; i++) {
+				int xb = touched[i];
+				if (mid[xb] == end[xb]) {
+					mid[xb] = first[xb]; // all marked; no split
+					continue;
+				}
+				int nb = blockSize++;
+				first[nb] = mid[nb] = first[xb];
+				end[nb] = mid[xb];
+				first[xb] = mid[xb] = end[nb];
+				for (int j = first[nb]; j < end[nb]; j++) {
+					blk[elems[j]] = nb;
+				}
+				boolean smaller = end[nb] - first[nb] <= end[xb] - first[xb];
+				for (int kk = 0; kk < m; kk++) {
+					int y = (inWorklist[xb * m + kk] || smaller) ? nb * m + kk : xb * m + kk;
+					if (!inWorklist[y]) {
+						worklist[wlSize++] = y;
+						inWorklist[y] = true;
+					}
+				}
+			}
+		}
+		return newDFA();
+	}
+
+	private DFA newDFA() {
+		HashSet<State> S = new HashSet<State>();
+		TreeSet<Transition> tau = new TreeSet<Transition>();
+		HashSet<State> F = new HashSet<State>();
+		int deadBlock = blk[dead];
+		int startBlock = blk[c.getStartState()];
+		S.add(new State(0));
+		if (startBlock == deadBlock) {
+			return new DFA(S, tau, new State(0), F);
+		}
+		int[] newId = new int[blockSize];
+		Arrays.fill(newId, -1);
+		int[] queue = new int[blockSize];
+		int head = 0;
+		int size = 0;
+		newId[startBlock] = size;
+		queue[size++] = startBlock;
+		while (head < size) {
+			int b = queue[head++];
+			int r = elems[first[b]];
+			if (isAccepting(r)) {
+				F.add(new State(newId[b]));
+			}
+			for (int k = 0; k < m; k++) {
+				int t = blk[delta[r * m + k]];
+				if (t != deadBlock && newId[t] == -1) {
+					newId[t] = size;
+					queue[size++] = t;
+					S.add(new State(newId[t]));
+				}
+			}
+			for (int ch = 0; ch < 256; ch++) {
+				int t = blk[delta[r * m + c.getByteClass(ch)]];
+				if (t != deadBlock) {
+					tau.add(new Transition(newId[b], newId[t], ch, -1));
+				}
+			}
+		}
+		return new DFA(S, tau, new State(0), F);
+	}
+}
@@ -26,12 +26,12 @@ public class LogicVariable extends BooleanExpression {
 	}
 
 	@Override
-	public int traverse() {
+	public int traverse(BDD bdd) {
 		// !System.out.println("LogicVariable");
 		if (this.hasValue()) {
 			return this.getValue() ? 1 : 0;
 		}
-		return BDD.getNode(new BDDNode(this.ID, 0, 1));
+		return bdd.variable(this.ID);
 	}
 
 	@Override
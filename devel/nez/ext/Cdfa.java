@@ -0,0 +1,110 @@
+package nez.ext;
+
+import java.io.IOException;
+
+import nez.Grammar;
+import nez.Parser;
+import nez.dfa.AFAConverter;
+import nez.dfa.CompiledDFA;
+import nez.dfa.DFA;
+import nez.dfa.DFAConverter;
+import nez.io.SourceContext;
+import nez.main.Command;
+import nez.main.CommandContext;
+import nez.util.ConsoleUtils;
+import nez.util.StringUtils;
+import nez.util.UList;
+
+/**
+ * nez dfa compiles the Start production (e.g., -r regex) to a minimal
+ * table-driven DFA and runs it against the PEG VM over the same inputs. Both
+ * match the whole input. threads=N sets the threads of the subset
+ * construction (threads=0 runs the sequential one).
+ */
+
+public class Cdfa extends Command {
+	@Override
+	public void exec(CommandContext config) throws IOException {
+		config.getStrategy().setEnabled("ast", false);
+		int warmup = config.getStrategy().getInt("warmup", 5);
+		int repeat = config.getStrategy().getInt("repeat", 10);
+		Grammar grammar = config.newGrammar();
+		AFAConverter conv = new AFAConverter(grammar);
+		conv.build(false);
+		if (conv.getAFA() == null) {
+			ConsoleUtils.exit(1, "no Start production");
+		}
+		int threads = config.getStrategy().getInt("threads", Runtime.getRuntime().availableProcessors());
+		long t1 = System.nanoTime();
+		DFA dfa = threads > 0 ? new DFAConverter(conv.getAFA()).convert(threads) : conv.computeDFA();
+		long t2 = System.nanoTime();
+		DFA min = dfa.minimize();
+		long t3 = System.nanoTime();
+		ConsoleUtils.println("subset construction: " + dfa.getS().size() + " states, " + (t2 - t1) / 1000000 + "[ms] (threads=" + threads + ")");
+		ConsoleUtils.println("minimization: " + min.getS().size() + " states, " + (t3 - t2) / 1000000 + "[ms]");
+		CompiledDFA cdfa = min.compile();
+		ConsoleUtils.println(cdfa);
+		Parser g = config.newParser();
+		UList<SourceContext> inputs = new UList<SourceContext>(new SourceContext[4]);
+		while (config.hasInput()) {
+			inputs.add(config.nextInput());
+		}
+		for (SourceContext input : inputs) {
+			input.setPosition(0);
+			boolean d = cdfa.exec(input);
+			boolean p = g.match(input) && !input.hasUnconsumed();
+			ConsoleUtils.println(input.getResourceName() + ": dfa=" + d + " peg=" + p + (d == p ? "" : " MISMATCH"));
+		}
+		long size = 0;
+		for (SourceContext input : inputs) {
+			size += input.length();
+		}
+		long[] dfaTime = new long[2];
+		long[] pegTime = new long[2];
+		for (int i = 0; i < warmup; i++) {
+			runDFA(cdfa, inputs);
+			runPEG(g, inputs);
+		}
+		measure(dfaTime, pegTime, cdfa, g, inputs, repeat);
+		ConsoleUtils.println(inputs.size() + " files, " + size + " bytes");
+		ConsoleUtils.println("dfa: " + StringUtils.formatMPS(size * repeat, dfaTime[0]) + " MiB/s (mean), " + StringUtils.formatMPS(size, dfaTime[1]) + " MiB/s (best)");
+		ConsoleUtils.println("peg: " + StringUtils.formatMPS(size * repeat, pegTime[0]) + " MiB/s (mean), " + StringUtils.formatMPS(size, pegTime[1]) + " MiB/s (best)");
+	}
+
+	private void measure(long[] dfaTime, long[] pegTime, CompiledDFA cdfa, Parser g, UList<SourceContext> inputs, int repeat) {
+		dfaTime[1] = pegTime[1] = Long.MAX_VALUE;
+		for (int i = 0; i < repeat; i++) {
+			long t = System.nanoTime();
+			runDFA(cdfa, inputs);
+			long t2 = System.nanoTime();
+			runPEG(g, inputs);
+			long t3 = System.nanoTime();
+			dfaTime[0] += (t2 - t);
+			dfaTime[1] = Math.min(dfaTime[1], t2 - t);
+			pegTime[0] += (t3 - t2);
+			pegTime[1] = Math.min(pegTime[1], t3 - t2);
+		}
+	}
+
+	private int runDFA(CompiledDFA cdfa, UList<SourceContext> inputs) {
+		int accepted = 0;
+		for (SourceContext input : inputs) {
+			input.setPosition(0);
+			if (cdfa.exec(input)) {
+				accepted++;
+			}
+		}
+		return accepted;
+	}
+
+	private int runPEG(Parser g, UList<SourceContext> inputs) {
+		int accepted = 0;
+		for (SourceContext input : inputs) {
+			input.setPosition(0);
+			if (g.match(input) && !input.hasUnconsumed()) {
+				accepted++;
+			}
+		}
+		return accepted;
+	}
+}
@@ -16,6 +16,7 @@ import nez.lang.Expression;
 import nez.lang.GrammarFile;
 import nez.lang.GrammarFileLoader;
 import nez.lang.expr.ExpressionCommons;
+import nez.util.ByteSet;
 import nez.util.ConsoleUtils;
 import nez.util.StringUtils;
 import nez.util.UList;
@@ -195,12 +196,12 @@ public class RegexGrammar extends TreeVisitor {
 		return ExpressionCommons.newCbyte(null, false, utf8[0]);
 	}
 
-	boolean byteMap[];
+	ByteSet byteMap;
 	boolean useByteMap = true;
 
 	public Expression toCharacterSet(CommonTree e) {
 		UList<Expression> l = new UList<Expression>(new Expression[e.size()]);
-		byteMap = new boolean[257];
+		byteMap = new ByteSet();
 		for (CommonTree subnode : e) {
 			ExpressionCommons.addChoice(l, toExpression(subnode));
 		}
@@ -214,16 +215,14 @@ public class RegexGrammar extends TreeVisitor {
 	public Expression toCharacterRange(CommonTree e) {
 		byte[] begin = StringUtils.toUtf8(e.get(0).toText());
 		byte[] end = StringUtils.toUtf8(e.get(1).toText());
-		byteMap = new boolean[257];
-		for (byte i = begin[0]; i <= end[0]; i++) {
-			byteMap[i] = true;
-		}
+		byteMap = new ByteSet();
+		byteMap.setRange(begin[0] & 0xff, end[0] & 0xff);
 		return ExpressionCommons.newCharSet(null, e.get(0).toText(), e.get(1).toText());
 	}
 
 	public Expression toCharacterSetItem(CommonTree c) {
 		byte[] utf8 = StringUtils.toUtf8(c.toText());
-		byteMap[utf8[0]] = true;
+		byteMap.set(utf8[0] & 0xff);
 		return ExpressionCommons.newCbyte(null, false, utf8[0]);
 	}
 
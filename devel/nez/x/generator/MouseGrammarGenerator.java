@@ -22,6 +22,7 @@ import nez.lang.expr.Ttag;
 import nez.lang.expr.Unary;
 import nez.parser.GenerativeGrammar;
 import nez.parser.generator.NezGrammarGenerator;
+import nez.util.ByteSet;
 
 public class MouseGrammarGenerator extends NezGrammarGenerator {
 
@@ -107,11 +108,11 @@ public class MouseGrammarGenerator extends NezGrammarGenerator {
 		return (s + c + e);
 	}
 
-	private final String stringfy(boolean[] b) {
+	private final String stringfy(ByteSet b) {
 		StringBuilder sb = new StringBuilder();
 		String delim = "";
 		for (int s = 0; s < 256; s++) {
-			if (b[s]) {
+			if (b.is(s)) {
 				int e = searchEndChar(b, s + 1);
 				if (s == e) {
 					sb.append(delim);
@@ -132,9 +133,9 @@ public class MouseGrammarGenerator extends NezGrammarGenerator {
 		return sb.toString();
 	}
 
-	private final static int searchEndChar(boolean[] b, int s) {
+	private final static int searchEndChar(ByteSet b, int s) {
 		for (; s < 256; s++) {
-			if (!b[s]) {
+			if (!b.is(s)) {
 				return s - 1;
 			}
 		}
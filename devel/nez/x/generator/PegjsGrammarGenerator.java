@@ -34,6 +34,7 @@ import nez.lang.expr.Xmatch;
 import nez.lang.expr.Xon;
 import nez.parser.GenerativeGrammar;
 import nez.parser.ParserGenerator;
+import nez.util.ByteSet;
 
 public class PegjsGrammarGenerator extends ParserGenerator {
 
@@ -125,9 +126,9 @@ public class PegjsGrammarGenerator extends ParserGenerator {
 		W(this.stringfyByte(e.byteChar));
 	}
 
-	private int searchEndChar(boolean[] b, int s) {
+	private int searchEndChar(ByteSet b, int s) {
 		for (; s < 256; s++) {
-			if (!b[s]) {
+			if (!b.is(s)) {
 				return s - 1;
 			}
 		}
@@ -162,9 +163,9 @@ public class PegjsGrammarGenerator extends ParserGenerator {
 	@Override
 	public void visitCset(Cset e) {
 		W("[");
-		boolean b[] = e.byteMap;
+		ByteSet b = e.byteMap;
 		for (int start = 0; start < 256; start++) {
-			if (b[start]) {
+			if (b.is(start)) {
 				int end = searchEndChar(b, start + 1);
 				if (start == end) {
 					W(this.stringfyByte(start));
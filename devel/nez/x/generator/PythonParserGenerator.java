@@ -120,13 +120,13 @@ public class PythonParserGenerator extends ParserGenerator {
 	protected void makeByteMap() {
 		for (Cset map : this.byteMapList) {
 			L("map").W(String.valueOf(unique(map))).W(" = [");
-			for (int i = 0; i < map.byteMap.length; i++) {
-				if (map.byteMap[i]) {
+			for (int i = 0; i < 256; i++) {
+				if (map.byteMap.is(i)) {
 					W("True");
 				} else {
 					W("False");
 				}
-				if (i != map.byteMap.length - 1) {
+				if (i != 255) {
 					W(", ");
 				}
 			}
@@ -6,8 +6,8 @@ import java.lang.reflect.Method;
 import nez.ast.SourcePosition;
 import nez.ast.Symbol;
 import nez.lang.Expression;
-import nez.lang.expr.Cset;
 import nez.lang.expr.ExpressionCommons;
+import nez.util.ByteSet;
 import nez.util.UList;
 
 public class Combinator {
@@ -96,10 +96,10 @@ public class Combinator {
 	}
 
 	protected final Expression c(int... chars) {
-		boolean[] b = Cset.newMap(false);
+		ByteSet b = new ByteSet();
 		boolean binary = false;
 		for (int c : chars) {
-			b[c] = true;
+			b.set(c);
 			if (c == 0) {
 				binary = true;
 			}
@@ -118,7 +118,7 @@ public class Grammar extends GrammarHacks {
 			}
 		}
 		if (p.isPublic() && this.parent != null) {
-			this.parent.addProduction(p2);
+			this.parent.addProduction(p);
 		}
 	}
 
@@ -151,10 +151,24 @@ public class Grammar extends GrammarHacks {
 	 */
 
 	public final Parser newParser(Strategy strategy) {
-		GenerativeGrammar gg = (this instanceof GenerativeGrammar) ? (GenerativeGrammar) this : new GenerativeGrammar(this.getStartProduction(), strategy, null);
+		GenerativeGrammar gg = (this instanceof GenerativeGrammar) ? (GenerativeGrammar) this : new GenerativeGrammar(this.getStartProduction(), this.getEntryProductions(strategy), strategy, null);
 		return new Parser(gg, strategy);
 	}
 
+	/* +Oentry compiles public productions as additional entry points */
+	private List<Production> getEntryProductions(Strategy strategy) {
+		if (!strategy.isEnabled("Oentry", Strategy.Oentry)) {
+			return null;
+		}
+		UList<Production> l = new UList<Production>(new Production[4]);
+		for (Production p : this) {
+			if (p.isPublic()) {
+				l.add(p);
+			}
+		}
+		return l;
+	}
+
 	public final Parser newParser(String name) {
 		return newParser(name, Strategy.newDefaultStrategy());
 	}
@@ -163,7 +177,7 @@ public class Grammar extends GrammarHacks {
 		if (name != null) {
 			Production p = this.getProduction(name);
 			if (p != null) {
-				GenerativeGrammar gg = new GenerativeGrammar(p, strategy, null);
+				GenerativeGrammar gg = new GenerativeGrammar(p, this.getEntryProductions(strategy), strategy, null);
 				return new Parser(gg, strategy);
 			}
 			Verbose.println("undefined production: " + name);
@@ -1,15 +1,35 @@
 package nez;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+
 import nez.ast.CommonTree;
+import nez.ast.TokenCache;
 import nez.ast.Tree;
+import nez.ast.TreeCache;
+import nez.ast.TreeStream;
 import nez.ast.TreeTransducer;
 import nez.io.SourceContext;
+import nez.lang.Expression;
+import nez.lang.Production;
+import nez.lang.expr.NonTerminal;
+import nez.lang.expr.Pand;
+import nez.lang.expr.Pchoice;
+import nez.lang.expr.Pnot;
+import nez.lang.expr.Pone;
+import nez.lang.expr.Pzero;
+import nez.lang.expr.Tlfold;
+import nez.lang.expr.Tlink;
+import nez.lang.expr.Tnew;
 import nez.parser.GenerativeGrammar;
 import nez.parser.Instruction;
 import nez.parser.MemoTable;
 import nez.parser.NezCode;
 import nez.parser.NezCompiler;
+import nez.parser.ParserProfile;
 import nez.parser.ParsingMachine;
+import nez.parser.SamplingMachine;
 import nez.parser.vm.MozCompiler;
 
 public class Parser {
@@ -43,6 +63,7 @@ public class Parser {
 			// prof.setFile("G.File", this.start.getGrammarFile().getURN());
 			prof.setCount("G.Production", this.gg.size());
 			prof.setCount("G.Instruction", this.compiledCode.getInstructionSize());
+			prof.setCount("G.Instruction.Unfused", this.compiledCode.getUnfusedInstructionSize());
 			prof.setCount("G.MemoPoint", this.compiledCode.getMemoPointSize());
 		}
 	}
@@ -55,6 +76,39 @@ public class Parser {
 		if (prof != null) {
 			prof.log();
 		}
+		if (grammarProfile != null) {
+			this.saveGrammarProfile();
+		}
+		if (sampler != null) {
+			this.dumpSamples();
+		}
+	}
+
+	/* profile-guided optimization */
+
+	private ParserProfile grammarProfile = null;
+	private String grammarProfilePath = null;
+
+	public void setGrammarProfile(ParserProfile profile, String path) {
+		this.grammarProfile = profile;
+		this.grammarProfilePath = path;
+		this.compiledCode = null; // recompile with counters
+	}
+
+	public final ParserProfile getGrammarProfile() {
+		return this.grammarProfile;
+	}
+
+	public final void saveGrammarProfile() {
+		if (grammarProfile != null && grammarProfilePath != null) {
+			this.compile();
+			grammarProfile.recordMemoPoints(this.compiledCode.getMemoPointList());
+			try {
+				grammarProfile.save(grammarProfilePath);
+			} catch (IOException e) {
+				Verbose.println("cannot save profile: " + grammarProfilePath);
+			}
+		}
 	}
 
 	/* -------------------------------------------------------------------- */
@@ -69,14 +123,38 @@ public class Parser {
 
 		if (compiledCode == null) {
 			NezCompiler bc = NezCompiler.newCompiler(this.strategy);
+			bc.setProfile(this.grammarProfile);
 			compiledCode = bc.compile(gg);
 		}
 		return compiledCode.getStartPoint();
 	}
 
 	public final boolean perform(ParsingMachine machine, SourceContext s, Tree<?> prototype) {
-		Instruction pc = this.compile();
+		return perform(machine, this.compile(), s, prototype);
+	}
+
+	/* start productions share one compiled code and one memo table per input */
+	public final Instruction getEntryPoint(String start) {
+		this.compile();
+		Instruction pc = start == null ? compiledCode.getStartPoint() : compiledCode.getEntryPoint(start);
+		if (pc == null) {
+			throw new IllegalArgumentException("undefined start production: " + start);
+		}
+		return pc;
+	}
+
+	private boolean perform(ParsingMachine machine, Instruction pc, SourceContext s, Tree<?> prototype) {
+		return perform(machine, pc, s, prototype, null);
+	}
+
+	private boolean perform(ParsingMachine machine, Instruction pc, SourceContext s, Tree<?> prototype, TreeStream stream) {
 		s.init(newMemoTable(s), prototype);
+		s.getAstMachine().setTreeStream(stream);
+		s.setTokenCache(getTokenCache());
+		if (prototype != null && getTreeCache() != null) {
+			treeCache.clear();
+			s.getAstMachine().setTreeCache(treeCache);
+		}
 		if (prof != null) {
 			s.startProfiling(prof);
 			boolean matched = machine.run(pc, s);
@@ -89,13 +167,66 @@ public class Parser {
 		return machine.run(pc, s);
 	}
 
+	private TokenCache tokenCache = null;
+
+	public final TokenCache getTokenCache() {
+		if (tokenCache == null && strategy.isEnabled("Ointern", Strategy.Ointern)) {
+			tokenCache = new TokenCache();
+		}
+		return tokenCache;
+	}
+
+	private TreeCache treeCache = null;
+
+	public final TreeCache getTreeCache() {
+		if (treeCache == null && strategy.isEnabled("Oshare", Strategy.Oshare)) {
+			treeCache = new TreeCache();
+		}
+		return treeCache;
+	}
+
+	/* sampling profiler */
+
+	private SamplingMachine sampler = null;
+	private String samplerPath = null;
+
+	public void setSampler(SamplingMachine sampler, String path) {
+		this.sampler = sampler;
+		this.samplerPath = path;
+	}
+
+	public final SamplingMachine getSampler() {
+		return this.sampler;
+	}
+
+	public final void dumpSamples() {
+		if (sampler != null && samplerPath != null) {
+			try {
+				sampler.dump(samplerPath);
+			} catch (IOException e) {
+				Verbose.println("cannot save samples: " + samplerPath);
+			}
+		}
+	}
+
 	protected ParsingMachine newParsingMachine() {
-		// return new TraceMachine(); // debug
-		return new ParsingMachine();
+		if (sampler != null) {
+			this.compile();
+			sampler.setCode(this.compiledCode);
+			return sampler;
+		}
+		if (machine == null) {
+			machine = new ParsingMachine(); // stateless
+		}
+		return machine;
 	}
 
+	private ParsingMachine machine = null;
+
+	/* the table of the last input of sc is cleared and reused if it fits */
 	protected final MemoTable newMemoTable(SourceContext sc) {
-		return MemoTable.newTable(strategy, sc.length(), 32, this.compiledCode.getMemoPointSize());
+		int w = strategy.getInt("Mwindow", 0); // 0: sized by the input
+		return MemoTable.newTable(sc.getMemoTable(), strategy, sc.length(), w, this.compiledCode.getMemoPointSize());
 	}
 
 	/* --------------------------------------------------------------------- */
@@ -112,6 +243,22 @@ public class Parser {
 		return false;
 	}
 
+	public final boolean match(String start, SourceContext s) {
+		return perform(newParsingMachine(), getEntryPoint(start), s, null);
+	}
+
+	public final Tree<?> parse(String start, SourceContext sc) {
+		return parse(start, sc, new CommonTree());
+	}
+
+	public Tree<?> parse(String start, SourceContext sc, Tree<?> prototype) {
+		long startPosition = sc.getPosition();
+		if (!this.perform(newParsingMachine(), getEntryPoint(start), sc, prototype)) {
+			return null;
+		}
+		return sc.getParseResult(startPosition, sc.getPosition());
+	}
+
 	public Tree<?> parse(SourceContext sc, Tree<?> prototype) {
 		long startPosition = sc.getPosition();
 		if (!this.perform(newParsingMachine(), sc, prototype)) {
@@ -120,6 +267,78 @@ public class Parser {
 		return sc.getParseResult(startPosition, sc.getPosition());
 	}
 
+	/* passes the root to stream while parsing; see TreeStream */
+	public final boolean parse(SourceContext sc, TreeStream stream) {
+		long startPosition = sc.getPosition();
+		if (!this.perform(newParsingMachine(), this.compile(), sc, new CommonTree(), isStreamable() ? stream : null)) {
+			return false;
+		}
+		stream.endTree(sc.getParseResult(startPosition, sc.getPosition()));
+		return true;
+	}
+
+	private int streamable = 0; // 1: yes, -1: no
+
+	/*
+	 * A written child cannot be taken back, so the root is streamed only if
+	 * the start production builds at most one root and never folds it. Links
+	 * are not entered, since they build the children.
+	 */
+	private boolean isStreamable() {
+		if (streamable == 0) {
+			int roots = countRoots(gg.getStartProduction().getExpression(), new HashMap<String, Integer>(), new HashSet<String>());
+			streamable = (roots == 0 || roots == 1) ? 1 : -1;
+		}
+		return streamable == 1;
+	}
+
+	/* the number of roots built on a path, or -1 if unbounded or folded */
+	private static int countRoots(Expression e, HashMap<String, Integer> counts, HashSet<String> recursive) {
+		if (e instanceof Tlink || e instanceof Pnot || e instanceof Pand) {
+			return 0;
+		}
+		if (e instanceof Tlfold) {
+			return -1;
+		}
+		if (e instanceof Tnew) {
+			return 1;
+		}
+		if (e instanceof NonTerminal) {
+			Production p = ((NonTerminal) e).getProduction();
+			if (p == null) {
+				return 0;
+			}
+			String name = p.getUniqueName();
+			Integer n = counts.get(name);
+			if (n != null) {
+				if (n == -2) { // in progress
+					recursive.add(name);
+					return 0;
+				}
+				return n;
+			}
+			counts.put(name, -2);
+			int c = countRoots(p.getExpression(), counts, recursive);
+			if (c > 0 && recursive.contains(name)) {
+				c = -1;
+			}
+			counts.put(name, c);
+			return c;
+		}
+		int c = 0;
+		for (int i = 0; i < e.size(); i++) {
+			int n = countRoots(e.get(i), counts, recursive);
+			if (n == -1) {
+				return -1;
+			}
+			c = (e instanceof Pchoice) ? Math.max(c, n) : c + n;
+		}
+		if ((e instanceof Pzero || e instanceof Pone) && c > 0) {
+			return -1;
+		}
+		return c;
+	}
+
 	@Deprecated
 	public Tree<?> parse(SourceContext sc, TreeTransducer t) {
 		throw new RuntimeException("FIXME");
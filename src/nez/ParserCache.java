@@ -0,0 +1,112 @@
+package nez;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ParserCache keeps compiled parsers keyed by grammar file, start production
+ * and strategy, evicting the least recently used one beyond its capacity. A
+ * cached parser is rebuilt when the grammar file's mtime (or size) changes.
+ * Only the top-level grammar file is watched.
+ */
+
+public class ParserCache {
+	public final static int DefaultCapacity = 16;
+
+	static class Entry {
+		final String key;
+		final File file;
+		final long lastModified;
+		final long length;
+		final Parser parser;
+		int hits = 0;
+
+		Entry(String key, File file, long lastModified, long length, Parser parser) {
+			this.key = key;
+			this.file = file;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.parser = parser;
+		}
+
+		boolean isModified() {
+			return file.lastModified() != lastModified || file.length() != length;
+		}
+	}
+
+	private final LinkedHashMap<String, Entry> cache;
+	private int missCount = 0;
+	private int reloadCount = 0;
+
+	public ParserCache(final int capacity) {
+		this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true/* access order */) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > capacity) {
+					Verbose.println("unloading " + eldest.getKey());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public ParserCache() {
+		this(DefaultCapacity);
+	}
+
+	public synchronized Parser getParser(String path, String start, Strategy strategy) throws IOException {
+		String key = path + "\t" + start + "\t" + strategy;
+		Entry e = cache.get(key);
+		if (e != null) {
+			if (!e.isModified()) {
+				e.hits++;
+				return e.parser;
+			}
+			Verbose.println("reloading " + path);
+			reloadCount++;
+		} else {
+			missCount++;
+		}
+		File file = new File(path);
+		// taken before loading, so that an edit made while compiling is noticed
+		long lastModified = file.lastModified();
+		long length = file.length();
+		long t1 = System.nanoTime();
+		ParserFactory factory = new ParserFactory();
+		factory.setStrategy(strategy);
+		factory.setGrammarFilePath(path);
+		factory.setStartProduction(start);
+		Parser parser = factory.newParser();
+		if (parser == null) {
+			throw new IOException("undefined start production: " + start);
+		}
+		parser.compile();
+		Verbose.printElapsedTime("loading " + path, t1, System.nanoTime());
+		cache.put(key, new Entry(key, file, lastModified, length, parser));
+		return parser;
+	}
+
+	public synchronized void clear() {
+		cache.clear();
+	}
+
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	public synchronized List<String> stat() {
+		List<String> l = new ArrayList<String>();
+		l.add("cached=" + cache.size() + " missed=" + missCount + " reloaded=" + reloadCount);
+		for (Entry e : cache.values()) {
+			l.add(e.hits + "\t" + e.key.replace('\t', ' '));
+		}
+		return l;
+	}
+}
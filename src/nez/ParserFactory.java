@@ -5,6 +5,8 @@ import java.io.IOException;
 
 import nez.lang.GrammarFileLoader;
 import nez.lang.util.NezConstructor;
+import nez.parser.ParserProfile;
+import nez.parser.SamplingMachine;
 import nez.util.UList;
 
 public class ParserFactory {
@@ -117,6 +119,16 @@ public class ParserFactory {
 			rec.setText("config", strategy.toString());
 			p.setProfiler(rec);
 		}
+		String samplePath = strategy.getString("Psample", null);
+		if (p != null && samplePath != null) {
+			int capacity = strategy.getInt("Pbuffer", SamplingMachine.DefaultCapacity);
+			int interval = strategy.getInt("Pinterval", SamplingMachine.DefaultInterval);
+			p.setSampler(new SamplingMachine(capacity, interval, strategy.getInt("Pperiod", 0)), samplePath);
+		}
+		String profilePath = strategy.getString("Pprofile", null);
+		if (p != null && profilePath != null) {
+			p.setGrammarProfile(new ParserProfile(), profilePath);
+		}
 		return p;
 	}
 
@@ -27,6 +27,7 @@ public class Strategy {
 	public final static boolean AST = true;
 	public final static boolean MEMO = true;
 	public final static boolean Mpackrat = false;
+	public final static boolean Msliding = false;
 
 	public final static boolean Onone = false;
 	public final static boolean Olex = true;
@@ -36,6 +37,10 @@ public class Strategy {
 	public final static boolean Oinline = true;
 	public final static boolean Oalias = false;
 	public final static boolean Ofirst = true;
+	public final static boolean Ointern = false; // intern token text
+	public final static boolean Oshare = false; // share identical subtrees
+	public final static boolean Ofusion = true; // superinstructions
+	public final static boolean Oentry = false; // public productions as entry points
 
 	public final static boolean Wnone = true;
 	public final static boolean Wnotice = true;
@@ -89,13 +94,24 @@ public class Strategy {
 		return def;
 	}
 
+	public final String getString(String key, String def) {
+		Object v = data.get(key);
+		if (v instanceof String) {
+			return (String) v;
+		}
+		return def;
+	}
+
 	public final void setValue(String keyvalue) {
 		int loc = keyvalue.indexOf('=');
-		try {
-			if (loc > 0) {
-				data.put(keyvalue.substring(0, loc), Integer.parseInt(keyvalue.substring(loc + 1)));
+		if (loc > 0) {
+			String key = keyvalue.substring(0, loc);
+			String value = keyvalue.substring(loc + 1);
+			try {
+				data.put(key, Integer.parseInt(value));
+			} catch (NumberFormatException e) {
+				data.put(key, value);
 			}
-		} catch (NumberFormatException e) {
 		}
 	}
 
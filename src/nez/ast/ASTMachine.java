@@ -1,5 +1,7 @@
 package nez.ast;
 
+import java.util.Arrays;
+
 import nez.Verbose;
 
 public class ASTMachine {
@@ -14,37 +16,77 @@ public class ASTMachine {
 	final static int Link = 7;
 	final static int New = 8;
 
+	final static int Nested = 9; // Push, after its subtree has been built
+	final static int Open = 10; // a pending link, logged only for TreeStream
+
 	Source source;
 	// TreeTransducer treeTransducer;
 	Tree<?> prototype;
-	ASTLog firstLog = null;
-	ASTLog lastAppendedLog = null;
-	ASTLog unusedDataLog = null;
+
+	// The log is stored in growable parallel arrays. A transaction point is
+	// the index of the last appended log, so that rollback is O(1).
+	private int[] types;
+	private long[] values;
+	private Symbol[] labels;
+	private Object[] refs;
+	private int lastAppendedLog;
+	private TreeCache treeCache = null;
 
 	public ASTMachine(Source source, Tree<?> prototype) {
 		this.source = source;
 		this.prototype = prototype == null ? new EmptyTree() : prototype;
-		// this.log(ASTMachine.Nop, 0, null);
-		this.firstLog = new ASTLog();
-		this.lastAppendedLog = this.firstLog;
+		this.types = new int[LogSize];
+		this.values = new long[LogSize];
+		this.labels = new Symbol[LogSize];
+		this.refs = new Object[LogSize];
+		this.types[0] = ASTMachine.Nop;
+		this.lastAppendedLog = 0;
+	}
+
+	/* reuses this machine for the next input, if neither builds a tree */
+	public final boolean reset(Tree<?> prototype) {
+		if (prototype != null || !(this.prototype instanceof EmptyTree) || this.labels == null) {
+			return false;
+		}
+		this.types[0] = ASTMachine.Nop;
+		this.lastAppendedLog = 0;
+		this.parseResult = null;
+		this.treeCache = null;
+		this.stream = null;
+		this.streamRoot = 0;
+		this.streamNext = 1;
+		this.streamPush = 0;
+		this.streamDepth = 0;
+		this.streamHigh = 0;
+		this.streamTag = null;
+		this.streamState = 0;
+		return true;
+	}
+
+	/* shares identical subtrees (+Oshare) */
+	public final void setTreeCache(TreeCache treeCache) {
+		this.treeCache = treeCache;
+	}
+
+	private static int LogSize = 256;
+
+	private void grow() {
+		int newSize = types.length * 2;
+		this.types = Arrays.copyOf(types, newSize);
+		this.values = Arrays.copyOf(values, newSize);
+		this.labels = Arrays.copyOf(labels, newSize);
+		this.refs = Arrays.copyOf(refs, newSize);
 	}
 
 	private final void log(int type, long pos, Symbol label, Object value) {
-		ASTLog l;
-		if (this.unusedDataLog == null) {
-			l = new ASTLog();
-		} else {
-			l = this.unusedDataLog;
-			this.unusedDataLog = l.next;
+		int n = ++lastAppendedLog;
+		if (n == types.length) {
+			grow();
 		}
-		l.id = lastAppendedLog.id + 1;
-		l.type = type;
-		l.value = pos;
-		l.label = label;
-		l.ref = value;
-		l.next = null;
-		lastAppendedLog.next = l;
-		lastAppendedLog = l;
+		types[n] = type;
+		values[n] = pos;
+		labels[n] = label;
+		refs[n] = value;
 	}
 
 	public final void logNew(long pos, Object debug) {
@@ -86,52 +128,187 @@ public class ASTMachine {
 		latestLinkedNode = node;
 	}
 
-	public final Object saveTransactionPoint() {
+	public final int saveTransactionPoint() {
 		return lastAppendedLog;
 	}
 
-	public final void rollTransactionPoint(Object point) {
-		ASTLog save = (ASTLog) point;
+	public final void rollTransactionPoint(int point) {
 		if (debugMode) {
-			Verbose.debug("roll" + save + " < " + this.lastAppendedLog);
+			Verbose.debug("roll " + point + " < " + this.lastAppendedLog);
+		}
+		if (point < streamHigh) {
+			this.streamState = -2;
+			this.streamHigh = 0;
 		}
-		if (save != lastAppendedLog) {
-			lastAppendedLog.next = this.unusedDataLog;
-			this.unusedDataLog = save.next;
-			save.next = null;
-			this.lastAppendedLog = save;
+		this.lastAppendedLog = point;
+	}
+
+	/* the transaction point of a link; a streamed log marks it with Open */
+	public final int openTransactionPoint() {
+		int point = lastAppendedLog;
+		if (stream != null) {
+			log(ASTMachine.Open, 0, null, null);
 		}
-		assert (lastAppendedLog.next == null);
+		return point;
 	}
 
-	public final void commitTransactionPoint(Symbol label, Object point) {
-		ASTLog save = (ASTLog) point;
-		Object node = createNode(save.next, null);
+	public final void commitTransactionPoint(Symbol label, int point) {
+		int start = point + 1;
+		if (stream != null && start <= lastAppendedLog && types[start] == ASTMachine.Open) {
+			start++;
+		}
+		Object node = start <= lastAppendedLog ? createNode(start, -1) : null;
 		this.rollTransactionPoint(point);
 		if (node != null) {
 			logLink(label, node);
 		}
 	}
 
-	private void dump(ASTLog start, ASTLog end) {
-		for (ASTLog cur = start; cur != null; cur = cur.next) {
-			Verbose.debug(cur.toString());
+	// TreeStream: each completed child of the root is passed to the stream
+	// when a repetition iterates, and dropped from the log. The logs up to a
+	// pending link (Open) never change while the root is open, so the scan
+	// resumes where it stopped, even inside a Push that is not popped yet.
+	// Only the logs below every live fail point are scanned (see
+	// RuntimeContext.flushTreeStream), so a streamed child is rolled back
+	// only if the whole parse fails, which stops the stream.
+
+	private TreeStream stream = null;
+	private int streamRoot = 0; // the New of the root
+	private int streamNext = 1; // the next log to scan
+	private int streamPush = 0; // the Push being scanned
+	private int streamDepth = 0;
+	private int streamHigh = 0; // the last streamed log
+	private Symbol streamTag = null;
+	private int streamState = 0; // 1: begun, -1: refused, -2: stopped
+
+	public final void setTreeStream(TreeStream stream) {
+		this.stream = stream;
+	}
+
+	public final boolean isStreaming() {
+		return stream != null && streamState >= 0;
+	}
+
+	/* streams the logs up to limit; returns the root if they can be compacted, or 0 */
+	public final int flushTreeStream(int limit) {
+		int cur = streamNext;
+		for (; cur <= limit; cur++) {
+			int type = types[cur];
+			if (type == ASTMachine.Open) {
+				break;
+			}
+			if (streamPush != 0) {
+				if (type == ASTMachine.Push) {
+					streamDepth++;
+				} else if (type == ASTMachine.Pop && --streamDepth == 0) {
+					int push = streamPush;
+					streamPush = 0;
+					if (streamRoot != 0) {
+						Tree<?> node = createNode(push + 1, push);
+						if (!streamLink(push, cur, labels[push], node)) {
+							return 0;
+						}
+					}
+				}
+				continue;
+			}
+			switch (type) {
+			case ASTMachine.New:
+				if (streamState == 1) {
+					streamState = -2;
+					return 0;
+				}
+				streamRoot = cur;
+				streamTag = null;
+				break;
+			case ASTMachine.Tag:
+				streamTag = (Symbol) refs[cur];
+				break;
+			case ASTMachine.Link:
+				if (streamRoot != 0 && !streamLink(cur, cur, labels[cur], refs[cur])) {
+					return 0;
+				}
+				break;
+			case ASTMachine.Push:
+				streamPush = cur;
+				streamDepth = 1;
+				break;
+			case ASTMachine.LeftFold:
+			case ASTMachine.Pop:
+			case ASTMachine.Nested:
+				if (streamRoot != 0) {
+					streamState = streamState == 1 ? -2 : -1;
+					return 0;
+				}
+			}
+		}
+		this.streamNext = cur;
+		return (streamState == 1 && streamPush == 0 && cur > lastAppendedLog) ? streamRoot : 0;
+	}
+
+	/* passes the child logged in start..end to the stream */
+	private boolean streamLink(int start, int end, Symbol label, Object child) {
+		if (streamState == 0) {
+			if (!stream.beginTree(streamTag)) {
+				streamState = -1;
+				return false;
+			}
+			streamState = 1;
+		}
+		stream.linkTree(label, (Tree<?>) child);
+		for (int i = start; i <= end; i++) {
+			types[i] = ASTMachine.Nop;
+			labels[i] = null;
+			refs[i] = null;
+		}
+		this.streamHigh = end;
+		return true;
+	}
+
+	/* leaves one Nop for the streamed links, and returns the new last log */
+	public final int compactTreeStream() {
+		int n = streamRoot + 1;
+		types[n] = ASTMachine.Nop;
+		labels[n] = null;
+		refs[n] = null;
+		for (int i = n + 1; i <= lastAppendedLog; i++) {
+			if (types[i] != ASTMachine.Nop) {
+				n++;
+				types[n] = types[i];
+				values[n] = values[i];
+				labels[n] = labels[i];
+				refs[n] = refs[i];
+			}
 		}
+		for (int i = n + 1; i <= lastAppendedLog; i++) {
+			labels[i] = null;
+			refs[i] = null;
+		}
+		this.lastAppendedLog = n;
+		this.streamNext = n + 1;
+		this.streamHigh = streamRoot + 1;
+		return n;
 	}
 
-	public final Tree<?> createNode(ASTLog start, ASTLog pushed) {
-		ASTLog cur = start;
+	private void dump(int start, int end) {
+		for (int cur = start; cur < end; cur++) {
+			Verbose.debug(this.toString(cur));
+		}
+	}
+
+	private Tree<?> createNode(int start, int pushed) {
 		if (debugMode) {
 			Verbose.debug("createNode.start: " + start + "     pushed:" + pushed);
 		}
-		long spos = cur.value, epos = spos;
+		int end = this.lastAppendedLog + 1;
+		long spos = values[start], epos = spos;
 		Symbol tag = null;
 		Object value = null;
 		int objectSize = 0;
-		for (cur = start; cur != null; cur = cur.next) {
-			switch (cur.type) {
+		for (int cur = start; cur < end; cur++) {
+			switch (types[cur]) {
 			case ASTMachine.New:
-				spos = cur.value;
+				spos = values[cur];
 				epos = spos;
 				objectSize = 0;
 				tag = null;
@@ -139,70 +316,80 @@ public class ASTMachine {
 				start = cur;
 				break;
 			case ASTMachine.Capture:
-				epos = cur.value;
+				epos = values[cur];
 				break;
 			case ASTMachine.Tag:
-				tag = (Symbol) cur.ref;
+				tag = (Symbol) refs[cur];
 				break;
 			case ASTMachine.Replace:
-				value = cur.ref;
+				value = refs[cur];
 				break;
 			case ASTMachine.LeftFold:
-				cur.ref = constructLeft(start, cur, spos, epos, objectSize, tag, value);
-				cur.type = ASTMachine.Link;
-				// cur.value = 0;
-				spos = cur.value;
+				refs[cur] = constructLeft(start, cur, spos, epos, objectSize, tag, value);
+				types[cur] = ASTMachine.Link;
+				spos = values[cur];
 				tag = null;
 				value = null;
 				objectSize = 1;
 				start = cur;
 				break;
 			case ASTMachine.Pop:
-				assert (pushed != null);
-				pushed.type = ASTMachine.Link;
-				pushed.label = cur.label;
-				pushed.ref = constructLeft(start, cur, spos, epos, objectSize, tag, value);
-				pushed.value = cur.value;
-				// TODO unused
-				pushed.next = cur.next;
-				return (Tree<?>) pushed.ref;
+				assert (pushed != -1);
+				types[pushed] = ASTMachine.Nested;
+				labels[pushed] = labels[cur];
+				refs[pushed] = constructLeft(start, cur, spos, epos, objectSize, tag, value);
+				values[pushed] = cur; // skip to the matching pop
+				return (Tree<?>) refs[pushed];
 			case ASTMachine.Push:
-				createNode(cur.next, cur);
-				assert (cur.type == ASTMachine.Link);
+				createNode(cur + 1, cur);
+				assert (types[cur] == ASTMachine.Nested);
+				objectSize++;
+				if (types[cur] == ASTMachine.Nested) {
+					cur = (int) values[cur];
+				}
+				break;
+			case ASTMachine.Nested:
+				objectSize++;
+				cur = (int) values[cur];
+				break;
 			case ASTMachine.Link:
 				objectSize++;
 				break;
 			}
 		}
-		assert (pushed == null);
-		return constructLeft(start, null, spos, epos, objectSize, tag, value);
+		assert (pushed == -1);
+		return constructLeft(start, end, spos, epos, objectSize, tag, value);
 	}
 
 	private static final Symbol _token = Symbol.tag("token");
 	private static final Symbol _tree = Symbol.tag("tree");
 
-	private Tree<?> constructLeft(ASTLog start, ASTLog end, long spos, long epos, int objectSize, Symbol tag, Object value) {
+	private Tree<?> constructLeft(int start, int end, long spos, long epos, int objectSize, Symbol tag, Object value) {
 		if (tag == null) {
 			tag = objectSize > 0 ? _tree : _token;
 		}
 		Tree<?> newnode = this.prototype.newInstance(tag, source, spos, (int) (epos - spos), objectSize, value);
 		int n = 0;
 		if (objectSize > 0) {
-			for (ASTLog cur = start; cur != end; cur = cur.next) {
-				if (cur.type == ASTMachine.Link) {
-					if (cur.ref == null) {
-						Verbose.debug("@@ linking null child at " + cur.value);
+			for (int cur = start; cur < end; cur++) {
+				int type = types[cur];
+				if (type == ASTMachine.Link || type == ASTMachine.Nested) {
+					if (refs[cur] == null) {
+						Verbose.debug("@@ linking null child at " + cur);
 					} else {
 						// this.treeTransducer.link(newnode, n, cur.label,
 						// cur.ref);
-						newnode.link(n, cur.label, cur.ref);
+						newnode.link(n, labels[cur], refs[cur]);
 					}
 					n++;
+					if (type == ASTMachine.Nested) {
+						cur = (int) values[cur];
+					}
 				}
 			}
 		}
 		// return this.treeTransducer.commit(newnode);
-		return newnode;
+		return treeCache == null ? newnode : treeCache.intern(newnode);
 	}
 
 	// private Object constructTree(ASTLog start, ASTLog end, long spos, long
@@ -234,56 +421,49 @@ public class ASTMachine {
 			return parseResult;
 		}
 		if (debugMode) {
-			dump(this.firstLog, null);
+			dump(0, this.lastAppendedLog + 1);
 		}
-		for (ASTLog cur = this.firstLog; cur != null; cur = cur.next) {
-			if (cur.type == ASTMachine.New) {
-				parseResult = createNode(cur, null);
+		for (int cur = 1; cur <= this.lastAppendedLog; cur++) {
+			if (types[cur] == ASTMachine.New) {
+				parseResult = createNode(cur, -1);
 				break;
 			}
 		}
 		if (parseResult == null) {
 			parseResult = prototype.newInstance(_token, source, startpos, 0, 0, null);
 		}
-		this.firstLog = null;
-		this.unusedDataLog = null;
+		this.labels = null;
+		this.refs = null;
 		if (debugMode) {
 			Verbose.debug("getParseResult: " + parseResult);
 		}
 		return parseResult;
 	}
 
-	class ASTLog {
-		int id;
-		int type;
-		Symbol label;
-		Object ref;
-		long value;
-
-		ASTLog next;
-
-		@Override
-		public String toString() {
-			switch (type) {
-			case ASTMachine.Link:
-				return "[" + id + "] link(index=" + this.value + ")";
-			case ASTMachine.Capture:
-				return "[" + id + "] cap(" + this.value + ")";
-			case ASTMachine.Tag:
-				return "[" + id + "] tag(" + this.ref + ")";
-			case ASTMachine.Replace:
-				return "[" + id + "] replace(" + this.ref + ")";
-			case ASTMachine.LeftFold:
-				return "[" + id + "] left(" + this.value + ")";
-			case ASTMachine.New:
-				return "[" + id + "] new(" + this.value + "," + this.ref + ")";
-			case ASTMachine.Pop:
-				return "[" + id + "] pop(" + this.ref + ")";
-			case ASTMachine.Push:
-				return "[" + id + "] push";
-			}
-			return "[" + id + "] nop";
+	private String toString(int id) {
+		switch (types[id]) {
+		case ASTMachine.Link:
+			return "[" + id + "] link(" + this.labels[id] + ")";
+		case ASTMachine.Nested:
+			return "[" + id + "] link(" + this.labels[id] + ", pop=" + this.values[id] + ")";
+		case ASTMachine.Capture:
+			return "[" + id + "] cap(" + this.values[id] + ")";
+		case ASTMachine.Tag:
+			return "[" + id + "] tag(" + this.refs[id] + ")";
+		case ASTMachine.Replace:
+			return "[" + id + "] replace(" + this.refs[id] + ")";
+		case ASTMachine.LeftFold:
+			return "[" + id + "] left(" + this.values[id] + ")";
+		case ASTMachine.New:
+			return "[" + id + "] new(" + this.values[id] + "," + this.refs[id] + ")";
+		case ASTMachine.Pop:
+			return "[" + id + "] pop(" + this.labels[id] + ")";
+		case ASTMachine.Push:
+			return "[" + id + "] push";
+		case ASTMachine.Open:
+			return "[" + id + "] open";
 		}
+		return "[" + id + "] nop";
 	}
 
 	class NoTreeTransducer extends TreeTransducer {
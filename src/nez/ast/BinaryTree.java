@@ -0,0 +1,162 @@
+package nez.ast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import nez.io.SourceContext;
+
+/**
+ * BinaryTree is a read-only view of a tree saved by BinaryTreeWriter. The
+ * file is memory-mapped, and a node is decoded only when its parent's
+ * get(index) first reaches it. The embedded source is read in place through
+ * a ByteBufferContext, so toText(), getLineNum() and getColumn() work as on
+ * the parsed tree. Files are limited to 2GB by the mapping.
+ */
+
+public class BinaryTree extends Tree<BinaryTree> {
+	private final Image image;
+	private final int[] offsets; // of the children; 0 for null
+
+	public BinaryTree(Symbol tag, Source source, long pos, int len, int size, Object value) {
+		super(tag, source, pos, len, size > 0 ? new BinaryTree[size] : null, value);
+		this.image = null;
+		this.offsets = null;
+	}
+
+	private BinaryTree(Image image, Symbol tag, long pos, int len, Symbol[] labels, int[] offsets, Object value) {
+		super(tag, image.source, pos, len, labels.length > 0 ? new BinaryTree[labels.length] : null, labels, value);
+		this.image = image;
+		this.offsets = offsets;
+	}
+
+	public static BinaryTree load(String path) throws IOException {
+		MappedByteBuffer buf;
+		try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		return new Image(path, buf).root();
+	}
+
+	@Override
+	public BinaryTree get(int index) {
+		BinaryTree t = this.subTree[index];
+		if (t == null && this.offsets != null && this.offsets[index] != 0) {
+			t = image.node(this.offsets[index]);
+			this.subTree[index] = t;
+		}
+		return t;
+	}
+
+	@Override
+	protected BinaryTree newInstance(Symbol tag, Source source, long pos, int len, int size, Object value) {
+		return new BinaryTree(tag, source, pos, len, size, value);
+	}
+
+	@Override
+	protected void link(int n, Symbol label, Object child) {
+		this.set(n, label, (BinaryTree) child);
+	}
+
+	@Override
+	public BinaryTree newInstance(Symbol tag, int size, Object value) {
+		return new BinaryTree(tag, this.getSource(), this.getSourcePosition(), 0, size, value);
+	}
+
+	@Override
+	protected BinaryTree dupImpl() {
+		return new BinaryTree(this.getTag(), this.getSource(), this.getSourcePosition(), this.getLength(), this.size(), getValue());
+	}
+
+	/* a mapped file, decoded with absolute reads */
+	static final class Image {
+		private final ByteBuffer buf;
+		private final Symbol[] symbols;
+		private final SourceContext source;
+		private int cur;
+
+		Image(String path, ByteBuffer buf) throws IOException {
+			this.buf = buf;
+			for (int i = 0; i < BinaryTreeWriter.Magic.length; i++) {
+				if (buf.get(i) != BinaryTreeWriter.Magic[i]) {
+					throw new IOException("not a binary AST file: " + path);
+				}
+			}
+			if (buf.get(4) != BinaryTreeWriter.Version) {
+				throw new IOException("unsupported binary AST version " + buf.get(4) + ": " + path);
+			}
+			this.cur = 5;
+			this.symbols = new Symbol[readInt() + 1];
+			for (int i = 1; i < symbols.length; i++) {
+				symbols[i] = Symbol.tag(readString());
+			}
+			String name = readString();
+			long linenum = readVarint();
+			int length = readInt();
+			ByteBuffer text = buf.duplicate();
+			text.position(cur);
+			text.limit(cur + length);
+			this.source = SourceContext.newByteBufferContext(name, linenum, text.slice());
+			this.cur += length;
+		}
+
+		BinaryTree root() {
+			int end = buf.limit();
+			long root = 0;
+			for (int i = end - 8; i < end; i++) {
+				root = (root << 8) | (buf.get(i) & 0xFF);
+			}
+			return node((int) root);
+		}
+
+		synchronized BinaryTree node(int offset) {
+			this.cur = offset;
+			Symbol tag = symbols[readInt()];
+			long pos = readVarint();
+			int len = readInt();
+			int flags = readInt();
+			String value = (flags & 1) != 0 ? readString() : null;
+			int size = flags >>> 1;
+			if (size == 0) {
+				return new BinaryTree(this, tag, pos, len, EmptyLabels, null, value);
+			}
+			Symbol[] labels = new Symbol[size];
+			int[] offsets = new int[size];
+			for (int i = 0; i < size; i++) {
+				labels[i] = symbols[readInt()];
+				int back = readInt();
+				offsets[i] = back == 0 ? 0 : offset - back;
+			}
+			return new BinaryTree(this, tag, pos, len, labels, offsets, value);
+		}
+
+		private long readVarint() {
+			long v = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = buf.get(cur++);
+				v |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return v;
+				}
+			}
+		}
+
+		private int readInt() {
+			return (int) readVarint();
+		}
+
+		private String readString() {
+			int length = readInt();
+			byte[] b = new byte[length];
+			for (int i = 0; i < length; i++) {
+				b[i] = buf.get(cur + i);
+			}
+			cur += length;
+			return new String(b, StandardCharsets.UTF_8);
+		}
+	}
+}
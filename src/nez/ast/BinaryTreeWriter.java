@@ -0,0 +1,187 @@
+package nez.ast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * BinaryTreeWriter saves a tree in the binary AST format that BinaryTree
+ * loads without reparsing:
+ *
+ * <pre>
+ * file   = "NEZT" version:u8 symbols source node* root:u64
+ * symbols = count:v (length:v utf8)*          -- index 0 is no label
+ * source = name:v utf8 linenum:v length:v byte*
+ * node   = tag:v pos:v length:v (size &lt;&lt; 1 | hasValue):v
+ *          (length:v utf8)? (label:v back:v)*
+ * </pre>
+ *
+ * v is an unsigned LEB128 varint. Nodes are written children first, and a
+ * child is referenced by its distance back from the parent (0 for null), so
+ * any node can be read at its offset. The text of the source is embedded
+ * once; values are stored only if they differ from the source text.
+ */
+
+public class BinaryTreeWriter {
+	public final static byte[] Magic = { 'N', 'E', 'Z', 'T' };
+	public final static int Version = 1;
+
+	private final WritableByteChannel out;
+	private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+	private long offset = 0;
+	private Source source = null;
+	private int[] symbolIndex = new int[256];
+	private ArrayList<Symbol> symbols = new ArrayList<Symbol>();
+
+	public BinaryTreeWriter(WritableByteChannel out) {
+		this.out = out;
+	}
+
+	public final void writeTree(Tree<?> root) throws IOException {
+		this.source = root.getSource();
+		Arrays.fill(symbolIndex, 0);
+		symbols.clear();
+		symbols.add(null);
+		collectSymbols(root);
+		writeBytes(Magic, 0, Magic.length);
+		writeByte(Version);
+		writeVarint(symbols.size() - 1);
+		for (int i = 1; i < symbols.size(); i++) {
+			writeString(symbols.get(i).getSymbol());
+		}
+		writeSource();
+		long rootOffset = writeNode(root);
+		for (int i = 56; i >= 0; i -= 8) {
+			writeByte((int) (rootOffset >>> i));
+		}
+		flush();
+	}
+
+	private void collectSymbols(Tree<?> node) {
+		indexOf(node.getTag());
+		for (int i = 0; i < node.size(); i++) {
+			indexOf(node.getLabel(i));
+			Tree<?> sub = node.get(i);
+			if (sub != null) {
+				collectSymbols(sub);
+			}
+		}
+	}
+
+	private int indexOf(Symbol s) {
+		if (s == null) {
+			return 0;
+		}
+		if (s.id >= symbolIndex.length) {
+			symbolIndex = Arrays.copyOf(symbolIndex, Math.max(s.id + 1, symbolIndex.length * 2));
+		}
+		if (symbolIndex[s.id] == 0) {
+			symbolIndex[s.id] = symbols.size();
+			symbols.add(s);
+		}
+		return symbolIndex[s.id];
+	}
+
+	private void writeSource() throws IOException {
+		if (source == null) {
+			writeString("");
+			writeVarint(1);
+			writeVarint(0);
+			return;
+		}
+		writeString(source.getResourceName());
+		writeVarint(source.linenum(0));
+		long length = source.length();
+		writeVarint(length);
+		for (long pos = 0; pos < length; pos += buffer.capacity()) {
+			byte[] b = source.subbyte(pos, Math.min(length, pos + buffer.capacity()));
+			writeBytes(b, 0, b.length);
+		}
+	}
+
+	/* returns the offset of the node */
+	private long writeNode(Tree<?> node) throws IOException {
+		int size = node.size();
+		long[] childOffsets = size == 0 ? null : new long[size];
+		for (int i = 0; i < size; i++) {
+			Tree<?> sub = node.get(i);
+			childOffsets[i] = sub == null ? -1 : writeNode(sub);
+		}
+		long nodeOffset = offset;
+		String value = storedValue(node);
+		writeVarint(indexOf(node.getTag()));
+		writeVarint(node.getSourcePosition());
+		writeVarint(node.getLength());
+		writeVarint(((long) size << 1) | (value != null ? 1 : 0));
+		if (value != null) {
+			writeString(value);
+		}
+		for (int i = 0; i < size; i++) {
+			writeVarint(indexOf(node.getLabel(i)));
+			writeVarint(childOffsets[i] == -1 ? 0 : nodeOffset - childOffsets[i]);
+		}
+		return nodeOffset;
+	}
+
+	private String storedValue(Tree<?> node) {
+		Object value = node.getValue();
+		if (node.getSource() != source) {
+			return node.toText();
+		}
+		if (value == null || value instanceof Tree<?>) {
+			return null;
+		}
+		String text = value.toString();
+		long pos = node.getSourcePosition();
+		if (source != null && text.equals(source.substring(pos, pos + node.getLength()))) {
+			return null; // the cached text of toText()
+		}
+		return text;
+	}
+
+	private void writeString(String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		writeVarint(b.length);
+		writeBytes(b, 0, b.length);
+	}
+
+	private void writeVarint(long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			writeByte((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		writeByte((int) v);
+	}
+
+	private void writeByte(int b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.put((byte) b);
+		offset++;
+	}
+
+	private void writeBytes(byte[] b, int start, int length) throws IOException {
+		while (length > 0) {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			int n = Math.min(length, buffer.remaining());
+			buffer.put(b, start, n);
+			start += n;
+			length -= n;
+			offset += n;
+		}
+	}
+
+	public final void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -8,7 +8,7 @@ public class Symbol {
 	private static HashMap<String, Symbol> tagIdMap = new HashMap<String, Symbol>();
 	private static UList<Symbol> tagNameList = new UList<Symbol>(new Symbol[64]);
 
-	public final static Symbol tag(String tagName) {
+	public final static synchronized Symbol tag(String tagName) {
 		Symbol tag = tagIdMap.get(tagName);
 		if (tag == null) {
 			tag = new Symbol(tagIdMap.size(), tagName);
@@ -22,7 +22,7 @@ public class Symbol {
 		return tag(tagName).id;
 	}
 
-	public final static Symbol tag(int tagId) {
+	public final static synchronized Symbol tag(int tagId) {
 		return tagNameList.ArrayValues[tagId];
 	}
 
@@ -0,0 +1,72 @@
+package nez.ast;
+
+import nez.util.StringUtils;
+
+/**
+ * TokenCache interns the decoded text of short, repeated tokens (keywords,
+ * field names, operators). The table is direct-mapped and lossy: a slot is
+ * simply overwritten on collision. Lookups hash and compare the bytes in the
+ * source, so a hit allocates nothing.
+ */
+
+public class TokenCache {
+	public final static int MaxTokenLength = 32;
+
+	private final Entry[] entries;
+	private final int mask;
+	private long hitCount = 0;
+	private long missCount = 0;
+
+	public TokenCache() {
+		this(4096);
+	}
+
+	public TokenCache(int size) {
+		int n = 16;
+		while (n < size) {
+			n <<= 1;
+		}
+		this.entries = new Entry[n];
+		this.mask = n - 1;
+	}
+
+	static final class Entry {
+		final byte[] utf8;
+		final String text;
+
+		Entry(byte[] utf8, String text) {
+			this.utf8 = utf8;
+			this.text = text;
+		}
+	}
+
+	public final String intern(Source s, long pos, long epos) {
+		int len = (int) (epos - pos);
+		if (len > MaxTokenLength) {
+			return s.substring(pos, epos);
+		}
+		int h = len;
+		for (long i = pos; i < epos; i++) {
+			h = h * 31 + s.byteAt(i);
+		}
+		int index = (h ^ (h >>> 16)) & mask;
+		Entry e = this.entries[index];
+		if (e != null && e.utf8.length == len && s.match(pos, e.utf8)) {
+			this.hitCount++;
+			return e.text;
+		}
+		this.missCount++;
+		byte[] utf8 = s.subbyte(pos, epos);
+		String text = StringUtils.newString(utf8);
+		this.entries[index] = new Entry(utf8, text);
+		return text;
+	}
+
+	public final long getHitCount() {
+		return this.hitCount;
+	}
+
+	public final long getMissCount() {
+		return this.missCount;
+	}
+}
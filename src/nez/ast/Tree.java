@@ -1,6 +1,7 @@
 package nez.ast;
 
 import java.util.AbstractList;
+import java.util.Arrays;
 
 import nez.io.SourceContext;
 import nez.util.StringUtils;
@@ -14,6 +15,7 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 	protected int length;
 	protected Object value;
 	protected Symbol[] labels;
+	private boolean sharedLabels = false; // copied on the first write
 	protected E[] subTree;
 
 	protected Tree() {
@@ -36,6 +38,29 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 		this.labels = (this.subTree != null) ? new Symbol[this.subTree.length] : EmptyLabels;
 	}
 
+	/* typed nodes share one label array per tag (see TypedTreeGenerator) */
+	protected Tree(Symbol tag, Source source, long pos, int len, E[] subTree, Symbol[] labels, Object value) {
+		this.tag = tag;
+		this.source = source;
+		this.pos = (int) pos;
+		this.length = len;
+		this.subTree = subTree;
+		this.value = value;
+		this.labels = labels;
+		this.sharedLabels = labels.length > 0;
+	}
+
+	/* sets a label without changing the nodes that share the array */
+	private void setLabel(int index, Symbol label) {
+		if (this.labels[index] != label) {
+			if (this.sharedLabels) {
+				this.labels = this.labels.clone();
+				this.sharedLabels = false;
+			}
+			this.labels[index] = label;
+		}
+	}
+
 	protected abstract E newInstance(Symbol tag, Source source, long pos, int len, int objectsize, Object value);
 
 	protected abstract void link(int n, Symbol label, Object child);
@@ -48,9 +73,15 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 		E t = dupImpl();
 		if (this.subTree != null) {
 			for (int i = 0; i < subTree.length; i++) {
-				if (this.subTree[i] != null) {
-					t.subTree[i] = this.subTree[i].dup();
-					t.labels[i] = this.labels[i];
+				E sub = this.get(i);
+				if (sub == null) {
+					continue;
+				}
+				if (i < t.subTree.length) {
+					t.subTree[i] = sub.dup();
+					((Tree<?>) t).setLabel(i, this.labels[i]);
+				} else {
+					t.append(this.labels[i], sub.dup()); // see append
 				}
 			}
 		}
@@ -126,6 +157,7 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 		return c;
 	}
 
+	/* subclasses may materialize children lazily (see BinaryTree) */
 	@Override
 	public E get(int index) {
 		return this.subTree[index];
@@ -133,7 +165,7 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 
 	public final E get(int index, E defaultValue) {
 		if (index < this.size()) {
-			return this.subTree[index];
+			return this.get(index);
 		}
 		return defaultValue;
 	}
@@ -148,10 +180,20 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 	}
 
 	public final void set(int index, Symbol label, E node) {
-		this.labels[index] = label;
+		this.setLabel(index, label);
 		this.subTree[index] = node;
 	}
 
+	/* adds a slot after the others; a typed node keeps a child of a label it does not know */
+	protected final void append(Symbol label, E node) {
+		int n = this.subTree.length;
+		this.subTree = Arrays.copyOf(this.subTree, n + 1);
+		this.labels = Arrays.copyOf(this.labels, n + 1);
+		this.sharedLabels = false;
+		this.subTree[n] = node;
+		this.labels[n] = label;
+	}
+
 	public final int indexOf(Symbol label) {
 		for (int i = 0; i < labels.length; i++) {
 			if (labels[i] == label) {
@@ -173,7 +215,7 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 	public final E get(Symbol label) {
 		for (int i = 0; i < labels.length; i++) {
 			if (labels[i] == label) {
-				return this.subTree[i];
+				return this.get(i);
 			}
 		}
 		throw newNoSuchLabel(label);
@@ -186,7 +228,7 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 	public final E get(Symbol label, E defval) {
 		for (int i = 0; i < labels.length; i++) {
 			if (labels[i] == label) {
-				return this.subTree[i];
+				return this.get(i);
 			}
 		}
 		return defval;
@@ -207,7 +249,7 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 		}
 		for (int i = 0; i < labels.length; i++) {
 			if (labels[i] == oldlabel) {
-				labels[i] = newlabel;
+				this.setLabel(i, newlabel);
 			}
 		}
 	}
@@ -239,12 +281,13 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 		} else {
 			String nindent = "   " + indent;
 			for (int i = 0; i < this.size(); i++) {
-				if (this.subTree[i] == null) {
+				E sub = this.get(i);
+				if (sub == null) {
 					sb.append("\n");
 					sb.append(nindent);
 					sb.append("null");
 				} else {
-					this.subTree[i].stringfy(nindent, this.labels[i], sb);
+					sub.stringfy(nindent, this.labels[i], sb);
 				}
 			}
 			sb.append("\n");
@@ -271,7 +314,11 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 		if (this.source != null) {
 			long pos = this.getSourcePosition();
 			long epos = pos + this.length;
-			this.value = this.source.substring(pos, epos);
+			if (this.source instanceof SourceContext) {
+				this.value = ((SourceContext) this.source).tokenText(pos, epos);
+			} else {
+				this.value = this.source.substring(pos, epos);
+			}
 			// try {
 			// this.value = this.source.substring(pos, epos);
 			// } catch (Exception e) {
@@ -288,7 +335,7 @@ public abstract class Tree<E extends Tree<E>> extends AbstractList<E> implements
 	public final boolean is(Symbol label, Symbol tag) {
 		for (int i = 0; i < labels.length; i++) {
 			if (labels[i] == label) {
-				return this.subTree[i].is(tag);
+				return this.get(i).is(tag);
 			}
 		}
 		return false;
@@ -0,0 +1,136 @@
+package nez.ast;
+
+/**
+ * TreeCache hash-conses the nodes that ASTMachine constructs (+Oshare). A
+ * node is committed after its children, so the children are already shared
+ * and two subtrees are structurally identical (in the sense of
+ * TreeUtils.digest) if their tags, labels, values and children (by identity)
+ * are equal, or if they are leaves over the same bytes. A hit returns the
+ * earlier node, and the new one is dropped before anything refers to it.
+ *
+ * The table is direct-mapped and lossy like TokenCache, and it is cleared for
+ * each input. Shared subtrees must be treated as immutable; their source
+ * positions are those of the first occurrence.
+ */
+
+public class TreeCache {
+	public final static int MaxLeafLength = 64;
+
+	private final Tree<?>[] entries;
+	private final int[] hashes;
+	private final int mask;
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long savedBytes = 0;
+
+	public TreeCache() {
+		this(4096);
+	}
+
+	public TreeCache(int size) {
+		int n = 16;
+		while (n < size) {
+			n <<= 1;
+		}
+		this.entries = new Tree<?>[n];
+		this.hashes = new int[n];
+		this.mask = n - 1;
+	}
+
+	/* forgets the trees and the counts of the last input */
+	public final void clear() {
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = null;
+		}
+		this.hitCount = 0;
+		this.missCount = 0;
+		this.savedBytes = 0;
+	}
+
+	/** returns a node identical to node, or node itself */
+	public final Tree<?> intern(Tree<?> node) {
+		int size = node.size();
+		if (size == 0 && node.value == null && node.length > MaxLeafLength) {
+			return node;
+		}
+		int h = hash(node, size);
+		int index = (h ^ (h >>> 16)) & mask;
+		Tree<?> e = this.entries[index];
+		if (e != null && this.hashes[index] == h && isIdentical(e, node, size)) {
+			this.hitCount++;
+			this.savedBytes += shallowBytes(size);
+			return e;
+		}
+		this.missCount++;
+		this.entries[index] = node;
+		this.hashes[index] = h;
+		return node;
+	}
+
+	private static int hash(Tree<?> node, int size) {
+		int h = node.tag.id * 31 + size;
+		if (node.value != null) {
+			h = h * 31 + node.value.hashCode();
+		} else if (size == 0) {
+			h = h * 31 + node.length;
+			for (long i = node.pos, end = i + node.length; i < end; i++) {
+				h = h * 31 + node.source.byteAt(i);
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			Symbol label = node.labels[i];
+			h = h * 31 + (label == null ? 0 : label.id);
+			h = h * 31 + System.identityHashCode(node.subTree[i]);
+		}
+		return h;
+	}
+
+	private static boolean isIdentical(Tree<?> a, Tree<?> b, int size) {
+		if (a.tag != b.tag || a.size() != size || a.getClass() != b.getClass()) {
+			return false;
+		}
+		if (a.value != null || b.value != null) {
+			if (a.value == null || !a.value.equals(b.value)) {
+				return false;
+			}
+		} else if (size == 0) {
+			if (a.length != b.length) {
+				return false;
+			}
+			for (int i = 0; i < a.length; i++) {
+				if (a.source.byteAt(a.pos + i) != b.source.byteAt(b.pos + i)) {
+					return false;
+				}
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			if (a.labels[i] != b.labels[i] || a.subTree[i] != b.subTree[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* a node with compressed oops: 40 bytes, and two arrays of 16 + 4n */
+	private static long shallowBytes(int size) {
+		return 40 + (size > 0 ? 2 * ((16 + 4L * size + 7) & ~7L) : 0);
+	}
+
+	public final long getHitCount() {
+		return this.hitCount;
+	}
+
+	public final long getMissCount() {
+		return this.missCount;
+	}
+
+	/** estimates the heap of the dropped nodes */
+	public final long getSavedBytes() {
+		return this.savedBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "shared " + hitCount + " of " + (hitCount + missCount) + " nodes, saved about " + savedBytes + " bytes";
+	}
+}
@@ -0,0 +1,26 @@
+package nez.ast;
+
+/**
+ * TreeStream receives the root of a parse as it is committed (see
+ * Parser.parse(SourceContext, TreeStream)). Each completed child of the root
+ * is passed to linkTree when a repetition iterates past it, and is dropped
+ * from the AST log, so that the children of a long root need not stay in
+ * memory. A child is passed only when no choice point that could undo it is
+ * left, and a start production that may fold its root or build more than one
+ * root is not streamed at all; then the whole root is passed to endTree. If
+ * the parse fails, the written part is left as it is.
+ *
+ * beginTree is called before the first child, with the tag logged so far
+ * (null if the tag is logged after the children, as in { ... #Tag }). A
+ * stream that cannot write the root without its tag returns false, and then
+ * receives the whole root at endTree. Otherwise, endTree receives the root
+ * with the remaining children only.
+ */
+
+public interface TreeStream {
+	public boolean beginTree(Symbol tag);
+
+	public void linkTree(Symbol label, Tree<?> child);
+
+	public void endTree(Tree<?> root);
+}
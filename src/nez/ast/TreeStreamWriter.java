@@ -0,0 +1,419 @@
+package nez.ast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+import nez.util.ConsoleUtils;
+
+/**
+ * TreeStreamWriter writes trees in the formats of TreeWriter (writeTree,
+ * writeJSON and writeXML) straight to a WritableByteChannel. Text is escaped
+ * into a small char buffer and encoded into a direct byte buffer with a
+ * pooled UTF-8 encoder, so no string is built for a whole tree.
+ *
+ * A writer is also a TreeStream, and then writes the children of the root
+ * while the input is parsed (see Parser.parse(SourceContext, TreeStream)).
+ * The channel is not closed by the writer.
+ */
+
+public abstract class TreeStreamWriter implements TreeStream {
+	public final static int BufferSize = 64 * 1024;
+
+	private final static ArrayDeque<CharsetEncoder> encoderPool = new ArrayDeque<CharsetEncoder>();
+
+	private static CharsetEncoder acquireEncoder() {
+		synchronized (encoderPool) {
+			CharsetEncoder encoder = encoderPool.poll();
+			if (encoder != null) {
+				return encoder;
+			}
+		}
+		CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+		encoder.onMalformedInput(CodingErrorAction.REPLACE);
+		encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		return encoder;
+	}
+
+	private static void releaseEncoder(CharsetEncoder encoder) {
+		encoder.reset();
+		synchronized (encoderPool) {
+			if (encoderPool.size() < 8) {
+				encoderPool.push(encoder);
+			}
+		}
+	}
+
+	private final WritableByteChannel out;
+	private final ByteBuffer bytes = ByteBuffer.allocateDirect(BufferSize);
+	private final CharBuffer chars = CharBuffer.allocate(4096);
+	private CharsetEncoder encoder = acquireEncoder();
+
+	protected TreeStreamWriter(WritableByteChannel out) {
+		this.out = out;
+	}
+
+	public abstract void writeTree(Tree<?> node);
+
+	public final void writeNewLine() {
+		write('\n');
+	}
+
+	/* the number of streamed children of the root, or -1 before beginTree */
+	protected int streamed = -1;
+
+	@Override
+	public boolean beginTree(Symbol tag) {
+		this.streamed = 0;
+		return true;
+	}
+
+	@Override
+	public void endTree(Tree<?> root) {
+		if (streamed == -1) {
+			writeTree(root);
+		}
+		streamed = -1;
+	}
+
+	protected final void write(char c) {
+		if (!chars.hasRemaining()) {
+			encode(false);
+		}
+		chars.put(c);
+	}
+
+	protected final void write(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			write(text.charAt(i));
+		}
+	}
+
+	/* StringUtils.quoteString */
+	protected final void writeQuoted(char quote, String text) {
+		write(quote);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\n') {
+				write('\\');
+				write('n');
+			} else if (c == '\t') {
+				write('\\');
+				write('t');
+			} else if (c == quote || c == '\\') {
+				write('\\');
+				write(c);
+			} else {
+				write(c);
+			}
+		}
+		write(quote);
+	}
+
+	private int indent = 0;
+
+	protected final void incIndent() {
+		indent++;
+	}
+
+	protected final void decIndent() {
+		indent--;
+	}
+
+	/* FileBuilder.writeIndent */
+	protected final void writeIndent() {
+		write('\n');
+		for (int i = 0; i < indent; i++) {
+			write("   ");
+		}
+	}
+
+	private void encode(boolean endOfInput) {
+		chars.flip();
+		while (true) {
+			CoderResult r = encoder.encode(chars, bytes, endOfInput);
+			if (!r.isOverflow()) {
+				break;
+			}
+			drain();
+		}
+		chars.compact();
+	}
+
+	private void drain() {
+		bytes.flip();
+		try {
+			while (bytes.hasRemaining()) {
+				out.write(bytes);
+			}
+		} catch (IOException e) {
+			ConsoleUtils.exit(1, "IO error: " + e.getMessage());
+		}
+		bytes.clear();
+	}
+
+	public final void flush() {
+		encode(false);
+		drain();
+	}
+
+	public final void close() {
+		if (encoder != null) {
+			encode(true);
+			while (encoder.flush(bytes).isOverflow()) {
+				drain();
+			}
+			drain();
+			releaseEncoder(encoder);
+			encoder = null;
+		}
+	}
+
+	/* TreeWriter.writeTree */
+	public static class AST extends TreeStreamWriter {
+		public AST(WritableByteChannel out) {
+			super(out);
+		}
+
+		@Override
+		public void writeTree(Tree<?> node) {
+			writeIndent();
+			if (node == null) {
+				write("null");
+				return;
+			}
+			write('#');
+			write(node.getTag().getSymbol());
+			write('[');
+			if (node.size() == 0) {
+				writeQuoted('\'', node.toText());
+				write(']');
+			} else {
+				incIndent();
+				for (int i = 0; i < node.size(); i++) {
+					writeTree(node.get(i));
+				}
+				decIndent();
+				writeIndent();
+				write(']');
+			}
+		}
+
+		@Override
+		public boolean beginTree(Symbol tag) {
+			if (tag == null) {
+				return false;
+			}
+			super.beginTree(tag);
+			writeIndent();
+			write('#');
+			write(tag.getSymbol());
+			write('[');
+			incIndent();
+			return true;
+		}
+
+		@Override
+		public void linkTree(Symbol label, Tree<?> child) {
+			writeTree(child);
+			streamed++;
+		}
+
+		@Override
+		public void endTree(Tree<?> root) {
+			if (streamed >= 0) {
+				for (int i = 0; i < root.size(); i++) {
+					writeTree(root.get(i));
+				}
+				decIndent();
+				writeIndent();
+				write(']');
+			}
+			super.endTree(root);
+		}
+	}
+
+	/* TreeWriter.writeJSON; an object is streamed if the first child is labeled */
+	public static class JSON extends TreeStreamWriter {
+		public JSON(WritableByteChannel out) {
+			super(out);
+		}
+
+		@Override
+		public void writeTree(Tree<?> node) {
+			if (node == null) {
+				write("null");
+			} else if (node.size() == 0) {
+				writeQuoted('"', node.toText());
+			} else {
+				boolean object = node.isAllLabeled();
+				write(object ? '{' : '[');
+				for (int i = 0; i < node.size(); i++) {
+					if (i > 0) {
+						write(',');
+					}
+					if (object) {
+						writeQuoted('"', node.getLabel(i).getSymbol());
+						write(':');
+					}
+					writeTree(node.get(i));
+				}
+				write(object ? '}' : ']');
+			}
+		}
+
+		private boolean object = false;
+
+		@Override
+		public void linkTree(Symbol label, Tree<?> child) {
+			if (streamed == 0) {
+				object = label != null;
+				write(object ? '{' : '[');
+			} else {
+				write(',');
+			}
+			if (object) {
+				writeQuoted('"', String.valueOf(label));
+				write(':');
+			}
+			writeTree(child);
+			streamed++;
+		}
+
+		@Override
+		public void endTree(Tree<?> root) {
+			if (streamed >= 0) {
+				for (int i = 0; i < root.size(); i++) {
+					linkTree(root.getLabel(i), root.get(i));
+				}
+				write(object ? '}' : ']');
+			}
+			super.endTree(root);
+		}
+	}
+
+	/* TreeWriter.writeXML; a streamed @attribute after an element is written as an element */
+	public static class XML extends TreeStreamWriter {
+		public XML(WritableByteChannel out) {
+			super(out);
+		}
+
+		@Override
+		public void writeTree(Tree<?> node) {
+			if (node.size() == 2 && node.getTag() == Symbol.MetaSymbol) {
+				writeXML(node.get(0).toText(), node.get(1));
+			} else {
+				writeXML(node.getTag().getSymbol(), node);
+			}
+		}
+
+		private void writeXML(String tag, Tree<?> node) {
+			writeIndent();
+			write('<');
+			write(tag);
+			if (node.size() == 0) {
+				String s = node.toText();
+				if (s.length() == 0) {
+					write("/>");
+				} else {
+					write('>');
+					write(s);
+					write("</");
+					write(tag);
+					write('>');
+				}
+				return;
+			}
+			for (int i = 0; i < node.size(); i++) {
+				Tree<?> sub = node.get(i);
+				if (sub != null && isAttribute(sub)) {
+					writeAttribute(sub);
+				}
+			}
+			write('>');
+			incIndent();
+			for (int i = 0; i < node.size(); i++) {
+				Tree<?> sub = node.get(i);
+				if (sub != null && !isAttribute(sub)) {
+					writeTree(sub);
+				}
+			}
+			decIndent();
+			writeIndent();
+			write("</");
+			write(tag);
+			write('>');
+		}
+
+		private boolean isAttribute(Tree<?> node) {
+			return node.getTag().getSymbol().startsWith("@");
+		}
+
+		private void writeAttribute(Tree<?> node) {
+			write(' ');
+			write(node.getTag().getSymbol().substring(1));
+			write('=');
+			writeQuoted('"', node.toText());
+		}
+
+		private String rootTag = null;
+		private boolean content = false;
+
+		@Override
+		public boolean beginTree(Symbol tag) {
+			if (tag == null || tag == Symbol.MetaSymbol) {
+				return false;
+			}
+			super.beginTree(tag);
+			rootTag = tag.getSymbol();
+			content = false;
+			writeIndent();
+			write('<');
+			write(rootTag);
+			return true;
+		}
+
+		private void beginContent() {
+			if (!content) {
+				content = true;
+				write('>');
+				incIndent();
+			}
+		}
+
+		@Override
+		public void linkTree(Symbol label, Tree<?> child) {
+			if (child != null) {
+				if (!content && isAttribute(child)) {
+					writeAttribute(child);
+				} else {
+					beginContent();
+					writeTree(child);
+				}
+			}
+			streamed++;
+		}
+
+		@Override
+		public void endTree(Tree<?> root) {
+			if (streamed >= 0) {
+				for (int i = 0; i < root.size(); i++) {
+					linkTree(root.getLabel(i), root.get(i));
+				}
+				beginContent();
+				decIndent();
+				writeIndent();
+				write("</");
+				write(rootTag);
+				write('>');
+			}
+			super.endTree(root);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package nez.ast;
 
+import java.io.OutputStream;
 import java.util.TreeMap;
 
 import nez.Strategy;
@@ -18,6 +19,11 @@ public class TreeWriter extends FileBuilder {
 		super(path);
 	}
 
+	public TreeWriter(OutputStream out) {
+		super();
+		this.setOutputStream(out);
+	}
+
 	public TreeWriter(Strategy option, String path) {
 		super(path);
 	}
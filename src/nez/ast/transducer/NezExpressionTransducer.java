@@ -9,6 +9,7 @@ import nez.lang.GrammarFile;
 import nez.lang.Production;
 import nez.lang.expr.ExpressionCommons;
 import nez.lang.expr.NonTerminal;
+import nez.lang.expr.Pperm;
 import nez.util.StringUtils;
 import nez.util.UList;
 
@@ -205,6 +206,7 @@ public class NezExpressionTransducer extends GrammarVisitorMap<ExpressionTransdu
 	public final static Symbol _hash = Symbol.tag("hash"); // example
 	public final static Symbol _name2 = Symbol.tag("name2"); // example
 	public final static Symbol _text = Symbol.tag("text"); // example
+	public final static Symbol _Sequence = Symbol.tag("Sequence");
 
 	private Symbol parseLabelNode(Tree<?> node) {
 		Symbol label = null;
@@ -331,6 +333,26 @@ public class NezExpressionTransducer extends GrammarVisitorMap<ExpressionTransdu
 		}
 	}
 
+	public class _Perm extends Undefined {
+		@Override
+		public Expression accept(Tree<?> node, Expression e) {
+			Tree<?> exprNode = node.get(_expr);
+			UList<Expression> l = new UList<Expression>(new Expression[exprNode.size() + 1]);
+			if (exprNode.is(_Sequence)) {
+				for (int i = 0; i < exprNode.size(); i++) {
+					l.add(newInstance(exprNode.get(i)));
+				}
+			} else {
+				l.add(newInstance(exprNode));
+			}
+			if (l.size() > Pperm.MaxSize) {
+				reportError(node, "too many permutation members: " + l.size());
+				return ExpressionCommons.newFailure(node);
+			}
+			return ExpressionCommons.newPperm(node, l);
+		}
+	}
+
 	public class _DefIndent extends Undefined {
 		@Override
 		public Expression accept(Tree<?> node, Expression e) {
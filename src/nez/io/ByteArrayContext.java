@@ -0,0 +1,106 @@
+package nez.io;
+
+import java.io.UnsupportedEncodingException;
+
+import nez.util.StringUtils;
+
+/**
+ * ByteArrayContext parses a slice (offset, length) of a byte array without
+ * copying it. Positions are relative to the offset of the slice. reset()
+ * moves the context to another slice and keeps its stacks and memo table, so
+ * a thread that matches many small messages can do so without allocating.
+ */
+
+public class ByteArrayContext extends SourceContext {
+	private byte[] buf;
+	private int offset;
+	private int bufLength;
+
+	public ByteArrayContext(byte[] buf, int offset, int length) {
+		this("(bytes)", 1, buf, offset, length);
+	}
+
+	public ByteArrayContext(String resource, long linenum, byte[] buf, int offset, int length) {
+		super(resource, linenum);
+		this.setSlice(buf, offset, length);
+	}
+
+	private void setSlice(byte[] buf, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > buf.length) {
+			throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", buffer=" + buf.length);
+		}
+		this.buf = buf;
+		this.offset = offset;
+		this.bufLength = length;
+	}
+
+	/* starts over on another slice */
+	public final void reset(byte[] buf, int offset, int length) {
+		this.setSlice(buf, offset, length);
+		this.restart();
+	}
+
+	@Override
+	public final int EOF() {
+		return 0;
+	}
+
+	@Override
+	public final long length() {
+		return this.bufLength;
+	}
+
+	@Override
+	public final int byteAt(long pos) {
+		if (pos < this.bufLength) {
+			return this.buf[this.offset + (int) pos] & 0xff;
+		}
+		return 0;
+	}
+
+	@Override
+	public final boolean match(long pos, byte[] text) {
+		if (pos + text.length > this.bufLength) {
+			return false;
+		}
+		int start = this.offset + (int) pos;
+		for (int i = 0; i < text.length; i++) {
+			if (text[i] != this.buf[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public final byte[] subbyte(long startIndex, long endIndex) {
+		byte[] b = new byte[(int) (endIndex - startIndex)];
+		System.arraycopy(this.buf, this.offset + (int) startIndex, b, 0, b.length);
+		return b;
+	}
+
+	@Override
+	public final String substring(long startIndex, long endIndex) {
+		try {
+			return new String(this.buf, this.offset + (int) startIndex, (int) (endIndex - startIndex), StringUtils.DefaultEncoding);
+		} catch (UnsupportedEncodingException e) {
+		}
+		return null;
+	}
+
+	@Override
+	public final long linenum(long pos) {
+		long count = this.startLineNum;
+		int end = (int) pos;
+		if (end >= this.bufLength) {
+			end = this.bufLength;
+		}
+		end += this.offset;
+		for (int i = this.offset; i < end; i++) {
+			if (this.buf[i] == '\n') {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,103 @@
+package nez.io;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import nez.util.StringUtils;
+
+/**
+ * ByteBufferContext parses the remaining bytes of a (direct or heap)
+ * ByteBuffer in place. Only absolute reads are used, so the position and the
+ * limit of the given buffer are left untouched.
+ */
+
+public class ByteBufferContext extends SourceContext {
+	private final ByteBuffer buf;
+	private final int offset;
+	private final int bufLength;
+
+	public ByteBufferContext(ByteBuffer buf) {
+		this("(buffer)", 1, buf);
+	}
+
+	public ByteBufferContext(String resource, long linenum, ByteBuffer buf) {
+		super(resource, linenum);
+		this.buf = buf;
+		this.offset = buf.position();
+		this.bufLength = buf.remaining();
+	}
+
+	@Override
+	public final int EOF() {
+		return 0;
+	}
+
+	@Override
+	public final long length() {
+		return this.bufLength;
+	}
+
+	@Override
+	public final int byteAt(long pos) {
+		if (pos < this.bufLength) {
+			return this.buf.get(this.offset + (int) pos) & 0xff;
+		}
+		return 0;
+	}
+
+	@Override
+	public final boolean match(long pos, byte[] text) {
+		if (pos + text.length > this.bufLength) {
+			return false;
+		}
+		int start = this.offset + (int) pos;
+		for (int i = 0; i < text.length; i++) {
+			if (text[i] != this.buf.get(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public final byte[] subbyte(long startIndex, long endIndex) {
+		byte[] b = new byte[(int) (endIndex - startIndex)];
+		if (this.buf.hasArray()) {
+			System.arraycopy(this.buf.array(), this.buf.arrayOffset() + this.offset + (int) startIndex, b, 0, b.length);
+		} else {
+			int start = this.offset + (int) startIndex;
+			for (int i = 0; i < b.length; i++) {
+				b[i] = this.buf.get(start + i);
+			}
+		}
+		return b;
+	}
+
+	@Override
+	public final String substring(long startIndex, long endIndex) {
+		try {
+			if (this.buf.hasArray()) {
+				return new String(this.buf.array(), this.buf.arrayOffset() + this.offset + (int) startIndex, (int) (endIndex - startIndex), StringUtils.DefaultEncoding);
+			}
+			return new String(this.subbyte(startIndex, endIndex), StringUtils.DefaultEncoding);
+		} catch (UnsupportedEncodingException e) {
+		}
+		return null;
+	}
+
+	@Override
+	public final long linenum(long pos) {
+		long count = this.startLineNum;
+		int end = (int) pos;
+		if (end >= this.bufLength) {
+			end = this.bufLength;
+		}
+		end += this.offset;
+		for (int i = this.offset; i < end; i++) {
+			if (this.buf.get(i) == '\n') {
+				count++;
+			}
+		}
+		return count;
+	}
+}
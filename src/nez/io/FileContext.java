@@ -3,8 +3,7 @@ package nez.io;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import nez.Verbose;
 import nez.util.StringUtils;
@@ -19,7 +18,10 @@ public class FileContext extends SourceContext {
 	private long lines[];
 
 	private final int FifoSize = 8;
-	private LinkedHashMap<Long, byte[]> fifoMap = null;
+	// the last FifoSize pages; a new page is read into the oldest one
+	private long[] fifoOffsets = null;
+	private byte[][] fifoPages = null;
+	private int fifoNext = 0;
 
 	public FileContext(String fileName) throws IOException {
 		super(fileName, 1);
@@ -31,20 +33,12 @@ public class FileContext extends SourceContext {
 			lines = new long[((int) this.fileLength / PageSize) + 1];
 			lines[0] = 1;
 			if (this.FifoSize > 0) {
-				this.fifoMap = new LinkedHashMap<Long, byte[]>(FifoSize) { // FIFO
-					private static final long serialVersionUID = 6725894996600788028L;
-
-					@Override
-					protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
-						if (this.size() > FifoSize) {
-							return true;
-						}
-						return false;
-					}
-				};
+				this.fifoOffsets = new long[FifoSize];
+				Arrays.fill(this.fifoOffsets, -1);
+				this.fifoPages = new byte[FifoSize][];
 				this.buffer = null;
 			} else {
-				this.fifoMap = null;
+				this.fifoPages = null;
 				this.buffer = new byte[PageSize];
 			}
 			this.readMainBuffer(this.buffer_offset);
@@ -200,17 +194,22 @@ public class FileContext extends SourceContext {
 			}
 			this.lines[index] = count;
 		}
-		if (this.fifoMap != null) {
-			Long key = pos;
-			byte[] buf = this.fifoMap.get(key);
+		if (this.fifoPages != null) {
+			for (int i = 0; i < FifoSize; i++) {
+				if (this.fifoOffsets[i] == pos) {
+					this.buffer = this.fifoPages[i];
+					return;
+				}
+			}
+			byte[] buf = this.fifoPages[fifoNext];
 			if (buf == null) {
 				buf = new byte[PageSize];
-				this.readBuffer(pos, buf);
-				this.fifoMap.put(key, buf);
-				this.buffer = buf;
-			} else {
-				this.buffer = buf;
+				this.fifoPages[fifoNext] = buf;
 			}
+			this.readBuffer(pos, buf);
+			this.fifoOffsets[fifoNext] = pos;
+			this.fifoNext = (fifoNext + 1) % FifoSize;
+			this.buffer = buf;
 		} else {
 			this.readBuffer(pos, this.buffer);
 		}
@@ -231,7 +230,7 @@ public class FileContext extends SourceContext {
 	}
 
 	private void readStringBuffer(long pos, byte[] buf) {
-		if (this.fifoMap != null) {
+		if (this.fifoPages != null) {
 			int copied = 0;
 			long start = pos;
 			long end = pos + buf.length;
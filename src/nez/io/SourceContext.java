@@ -5,7 +5,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 
+import nez.ast.TokenCache;
 import nez.parser.RuntimeContext;
 import nez.util.StringUtils;
 
@@ -44,6 +46,21 @@ public abstract class SourceContext extends RuntimeContext {
 		return count;
 	}
 
+	/* token text */
+
+	private TokenCache tokenCache = null;
+
+	public final void setTokenCache(TokenCache tokenCache) {
+		this.tokenCache = tokenCache;
+	}
+
+	public final String tokenText(long startIndex, long endIndex) {
+		if (this.tokenCache != null) {
+			return this.tokenCache.intern(this, startIndex, endIndex);
+		}
+		return this.substring(startIndex, endIndex);
+	}
+
 	/* handling input stream */
 
 	@Override
@@ -213,6 +230,22 @@ public abstract class SourceContext extends RuntimeContext {
 		return new StringContext(resource, linenum, str);
 	}
 
+	public final static SourceContext newByteContext(byte[] buf, int offset, int length) {
+		return new ByteArrayContext(buf, offset, length);
+	}
+
+	public final static SourceContext newByteContext(String resource, long linenum, byte[] buf, int offset, int length) {
+		return new ByteArrayContext(resource, linenum, buf, offset, length);
+	}
+
+	public final static SourceContext newByteBufferContext(ByteBuffer buf) {
+		return new ByteBufferContext(buf);
+	}
+
+	public final static SourceContext newByteBufferContext(String resource, long linenum, ByteBuffer buf) {
+		return new ByteBufferContext(resource, linenum, buf);
+	}
+
 	public final static SourceContext newFileContext(String fileName) throws IOException {
 		File f = new File(fileName);
 		// System.out.println("file: " + fileName + " " + f.isFile());
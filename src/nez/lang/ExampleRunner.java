@@ -0,0 +1,366 @@
+package nez.lang;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import nez.Grammar;
+import nez.Parser;
+import nez.Strategy;
+import nez.ast.Tree;
+import nez.ast.TreeUtils;
+import nez.io.SourceContext;
+import nez.parser.MemoTable;
+import nez.util.ConsoleUtils;
+import nez.util.FileBuilder;
+
+/**
+ * ExampleRunner tests the examples of many grammar files on a thread pool.
+ * Grammars are loaded and their parsers compiled up front, one at a time;
+ * examples then run in parallel, each with its own input and memo table.
+ * A parser keeps state across inputs (memo statistics, tree and token caches,
+ * its machine), so each worker thread parses with a parser of its own.
+ * Results are reported in the order of the examples, with parse latency and
+ * memo statistics, and can be written as a JUnit XML or JSON report.
+ */
+
+public class ExampleRunner {
+
+	public static class Result {
+		final String grammar;
+		final Example ex;
+		String status = "PANIC";
+		String message = null;
+		String nodehash = null;
+		long latency = 0; // nano seconds
+		int memoStored = 0;
+		int memoUsed = 0;
+		int memoInvalidated = 0;
+
+		Result(String grammar, Example ex) {
+			this.grammar = grammar;
+			this.ex = ex;
+		}
+
+		public final String getName() {
+			return ex.getName() + " (" + ex.textNode.getSource().getResourceName() + ":" + ex.textNode.getLineNum() + ")";
+		}
+
+		public final boolean isFailure() {
+			return status.equals("ERR") || status.equals("FAIL") || status.equals("PANIC");
+		}
+	}
+
+	private final Strategy strategy;
+	private final int threads;
+	private final List<Result> resultList = new ArrayList<Result>();
+	private final List<ParserSlot> parserList = new ArrayList<ParserSlot>();
+	private final List<String> grammarList = new ArrayList<String>();
+
+	public ExampleRunner(Strategy strategy, int threads) {
+		this.strategy = strategy;
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	public void load(String path) {
+		grammarList.add(path);
+		try {
+			Grammar g = GrammarFileLoader.loadGrammar(path, strategy);
+			if (g instanceof GrammarFile) {
+				add(path, (GrammarFile) g);
+			}
+		} catch (IOException e) {
+			ConsoleUtils.println("[PANIC] " + path + ": " + e.getMessage());
+			Result r = new Result(path, null);
+			r.message = e.getMessage();
+			resultList.add(r);
+			parserList.add(null);
+		}
+	}
+
+	private void add(String path, GrammarFile g) {
+		List<Example> exampleList = g.getExampleList();
+		if (exampleList == null) {
+			return;
+		}
+		HashMap<String, ParserSlot> parserMap = new HashMap<String, ParserSlot>();
+		for (Example ex : exampleList) {
+			String name = ex.getName();
+			ParserSlot p = parserMap.get(name);
+			if (p == null && !parserMap.containsKey(name)) {
+				Parser first = g.newParser(name, strategy);
+				if (first != null) {
+					first.compile();
+					p = new ParserSlot(g, name, first);
+				} else {
+					ConsoleUtils.println(ex.formatWarning("undefined nonterminal: " + name));
+				}
+				parserMap.put(name, p);
+			}
+			if (p != null) {
+				resultList.add(new Result(path, ex));
+				parserList.add(p);
+			}
+		}
+	}
+
+	public boolean run() {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futureList = new ArrayList<Future<?>>();
+		long t1 = System.nanoTime();
+		for (int i = 0; i < resultList.size(); i++) {
+			final Result r = resultList.get(i);
+			final ParserSlot p = parserList.get(i);
+			if (r.ex != null) {
+				futureList.add(pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						test(p, r);
+					}
+				}));
+			}
+		}
+		for (Future<?> f : futureList) {
+			try {
+				f.get();
+			} catch (Exception e) {
+				// recorded as PANIC
+			}
+		}
+		pool.shutdown();
+		long t2 = System.nanoTime();
+		int failed = 0;
+		int passed = 0;
+		int todo = 0;
+		for (Result r : resultList) {
+			if (r.ex == null) {
+				failed++;
+				continue;
+			}
+			if (r.isFailure()) {
+				failed++;
+				ConsoleUtils.println("[" + r.status + "] " + r.getName() + (r.nodehash != null ? " ~" + r.nodehash : ""));
+				if (r.message != null) {
+					ConsoleUtils.println(r.message);
+				}
+			} else if (r.status.equals("TODO")) {
+				todo++;
+			} else {
+				passed++;
+			}
+		}
+		ConsoleUtils.println(grammarList.size() + " grammars, " + resultList.size() + " examples on " + threads + " threads: " + passed + " passed, " + failed + " failed, " + todo + " untested, "
+				+ ((t2 - t1) / 1000000) + "ms");
+		return failed == 0;
+	}
+
+	/* the parsers of one production, one per worker thread */
+	private class ParserSlot {
+		final GrammarFile g;
+		final String name;
+		Parser first; // compiled up front; taken by the first thread
+		final ThreadLocal<Parser> local = new ThreadLocal<Parser>();
+
+		ParserSlot(GrammarFile g, String name, Parser first) {
+			this.g = g;
+			this.name = name;
+			this.first = first;
+		}
+
+		Parser get() {
+			Parser p = local.get();
+			if (p == null) {
+				synchronized (ExampleRunner.this) { // grammars are not thread-safe
+					p = first;
+					first = null;
+					if (p == null) {
+						p = g.newParser(name, strategy);
+						p.compile();
+					}
+				}
+				local.set(p);
+			}
+			return p;
+		}
+	}
+
+	private void test(ParserSlot slot, Result r) {
+		try {
+			Parser p = slot.get();
+			SourceContext source = r.ex.textNode.newSourceContext();
+			long t1 = System.nanoTime();
+			Tree<?> node = p.parseCommonTree(source);
+			r.latency = System.nanoTime() - t1;
+			MemoTable memo = source.getMemoTable();
+			if (memo != null) {
+				r.memoStored = memo.getStoredCount();
+				r.memoUsed = memo.getUsedCount();
+				r.memoInvalidated = memo.getInvalidatedCount();
+			}
+			if (node == null) {
+				r.status = "ERR";
+				r.message = source.getSyntaxErrorMessage();
+				return;
+			}
+			r.nodehash = TreeUtils.digestString(node);
+			if (r.ex.hash == null) {
+				r.status = "TODO";
+			} else if (r.nodehash.startsWith(r.ex.hash)) {
+				r.status = "PASS";
+				r.nodehash = null;
+			} else {
+				r.status = "FAIL";
+			}
+		} catch (Throwable e) {
+			r.status = "PANIC";
+			r.message = r.ex.formatPanic("exception detected: " + e);
+		}
+	}
+
+	/* report */
+
+	public void writeReport(String path) {
+		FileBuilder f = new FileBuilder(path);
+		if (path.endsWith(".json")) {
+			writeJSON(f);
+		} else {
+			writeJUnitXML(f);
+		}
+		f.writeNewLine();
+		f.close();
+	}
+
+	private void writeJUnitXML(FileBuilder f) {
+		f.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		f.writeIndent("<testsuites>");
+		f.incIndent();
+		for (String grammar : grammarList) {
+			int tests = 0, failures = 0, errors = 0, skipped = 0;
+			long time = 0;
+			for (Result r : resultList) {
+				if (r.grammar.equals(grammar)) {
+					tests++;
+					time += r.latency;
+					if (r.ex == null || r.status.equals("PANIC")) {
+						errors++;
+					} else if (r.isFailure()) {
+						failures++;
+					} else if (r.status.equals("TODO")) {
+						skipped++;
+					}
+				}
+			}
+			f.writeIndent("<testsuite name=\"" + xml(grammar) + "\" tests=\"" + tests + "\" failures=\"" + failures + "\" errors=\"" + errors + "\" skipped=\"" + skipped + "\" time=\""
+					+ seconds(time) + "\">");
+			f.incIndent();
+			for (Result r : resultList) {
+				if (!r.grammar.equals(grammar)) {
+					continue;
+				}
+				String name = r.ex == null ? "load" : r.getName();
+				f.writeIndent("<testcase classname=\"" + xml(grammar) + "\" name=\"" + xml(name) + "\" time=\"" + seconds(r.latency) + "\">");
+				f.incIndent();
+				if (r.ex == null || r.status.equals("PANIC")) {
+					f.writeIndent("<error message=\"" + xml(r.message) + "\"/>");
+				} else if (r.isFailure()) {
+					String msg = r.status.equals("ERR") ? "syntax error" : "AST mismatch ~" + r.nodehash;
+					f.writeIndent("<failure message=\"" + xml(msg) + "\">" + xml(r.message) + "</failure>");
+				} else if (r.status.equals("TODO")) {
+					f.writeIndent("<skipped message=\"" + xml("untested AST ~" + r.nodehash) + "\"/>");
+				}
+				if (r.ex != null) {
+					f.writeIndent("<system-out>memo stored=" + r.memoStored + " used=" + r.memoUsed + " invalidated=" + r.memoInvalidated + "</system-out>");
+				}
+				f.decIndent();
+				f.writeIndent("</testcase>");
+			}
+			f.decIndent();
+			f.writeIndent("</testsuite>");
+		}
+		f.decIndent();
+		f.writeIndent("</testsuites>");
+	}
+
+	private void writeJSON(FileBuilder f) {
+		f.write("[");
+		f.incIndent();
+		for (int i = 0; i < resultList.size(); i++) {
+			Result r = resultList.get(i);
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"grammar\": ").append(json(r.grammar));
+			sb.append(", \"example\": ").append(json(r.ex == null ? null : r.getName()));
+			sb.append(", \"status\": ").append(json(r.status));
+			sb.append(", \"latency_us\": ").append(r.latency / 1000);
+			sb.append(", \"memo_stored\": ").append(r.memoStored);
+			sb.append(", \"memo_used\": ").append(r.memoUsed);
+			sb.append(", \"memo_invalidated\": ").append(r.memoInvalidated);
+			sb.append(", \"hash\": ").append(json(r.nodehash));
+			sb.append(", \"message\": ").append(json(r.message));
+			sb.append(i + 1 < resultList.size() ? "}," : "}");
+			f.writeIndent(sb.toString());
+		}
+		f.decIndent();
+		f.writeIndent("]");
+	}
+
+	private static String seconds(long nano) {
+		return String.format("%.6f", nano / 1000000000.0);
+	}
+
+	private static String xml(String s) {
+		if (s == null) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			switch (ch) {
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '"':
+				sb.append("&quot;");
+				break;
+			default:
+				if (ch < 0x20 && ch != '\n' && ch != '\t') {
+					sb.append(' ');
+				} else {
+					sb.append(ch);
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String json(String s) {
+		if (s == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch == '"' || ch == '\\') {
+				sb.append('\\').append(ch);
+			} else if (ch == '\n') {
+				sb.append("\\n");
+			} else if (ch < 0x20) {
+				sb.append(String.format("\\u%04x", (int) ch));
+			} else {
+				sb.append(ch);
+			}
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+}
@@ -11,6 +11,7 @@ import nez.lang.expr.Treplace;
 import nez.lang.expr.Ttag;
 import nez.parser.AbstractGenerator;
 import nez.parser.Instruction;
+import nez.util.ByteSet;
 import nez.util.UList;
 
 public abstract class Expression extends AbstractList<Expression> {
@@ -83,7 +84,7 @@ public abstract class Expression extends AbstractList<Expression> {
 		return ExpressionCommons.newFailure(this.getSourcePosition());
 	}
 
-	public final Expression newCset(boolean isBinary, boolean[] byteMap) {
+	public final Expression newCset(boolean isBinary, ByteSet byteMap) {
 		return ExpressionCommons.newCset(this.getSourcePosition(), isBinary, byteMap);
 	}
 
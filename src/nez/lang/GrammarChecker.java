@@ -1,6 +1,8 @@
 package nez.lang;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.TreeMap;
 
 import nez.Strategy;
@@ -12,6 +14,7 @@ import nez.lang.expr.Pchoice;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Pone;
 import nez.lang.expr.Poption;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Psequence;
 import nez.lang.expr.Pzero;
 import nez.lang.expr.Tcapture;
@@ -39,6 +42,10 @@ public class GrammarChecker extends GrammarTransducer {
 	private final Strategy strategy;
 
 	public GrammarChecker(GenerativeGrammar gg, TreeMap<String, Boolean> boolMap, Production start, Strategy strategy) {
+		this(gg, boolMap, start, null, strategy);
+	}
+
+	public GrammarChecker(GenerativeGrammar gg, TreeMap<String, Boolean> boolMap, Production start, List<Production> entries, Strategy strategy) {
 		this.gg = gg;
 		this.boolMap = (boolMap == null) ? new TreeMap<String, Boolean>() : boolMap;
 		this.strategy = strategy;
@@ -47,13 +54,36 @@ public class GrammarChecker extends GrammarTransducer {
 		if (!strategy.isEnabled("ast", Strategy.AST)) {
 			this.enterNonASTContext();
 		}
+		long t1 = System.nanoTime();
+		List<Production> roots = new ArrayList<Production>();
+		roots.add(start);
+		if (entries != null) {
+			roots.addAll(entries);
+		}
+		TypestateAnalysis.analyze(roots);
+		long t2 = System.nanoTime();
+		Verbose.printElapsedTime("TypestateTime", t1, t2);
 		String uname = uniqueName(start.getUniqueName(), start);
 		this.checkFirstVisitedProduction(uname, start, 1); // start
+		gg.addEntryPoint(start.getLocalName(), uname);
+		if (entries != null) {
+			for (Production p : entries) {
+				uname = uniqueName(p.getUniqueName(), p);
+				ParseFunc f = gg.getParseFunc(uname);
+				if (f == null) {
+					checkFirstVisitedProduction(uname, p, 1);
+				}
+				gg.addEntryPoint(p.getLocalName(), uname);
+			}
+		}
+		long t3 = System.nanoTime();
+		Verbose.printElapsedTime("CheckingTime", t2, t3);
 		if (!strategy.isEnabled("Onone", Strategy.Onone)) {
 			if (ConsoleUtils.isDebug()) {
 				Verbose.println("optimizing ..");
 			}
 			new GrammarOptimizer(gg, strategy);
+			Verbose.printElapsedTime("OptimizingTime", t3, System.nanoTime());
 		}
 	}
 
@@ -125,6 +155,15 @@ public class GrammarChecker extends GrammarTransducer {
 				}
 				return consumed;
 			}
+			if (e instanceof Pperm) {
+				boolean consumed = false;
+				for (Expression se : e) {
+					if (checkLeftRecursion(se, s)) {
+						consumed = true;
+					}
+				}
+				return consumed;
+			}
 			boolean r = checkLeftRecursion(e.get(0), s);
 			if (e instanceof Pone) {
 				return r;
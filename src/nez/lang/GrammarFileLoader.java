@@ -144,8 +144,10 @@ public abstract class GrammarFileLoader extends VisitorMap<DefaultVisitor> {
 		String ext = StringUtils.parseFileExtension(path);
 		GrammarFileLoader fl = (GrammarFileLoader) ExtensionLoader.newInstance("nez.ext.G", ext);
 		if (fl != null) {
+			long t1 = System.nanoTime();
 			Grammar g = fl.newGrammar(ext, path);
 			fl.load(g, path, strategy);
+			Verbose.printElapsedTime("LoadingTime", t1, System.nanoTime());
 			return g;
 		}
 		return null;
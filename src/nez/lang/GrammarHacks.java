@@ -7,6 +7,7 @@ import nez.ast.SourcePosition;
 import nez.ast.Symbol;
 import nez.lang.expr.ExpressionCommons;
 import nez.lang.expr.NonTerminal;
+import nez.util.ByteSet;
 import nez.util.UList;
 
 public abstract class GrammarHacks extends AbstractList<Production> {
@@ -54,7 +55,7 @@ public abstract class GrammarHacks extends AbstractList<Production> {
 		return ExpressionCommons.newCharSet(getSourcePosition(), text);
 	}
 
-	public final Expression newByteMap(boolean[] byteMap) {
+	public final Expression newByteMap(ByteSet byteMap) {
 		return ExpressionCommons.newCset(getSourcePosition(), false, byteMap);
 	}
 
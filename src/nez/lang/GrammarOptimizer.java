@@ -2,6 +2,7 @@ package nez.lang;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 import nez.Strategy;
 import nez.lang.expr.Cany;
@@ -24,7 +25,9 @@ import nez.lang.expr.Treplace;
 import nez.lang.expr.Ttag;
 import nez.parser.GenerativeGrammar;
 import nez.parser.ParseFunc;
+import nez.parser.ParserProfile;
 import nez.util.ConsoleUtils;
+import nez.util.ByteSet;
 import nez.util.UList;
 
 public class GrammarOptimizer extends GrammarRewriter {
@@ -49,6 +52,7 @@ public class GrammarOptimizer extends GrammarRewriter {
 
 	final GenerativeGrammar gg;
 	final Strategy strategy;
+	ParserProfile profile = null;
 	final HashSet<String> optimizedMap = new HashSet<String>();
 	HashMap<String, Production> bodyMap = null;
 	HashMap<String, String> aliasMap = null;
@@ -94,6 +98,8 @@ public class GrammarOptimizer extends GrammarRewriter {
 			this.toOptimizeChoiceList = new UList<Pchoice>(new Pchoice[8]);
 		}
 
+		this.profile = gg.getProfile();
+
 		this.verboseOption("Olex", enabledLexicalOptimization);
 		this.verboseOption("Oinline", enabledInlining);
 		this.verboseOption("Oalias", enabledAliasAnalysis);
@@ -106,6 +112,7 @@ public class GrammarOptimizer extends GrammarRewriter {
 		this.verboseOption("Osecond", enabledSecondChoice);
 		this.verboseOption("Ofirst-inline", enabledfirstChoiceInlining);
 		this.verboseOption("Ofirst-empty", enabledEmptyChoice);
+		this.verboseOption("Oprofile", profile != null);
 
 	}
 
@@ -156,15 +163,19 @@ public class GrammarOptimizer extends GrammarRewriter {
 	}
 
 	private void optimize() {
-		Production start = gg.getStartProduction();
-		optimizeProduction(start);
+		List<Production> entries = gg.getEntryProductions();
+		for (Production p : entries) {
+			optimizeProduction(p);
+		}
 
 		this.optimizeFirstChoice();
 		this.optimizedMap.clear();
 		this.resetReferenceCount();
 
-		gg.getParseFunc(start.getLocalName()).incCount();
-		this.recheckReference(start);
+		for (Production p : entries) {
+			gg.getParseFunc(p.getLocalName()).incCount();
+			this.recheckReference(p);
+		}
 
 		UList<Production> prodList = new UList<Production>(new Production[gg.size()]);
 		for (Production p : gg) {
@@ -282,6 +293,10 @@ public class GrammarOptimizer extends GrammarRewriter {
 				verboseInline("inline(instruction)", n, deref);
 				return deref;
 			}
+			if (isHotProduction(p)) {
+				verboseInline("inline(hot)", n, deref);
+				return deref;
+			}
 		}
 		String alias = findAliasName(n.getLocalName());
 		if (alias != null) {
@@ -292,6 +307,18 @@ public class GrammarOptimizer extends GrammarRewriter {
 		return n;
 	}
 
+	// profile-guided inlining: frequently called productions whose memo
+	// entries were never reused are cheaper to inline than to call
+	private boolean isHotProduction(Production p) {
+		if (this.profile != null && !p.isRecursive()) {
+			String name = p.getLocalName();
+			if (this.profile.isHotProduction(name)) {
+				return !this.profile.hasMemoStat(name) || this.profile.isUselessMemo(name);
+			}
+		}
+		return false;
+	}
+
 	// used to test inlining
 	public final static boolean isSingleCharacter(Expression e) {
 		if (e instanceof Cset || e instanceof Cbyte || e instanceof Cany) {
@@ -398,7 +425,7 @@ public class GrammarOptimizer extends GrammarRewriter {
 	}
 
 	private Expression convertBitMap(Expression next, Expression not) {
-		boolean[] bany = null;
+		ByteSet bany = null;
 		boolean isBinary = false;
 		Expression nextNext = next.getNext();
 		if (nextNext != null) {
@@ -407,30 +434,22 @@ public class GrammarOptimizer extends GrammarRewriter {
 		if (next instanceof Cany) {
 			Cany any = (Cany) next;
 			isBinary = any.isBinary();
-			bany = Cset.newMap(true);
-			if (!isBinary) {
-				bany[0] = false;
-			}
+			bany = new ByteSet();
+			bany.reverse(isBinary);
 		}
 		if (next instanceof Cset) {
 			Cset bm = (Cset) next;
 			isBinary = bm.isBinary();
-			bany = bm.byteMap.clone();
+			bany = bm.byteMap.copy();
 		}
 
 		if (not instanceof Cset) {
-			Cset bm = (Cset) not;
-			for (int c = 0; c < bany.length - 1; c++) {
-				if (bm.byteMap[c] && bany[c] == true) {
-					bany[c] = false;
-				}
-			}
+			ByteSet nset = ((Cset) not).byteMap.copy();
+			nset.reverse(true);
+			bany.intersect(nset);
 		}
 		if (not instanceof Cbyte) {
-			Cbyte bc = (Cbyte) not;
-			if (bany[bc.byteChar] == true) {
-				bany[bc.byteChar] = false;
-			}
+			bany.set(((Cbyte) not).byteChar, false);
 		}
 		return not.newCset(isBinary, bany);
 	}
@@ -473,6 +492,9 @@ public class GrammarOptimizer extends GrammarRewriter {
 			verboseOptimized("single-choice", p, l.ArrayValues[0]);
 			return l.ArrayValues[0];
 		}
+		if (this.profile != null) {
+			this.reorderChoice(p, l);
+		}
 		Expression n = ExpressionCommons.newPchoice(p.getSourcePosition(), l);
 		if (n instanceof Pchoice) {
 			((Pchoice) n).isTrieTree = p.isTrieTree;
@@ -481,20 +503,71 @@ public class GrammarOptimizer extends GrammarRewriter {
 		return n;
 	}
 
+	// profile-guided reordering: the most frequently selected alternatives are
+	// tried first. An alternative only moves ahead of alternatives that accept
+	// none of its first bytes, so that alternatives that can match the same
+	// input keep their order and the result does not change. This matters for
+	// choices that are still tried one by one (-Ofirst, or bytes that several
+	// alternatives accept); a first-byte dispatch does not depend on the order.
+	private void reorderChoice(Pchoice choice, UList<Expression> l) {
+		if (l.size() < 2) {
+			return;
+		}
+		long[] counts = new long[l.size()];
+		boolean profiled = false;
+		for (int i = 0; i < l.size(); i++) {
+			counts[i] = this.profile.getAlternativeCount(l.ArrayValues[i]);
+			if (counts[i] > 0) {
+				profiled = true;
+			}
+		}
+		if (!profiled) {
+			return;
+		}
+		boolean reordered = false;
+		for (int i = 1; i < l.size(); i++) { // stable insertion sort
+			Expression e = l.ArrayValues[i];
+			long c = counts[i];
+			int j = i - 1;
+			while (j >= 0 && counts[j] < c && isDisjoint(l.ArrayValues[j], e)) {
+				l.ArrayValues[j + 1] = l.ArrayValues[j];
+				counts[j + 1] = counts[j];
+				j--;
+			}
+			if (j + 1 != i) {
+				reordered = true;
+			}
+			l.ArrayValues[j + 1] = e;
+			counts[j + 1] = c;
+		}
+		if (reordered) {
+			this.verboseOptimized("profiled-choice", choice, l.ArrayValues[0]);
+		}
+	}
+
+	private boolean isDisjoint(Expression e, Expression e2) {
+		for (int ch = 0; ch <= 256; ch++) {
+			if (e.acceptByte(ch) != PossibleAcceptance.Reject && e2.acceptByte(ch) != PossibleAcceptance.Reject) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private Expression canConvertToCset(Pchoice choice, UList<Expression> choiceList) {
-		boolean byteMap[] = Cset.newMap(false);
+		ByteSet byteMap = new ByteSet();
 		boolean binary = false;
 		for (Expression e : choiceList) {
 			e = ExpressionCommons.resolveNonTerminal(e);
 			if (e instanceof Cbyte) {
-				byteMap[((Cbyte) e).byteChar] = true;
+				byteMap.set(((Cbyte) e).byteChar);
 				if (((Cbyte) e).isBinary()) {
 					binary = true;
 				}
 				continue;
 			}
 			if (e instanceof Cset) {
-				Cset.appendBitMap(byteMap, ((Cset) e).byteMap);
+				byteMap.union(((Cset) e).byteMap);
 				if (((Cset) e).isBinary()) {
 					binary = true;
 				}
@@ -531,10 +604,8 @@ public class GrammarOptimizer extends GrammarRewriter {
 				buffers[be.byteChar] = mergeChoice(buffers[be.byteChar], inner.getNext());
 			} else {
 				Cset bs = (Cset) first;
-				for (int ch = 0; ch < buffers.length; ch++) {
-					if (bs.byteMap[ch]) {
-						buffers[ch] = mergeChoice(buffers[ch], inner.getNext());
-					}
+				for (int ch = bs.byteMap.nextByte(0); ch != -1; ch = bs.byteMap.nextByte(ch + 1)) {
+					buffers[ch] = mergeChoice(buffers[ch], inner.getNext());
 				}
 			}
 		}
@@ -11,6 +11,7 @@ import nez.lang.expr.Pempty;
 import nez.lang.expr.Pfail;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Pone;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Poption;
 import nez.lang.expr.Psequence;
 import nez.lang.expr.Pzero;
@@ -102,6 +103,14 @@ public class GrammarRewriter extends GrammarTransducer {
 		return e;
 	}
 
+	@Override
+	public Expression reshapePperm(Pperm e) {
+		for (int i = 0; i < e.size(); i++) {
+			e.set(i, reshapeInner(e.get(i)));
+		}
+		return e;
+	}
+
 	@Override
 	public Expression reshapePoption(Poption e) {
 		e.set(0, this.reshapeInner(e.get(0)));
@@ -13,6 +13,7 @@ import nez.lang.expr.Pempty;
 import nez.lang.expr.Pfail;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Pone;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Poption;
 import nez.lang.expr.Psequence;
 import nez.lang.expr.Pzero;
@@ -117,6 +118,20 @@ public class GrammarTransducer {
 		return e.newChoice(l);
 	}
 
+	public Expression reshapePperm(Pperm e) {
+		UList<Expression> l = ExpressionCommons.newList(e.size());
+		for (Expression sub : e) {
+			Expression inner = this.reshapeInner(sub);
+			if (inner instanceof Pfail) {
+				return inner;
+			}
+			if (!(inner instanceof Pempty)) {
+				l.add(inner);
+			}
+		}
+		return ExpressionCommons.newPperm(e.getSourcePosition(), l);
+	}
+
 	public Expression reshapePoption(Poption e) {
 		return ExpressionCommons.newPoption(e.getSourcePosition(), reshapeInner(e.get(0)));
 	}
@@ -12,6 +12,7 @@ import nez.lang.expr.Pfail;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Pone;
 import nez.lang.expr.Poption;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Psequence;
 import nez.lang.expr.Pzero;
 import nez.lang.expr.Tcapture;
@@ -70,6 +71,10 @@ public abstract class GrammarVisitor extends GrammarTransducer {
 
 	public abstract void visitPchoice(Pchoice p);
 
+	public void visitPperm(Pperm p) {
+		this.visitExpression(p.expand());
+	}
+
 	public abstract void visitNonTerminal(NonTerminal p);
 
 	// AST Construction
@@ -180,6 +185,12 @@ public abstract class GrammarVisitor extends GrammarTransducer {
 		return null;
 	}
 
+	@Override
+	public final Expression reshapePperm(Pperm p) {
+		this.visitPperm(p);
+		return null;
+	}
+
 	@Override
 	public final Expression reshapeNonTerminal(NonTerminal p) {
 		this.visitNonTerminal(p);
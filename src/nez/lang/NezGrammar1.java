@@ -268,6 +268,7 @@ public class NezGrammar1 extends Combinator {
 		Expression _Isa = Sequence(t("isa"), P("S"), Link("$name", "NonTerminal"), Tag("Isa"));
 		Expression _Block = Sequence(t("block"), P("S"), Link("$expr", "Expression"), Tag("Block"));
 		Expression _Local = Sequence(t("local"), P("S"), Link("$name", "TableName"), P("S"), Link("$expr", "Expression"), Tag("Local"));
+		Expression _Perm = Sequence(t("perm"), P("S"), Link("$expr", "Expression"), Tag("Perm"));
 		// Expression _Number = Sequence(t("number"), P("S"), Link("$name",
 		// "NonTerminal"), Tag("Number"));
 		// Expression _Repeat = Sequence(t("repeat"), P("S"), Link("$expr",
@@ -276,7 +277,7 @@ public class NezGrammar1 extends Combinator {
 		// Expression _Uniq = ;
 		// Expression _Set = ;
 		Expression _Undefined = Sequence(OneMore(Not(">"), AnyChar()), Tag("Undefined"));
-		return Sequence(t("<"), New(Choice(_If, _On, _Symbol, _Def, _Exists, _Match, _Is, _Isa, _Block, _Local, _Undefined)), P("_"), t(">"));
+		return Sequence(t("<"), New(Choice(_If, _On, _Symbol, _Def, _Exists, _Match, _Is, _Isa, _Block, _Local, _Perm, _Undefined)), P("_"), t(">"));
 	}
 
 	public Expression pFlagName() {
@@ -7,6 +7,7 @@ import nez.lang.expr.Cbyte;
 import nez.lang.expr.Cset;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Unary;
+import nez.util.ByteSet;
 
 public class PossibleAcceptance {
 	public final static int TextEOF = 0;
@@ -19,8 +20,8 @@ public class PossibleAcceptance {
 		return (byteChar == ch) ? PossibleAcceptance.Accept : PossibleAcceptance.Reject;
 	}
 
-	public static short acceptByteMap(boolean[] byteMap, int ch) {
-		return (byteMap[ch]) ? PossibleAcceptance.Accept : PossibleAcceptance.Reject;
+	public static short acceptByteMap(ByteSet byteMap, int ch) {
+		return (byteMap.is(ch)) ? PossibleAcceptance.Accept : PossibleAcceptance.Reject;
 	}
 
 	public static short acceptAny(boolean binary, int ch) {
@@ -14,6 +14,7 @@ import nez.lang.expr.Pchoice;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Pone;
 import nez.lang.expr.Poption;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Psequence;
 import nez.lang.expr.Pzero;
 import nez.parser.AbstractGenerator;
@@ -435,6 +436,14 @@ public class Production /* extends Expression */{
 			}
 			return consumed;
 		}
+		if (e instanceof Pperm) {
+			for (Expression se : e) {
+				if (checkConsumed(se, s)) {
+					return true;
+				}
+			}
+			return false;
+		}
 		if (e.size() > 0) {
 			if (e instanceof Pone) {
 				return checkConsumed(e.get(0), s);
@@ -455,7 +464,11 @@ public class Production /* extends Expression */{
 	}
 
 	private void checkTypestate() {
-		int t = inferTypestate(null);
+		setTypestate(inferTypestate(null));
+	}
+
+	/* also merges a typestate inferred in advance (see TypestateAnalysis) */
+	final void setTypestate(int t) {
 		if (t == Typestate.ObjectType) {
 			this.flag |= ObjectProduction;
 		}
@@ -0,0 +1,102 @@
+package nez.lang;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import nez.lang.expr.NonTerminal;
+import nez.util.UFlag;
+
+/**
+ * TypestateAnalysis infers the typestate of every production reachable from
+ * the given roots on a fork-join pool before GrammarChecker walks the
+ * grammar. Each production is analyzed on its own (without reading results
+ * of the others), so the outcome does not depend on scheduling; results are
+ * merged into the production flags in reachability order.
+ */
+
+class TypestateAnalysis {
+	final static int ParallelThreshold = 256; // productions
+	final static int SplitSize = 16;
+
+	static void analyze(List<Production> roots) {
+		List<Production> l = reachable(roots);
+		if (l.size() < ParallelThreshold) {
+			return; // inferred lazily
+		}
+		int[] types = new int[l.size()];
+		ForkJoinPool.commonPool().invoke(new Task(l, types, 0, l.size()));
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] != Typestate.Undefined) {
+				l.get(i).setTypestate(types[i]);
+			}
+		}
+	}
+
+	private static List<Production> reachable(List<Production> roots) {
+		IdentityHashMap<Production, Production> visited = new IdentityHashMap<Production, Production>();
+		List<Production> l = new ArrayList<Production>();
+		ArrayList<Expression> stack = new ArrayList<Expression>();
+		for (Production p : roots) {
+			if (p != null && !visited.containsKey(p)) {
+				visited.put(p, p);
+				l.add(p);
+				stack.add(p.getExpression());
+			}
+			while (!stack.isEmpty()) {
+				Expression e = stack.remove(stack.size() - 1);
+				if (e instanceof NonTerminal) {
+					Production np = ((NonTerminal) e).getProduction();
+					if (np != null && !visited.containsKey(np)) {
+						visited.put(np, np);
+						l.add(np);
+						stack.add(np.getExpression());
+					}
+					continue;
+				}
+				for (int i = e.size() - 1; i >= 0; i--) {
+					stack.add(e.get(i));
+				}
+			}
+		}
+		return l;
+	}
+
+	@SuppressWarnings("serial")
+	static class Task extends RecursiveAction {
+		final List<Production> l;
+		final int[] types;
+		final int start;
+		final int end;
+
+		Task(List<Production> l, int[] types, int start, int end) {
+			this.l = l;
+			this.types = types;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > SplitSize) {
+				int mid = (start + end) / 2;
+				invokeAll(new Task(l, types, start, mid), new Task(l, types, mid, end));
+				return;
+			}
+			for (int i = start; i < end; i++) {
+				Production p = l.get(i);
+				if (UFlag.is(p.flag, Production.ASTChecked)) {
+					types[i] = Typestate.Undefined; // already known
+					continue;
+				}
+				try {
+					types[i] = p.inferTypestate(null);
+				} catch (StackOverflowError e) {
+					types[i] = Typestate.Undefined; // left to the lazy check
+				}
+			}
+		}
+	}
+}
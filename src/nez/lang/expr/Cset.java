@@ -6,18 +6,18 @@ import nez.lang.GrammarTransducer;
 import nez.lang.PossibleAcceptance;
 import nez.parser.AbstractGenerator;
 import nez.parser.Instruction;
+import nez.util.ByteSet;
 import nez.util.StringUtils;
 
 public class Cset extends Char {
-	public boolean[] byteMap; // Immutable
+	public ByteSet byteMap; // Immutable
 
 	Cset(SourcePosition s, boolean binary, int beginChar, int endChar) {
 		super(s, binary);
-		this.byteMap = newMap(false);
-		appendRange(this.byteMap, beginChar, endChar);
+		this.byteMap = new ByteSet(beginChar, endChar);
 	}
 
-	Cset(SourcePosition s, boolean binary, boolean[] b) {
+	Cset(SourcePosition s, boolean binary, ByteSet b) {
 		super(s, binary);
 		this.byteMap = b;
 	}
@@ -25,13 +25,7 @@ public class Cset extends Char {
 	@Override
 	public final boolean equalsExpression(Expression o) {
 		if (o instanceof Cset && this.binary == ((Cset) o).isBinary()) {
-			Cset e = (Cset) o;
-			for (int i = 0; i < this.byteMap.length; i++) {
-				if (this.byteMap[i] != e.byteMap[i]) {
-					return false;
-				}
-			}
-			return true;
+			return this.byteMap.equals(((Cset) o).byteMap);
 		}
 		return false;
 	}
@@ -60,44 +54,4 @@ public class Cset extends Char {
 	public Instruction encode(AbstractGenerator bc, Instruction next, Instruction failjump) {
 		return bc.encodeCset(this, next, failjump);
 	}
-
-	// Utils
-	public final static boolean[] newMap(boolean initValue) {
-		boolean[] b = new boolean[257];
-		if (initValue) {
-			for (int i = 0; i < b.length; i++) {
-				b[i] = initValue;
-			}
-		}
-		return b;
-	}
-
-	public final static void clear(boolean[] byteMap) {
-		for (int c = 0; c < byteMap.length; c++) {
-			byteMap[c] = false;
-		}
-	}
-
-	public final static void appendRange(boolean[] b, int beginChar, int endChar) {
-		for (int c = beginChar; c <= endChar; c++) {
-			b[c] = true;
-		}
-	}
-
-	public final static void appendBitMap(boolean[] dst, boolean[] src) {
-		for (int i = 0; i < 256; i++) {
-			if (src[i]) {
-				dst[i] = true;
-			}
-		}
-	}
-
-	public final static void reverse(boolean[] byteMap, boolean isBinary) {
-		for (int i = 0; i < 256; i++) {
-			byteMap[i] = !byteMap[i];
-		}
-		if (!isBinary) {
-			byteMap[0] = false;
-		}
-	}
 }
@@ -4,6 +4,7 @@ import nez.Grammar;
 import nez.ast.SourcePosition;
 import nez.ast.Symbol;
 import nez.lang.Expression;
+import nez.util.ByteSet;
 import nez.util.StringUtils;
 import nez.util.UList;
 
@@ -119,24 +120,12 @@ public abstract class ExpressionCommons extends Expression {
 		return new Cbyte(s, binary, ch & 0xff);
 	}
 
-	private static int uniqueByteChar(boolean[] byteMap) {
-		int byteChar = -1;
-		for (int i = 0; i < byteMap.length; i++) {
-			if (byteMap[i]) {
-				if (byteChar != -1)
-					return -1;
-				byteChar = i;
-			}
-		}
-		return byteChar;
-	}
-
 	public static Expression newCmulti(SourcePosition s, boolean binary, byte[] utf8) {
 		return new Cmulti(s, binary, utf8);
 	}
 
-	public static Expression newCset(SourcePosition s, boolean binary, boolean[] byteMap) {
-		int byteChar = uniqueByteChar(byteMap);
+	public static Expression newCset(SourcePosition s, boolean binary, ByteSet byteMap) {
+		int byteChar = byteMap.getUniqueByte();
 		if (byteChar != -1) {
 			return newCbyte(s, binary, byteChar);
 		}
@@ -214,6 +203,19 @@ public abstract class ExpressionCommons extends Expression {
 		return newPchoice(s, l);
 	}
 
+	public final static Expression newPperm(SourcePosition s, UList<Expression> l) {
+		if (l.size() == 0) {
+			return newEmpty(s);
+		}
+		if (l.size() == 1) {
+			return l.ArrayValues[0];
+		}
+		if (l.size() > Pperm.MaxSize) {
+			throw new IllegalArgumentException("too many permutation members: " + l.size() + " > " + Pperm.MaxSize);
+		}
+		return new Pperm(s, l);
+	}
+
 	// AST Construction
 
 	public final static Expression newTdetree(SourcePosition s, Expression p) {
@@ -353,7 +355,7 @@ public abstract class ExpressionCommons extends Expression {
 	}
 
 	public final static Expression newCharSet(SourcePosition s, String text) {
-		boolean b[] = StringUtils.parseByteMap(text);
+		ByteSet b = StringUtils.parseByteMap(text);
 		return new Cset(s, false, b);
 	}
 
@@ -0,0 +1,172 @@
+package nez.lang.expr;
+
+import nez.ast.SourcePosition;
+import nez.lang.Expression;
+import nez.lang.GrammarTransducer;
+import nez.lang.PossibleAcceptance;
+import nez.lang.Typestate;
+import nez.lang.Visa;
+import nez.parser.AbstractGenerator;
+import nez.parser.Instruction;
+import nez.util.UList;
+
+/**
+ * Pperm matches each of its members exactly once, in any order. Members are
+ * tried in the written order at each step; a bitset remembers the matched
+ * ones, so the parser needs n rounds of at most n attempts instead of a choice
+ * of n! sequences.
+ *
+ * Matching is greedy: each round commits to the first remaining member that
+ * matches, and a later round that fails does not retry an earlier one. For
+ * example, &lt;perm 'a' 'ab'&gt; takes 'a' first and then rejects "aba", though
+ * "ab" "a" would match it.
+ */
+
+public class Pperm extends ExpressionCommons {
+	public final static int MaxSize = 64; // members in a bitset
+	Expression[] inners;
+
+	Pperm(SourcePosition s, UList<Expression> l) {
+		super(s);
+		this.inners = new Expression[l.size()];
+		for (int i = 0; i < l.size(); i++) {
+			this.inners[i] = l.get(i);
+		}
+	}
+
+	@Override
+	public final int size() {
+		return this.inners.length;
+	}
+
+	@Override
+	public final Expression get(int index) {
+		return this.inners[index];
+	}
+
+	@Override
+	public Expression set(int index, Expression e) {
+		Expression oldExpresion = this.inners[index];
+		this.inners[index] = e;
+		return oldExpresion;
+	}
+
+	@Override
+	public final boolean equalsExpression(Expression o) {
+		if (o instanceof Pperm && this.size() == o.size()) {
+			for (int i = 0; i < this.size(); i++) {
+				if (!this.get(i).equalsExpression(o.get(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public final void format(StringBuilder sb) {
+		sb.append("<perm");
+		for (Expression e : this) {
+			sb.append(" ");
+			if (e instanceof Psequence || e instanceof Pchoice) {
+				sb.append("(");
+				e.format(sb);
+				sb.append(")");
+			} else {
+				e.format(sb);
+			}
+		}
+		sb.append(">");
+	}
+
+	@Override
+	public Expression reshape(GrammarTransducer m) {
+		return m.reshapePperm(this);
+	}
+
+	@Override
+	public boolean isConsumed() {
+		for (Expression e : this) {
+			if (e.isConsumed()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int inferTypestate(Visa v) {
+		for (Expression e : this) {
+			int t = e.inferTypestate(v);
+			if (t == Typestate.ObjectType || t == Typestate.OperationType) {
+				return t;
+			}
+		}
+		return Typestate.BooleanType;
+	}
+
+	@Override
+	public short acceptByte(int ch) {
+		boolean hasUnconsumed = false;
+		boolean hasRejected = false;
+		for (Expression e : this) {
+			short r = e.acceptByte(ch);
+			if (r == PossibleAcceptance.Accept) {
+				return r;
+			}
+			if (r == PossibleAcceptance.Unconsumed) {
+				hasUnconsumed = true;
+			} else {
+				hasRejected = true;
+			}
+		}
+		if (hasUnconsumed) {
+			return hasRejected ? PossibleAcceptance.Accept : PossibleAcceptance.Unconsumed;
+		}
+		return PossibleAcceptance.Reject;
+	}
+
+	@Override
+	public Instruction encode(AbstractGenerator bc, Instruction next, Instruction failjump) {
+		return bc.encodePperm(this, next, failjump);
+	}
+
+	/**
+	 * returns the equivalent choice of all orderings (n! sequences); used by
+	 * generators that have no bitset at hand. The ordering that starts with
+	 * member i is guarded by !m for each member m before it, so that it is
+	 * only tried when those members fail, as in a greedy round.
+	 */
+
+	public final Expression expand() {
+		UList<Expression> l = ExpressionCommons.newList(this.size());
+		for (Expression e : this) {
+			l.add(e);
+		}
+		return expand(l);
+	}
+
+	private Expression expand(UList<Expression> members) {
+		if (members.size() == 1) {
+			return members.get(0);
+		}
+		UList<Expression> choice = ExpressionCommons.newList(members.size());
+		for (int i = 0; i < members.size(); i++) {
+			UList<Expression> rest = ExpressionCommons.newList(members.size());
+			for (int j = 0; j < members.size(); j++) {
+				if (i != j) {
+					rest.add(members.get(j));
+				}
+			}
+			UList<Expression> seq = ExpressionCommons.newList(i + 2);
+			for (int j = 0; j < i; j++) {
+				seq.add(ExpressionCommons.newPnot(this.getSourcePosition(), members.get(j)));
+			}
+			seq.add(members.get(i));
+			seq.add(expand(rest));
+			choice.add(this.newSequence(seq));
+		}
+		return this.newChoice(choice);
+	}
+}
@@ -10,6 +10,7 @@ import nez.lang.Expression;
 import nez.lang.GrammarFileLoader;
 import nez.lang.Production;
 import nez.lang.expr.ExpressionCommons;
+import nez.util.ByteSet;
 import nez.util.ConsoleUtils;
 import nez.util.StringUtils;
 import nez.util.UList;
@@ -258,7 +259,7 @@ public class RegularExpressionLoader extends GrammarFileLoader {
 		@Override
 		public Expression toExpression(Tree<?> e) {
 			UList<Expression> l = new UList<Expression>(new Expression[e.size()]);
-			byteMap = new boolean[257];
+			byteMap = new ByteSet();
 			for (Tree<?> subnode : e) {
 				ExpressionCommons.addChoice(l, getExpression(subnode));
 			}
@@ -278,11 +279,9 @@ public class RegularExpressionLoader extends GrammarFileLoader {
 			byte[] begin = StringUtils.toUtf8(e.get(0).toText());
 			byte[] end = StringUtils.toUtf8(e.get(1).toText());
 			if (byteMap == null) {
-				byteMap = new boolean[257];
-			}
-			for (byte i = begin[0]; i <= end[0]; i++) {
-				byteMap[i] = true;
+				byteMap = new ByteSet();
 			}
+			byteMap.setRange(begin[0] & 0xff, end[0] & 0xff);
 			return ExpressionCommons.newCharSet(null, e.get(0).toText(), e.get(1).toText());
 		}
 
@@ -296,7 +295,7 @@ public class RegularExpressionLoader extends GrammarFileLoader {
 		@Override
 		public Expression toExpression(Tree<?> e) {
 			byte[] utf8 = StringUtils.toUtf8(e.toText());
-			byteMap[utf8[0]] = true;
+			byteMap.set(utf8[0] & 0xff);
 			return ExpressionCommons.newCbyte(null, false, utf8[0]);
 		}
 
@@ -340,7 +339,7 @@ public class RegularExpressionLoader extends GrammarFileLoader {
 		}
 	}
 
-	boolean byteMap[];
+	ByteSet byteMap;
 
 	// boolean useByteMap = true;
 
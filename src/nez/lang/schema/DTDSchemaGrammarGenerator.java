@@ -134,49 +134,14 @@ public class DTDSchemaGrammarGenerator extends SchemaGrammarGenerator {
 
 	@Override
 	protected Type newCompletePerm() {
-		int listLength = getRequiredList().size();
-		if (listLength == 1) {
-			return new Type(_Sequence(_NonTerminal(getRequiredList().get(0)), _NonTerminal("ENDTAG")));
-		} else {
-			PermutationGenerator permGen = new PermutationGenerator(listLength);
-			int[][] permedList = permGen.getPermList();
-			Expression[] choiceList = new Expression[permedList.length];
-			int choiceCount = 0;
-			for (int[] targetLine : permedList) {
-				Expression[] seqList = new Expression[listLength + 1];
-				for (int index = 0; index < targetLine.length; index++) {
-					seqList[index] = _NonTerminal(getRequiredList().get(targetLine[index]));
-				}
-				seqList[listLength] = _NonTerminal("ENDTAG");
-				choiceList[choiceCount++] = _Sequence(seqList);
-			}
-			return new Type(_Choice(choiceList));
-		}
+		return new Type(_Sequence(super.newCompletePerm().getTypeExpression(), _NonTerminal("ENDTAG")));
 	}
 
 	@Override
 	protected Type newAproximatePerm() {
-		int listLength = getRequiredList().size();
-		if (listLength == 0) {
-			return new Type(_NonTerminal("%s_implied", getTableName()));
-		} else {
-			PermutationGenerator permGen = new PermutationGenerator(listLength);
-			int[][] permutedList = permGen.getPermList();
-			Expression[] choiceList = new Expression[permutedList.length];
-			Expression impliedChoiceRule = _NonTerminal("%s_implied", getTableName());
-			int choiceCount = 0;
-			for (int[] targetLine : permutedList) {
-				int seqCount = 0;
-				Expression[] seqList = new Expression[listLength * 2 + 1];
-				seqList[seqCount++] = _ZeroMore(impliedChoiceRule);
-				for (int index = 0; index < targetLine.length; index++) {
-					seqList[seqCount++] = _NonTerminal(getRequiredList().get(targetLine[index]));
-					seqList[seqCount++] = _ZeroMore(impliedChoiceRule);
-				}
-				seqList[seqCount] = _NonTerminal("ENDTAG");
-				choiceList[choiceCount++] = _Sequence(seqList);
-			}
-			return new Type(_Choice(choiceList));
+		if (getRequiredList().isEmpty()) {
+			return super.newAproximatePerm();
 		}
+		return new Type(_Sequence(super.newAproximatePerm().getTypeExpression(), _NonTerminal("ENDTAG")));
 	}
 }
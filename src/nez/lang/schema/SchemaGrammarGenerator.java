@@ -119,6 +119,14 @@ public abstract class SchemaGrammarGenerator extends AbstractSchemaGrammarGenera
 		return ExpressionCommons.newPchoice(null, seq);
 	}
 
+	protected final Expression _Perm(Expression... l) {
+		UList<Expression> members = new UList<Expression>(new Expression[l.length]);
+		for (Expression p : l) {
+			members.add(p);
+		}
+		return ExpressionCommons.newPperm(null, members);
+	}
+
 	protected final Expression _DQuat() {
 		return _Char('"');
 	}
@@ -202,50 +210,26 @@ public abstract class SchemaGrammarGenerator extends AbstractSchemaGrammarGenera
 		}
 	}
 
-	// FIXME
 	protected Type newCompletePerm() {
 		int listLength = getRequiredList().size();
-		if (listLength == 1) {
-			return new Type(_NonTerminal(getRequiredList().get(0)));
-		} else {
-			PermutationGenerator permGen = new PermutationGenerator(listLength);
-			int[][] permedList = permGen.getPermList();
-			Expression[] choiceList = new Expression[permedList.length];
-			int choiceCount = 0;
-			for (int[] targetLine : permedList) {
-				Expression[] seqList = new Expression[listLength];
-				for (int index = 0; index < targetLine.length; index++) {
-					seqList[index] = _NonTerminal(getRequiredList().get(targetLine[index]));
-				}
-				choiceList[choiceCount++] = _Sequence(seqList);
-			}
-			return new Type(_Choice(choiceList));
+		Expression[] members = new Expression[listLength];
+		for (int index = 0; index < listLength; index++) {
+			members[index] = _NonTerminal(getRequiredList().get(index));
 		}
+		return new Type(_Perm(members));
 	}
 
-	// FIXME
 	protected Type newAproximatePerm() {
 		int listLength = getRequiredList().size();
+		Expression impliedChoiceRule = _NonTerminal(getTableName() + "_implied");
 		if (listLength == 0) {
-			return new Type(_NonTerminal(getTableName() + "_implied"));
-		} else {
-			PermutationGenerator permGen = new PermutationGenerator(listLength);
-			int[][] permutedList = permGen.getPermList();
-			Expression[] choiceList = new Expression[permutedList.length];
-			Expression impliedChoiceRule = _NonTerminal(getTableName() + "_implied");
-			int choiceCount = 0;
-			for (int[] targetLine : permutedList) {
-				int seqCount = 0;
-				Expression[] seqList = new Expression[listLength * 2 + 1];
-				seqList[seqCount++] = _ZeroMore(impliedChoiceRule);
-				for (int index = 0; index < targetLine.length; index++) {
-					seqList[seqCount++] = _NonTerminal(getRequiredList().get(targetLine[index]));
-					seqList[seqCount++] = _ZeroMore(impliedChoiceRule);
-				}
-				choiceList[choiceCount++] = _Sequence(seqList);
-			}
-			return new Type(_Choice(choiceList));
+			return new Type(impliedChoiceRule);
+		}
+		Expression[] members = new Expression[listLength];
+		for (int index = 0; index < listLength; index++) {
+			members[index] = _Sequence(_NonTerminal(getRequiredList().get(index)), _ZeroMore(impliedChoiceRule));
 		}
+		return new Type(_Sequence(_ZeroMore(impliedChoiceRule), _Perm(members)));
 	}
 
 	protected void genImpliedChoice() {
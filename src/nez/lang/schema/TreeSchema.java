@@ -0,0 +1,202 @@
+package nez.lang.schema;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import nez.ast.Symbol;
+import nez.lang.Expression;
+import nez.lang.Production;
+import nez.lang.expr.NonTerminal;
+import nez.lang.expr.Pnot;
+import nez.lang.expr.Pone;
+import nez.lang.expr.Psequence;
+import nez.lang.expr.Pzero;
+import nez.lang.expr.Tcapture;
+import nez.lang.expr.Tdetree;
+import nez.lang.expr.Tlfold;
+import nez.lang.expr.Tlink;
+import nez.lang.expr.Tnew;
+import nez.lang.expr.Ttag;
+
+/**
+ * TreeSchema infers, for each tag, the labels that a node with the tag can
+ * carry. A tag is fixed (typed) when every constructor that produces it links
+ * only labeled, non-repeated children; such tags can be laid out with one
+ * slot per label.
+ */
+
+public class TreeSchema {
+
+	public static class NodeType {
+		final String tag;
+		final List<String> labels = new ArrayList<String>();
+		boolean fixed = true;
+
+		NodeType(String tag) {
+			this.tag = tag;
+		}
+
+		public final String getTag() {
+			return this.tag;
+		}
+
+		public final List<String> getLabels() {
+			return this.labels;
+		}
+
+		public final boolean isFixed() {
+			return this.fixed && this.labels.size() > 0;
+		}
+	}
+
+	private final TreeMap<String, NodeType> typeMap = new TreeMap<String, NodeType>();
+	private final HashMap<String, Scope> summaryMap = new HashMap<String, Scope>();
+
+	public TreeSchema(Iterable<Production> grammar) {
+		for (Production p : grammar) {
+			summary(p);
+		}
+	}
+
+	public final List<NodeType> getNodeTypes() {
+		return new ArrayList<NodeType>(typeMap.values());
+	}
+
+	/* a node under construction */
+
+	static class Scope {
+		final int depth;
+		final List<String> tags = new ArrayList<String>();
+		final List<String> labels = new ArrayList<String>();
+		boolean fixed = true;
+
+		Scope(int depth) {
+			this.depth = depth;
+		}
+
+		void addLabel(Symbol label, int depth) {
+			if (label == null || depth > this.depth) {
+				this.fixed = false;
+			}
+			if (label != null && !labels.contains(label.getSymbol())) {
+				labels.add(label.getSymbol());
+			}
+		}
+
+		void merge(Scope s, int depth) {
+			if (depth > this.depth && s.labels.size() > 0) {
+				this.fixed = false;
+			}
+			for (String tag : s.tags) {
+				if (!tags.contains(tag)) {
+					tags.add(tag);
+				}
+			}
+			for (String label : s.labels) {
+				if (!labels.contains(label)) {
+					labels.add(label);
+				}
+			}
+			this.fixed &= s.fixed;
+		}
+	}
+
+	private final static Scope InProgress = new Scope(0);
+
+	/* tags and links of a production that fall outside of its own {...} */
+	private Scope summary(Production p) {
+		String name = p.getUniqueName();
+		Scope s = summaryMap.get(name);
+		if (s == null) {
+			summaryMap.put(name, InProgress);
+			s = new Scope(0);
+			scan(p.getExpression(), s, 0);
+			summaryMap.put(name, s);
+		}
+		return s;
+	}
+
+	private void commit(Scope s) {
+		for (String tag : s.tags) {
+			NodeType t = typeMap.get(tag);
+			if (t == null) {
+				t = new NodeType(tag);
+				typeMap.put(tag, t);
+			}
+			for (String label : s.labels) {
+				if (!t.labels.contains(label)) {
+					t.labels.add(label);
+				}
+			}
+			t.fixed &= s.fixed;
+		}
+	}
+
+	private static void flatten(Expression e, List<Expression> l) {
+		if (e instanceof Psequence) {
+			flatten(e.get(0), l);
+			flatten(e.get(1), l);
+		} else {
+			l.add(e);
+		}
+	}
+
+	private void scan(Expression e, Scope s, int depth) {
+		if (e instanceof Psequence) {
+			List<Expression> l = new ArrayList<Expression>();
+			flatten(e, l);
+			for (Expression sub : l) {
+				if (sub instanceof Tnew) {
+					s = new Scope(depth);
+				} else if (sub instanceof Tlfold) {
+					s = new Scope(depth);
+					s.addLabel(((Tlfold) sub).getLabel(), depth);
+				} else if (sub instanceof Tcapture) {
+					commit(s);
+				} else {
+					scan(sub, s, depth);
+				}
+			}
+			return;
+		}
+		if (e instanceof Ttag) {
+			String tag = ((Ttag) e).getTagName();
+			if (!s.tags.contains(tag)) {
+				s.tags.add(tag);
+			}
+			return;
+		}
+		if (e instanceof Tlink) {
+			s.addLabel(((Tlink) e).getLabel(), depth);
+			scan(e.get(0), new Scope(0), 0);
+			return;
+		}
+		if (e instanceof Tdetree) {
+			scan(e.get(0), new Scope(0), 0);
+			return;
+		}
+		if (e instanceof NonTerminal) {
+			Production p = ((NonTerminal) e).getProduction();
+			if (p != null) {
+				Scope callee = summary(p);
+				if (callee == InProgress) {
+					s.fixed = false;
+				} else {
+					s.merge(callee, depth);
+				}
+			}
+			return;
+		}
+		if (e instanceof Pnot) {
+			return;
+		}
+		if (e instanceof Pzero || e instanceof Pone) {
+			depth++;
+		}
+		for (Expression sub : e) {
+			scan(sub, s, depth);
+		}
+	}
+}
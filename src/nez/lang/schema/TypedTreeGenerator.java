@@ -0,0 +1,221 @@
+package nez.lang.schema;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import nez.lang.Production;
+import nez.util.FileBuilder;
+
+/**
+ * TypedTreeGenerator emits a Tree prototype class for a grammar. Each tag
+ * with a fixed TreeSchema gets a nested node class whose children are stored
+ * at a constant index per label, so field access is a plain array load. The
+ * prototype is passed to Parser.parse(sc, prototype) and is instantiated by
+ * ASTMachine; tags without a fixed schema fall back to the generic layout.
+ */
+
+public class TypedTreeGenerator {
+	private final static HashSet<String> Reserved = new HashSet<String>(Arrays.asList( //
+			"Tree", "Symbol", "Source", "Object", "String", "Class", //
+			"Tag", "Value", "Length", "Label", "Text", "LineNum", "Column", "SourcePosition", //
+			"_")); // a keyword since Java 9
+
+	private final String className;
+	private final String packageName;
+	private FileBuilder file;
+
+	public TypedTreeGenerator(String grammarName, String packageName) {
+		this.className = toIdentifier(grammarName, true) + "Tree";
+		this.packageName = packageName;
+	}
+
+	public final String getClassName() {
+		return this.className;
+	}
+
+	public void generate(Iterable<Production> grammar, String dir) {
+		String path = null;
+		if (dir != null) {
+			path = dir + "/" + className + ".java";
+		}
+		this.file = new FileBuilder(path);
+		generate(new TreeSchema(grammar));
+		file.writeNewLine();
+		file.flush();
+		if (path != null) {
+			file.close();
+		}
+	}
+
+	private static String toIdentifier(String name, boolean upper) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			sb.append(Character.isJavaIdentifierPart(c) ? c : '_');
+		}
+		if (sb.length() == 0 || !Character.isJavaIdentifierStart(sb.charAt(0))) {
+			sb.insert(0, '_');
+		}
+		if (upper) {
+			sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+		}
+		return sb.toString();
+	}
+
+	private String nodeName(String tag) {
+		String name = toIdentifier(tag, true);
+		if (Reserved.contains(name) || name.equals(className)) {
+			name = name + "_";
+		}
+		return name;
+	}
+
+	private String getterName(String label) {
+		String name = toIdentifier(label, true);
+		if (Reserved.contains(name)) {
+			name = name + "_";
+		}
+		return "get" + name;
+	}
+
+	private String constantName(String label) {
+		String name = toIdentifier(label, false).toUpperCase();
+		if (Reserved.contains(name)) {
+			name = name + "_";
+		}
+		return name;
+	}
+
+	private String symbolName(String name) {
+		return "_" + toIdentifier(name, false);
+	}
+
+	private void L(String line) {
+		file.writeIndent(line);
+	}
+
+	private void Begin(String line) {
+		file.writeIndent(line);
+		file.incIndent();
+	}
+
+	private void End(String line) {
+		file.decIndent();
+		file.writeIndent(line);
+	}
+
+	private void generate(TreeSchema schema) {
+		List<TreeSchema.NodeType> types = schema.getNodeTypes();
+		TreeSet<String> symbols = new TreeSet<String>();
+		for (TreeSchema.NodeType t : types) {
+			symbols.add(t.getTag());
+			symbols.addAll(t.getLabels());
+		}
+		if (packageName != null) {
+			L("package " + packageName + ";");
+			L("");
+		}
+		L("import nez.ast.Source;");
+		L("import nez.ast.Symbol;");
+		L("import nez.ast.Tree;");
+		L("");
+		L("// generated by nez tree; do not edit");
+		L("");
+		Begin("public class " + className + " extends Tree<" + className + "> {");
+		for (String s : symbols) {
+			L("public final static Symbol " + symbolName(s) + " = Symbol.tag(\"" + s + "\");");
+		}
+		L("");
+		Begin("public " + className + "() {");
+		L("super();");
+		End("}");
+		L("");
+		Begin("protected " + className + "(Symbol tag, Source source, long pos, int len, int size, Object value) {");
+		L("super(tag, source, pos, len, size > 0 ? new " + className + "[size] : null, value);");
+		End("}");
+		L("");
+		Begin("protected " + className + "(Symbol tag, Source source, long pos, int len, " + className + "[] subTree, Symbol[] labels, Object value) {");
+		L("super(tag, source, pos, len, subTree, labels, value);");
+		End("}");
+		L("");
+		L("@Override");
+		Begin("protected " + className + " newInstance(Symbol tag, Source source, long pos, int len, int size, Object value) {");
+		for (TreeSchema.NodeType t : types) {
+			if (t.isFixed()) {
+				Begin("if (tag == " + symbolName(t.getTag()) + " && size <= " + t.getLabels().size() + ") {");
+				L("return new " + nodeName(t.getTag()) + "(source, pos, len, value);");
+				End("}");
+			}
+		}
+		L("return new " + className + "(tag, source, pos, len, size, value);");
+		End("}");
+		L("");
+		L("@Override");
+		Begin("protected void link(int n, Symbol label, Object child) {");
+		L("this.set(n, label, (" + className + ") child);");
+		End("}");
+		L("");
+		L("@Override");
+		Begin("public " + className + " newInstance(Symbol tag, int size, Object value) {");
+		L("return new " + className + "(tag, this.getSource(), this.getSourcePosition(), 0, size, value);");
+		End("}");
+		L("");
+		L("@Override");
+		Begin("protected " + className + " dupImpl() {");
+		L("return new " + className + "(this.getTag(), this.getSource(), this.getSourcePosition(), this.getLength(), this.size(), getValue());");
+		End("}");
+		for (TreeSchema.NodeType t : types) {
+			if (t.isFixed()) {
+				generateNode(t);
+			}
+		}
+		End("}");
+	}
+
+	private void generateNode(TreeSchema.NodeType t) {
+		String name = nodeName(t.getTag());
+		List<String> labels = t.getLabels();
+		StringBuilder sb = new StringBuilder();
+		for (String label : labels) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(className + "." + symbolName(label)); // not hidden by a label constant
+		}
+		L("");
+		Begin("public static class " + name + " extends " + className + " {");
+		L("public final static Symbol[] Labels = { " + sb + " };");
+		for (int i = 0; i < labels.size(); i++) {
+			L("public final static int " + constantName(labels.get(i)) + " = " + i + ";");
+		}
+		L("");
+		Begin(name + "(Source source, long pos, int len, Object value) {");
+		L("super(" + className + "." + symbolName(t.getTag()) + ", source, pos, len, new " + className + "[" + labels.size() + "], Labels, value);");
+		End("}");
+		L("");
+		L("@Override");
+		Begin("protected void link(int n, Symbol label, Object child) {");
+		for (int i = 0; i < labels.size(); i++) {
+			Begin("if (label == " + className + "." + symbolName(labels.get(i)) + ") {");
+			L("this.subTree[" + i + "] = (" + className + ") child;");
+			L("return;");
+			End("}");
+		}
+		L("this.append(label, (" + className + ") child); // missed by the schema");
+		End("}");
+		L("");
+		L("@Override");
+		Begin("protected " + className + " dupImpl() {");
+		L("return new " + name + "(this.getSource(), this.getSourcePosition(), this.getLength(), this.getValue());");
+		End("}");
+		for (int i = 0; i < labels.size(); i++) {
+			L("");
+			Begin("public final " + className + " " + getterName(labels.get(i)) + "() {");
+			L("return this.subTree[" + i + "];");
+			End("}");
+		}
+		End("}");
+	}
+}
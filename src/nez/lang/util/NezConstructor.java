@@ -18,6 +18,7 @@ import nez.lang.NezGrammar1;
 import nez.lang.Production;
 import nez.lang.expr.ExpressionCommons;
 import nez.lang.expr.NonTerminal;
+import nez.lang.expr.Pperm;
 import nez.util.ConsoleUtils;
 import nez.util.StringUtils;
 import nez.util.UList;
@@ -116,6 +117,13 @@ public class NezConstructor extends GrammarFileLoader {
 				localName = GrammarFile.nameTerminalProduction(localName);
 				productionFlag |= Production.TerminalProduction;
 			}
+			if (node.has(_anno)) {
+				for (Tree<?> qualifier : node.get(_anno)) {
+					if (qualifier.toText().equals("public")) {
+						productionFlag |= Production.PublicProduction;
+					}
+				}
+			}
 
 			Production rule = getGrammar().getProduction(localName);
 			if (rule != null) {
@@ -292,6 +300,7 @@ public class NezConstructor extends GrammarFileLoader {
 	public final static Symbol _hash = Symbol.tag("hash"); // example
 	public final static Symbol _name2 = Symbol.tag("name2"); // example
 	public final static Symbol _text = Symbol.tag("text"); // example
+	public final static Symbol _Sequence = Symbol.tag("Sequence");
 
 	private Symbol parseLabelNode(Tree<?> node) {
 		Symbol label = null;
@@ -418,6 +427,26 @@ public class NezConstructor extends GrammarFileLoader {
 		}
 	}
 
+	public class _Perm extends NezConstructorDefault {
+		@Override
+		public Expression toExpression(Tree<?> node) {
+			Tree<?> exprNode = node.get(_expr);
+			UList<Expression> l = new UList<Expression>(new Expression[exprNode.size() + 1]);
+			if (exprNode.is(_Sequence)) {
+				for (int i = 0; i < exprNode.size(); i++) {
+					l.add(newExpression(exprNode.get(i)));
+				}
+			} else {
+				l.add(newExpression(exprNode));
+			}
+			if (l.size() > Pperm.MaxSize) {
+				reportError(node, "too many permutation members: " + l.size());
+				return ExpressionCommons.newFailure(node);
+			}
+			return ExpressionCommons.newPperm(node, l);
+		}
+	}
+
 	public class _DefIndent extends NezConstructorDefault {
 		@Override
 		public Expression toExpression(Tree<?> node) {
@@ -14,6 +14,10 @@ public class NezFileFormatter extends TreeVisitor {
 		f = new FileBuilder(null);
 	}
 
+	public NezFileFormatter(FileBuilder f) {
+		this.f = f;
+	}
+
 	boolean isBeforeComment = true;
 
 	void writeIndent(String s) {
@@ -400,6 +404,13 @@ public class NezFileFormatter extends TreeVisitor {
 		return pUnary(p, node, ">");
 	}
 
+	public boolean pPerm(Tree<?> node) {
+		f.write("<perm ");
+		pExpression(node.get(_expr)); // members are the sequence elements
+		f.write(">");
+		return true;
+	}
+
 	public boolean pDefIndent(Tree<?> node) {
 		f.write("<match indent>");
 		return true;
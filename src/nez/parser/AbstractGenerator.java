@@ -16,6 +16,7 @@ import nez.lang.expr.Pchoice;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Pone;
 import nez.lang.expr.Poption;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Psequence;
 import nez.lang.expr.Pzero;
 import nez.lang.expr.Tcapture;
@@ -171,4 +172,8 @@ public abstract class AbstractGenerator {
 		return next;
 	}
 
+	public Instruction encodePperm(Pperm p, Instruction next, Instruction failjump) {
+		return p.expand().encode(this, next, failjump);
+	}
+
 }
@@ -4,20 +4,22 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 
 import nez.Verbose;
 import nez.ast.Symbol;
+import nez.util.ByteSet;
 import nez.util.StringUtils;
 
 public class ByteCoder {
 
 	class SetEntry {
 		int id;
-		boolean[] data;
+		ByteSet data;
 
-		SetEntry(int id, boolean[] data) {
+		SetEntry(int id, ByteSet data) {
 			this.id = id;
 			this.data = data;
 		}
@@ -61,7 +63,7 @@ public class ByteCoder {
 	int memoSize;
 	ByteArrayOutputStream stream;
 	HashMap<String, StrEntry> NonTerminalPoolMap;
-	HashMap<String, SetEntry> BSetPoolMap;
+	HashMap<ByteSet, SetEntry> BSetPoolMap;
 	HashMap<String, StrEntry> BStrPoolMap;
 	HashMap<String, TagEntry> TagPoolMap;
 	HashMap<String, TagEntry> TablePoolMap; // tableEntry
@@ -125,22 +127,14 @@ public class ByteCoder {
 		stream.write(0xff & (num >> 0));
 	}
 
-	private void encodeData(boolean[] byteMap) {
-		for (int i = 0; i < 256; i += 32) {
-			encodeByteMap(byteMap, i);
+	private void encodeData(ByteSet byteMap) {
+		for (int i = 0; i < 4; i++) {
+			long w = byteMap.getWord(i);
+			write_u32((int) w);
+			write_u32((int) (w >>> 32));
 		}
 	}
 
-	private void encodeByteMap(boolean[] b, int offset) {
-		int n = 0;
-		for (int i = 0; i < 32; i++) {
-			if (b[offset + i]) {
-				n |= (1 << i);
-			}
-		}
-		write_u32(n);
-	}
-
 	private void write_utf8(byte[] utf8) {
 		write_u16(utf8.length);
 		try {
@@ -196,12 +190,11 @@ public class ByteCoder {
 		stream.write(byteChar);
 	}
 
-	public void encodeBset(boolean[] byteMap) {
-		String key = StringUtils.stringfyBitmap(byteMap);
-		SetEntry entry = BSetPoolMap.get(key);
+	public void encodeBset(ByteSet byteMap) {
+		SetEntry entry = BSetPoolMap.get(byteMap);
 		if (entry == null) {
 			entry = new SetEntry(BSetPoolMap.size(), byteMap);
-			BSetPoolMap.put(key, entry);
+			BSetPoolMap.put(byteMap, entry);
 			BSetPools.add(entry);
 		}
 		write_u16(entry.id);
@@ -262,9 +255,58 @@ public class ByteCoder {
 		write_u16(entry.id);
 	}
 
+	/**
+	 * Moz container (version 1); all numbers are big endian and every section
+	 * starts on an 8-byte boundary so that it can be used directly through
+	 * FileChannel.map.
+	 *
+	 * <pre>
+	 * 0   'N' 'E' 'Z' '1'
+	 * 4   u32 header size (with the section table), u32 flags
+	 * 12  u32 instSize, u32 memoSize, u32 jumpTableSize, u32 prodSize
+	 * 28  u32 section count, then (u32 offset, u32 count) per section
+	 *
+	 * Strings   : (count+1) u32 offsets, then NUL-terminated bytes
+	 * Sets      : count x 256-bit bitmaps (8 x u32)
+	 * NonTerminal, Bstr, Tag, Table : count x u32 string index
+	 * Code      : count bytes of instructions
+	 * </pre>
+	 */
+
+	public final static int Version = 1;
+	public final static int HeaderSize = 32;
+	public final static int Strings = 0;
+	public final static int Sets = 1;
+	public final static int NonTerminals = 2;
+	public final static int Bstrs = 3;
+	public final static int Tags = 4;
+	public final static int Tables = 5;
+	public final static int Code = 6;
+	public final static int SectionSize = 7;
+
 	public void writeTo(String fileName) {
+		writeTo(fileName, Version);
+	}
+
+	public void writeTo(String fileName, int version) {
 		byte[] body = stream.toByteArray();
 		stream = new ByteArrayOutputStream();
+		if (version == 0) {
+			writeVersion0(body);
+		} else {
+			writeVersion1(body);
+		}
+		byte[] code = stream.toByteArray();
+		try {
+			OutputStream out = new FileOutputStream(fileName);
+			out.write(code);
+			out.close();
+		} catch (IOException e) {
+			Verbose.traceException(e);
+		}
+	}
+
+	private void writeVersion0(byte[] body) {
 		stream.write('N');
 		stream.write('E');
 		stream.write('Z');
@@ -299,15 +341,113 @@ public class ByteCoder {
 		} catch (IOException e1) {
 			Verbose.traceException(e1);
 		}
+	}
 
-		byte[] code = stream.toByteArray();
-		try {
-			OutputStream out = new FileOutputStream(fileName);
-			out.write(code);
-			out.close();
-		} catch (IOException e) {
-			Verbose.traceException(e);
+	/* version 1 */
+
+	private HashMap<String, Integer> stringMap;
+	private ArrayList<byte[]> stringList;
+
+	private int intern(byte[] data) {
+		String key = new String(data, StandardCharsets.ISO_8859_1);
+		Integer id = stringMap.get(key);
+		if (id == null) {
+			id = stringList.size();
+			stringMap.put(key, id);
+			stringList.add(data);
+		}
+		return id;
+	}
+
+	private int[] internStr(ArrayList<StrEntry> l) {
+		int[] ids = new int[l.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = intern(l.get(i).data);
+		}
+		return ids;
+	}
+
+	private int[] internTag(ArrayList<TagEntry> l) {
+		int[] ids = new int[l.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = intern(StringUtils.toUtf8(l.get(i).data.getSymbol()));
+		}
+		return ids;
+	}
+
+	private void align() {
+		while (stream.size() % 8 != 0) {
+			stream.write(0);
+		}
+	}
+
+	private void writeVersion1(byte[] body) {
+		stringMap = new HashMap<>();
+		stringList = new ArrayList<>();
+		int[][] refs = new int[SectionSize][];
+		refs[NonTerminals] = internStr(NonTerminalPools);
+		refs[Bstrs] = internStr(BStrPools);
+		refs[Tags] = internTag(TagPools);
+		refs[Tables] = internTag(TablePools);
+
+		int[] offset = new int[SectionSize];
+		int[] count = new int[SectionSize];
+		ByteArrayOutputStream header = stream;
+		stream = new ByteArrayOutputStream();
+		int base = HeaderSize + SectionSize * 8;
+		/* strings */
+		offset[Strings] = base + stream.size();
+		count[Strings] = stringList.size();
+		int pos = 0;
+		for (byte[] s : stringList) {
+			write_u32(pos);
+			pos += s.length + 1;
+		}
+		write_u32(pos);
+		for (byte[] s : stringList) {
+			stream.write(s, 0, s.length);
+			stream.write(0);
+		}
+		align();
+		/* sets */
+		offset[Sets] = base + stream.size();
+		count[Sets] = BSetPools.size();
+		for (SetEntry e : BSetPools) {
+			encodeData(e.data);
+		}
+		/* string references */
+		for (int sec = NonTerminals; sec <= Tables; sec++) {
+			offset[sec] = base + stream.size();
+			count[sec] = refs[sec].length;
+			for (int id : refs[sec]) {
+				write_u32(id);
+			}
+			align();
+		}
+		/* code */
+		offset[Code] = base + stream.size();
+		count[Code] = body.length;
+		stream.write(body, 0, body.length);
+		align();
+		byte[] sections = stream.toByteArray();
+
+		stream = header;
+		stream.write('N');
+		stream.write('E');
+		stream.write('Z');
+		stream.write('0' + Version);
+		write_u32(base);
+		write_u32(0); // flags
+		write_u32(instSize);
+		write_u32(memoSize);
+		write_u32(jumpTableSize);
+		write_u32(prodSize);
+		write_u32(SectionSize);
+		for (int sec = 0; sec < SectionSize; sec++) {
+			write_u32(offset[sec]);
+			write_u32(count[sec]);
 		}
+		stream.write(sections, 0, sections.length);
 	}
 
 }
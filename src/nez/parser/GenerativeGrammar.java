@@ -1,5 +1,6 @@
 package nez.parser;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
@@ -16,13 +17,59 @@ import nez.util.UList;
 public class GenerativeGrammar extends Grammar {
 	HashMap<String, ParseFunc> funcMap;
 	public List<MemoPoint> memoPointList = null;
+	ParserProfile profile = null;
+
+	/* entry name => local production name */
+	final HashMap<String, String> entryMap = new HashMap<String, String>();
 
 	public GenerativeGrammar(Production start, Strategy strategy, TreeMap<String, Boolean> boolMap) {
+		this(start, null, strategy, boolMap);
+	}
+
+	public GenerativeGrammar(Production start, List<Production> entries, Strategy strategy, TreeMap<String, Boolean> boolMap) {
 		this.funcMap = new HashMap<String, ParseFunc>();
-		new GrammarChecker(this, boolMap, start, strategy);
+		this.profile = loadProfile(strategy);
+		new GrammarChecker(this, boolMap, start, entries, strategy);
 		memo(strategy);
 	}
 
+	public final void addEntryPoint(String name, String uname) {
+		this.entryMap.put(name, uname);
+	}
+
+	/* local name of an entry production, or null */
+	public final String getEntryPoint(String name) {
+		return this.entryMap.get(name);
+	}
+
+	public final List<Production> getEntryProductions() {
+		UList<Production> l = new UList<Production>(new Production[entryMap.size() + 1]);
+		l.add(this.getStartProduction());
+		for (String uname : entryMap.values()) {
+			Production p = this.getProduction(uname);
+			if (p != null && !l.contains(p)) {
+				l.add(p);
+			}
+		}
+		return l;
+	}
+
+	private ParserProfile loadProfile(Strategy strategy) {
+		String path = strategy.getString("Oprofile", null);
+		if (path != null) {
+			try {
+				return ParserProfile.load(path);
+			} catch (IOException e) {
+				Verbose.println("cannot load profile: " + path);
+			}
+		}
+		return null;
+	}
+
+	public final ParserProfile getProfile() {
+		return this.profile;
+	}
+
 	public ParseFunc getParseFunc(String name) {
 		return this.funcMap.get(name);
 	}
@@ -85,6 +132,12 @@ public class GenerativeGrammar extends Grammar {
 			return;
 		}
 		Production p = f.parserProduction;
+		if (this.profile != null && this.profile.isUselessMemo(p.getLocalName())) {
+			if (Verbose.PackratParsing) {
+				Verbose.println("MemoPoint: " + p.getLocalName() + " is disabled by profile");
+			}
+			return;
+		}
 		if (f.refcount > 1 && p.inferTypestate(null) != Typestate.OperationType) {
 			int memoId = memoPointList.size();
 			f.memoPoint = new MemoPoint(memoId, p.getLocalName(), f.getExpression(), p.isContextual());
@@ -10,6 +10,7 @@ import nez.lang.expr.Cbyte;
 import nez.lang.expr.Cmulti;
 import nez.lang.expr.Cset;
 import nez.lang.expr.Pchoice;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Tcapture;
 import nez.lang.expr.Tlfold;
 import nez.lang.expr.Tlink;
@@ -24,6 +25,7 @@ import nez.lang.expr.Xis;
 import nez.lang.expr.Xlocal;
 import nez.lang.expr.Xmatch;
 import nez.lang.expr.Xsymbol;
+import nez.util.ByteSet;
 import nez.util.StringUtils;
 
 public abstract class Instruction {
@@ -273,8 +275,7 @@ class ICall extends Instruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.newUnusedStack();
-		s.ref = this.jump;
+		sc.pushRef(this.jump);
 		return this.next;
 	}
 }
@@ -295,8 +296,7 @@ class IRet extends Instruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.popStack();
-		return (Instruction) s.ref;
+		return (Instruction) sc.popRef();
 	}
 }
 
@@ -312,8 +312,7 @@ class IPos extends Instruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.newUnusedStack();
-		s.value = sc.getPosition();
+		sc.pushValue(sc.getPosition());
 		return this.next;
 	}
 }
@@ -330,8 +329,7 @@ class IBack extends Instruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.popStack();
-		sc.setPosition(s.value);
+		sc.setPosition(sc.popValue());
 		return this.next;
 	}
 }
@@ -351,7 +349,7 @@ class IExit extends Instruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		throw new TerminationException(status);
+		throw TerminationException.of(status);
 	}
 }
 
@@ -472,13 +470,15 @@ class INAny extends AbstractAnyInstruction {
 }
 
 abstract class AbstractSetInstruction extends Instruction {
-	public final boolean[] byteMap;
+	public final ByteSet byteMap;
 
 	AbstractSetInstruction(byte opcode, Cset e, Instruction next) {
 		super(opcode, e, next);
-		this.byteMap = e.byteMap;
-		if (this.byteMap[0]) {
-			this.byteMap[0] = false; // for safety
+		if (e.byteMap.is(0)) {
+			this.byteMap = e.byteMap.copy();
+			this.byteMap.set(0, false); // for safety
+		} else {
+			this.byteMap = e.byteMap;
 		}
 	}
 
@@ -501,7 +501,7 @@ class ISet extends AbstractSetInstruction {
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		int byteChar = sc.byteAt(sc.getPosition());
-		if (byteMap[byteChar]) {
+		if (byteMap.is(byteChar)) {
 			sc.consume(1);
 			return this.next;
 		}
@@ -517,7 +517,7 @@ class IOSet extends AbstractSetInstruction {
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		int byteChar = sc.byteAt(sc.getPosition());
-		if (byteMap[byteChar]) {
+		if (byteMap.is(byteChar)) {
 			sc.consume(1);
 		}
 		return this.next;
@@ -532,7 +532,7 @@ class INSet extends AbstractSetInstruction {
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		int byteChar = sc.byteAt(sc.getPosition());
-		if (!byteMap[byteChar]) {
+		if (!byteMap.is(byteChar)) {
 			return this.next;
 		}
 		return sc.fail();
@@ -547,7 +547,7 @@ class IRSet extends AbstractSetInstruction {
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		int byteChar = sc.byteAt(sc.getPosition());
-		while (byteMap[byteChar]) {
+		while (byteMap.is(byteChar)) {
 			sc.consume(1);
 			byteChar = sc.byteAt(sc.getPosition());
 		}
@@ -558,7 +558,7 @@ class IRSet extends AbstractSetInstruction {
 abstract class AbstractStrInstruction extends Instruction {
 	final byte[] utf8;
 
-	public AbstractStrInstruction(byte opcode, Cmulti e, byte[] utf8, Instruction next) {
+	public AbstractStrInstruction(byte opcode, Expression e, byte[] utf8, Instruction next) {
 		super(opcode, e, next);
 		this.utf8 = utf8;
 	}
@@ -586,6 +586,10 @@ class IStr extends AbstractStrInstruction {
 		super(InstructionSet.Str, e, e.byteSeq, next);
 	}
 
+	IStr(Expression e, byte[] utf8, Instruction next) {
+		super(InstructionSet.Str, e, utf8, next);
+	}
+
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		if (sc.match(sc.getPosition(), this.utf8)) {
@@ -977,9 +981,8 @@ class ITStart extends Instruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.newUnusedStack();
 		ASTMachine astMachine = sc.getAstMachine();
-		s.ref = astMachine.saveTransactionPoint();
+		sc.pushValue(astMachine.openTransactionPoint());
 		return this.next;
 	}
 }
@@ -999,9 +1002,8 @@ class ICommit extends Instruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.popStack();
 		ASTMachine astMachine = sc.getAstMachine();
-		astMachine.commitTransactionPoint(label, s.ref);
+		astMachine.commitTransactionPoint(label, (int) sc.popValue());
 		return this.next;
 	}
 }
@@ -1087,8 +1089,7 @@ class IBeginSymbolScope extends Instruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.newUnusedStack();
-		s.value = sc.getSymbolTable().savePoint();
+		sc.pushValue(sc.getSymbolTable().savePoint());
 		return this.next;
 	}
 }
@@ -1100,9 +1101,8 @@ class IBeginLocalScope extends AbstractTableInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.newUnusedStack();
 		SymbolTable st = sc.getSymbolTable();
-		s.value = st.savePoint();
+		sc.pushValue(st.savePoint());
 		st.addSymbolMask(tableName);
 		return this.next;
 	}
@@ -1119,8 +1119,7 @@ class IEndSymbolScope extends Instruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.popStack();
-		sc.getSymbolTable().rollBack((int) s.value);
+		sc.getSymbolTable().rollBack((int) sc.popValue());
 		return this.next;
 	}
 }
@@ -1132,11 +1131,7 @@ class IDefSymbol extends AbstractTableInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData top = sc.popStack();
-		byte[] captured = sc.subbyte(top.value, sc.getPosition());
-		// System.out.println("symbol captured: " + new String(captured) + ", @"
-		// + this.tableName);
-		sc.getSymbolTable().addSymbol(this.tableName, captured);
+		sc.getSymbolTable().addSymbol(this.tableName, sc, sc.popValue(), sc.getPosition());
 		return this.next;
 	}
 }
@@ -1204,10 +1199,7 @@ class IIsSymbol extends AbstractTableInstruction {
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		byte[] symbol = sc.getSymbolTable().getSymbol(tableName);
 		if (symbol != null) {
-			StackData s = sc.popStack();
-			byte[] captured = sc.subbyte(s.value, sc.getPosition());
-			// System.out.println("captured:" + new String(captured));
-			if (symbol.length == captured.length && SymbolTable.equals(symbol, captured)) {
+			if (SymbolTable.equals(symbol, sc, sc.popValue(), sc.getPosition())) {
 				// sc.consume(symbol.length);
 				return this.next;
 			}
@@ -1223,10 +1215,7 @@ class IIsaSymbol extends AbstractTableInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.popStack();
-		byte[] captured = sc.subbyte(s.value, sc.getPosition());
-		if (sc.getSymbolTable().contains(this.tableName, captured)) {
-			// sc.consume(captured.length);
+		if (sc.getSymbolTable().contains(this.tableName, sc, sc.popValue(), sc.getPosition())) {
 			return this.next;
 
 		}
@@ -1269,13 +1258,7 @@ class IDefIndent extends Instruction {
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		long pos = sc.getPosition();
 		long spos = getLineStartPosition(sc, pos);
-		byte[] b = sc.subbyte(spos, pos);
-		for (int i = 0; i < b.length; i++) {
-			if (b[i] != '\t') {
-				b[i] = ' ';
-			}
-		}
-		sc.getSymbolTable().addSymbol(_Indent, b);
+		sc.getSymbolTable().addIndent(_Indent, sc, spos, pos);
 		return this.next;
 	}
 }
@@ -1311,3 +1294,118 @@ class IIsIndent extends Instruction {
 		return this.next; // empty entry is allowable
 	}
 }
+
+/*
+ * Permutation: the bitset of matched members is kept on the value stack
+ * while the members are tried, so that backtracking discards it.
+ */
+
+class IPermBegin extends Instruction {
+	IPermBegin(Pperm e, Instruction next) {
+		super(InstructionSet.PermBegin, e, next);
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder c) {
+		// No argument
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		sc.pushValue(0);
+		return this.next;
+	}
+}
+
+class IPermLoop extends Instruction {
+	final int size;
+	final long matched;
+	public final Instruction exit;
+
+	IPermLoop(Pperm e, Instruction exit) {
+		super(InstructionSet.PermLoop, e, null);
+		this.size = e.size();
+		this.matched = size == 64 ? -1L : (1L << size) - 1;
+		this.exit = labeling(exit);
+	}
+
+	@Override
+	Instruction branch() {
+		return this.exit;
+	}
+
+	@Override
+	protected String getOperand() {
+		return size + " " + label(this.exit);
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder c) {
+		c.encodeByte(size);
+		c.encodeJump(this.exit);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		long bits = sc.popValue();
+		if (bits == matched) {
+			return this.exit;
+		}
+		sc.pushValue(bits);
+		return this.next;
+	}
+}
+
+class IPermTest extends Instruction {
+	final int index;
+
+	IPermTest(Expression e, int index, Instruction next) {
+		super(InstructionSet.PermTest, e, next);
+		this.index = index;
+	}
+
+	@Override
+	protected String getOperand() {
+		return String.valueOf(index);
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder c) {
+		c.encodeByte(index);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		long bits = sc.popValue();
+		sc.pushValue(bits);
+		if ((bits & (1L << index)) != 0) {
+			return sc.fail();
+		}
+		return this.next;
+	}
+}
+
+class IPermSet extends Instruction {
+	final int index;
+
+	IPermSet(Expression e, int index, Instruction next) {
+		super(InstructionSet.PermSet, e, next);
+		this.index = index;
+	}
+
+	@Override
+	protected String getOperand() {
+		return String.valueOf(index);
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder c) {
+		c.encodeByte(index);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		sc.pushValue(sc.popValue() | (1L << index));
+		return this.next;
+	}
+}
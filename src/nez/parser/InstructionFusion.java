@@ -0,0 +1,291 @@
+package nez.parser;
+
+import java.util.IdentityHashMap;
+
+import nez.ast.ASTMachine;
+import nez.lang.Expression;
+import nez.util.ByteSet;
+import nez.util.StringUtils;
+import nez.util.UList;
+
+/**
+ * InstructionFusion is a peephole pass over laid-out code. It fuses frequent
+ * instruction sequences into superinstructions:
+ *
+ * <pre>
+ * Byte Byte .. / Str Byte ..   => Str      (merged string)
+ * Pos Byte|Set|Str Back        => AndByte|AndSet|AndStr (lookahead)
+ * TPush Call                   => TPushCall
+ * Call Ret                     => Jump     (tail call)
+ * </pre>
+ *
+ * Only successor pointers (next, call returns and first tables) are
+ * rewritten; an original instruction stays in the code as long as another
+ * branch still refers to it.
+ */
+
+class InstructionFusion {
+	private final IdentityHashMap<Instruction, Instruction> fusedMap = new IdentityHashMap<Instruction, Instruction>();
+	private final UList<Instruction> fusedList = new UList<Instruction>(new Instruction[64]);
+
+	UList<Instruction> fuse(UList<Instruction> codeList, UList<Instruction> roots) {
+		for (Instruction inst : codeList) {
+			rewrite(inst);
+		}
+		for (int i = 0; i < fusedList.size(); i++) {
+			rewrite(fusedList.ArrayValues[i]);
+		}
+		for (Instruction inst : codeList) {
+			inst.id = -1;
+		}
+		UList<Instruction> newList = new UList<Instruction>(new Instruction[codeList.size()]);
+		for (Instruction inst : roots) {
+			layout(newList, inst);
+		}
+		return newList;
+	}
+
+	private void rewrite(Instruction inst) {
+		inst.next = fuse(inst.next);
+		if (inst instanceof ICall) {
+			ICall call = (ICall) inst;
+			call.jump = fuse(call.jump);
+		}
+		if (inst instanceof ITPushCall) {
+			ITPushCall call = (ITPushCall) inst;
+			call.jump = fuse(call.jump);
+		}
+		if (inst instanceof IFirst) {
+			Instruction[] jumpTable = ((IFirst) inst).jumpTable;
+			for (int ch = 0; ch < jumpTable.length; ch++) {
+				jumpTable[ch] = fuse(jumpTable[ch]);
+			}
+		}
+	}
+
+	private Instruction fuse(Instruction head) {
+		if (head == null) {
+			return null;
+		}
+		Instruction fused = fusedMap.get(head);
+		if (fused == null) {
+			fused = newSuperInstruction(head);
+			if (fused == null) {
+				fused = head;
+			} else {
+				fused.label = head.label;
+				fusedList.add(fused);
+			}
+			fusedMap.put(head, fused);
+		}
+		return fused;
+	}
+
+	private static boolean isString(Instruction inst) {
+		return inst != null && (inst.getClass() == IByte.class || inst.getClass() == IStr.class);
+	}
+
+	private static byte[] utf8(Instruction inst) {
+		if (inst instanceof IByte) {
+			return new byte[] { (byte) ((IByte) inst).byteChar };
+		}
+		return ((IStr) inst).utf8;
+	}
+
+	private Instruction newSuperInstruction(Instruction head) {
+		if (isString(head) && isString(head.next)) {
+			Instruction tail = head;
+			byte[] utf8 = new byte[0];
+			for (; isString(tail.next); tail = tail.next) {
+				utf8 = concat(utf8, utf8(tail));
+			}
+			return new IStr(head.getExpression(), concat(utf8, utf8(tail)), tail.next);
+		}
+		if (head instanceof IPos && head.next != null && head.next.next instanceof IBack) {
+			Instruction match = head.next;
+			Instruction next = match.next.next;
+			if (match.getClass() == IByte.class) {
+				return new IAndByte(head.getExpression(), ((IByte) match).byteChar, next);
+			}
+			if (match.getClass() == ISet.class) {
+				return new IAndSet(head.getExpression(), ((ISet) match).byteMap, next);
+			}
+			if (match.getClass() == IStr.class) {
+				return new IAndStr(head.getExpression(), ((IStr) match).utf8, next);
+			}
+		}
+		if (head instanceof ITPush && head.next instanceof ICall) {
+			ICall call = (ICall) head.next;
+			return new ITPushCall(head.getExpression(), call.name, call.jump, call.next);
+		}
+		if (head instanceof ICall && ((ICall) head).jump instanceof IRet) {
+			return new ITailCall(head.getExpression(), ((ICall) head).name, head.next);
+		}
+		return null;
+	}
+
+	private static byte[] concat(byte[] a, byte[] b) {
+		byte[] c = new byte[a.length + b.length];
+		System.arraycopy(a, 0, c, 0, a.length);
+		System.arraycopy(b, 0, c, a.length, b.length);
+		return c;
+	}
+
+	private void layout(UList<Instruction> codeList, Instruction inst) {
+		if (inst == null || inst.id != -1) {
+			return;
+		}
+		inst.id = codeList.size();
+		codeList.add(inst);
+		layout(codeList, inst.next);
+		if (inst.next != null && inst.id + 1 != inst.next.id) {
+			Instruction.labeling(inst.next);
+		}
+		layout(codeList, inst.branch());
+		if (inst instanceof ICall) {
+			layout(codeList, ((ICall) inst).jump);
+		}
+		if (inst instanceof ITPushCall) {
+			layout(codeList, ((ITPushCall) inst).jump);
+		}
+		if (inst instanceof AbstractMemoizationInstruction) {
+			layout(codeList, ((AbstractMemoizationInstruction) inst).skip);
+		}
+		if (inst instanceof IFirst) {
+			IFirst match = (IFirst) inst;
+			for (int ch = 0; ch < match.jumpTable.length; ch++) {
+				layout(codeList, match.jumpTable[ch]);
+			}
+		}
+	}
+}
+
+class IAndByte extends Instruction {
+	final int byteChar;
+
+	IAndByte(Expression e, int byteChar, Instruction next) {
+		super(InstructionSet.AndByte, e, next);
+		this.byteChar = byteChar;
+	}
+
+	@Override
+	protected String getOperand() {
+		return StringUtils.stringfyCharacter(byteChar);
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder c) {
+		c.encodeByte(byteChar);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		if (sc.byteAt(sc.getPosition()) == this.byteChar) {
+			return this.next;
+		}
+		return sc.fail();
+	}
+}
+
+class IAndSet extends Instruction {
+	final ByteSet byteMap;
+
+	IAndSet(Expression e, ByteSet byteMap, Instruction next) {
+		super(InstructionSet.AndSet, e, next);
+		this.byteMap = byteMap;
+	}
+
+	@Override
+	protected String getOperand() {
+		return StringUtils.stringfyCharacterClass(byteMap);
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder c) {
+		c.encodeBset(byteMap);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		if (byteMap.is(sc.byteAt(sc.getPosition()))) {
+			return this.next;
+		}
+		return sc.fail();
+	}
+}
+
+class IAndStr extends Instruction {
+	final byte[] utf8;
+
+	IAndStr(Expression e, byte[] utf8, Instruction next) {
+		super(InstructionSet.AndStr, e, next);
+		this.utf8 = utf8;
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder c) {
+		c.encodeBstr(utf8);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		if (sc.match(sc.getPosition(), this.utf8)) {
+			return this.next;
+		}
+		return sc.fail();
+	}
+}
+
+class ITPushCall extends Instruction {
+	final String name;
+	Instruction jump;
+
+	ITPushCall(Expression e, String name, Instruction jump, Instruction next) {
+		super(InstructionSet.TPushCall, e, next);
+		this.name = name;
+		this.jump = jump;
+	}
+
+	@Override
+	protected String getOperand() {
+		return Instruction.label(jump);
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder c) {
+		c.encodeJump(this.jump);
+		c.encodeNonTerminal(name);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		ASTMachine astMachine = sc.getAstMachine();
+		astMachine.logPush();
+		sc.pushRef(this.jump);
+		return this.next;
+	}
+}
+
+class ITailCall extends Instruction {
+	final String name;
+
+	ITailCall(Expression e, String name, Instruction next) {
+		super(InstructionSet.Jump, e, next);
+		this.name = name;
+	}
+
+	@Override
+	protected String getOperand() {
+		return name;
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder c) {
+		c.encodeJump(this.next);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		return this.next;
+	}
+}
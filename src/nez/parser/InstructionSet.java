@@ -68,6 +68,18 @@ public class InstructionSet {
 	public final static byte Cov = 56;
 	public final static byte Covx = 57;
 
+	/* superinstructions (see InstructionFusion) */
+	public final static byte AndByte = 58;
+	public final static byte AndSet = 59;
+	public final static byte AndStr = 60;
+	public final static byte TPushCall = 61;
+
+	/* permutation (see Pperm) */
+	public final static byte PermBegin = 62;
+	public final static byte PermLoop = 63;
+	public final static byte PermTest = 64;
+	public final static byte PermSet = 65;
+
 	public final static byte Label = 127; // 7-bit
 
 	public static String stringfy(byte opcode) {
@@ -191,6 +203,24 @@ public class InstructionSet {
 		case Exit:
 			return "exit";
 
+		case AndByte:
+			return "andbyte";
+		case AndSet:
+			return "andset";
+		case AndStr:
+			return "andstr";
+		case TPushCall:
+			return "tpushcall";
+
+		case PermBegin:
+			return "permbegin";
+		case PermLoop:
+			return "permloop";
+		case PermTest:
+			return "permtest";
+		case PermSet:
+			return "permset";
+
 		default:
 			return "-";
 		}
@@ -1,7 +1,5 @@
 package nez.parser;
 
-import java.util.HashMap;
-
 import nez.NezProfier;
 import nez.Strategy;
 
@@ -14,6 +12,9 @@ public abstract class MemoTable {
 
 	abstract MemoEntry getMemo2(long pos, int memoPoint, int stateValue);
 
+	/* forgets the last input of length len; false if the window is too small */
+	abstract boolean reset(long len, int w);
+
 	int CountStored;
 	int CountUsed;
 	int CountInvalidated;
@@ -24,6 +25,59 @@ public abstract class MemoTable {
 		this.CountInvalidated = 0;
 	}
 
+	public final int getStoredCount() {
+		return this.CountStored;
+	}
+
+	public final int getUsedCount() {
+		return this.CountUsed;
+	}
+
+	public final int getInvalidatedCount() {
+		return this.CountInvalidated;
+	}
+
+	/* geometry */
+	public final static int DefaultWindowSize = 32;
+	public final static int BytesPerPosition = 1024; // input bytes per position kept
+	public final static int EntryBytes = 48; // approximate footprint of a slot
+	public final static long MaxSlots = 1L << 26;
+
+	int windowSize;
+	int memoPointSize;
+	long slotSize;
+
+	final void setGeometry(int w, int n, long slots) {
+		this.windowSize = w;
+		this.memoPointSize = n;
+		this.slotSize = slots;
+	}
+
+	/**
+	 * Returns last, cleared for the next input, if it is the kind of table
+	 * that newTable chooses and is large enough. A context keeps its table,
+	 * so matching one input after another does not allocate a table each
+	 * time.
+	 */
+	public static MemoTable newTable(MemoTable last, Strategy option, long length, int windowSize, int memoPointSize) {
+		if (last != null && last.memoPointSize == memoPointSize && last.getClass() == tableClass(option, memoPointSize)) {
+			if (last.reset(length, sizeWindow(length, windowSize, memoPointSize, Runtime.getRuntime()))) {
+				return last;
+			}
+		}
+		return newTable(option, length, windowSize, memoPointSize);
+	}
+
+	private static Class<?> tableClass(Strategy option, int memoPointSize) {
+		if (memoPointSize == 0) {
+			return NullTable.class;
+		}
+		if (option.isEnabled("Mpackrat", Strategy.Mpackrat)) {
+			return PackratHashTable.class;
+		}
+		return option.isEnabled("Msliding", Strategy.Msliding) ? SlidingWindowTable.class : ElasticTable.class;
+	}
+
 	public static MemoTable newTable(Strategy option, long length, int windowSize, int memoPointSize) {
 		if (memoPointSize == 0) {
 			return new NullTable(length, windowSize, memoPointSize);
@@ -31,11 +85,39 @@ public abstract class MemoTable {
 		if (option.isEnabled("Mpackrat", Strategy.Mpackrat)) {
 			return new PackratHashTable(length, windowSize, memoPointSize);
 		}
+		windowSize = sizeWindow(length, windowSize, memoPointSize, Runtime.getRuntime());
+		if (option.isEnabled("Msliding", Strategy.Msliding)) {
+			return new SlidingWindowTable(length, windowSize, memoPointSize);
+		}
 		return new ElasticTable(length, windowSize, memoPointSize);
 	}
 
+	/**
+	 * Chooses the number of positions kept per memo point. Unless w is given
+	 * (Mwindow=N), the window grows with the input, by one position for every
+	 * BytesPerPosition bytes, from DefaultWindowSize; the table then holds
+	 * w * n slots for n memo points. A window is never larger than the input
+	 * (plus EOF) and w * n slots must fit in a quarter of the heap that is
+	 * still available.
+	 */
+	static int sizeWindow(long length, int w, int n, Runtime rt) {
+		long window = w > 0 ? w : Math.max(DefaultWindowSize, length / BytesPerPosition);
+		if (window > length + 1) {
+			window = length + 1;
+		}
+		long used = rt.totalMemory() - rt.freeMemory();
+		long budget = Math.min((rt.maxMemory() - used) / 4 / EntryBytes, MaxSlots);
+		if (window * n > budget) {
+			window = Math.max(1, budget / n);
+		}
+		return (int) window;
+	}
+
 	public void record(NezProfier rec) {
 		rec.setText("M.TableType", this.getClass().getSimpleName());
+		rec.setCount("M.WindowSize", this.windowSize);
+		rec.setCount("M.MemoPoint", this.memoPointSize);
+		rec.setCount("M.Slots", this.slotSize);
 		rec.setCount("M.MemoStored", this.CountStored);
 		rec.setRatio("M.MemoHit", this.CountUsed, this.CountStored);
 		rec.setCount("M.Invalidated", this.CountInvalidated);
@@ -50,6 +132,7 @@ class NullTable extends MemoTable {
 	}
 
 	NullTable(long len, int w, int n) {
+		this.setGeometry(0, n, 0);
 		this.initStat();
 	}
 
@@ -67,19 +150,29 @@ class NullTable extends MemoTable {
 	MemoEntry getMemo2(long pos, int id, int stateValue) {
 		return null;
 	}
+
+	@Override
+	boolean reset(long len, int w) {
+		this.initStat();
+		return true;
+	}
 }
 
 class ElasticTable extends MemoTable {
 	private MemoEntryKey[] memoArray;
 	private final int shift;
+	private long base = 0; // added to positions, so that reset need not clear the slots
+	private long lastLength;
 
 	ElasticTable(long len, int w, int n) {
+		this.lastLength = len;
 		this.memoArray = new MemoEntryKey[w * n + 1];
 		for (int i = 0; i < this.memoArray.length; i++) {
 			this.memoArray[i] = new MemoEntryKey();
 			this.memoArray[i].key = -1;
 		}
 		this.shift = (int) (Math.log(n) / Math.log(2.0)) + 1;
+		this.setGeometry(w, n, this.memoArray.length);
 		this.initStat();
 	}
 
@@ -88,8 +181,19 @@ class ElasticTable extends MemoTable {
 		return new ElasticTable(len, w, n);
 	}
 
+	@Override
+	boolean reset(long len, int w) {
+		if (this.windowSize < Math.min(w, len + 1)) {
+			return false;
+		}
+		this.base += this.lastLength + 1;
+		this.lastLength = len;
+		this.initStat();
+		return true;
+	}
+
 	final long longkey(long pos, int memoPoint, int shift) {
-		return ((pos << shift) | memoPoint) & Long.MAX_VALUE;
+		return (((pos + base) << shift) | memoPoint) & Long.MAX_VALUE;
 	}
 
 	@Override
@@ -134,12 +238,114 @@ class ElasticTable extends MemoTable {
 
 }
 
+/**
+ * SlidingWindowTable keeps the last w positions (w rounded up to a power of
+ * two) for every memo point. A slot is addressed directly by (pos mod w, memo
+ * point), so positions inside the window never collide and a slot is reused
+ * once the parse head has moved w bytes past it.
+ */
+
+class SlidingWindowTable extends MemoTable {
+	private final MemoEntryKey[] memoArray;
+	private final int mask;
+	private final int memoPointSize;
+	private long base = 0; // see ElasticTable
+	private long lastLength;
+
+	SlidingWindowTable(long len, int w, int n) {
+		this.lastLength = len;
+		int window = 1;
+		while (window < w) {
+			window <<= 1;
+		}
+		this.mask = window - 1;
+		this.memoPointSize = n;
+		this.memoArray = new MemoEntryKey[window * n];
+		for (int i = 0; i < this.memoArray.length; i++) {
+			this.memoArray[i] = new MemoEntryKey();
+		}
+		this.setGeometry(window, n, this.memoArray.length);
+		this.initStat();
+	}
+
+	@Override
+	public MemoTable newMemoTable(long len, int w, int n) {
+		return new SlidingWindowTable(len, w, n);
+	}
+
+	@Override
+	boolean reset(long len, int w) {
+		if (this.windowSize < Math.min(w, len + 1)) {
+			return false;
+		}
+		this.base += this.lastLength + 1;
+		this.lastLength = len;
+		this.initStat();
+		return true;
+	}
+
+	private final MemoEntryKey slot(long pos, int memoPoint) {
+		return this.memoArray[(int) (pos & mask) * memoPointSize + memoPoint];
+	}
+
+	@Override
+	void setMemo(long pos, int memoPoint, boolean failed, Object result, int consumed, int stateValue) {
+		MemoEntryKey m = slot(pos, memoPoint);
+		m.key = pos + base;
+		m.failed = failed;
+		m.result = result;
+		m.consumed = consumed;
+		m.stateValue = stateValue;
+		this.CountStored += 1;
+	}
+
+	@Override
+	final MemoEntry getMemo(long pos, int memoPoint) {
+		MemoEntryKey m = slot(pos, memoPoint);
+		if (m.key == pos + base) {
+			this.CountUsed += 1;
+			return m;
+		}
+		return null;
+	}
+
+	@Override
+	final MemoEntry getMemo2(long pos, int memoPoint, int stateValue) {
+		MemoEntryKey m = slot(pos, memoPoint);
+		if (m.key == pos + base) {
+			if (m.stateValue == stateValue) {
+				this.CountUsed += 1;
+				return m;
+			}
+			this.CountInvalidated += 1;
+		}
+		return null;
+	}
+
+}
+
+/**
+ * PackratHashTable keeps every memo. Positions are hashed with open
+ * addressing into primitive keys, and the entries of a position are chained;
+ * entries are recycled on reset, so no key or entry is allocated once the
+ * table has grown to fit the inputs.
+ */
+
 class PackratHashTable extends MemoTable {
-	HashMap<Long, MemoEntryList> memoMap;
+	private long[] keys;
+	private MemoEntryList[] heads;
+	private int count = 0;
 	private MemoEntryList UnusedMemo = null;
 
 	PackratHashTable(long len, int w, int n) {
-		this.memoMap = new HashMap<Long, MemoEntryList>(w * n);
+		int size = 16;
+		while (size < w * n * 2) {
+			size <<= 1;
+		}
+		this.keys = new long[size];
+		this.heads = new MemoEntryList[size];
+		this.setGeometry(0, n, 0);
+		this.initStat();
 	}
 
 	@Override
@@ -147,6 +353,19 @@ class PackratHashTable extends MemoTable {
 		return new PackratHashTable(len, w, n);
 	}
 
+	@Override
+	boolean reset(long len, int w) {
+		for (int i = 0; i < heads.length; i++) {
+			if (heads[i] != null) {
+				unusedMemo(heads[i]);
+				heads[i] = null;
+			}
+		}
+		this.count = 0;
+		this.initStat();
+		return true;
+	}
+
 	private final MemoEntryList newMemo() {
 		if (UnusedMemo != null) {
 			MemoEntryList m = this.UnusedMemo;
@@ -166,9 +385,32 @@ class PackratHashTable extends MemoTable {
 		UnusedMemo = s;
 	}
 
+	private int indexOf(long pos) {
+		int mask = keys.length - 1;
+		int i = (int) ((pos * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		while (heads[i] != null && keys[i] != pos) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void grow() {
+		long[] oldKeys = this.keys;
+		MemoEntryList[] oldHeads = this.heads;
+		this.keys = new long[oldKeys.length * 2];
+		this.heads = new MemoEntryList[oldHeads.length * 2];
+		for (int i = 0; i < oldHeads.length; i++) {
+			if (oldHeads[i] != null) {
+				int j = indexOf(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				heads[j] = oldHeads[i];
+			}
+		}
+	}
+
 	@Override
 	protected MemoEntry getMemo(long pos, int memoPoint) {
-		MemoEntryList m = this.memoMap.get(pos);
+		MemoEntryList m = this.heads[indexOf(pos)];
 		while (m != null) {
 			if (m.memoPoint == memoPoint) {
 				this.CountUsed += 1;
@@ -181,7 +423,7 @@ class PackratHashTable extends MemoTable {
 
 	@Override
 	protected MemoEntry getMemo2(long pos, int memoPoint, int stateValue) {
-		MemoEntryList m = this.memoMap.get(pos);
+		MemoEntryList m = this.heads[indexOf(pos)];
 		while (m != null) {
 			if (m.memoPoint == memoPoint) {
 				if (m.stateValue == stateValue) {
@@ -203,9 +445,17 @@ class PackratHashTable extends MemoTable {
 		m.stateValue = stateValue;
 		m.result = result;
 		m.consumed = consumed;
-		Long key = pos;
-		m.next = this.memoMap.get(key);
-		this.memoMap.put(key, m);
+		int i = indexOf(pos);
+		if (heads[i] == null) {
+			if ((count + 1) * 2 > keys.length) {
+				grow();
+				i = indexOf(pos);
+			}
+			keys[i] = pos;
+			count++;
+		}
+		m.next = this.heads[i];
+		this.heads[i] = m;
 		this.CountStored += 1;
 	}
 
@@ -1,5 +1,6 @@
 package nez.parser;
 
+import java.util.HashMap;
 import java.util.List;
 
 import nez.Parser;
@@ -12,6 +13,8 @@ public class NezCode {
 	final GenerativeGrammar gg;
 	final UList<Instruction> codeList;
 	final List<MemoPoint> memoPointList;
+	int unfusedSize = -1;
+	final HashMap<String, Instruction> entryMap = new HashMap<String, Instruction>();
 
 	public NezCode(GenerativeGrammar gg, UList<Instruction> codeList, List<MemoPoint> memoPointList) {
 		this.gg = gg;
@@ -23,14 +26,29 @@ public class NezCode {
 		return codeList.get(0);
 	}
 
+	/* any compiled production can be entered; see Parser.parse(start, sc) */
+	public final Instruction getEntryPoint(String name) {
+		String uname = gg.getEntryPoint(name);
+		return entryMap.get(uname != null ? uname : name);
+	}
+
 	public final int getInstructionSize() {
 		return codeList.size();
 	}
 
+	/* the instruction size before InstructionFusion */
+	public final int getUnfusedInstructionSize() {
+		return this.unfusedSize == -1 ? codeList.size() : this.unfusedSize;
+	}
+
 	public final int getMemoPointSize() {
 		return this.memoPointList != null ? this.memoPointList.size() : 0;
 	}
 
+	public final List<MemoPoint> getMemoPointList() {
+		return this.memoPointList;
+	}
+
 	public final void dumpMemoPoints() {
 		if (this.memoPointList != null) {
 			Verbose.println("ID\tPEG\tCount\tHit\tFail\tMean");
@@ -55,7 +73,7 @@ public class NezCode {
 		ByteCoder c = new ByteCoder();
 		code.encode(c);
 		Verbose.println("generating " + path);
-		c.writeTo(path);
+		c.writeTo(path, parser.getStrategy().getInt("moz", ByteCoder.Version));
 	}
 
 }
@@ -2,6 +2,7 @@ package nez.parser;
 
 import nez.Strategy;
 import nez.Verbose;
+import nez.lang.Expression;
 import nez.lang.Production;
 import nez.util.UList;
 
@@ -31,9 +32,52 @@ public abstract class NezCompiler extends AbstractGenerator {
 			}
 			// Verbose.debug("\t" + inst.id + "\t" + inst);
 		}
+		int unfusedSize = codeList.size();
+		if (strategy != null && strategy.isEnabled("Ofusion", Strategy.Ofusion)) {
+			codeList = new InstructionFusion().fuse(codeList, this.getLayoutRoots(codeList));
+		}
 		long t2 = System.nanoTime();
 		Verbose.printElapsedTime("CompilingTime", t, t2);
-		return new NezCode(gg, codeList, gg.memoPointList);
+		NezCode code = new NezCode(gg, codeList, gg.memoPointList);
+		code.unfusedSize = unfusedSize;
+		for (Instruction inst : codeList) {
+			if (inst instanceof ILabel) {
+				code.entryMap.put(((ILabel) inst).rule.getLocalName(), inst);
+			}
+		}
+		return code;
+	}
+
+	private UList<Instruction> getLayoutRoots(UList<Instruction> codeList) {
+		UList<Instruction> roots = new UList<Instruction>(new Instruction[64]);
+		for (Instruction inst : codeList) {
+			if (inst instanceof ILabel) {
+				roots.add(inst);
+			}
+		}
+		if (this.cachedInstruction != null) {
+			for (Instruction inst : this.cachedInstruction) {
+				roots.add(inst);
+			}
+		}
+		return roots;
+	}
+
+	private ParserProfile profile = null;
+
+	public final void setProfile(ParserProfile profile) {
+		this.profile = profile;
+	}
+
+	protected final boolean isProfiling() {
+		return this.profile != null;
+	}
+
+	protected final Instruction encodeAlternativeCount(Expression e, Instruction next) {
+		if (this.profile != null) {
+			return this.profile.encodeAlternativeCount(e, next);
+		}
+		return next;
 	}
 
 	private Production encodingProduction;
@@ -70,6 +114,9 @@ public abstract class NezCompiler extends AbstractGenerator {
 		f.compiled = encode(f.getExpression(), next, null/* failjump */);
 		if (!f.inlining) {
 			f.compiled = Coverage.encodeEnterCoverage(p, f.compiled);
+			if (this.profile != null) {
+				f.compiled = this.profile.encodeCallCount(p, f.compiled);
+			}
 		}
 		Instruction block = new ILabel(p, f.compiled);
 		this.layoutCode(codeList, block);
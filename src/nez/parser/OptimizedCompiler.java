@@ -5,6 +5,7 @@ import java.util.HashMap;
 import nez.Strategy;
 import nez.Verbose;
 import nez.lang.Expression;
+import nez.lang.PossibleAcceptance;
 import nez.lang.Production;
 import nez.lang.expr.Cany;
 import nez.lang.expr.Cbyte;
@@ -118,6 +119,7 @@ public class OptimizedCompiler extends PlainCompiler {
 	private final Instruction encodeFirstChoice(Pchoice choice, Instruction next, Instruction failjump) {
 		Instruction[] compiled = new Instruction[choice.firstInners.length];
 		// Verbose.debug("TrieTree: " + choice.isTrieTree + " " + choice);
+		Expression[] owners = new Expression[choice.firstInners.length];
 		IFirst dispatch = new IFirst(choice, commonFailure);
 		for (int ch = 0; ch < choice.predictedCase.length; ch++) {
 			Expression predicted = choice.predictedCase[ch];
@@ -125,25 +127,47 @@ public class OptimizedCompiler extends PlainCompiler {
 				continue;
 			}
 			int index = findIndex(choice, predicted);
+			Expression owner = predicted instanceof Pchoice ? null : findOwner(choice, ch);
 			Instruction inst = compiled[index];
-			if (inst == null) {
+			if (inst == null || owners[index] != owner) {
 				// System.out.println("creating '" + (char)ch + "'("+ch+"): " +
 				// e);
 				if (predicted instanceof Pchoice) {
 					assert (((Pchoice) predicted).predictedCase == null);
 					inst = this.encodeUnoptimizedChoice(choice, next, failjump);
 				} else {
-					inst = encode(predicted, next, failjump);
+					inst = encode(predicted, encodeAlternativeCount(owner, next), failjump);
+				}
+				if (compiled[index] == null) {
+					compiled[index] = inst;
+					owners[index] = owner;
 				}
-				compiled[index] = inst;
 			}
 			dispatch.setJumpTable(ch, inst);
 		}
 		return dispatch;
 	}
 
+	/*
+	 * the alternative of the choice that is selected by the byte ch; a
+	 * predicted expression may be factored or inlined from it, so the profile
+	 * counts it under the alternative, as the unoptimized choice does.
+	 */
+	private Expression findOwner(Pchoice choice, int ch) {
+		if (!isProfiling()) {
+			return null;
+		}
+		for (Expression sub : choice) {
+			if (sub.acceptByte(ch) != PossibleAcceptance.Reject) {
+				return sub;
+			}
+		}
+		return null;
+	}
+
 	private final Instruction encodeDFirstChoice(Pchoice choice, Instruction next, Instruction failjump) {
 		Instruction[] compiled = new Instruction[choice.firstInners.length];
+		Expression[] owners = new Expression[choice.firstInners.length];
 		IDFirst dispatch = new IDFirst(choice, commonFailure);
 		for (int ch = 0; ch < choice.predictedCase.length; ch++) {
 			Expression predicted = choice.predictedCase[ch];
@@ -151,15 +175,19 @@ public class OptimizedCompiler extends PlainCompiler {
 				continue;
 			}
 			int index = findIndex(choice, predicted);
+			Expression owner = findOwner(choice, ch);
 			Instruction inst = compiled[index];
-			if (inst == null) {
+			if (inst == null || owners[index] != owner) {
 				Expression next2 = predicted.getNext();
 				if (next2 != null) {
-					inst = encode(next2, next, failjump);
+					inst = encode(next2, encodeAlternativeCount(owner, next), failjump);
 				} else {
-					inst = next;
+					inst = encodeAlternativeCount(owner, next);
+				}
+				if (compiled[index] == null) {
+					compiled[index] = inst;
+					owners[index] = owner;
 				}
-				compiled[index] = inst;
 			}
 			dispatch.setJumpTable(ch, inst);
 		}
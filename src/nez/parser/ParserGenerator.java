@@ -16,6 +16,7 @@ import nez.lang.expr.Pchoice;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Pone;
 import nez.lang.expr.Poption;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Psequence;
 import nez.lang.expr.Pzero;
 import nez.lang.expr.Tcapture;
@@ -36,6 +37,7 @@ import nez.lang.expr.Xlocal;
 import nez.lang.expr.Xmatch;
 import nez.lang.expr.Xon;
 import nez.util.FileBuilder;
+import nez.util.ByteSet;
 import nez.util.StringUtils;
 
 public abstract class ParserGenerator extends AbstractGenerator {
@@ -228,18 +230,16 @@ public abstract class ParserGenerator extends AbstractGenerator {
 		return this;
 	}
 
-	protected ParserGenerator C(String name, boolean[] arg) {
+	protected ParserGenerator C(String name, ByteSet arg) {
 		int cnt = 0;
 		W(name);
 		W(OpenClosure);
-		for (int c = 0; c < arg.length; c++) {
-			if (arg[c]) {
-				if (cnt > 0) {
-					W(ClosureDelim);
-				}
-				W(String.valueOf(c));
-				cnt++;
+		for (int c = arg.nextByte(0); c != -1; c = arg.nextByte(c + 1)) {
+			if (cnt > 0) {
+				W(ClosureDelim);
 			}
+			W(String.valueOf(c));
+			cnt++;
 		}
 		W(CloseClosure);
 		return this;
@@ -279,6 +279,10 @@ public abstract class ParserGenerator extends AbstractGenerator {
 
 	public abstract void visitPchoice(Pchoice p);
 
+	public void visitPperm(Pperm p) {
+		this.visitExpression(p.expand());
+	}
+
 	public abstract void visitNonTerminal(NonTerminal p);
 
 	// AST Construction
@@ -394,6 +398,12 @@ public abstract class ParserGenerator extends AbstractGenerator {
 		return null;
 	}
 
+	@Override
+	public final Instruction encodePperm(Pperm p, Instruction next, Instruction failjump) {
+		this.visitPperm(p);
+		return null;
+	}
+
 	@Override
 	public final Instruction encodeNonTerminal(NonTerminal p, Instruction next, Instruction failjump) {
 		this.visitNonTerminal(p);
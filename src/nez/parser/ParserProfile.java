@@ -0,0 +1,176 @@
+package nez.parser;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.TreeMap;
+
+import nez.ast.Tree;
+import nez.lang.Expression;
+import nez.lang.Production;
+
+/**
+ * ParserProfile records per-production call counts, per-alternative success
+ * counts and memo statistics over a training corpus. The saved profile is
+ * used by GrammarOptimizer (option Oprofile=file) on the next build.
+ */
+
+public class ParserProfile {
+	/* thresholds used by the profile-guided optimizer */
+	public final static int MemoSampleSize = 32;
+	public final static double HotProductionRatio = 0.05;
+
+	final TreeMap<String, Counter> callMap = new TreeMap<String, Counter>();
+	final TreeMap<String, Counter> altMap = new TreeMap<String, Counter>();
+	final TreeMap<String, long[]> memoMap = new TreeMap<String, long[]>();
+	long totalCount = 0;
+
+	public ParserProfile() {
+	}
+
+	static class Counter {
+		long count;
+
+		Counter(long count) {
+			this.count = count;
+		}
+	}
+
+	private static Counter getCounter(TreeMap<String, Counter> map, String key) {
+		Counter c = map.get(key);
+		if (c == null) {
+			c = new Counter(0);
+			map.put(key, c);
+		}
+		return c;
+	}
+
+	public final static String keyOf(Expression e) {
+		if (e.getSourcePosition() instanceof Tree<?>) {
+			Tree<?> t = (Tree<?>) e.getSourcePosition();
+			return t.getSource().getResourceName() + ":" + t.getSourcePosition() + ":" + e.getPredicate();
+		}
+		return e.toString().replace('\t', ' ').replace('\n', ' ');
+	}
+
+	/* recording */
+
+	public final Instruction encodeCallCount(Production p, Instruction next) {
+		return new ICallCount(getCounter(callMap, p.getLocalName()), next);
+	}
+
+	public final Instruction encodeAlternativeCount(Expression e, Instruction next) {
+		return new ICallCount(getCounter(altMap, keyOf(e)), next);
+	}
+
+	public final void recordMemoPoints(List<MemoPoint> memoPointList) {
+		if (memoPointList != null) {
+			for (MemoPoint m : memoPointList) {
+				this.memoMap.put(m.label, new long[] { m.memoHit + m.memoFailHit, m.memoMiss });
+			}
+		}
+	}
+
+	/* queries */
+
+	public final long getTotalCallCount() {
+		if (this.totalCount == 0) {
+			for (Counter c : callMap.values()) {
+				this.totalCount += c.count;
+			}
+		}
+		return this.totalCount;
+	}
+
+	public final long getCallCount(String name) {
+		Counter c = callMap.get(name);
+		return c == null ? 0 : c.count;
+	}
+
+	public final long getAlternativeCount(Expression e) {
+		Counter c = altMap.get(keyOf(e));
+		return c == null ? 0 : c.count;
+	}
+
+	public final boolean isHotProduction(String name) {
+		long total = getTotalCallCount();
+		return total > 0 && getCallCount(name) >= total * HotProductionRatio;
+	}
+
+	public final boolean hasMemoStat(String name) {
+		return this.memoMap.containsKey(name);
+	}
+
+	public final boolean isUselessMemo(String name) {
+		long[] stat = this.memoMap.get(name);
+		if (stat != null) {
+			return stat[1] >= MemoSampleSize && stat[0] == 0;
+		}
+		return false;
+	}
+
+	/* file format: one tab-separated record per line */
+
+	public final void save(String path) throws IOException {
+		PrintWriter w = new PrintWriter(path, "UTF-8");
+		w.println("# nez grammar profile");
+		for (String key : callMap.keySet()) {
+			w.println("call\t" + key + "\t" + callMap.get(key).count);
+		}
+		for (String key : altMap.keySet()) {
+			w.println("alt\t" + key + "\t" + altMap.get(key).count);
+		}
+		for (String key : memoMap.keySet()) {
+			long[] stat = memoMap.get(key);
+			w.println("memo\t" + key + "\t" + stat[0] + "\t" + stat[1]);
+		}
+		w.close();
+	}
+
+	public final static ParserProfile load(String path) throws IOException {
+		ParserProfile profile = new ParserProfile();
+		BufferedReader reader = new BufferedReader(new FileReader(path));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] t = line.split("\t");
+				try {
+					if (t[0].equals("call") && t.length == 3) {
+						profile.callMap.put(t[1], new Counter(Long.parseLong(t[2])));
+					} else if (t[0].equals("alt") && t.length == 3) {
+						profile.altMap.put(t[1], new Counter(Long.parseLong(t[2])));
+					} else if (t[0].equals("memo") && t.length == 4) {
+						profile.memoMap.put(t[1], new long[] { Long.parseLong(t[2]), Long.parseLong(t[3]) });
+					}
+				} catch (NumberFormatException e) {
+					// skip broken record
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return profile;
+	}
+}
+
+class ICallCount extends Instruction {
+	final ParserProfile.Counter counter;
+
+	ICallCount(ParserProfile.Counter counter, Instruction next) {
+		super(InstructionSet.Cov, null, next);
+		this.counter = counter;
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder c) {
+		// No argument
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		this.counter.count++;
+		return this.next;
+	}
+}
@@ -13,6 +13,7 @@ import nez.lang.expr.Pchoice;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Pone;
 import nez.lang.expr.Poption;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Psequence;
 import nez.lang.expr.Pzero;
 import nez.lang.expr.Tcapture;
@@ -73,8 +74,47 @@ public class PlainCompiler extends NezCompiler {
 
 	@Override
 	public Instruction encodePoption(Poption p, Instruction next) {
-		Instruction pop = new ISucc(p, next);
-		return new IAlt(p, next, encode(p.get(0), pop, next));
+		return new IAlt(p, next, encodeCommitted(p, p.get(0), next, next));
+	}
+
+	/*
+	 * Encodes e and pops the fail point of owner after e, or before a suffix
+	 * of e that cannot fail, as in ($(A) (',' $(A))*)?. Then no fail point
+	 * outlives the part that can fail, which lets TreeStream write the links
+	 * of the suffix while it is parsed.
+	 */
+	protected final Instruction encodeCommitted(Expression owner, Expression e, Instruction next, Instruction failjump) {
+		int k = e.size();
+		if (e instanceof Psequence) {
+			while (k > 1 && isUnfailing(e.get(k - 1))) {
+				k--;
+			}
+		}
+		if (!(e instanceof Psequence) || k == e.size()) {
+			return encode(e, new ISucc(owner, next), failjump);
+		}
+		Instruction suffix = next;
+		for (int i = e.size() - 1; i >= k; i--) {
+			suffix = encode(e.get(i), suffix, failjump);
+		}
+		suffix = new ISucc(owner, suffix);
+		for (int i = k - 1; i >= 0; i--) {
+			suffix = encode(e.get(i), suffix, failjump);
+		}
+		return suffix;
+	}
+
+	private static boolean isUnfailing(Expression e) {
+		if ((e instanceof Pzero && !(e instanceof Pone)) || e instanceof Poption) {
+			return true;
+		}
+		if (e instanceof Ttag || e instanceof Treplace || e instanceof Tcapture) {
+			return true;
+		}
+		if (e instanceof Tlink) {
+			return isUnfailing(e.get(0));
+		}
+		return false;
 	}
 
 	@Override
@@ -117,14 +157,31 @@ public class PlainCompiler extends NezCompiler {
 
 	@Override
 	public Instruction encodePchoice(Pchoice p, Instruction next, Instruction failjump) {
-		Instruction nextChoice = encode(p.get(p.size() - 1), next, failjump);
+		Expression last = p.get(p.size() - 1);
+		Instruction nextChoice = encode(last, encodeAlternativeCount(last, next), failjump);
 		for (int i = p.size() - 2; i >= 0; i--) {
 			Expression e = p.get(i);
-			nextChoice = new IAlt(e, nextChoice, encode(e, new ISucc(e, next), nextChoice));
+			nextChoice = new IAlt(e, nextChoice, encodeCommitted(e, e, encodeAlternativeCount(e, next), nextChoice));
 		}
 		return nextChoice;
 	}
 
+	@Override
+	public Instruction encodePperm(Pperm p, Instruction next, Instruction failjump) {
+		IPermLoop loop = new IPermLoop(p, next);
+		Instruction nextMember = null;
+		for (int i = p.size() - 1; i >= 0; i--) {
+			Expression e = p.get(i);
+			if (nextMember == null) {
+				nextMember = new IPermTest(e, i, encode(e, new IPermSet(e, i, loop), failjump));
+			} else {
+				nextMember = new IAlt(e, nextMember, new IPermTest(e, i, encode(e, new ISucc(e, new IPermSet(e, i, loop)), nextMember)));
+			}
+		}
+		loop.next = nextMember;
+		return new IPermBegin(p, loop);
+	}
+
 	@Override
 	public Instruction encodeNonTerminal(NonTerminal n, Instruction next, Instruction failjump) {
 		Production p = n.getProduction();
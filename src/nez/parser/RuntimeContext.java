@@ -1,5 +1,7 @@
 package nez.parser;
 
+import java.util.Arrays;
+
 import nez.NezProfier;
 import nez.Verbose;
 import nez.ast.ASTMachine;
@@ -77,108 +79,192 @@ public abstract class RuntimeContext implements Source {
 
 	// ----------------------------------------------------------------------
 
+	// The backtracking state is kept in parallel primitive arrays. The
+	// value stack holds return addresses, saved positions, symbol save
+	// points and AST transaction points. Each choice point (fail frame) holds
+	// a position, a symbol save point, an AST transaction point, a fail
+	// target and the height of the value stack when it was pushed. Only fail
+	// targets and return addresses are stored as objects.
+
 	private static int StackSize = 64;
-	private StackData[] stacks = null;
+	private long[] stackValues = null;
+	private Object[] stackRefs = null;
 	private int usedStackTop;
+
+	private long[] failPositions = null;
+	private int[] failSavePoints = null;
+	private int[] failStackTops = null;
+	private Object[] failTargets = null;
+	private int[] failTransactions = null;
 	private int catchStackTop;
 
+	private final static IExit Accept = new IExit(true);
+	private final static IExit Reject = new IExit(false);
+
+	/*
+	 * The stacks (grown to fit the last input) and, when no tree is built,
+	 * the AST machine are kept for the next input, so that repeated matching
+	 * allocates nothing once it has warmed up.
+	 */
 	public final void init(MemoTable memoTable, Tree<?> prototype) {
-		this.astMachine = new ASTMachine(this, prototype);
-		this.stacks = new StackData[StackSize];
-		for (int i = 0; i < StackSize; i++) {
-			this.stacks[i] = new StackData();
+		if (this.astMachine == null || !this.astMachine.reset(prototype)) {
+			this.astMachine = new ASTMachine(this, prototype);
+		}
+		if (this.stackValues == null) {
+			this.stackValues = new long[StackSize];
+			this.stackRefs = new Object[StackSize];
+			this.failPositions = new long[StackSize];
+			this.failSavePoints = new int[StackSize];
+			this.failStackTops = new int[StackSize];
+			this.failTargets = new Object[StackSize];
+			this.failTransactions = new int[StackSize];
 		}
-		this.stacks[0].ref = null;
-		this.stacks[0].value = 0;
-		this.stacks[1].ref = new IExit(false);
-		this.stacks[1].value = this.getPosition();
-		this.stacks[2].ref = astMachine.saveTransactionPoint();
-		this.stacks[2].value = symbolTable.savePoint();
-		this.stacks[3].ref = new IExit(true);
-		this.stacks[3].value = 0;
 		this.catchStackTop = 0;
-		this.usedStackTop = 3;
+		this.failTargets[0] = Reject;
+		this.failPositions[0] = this.getPosition();
+		this.failTransactions[0] = astMachine.saveTransactionPoint();
+		this.failSavePoints[0] = symbolTable.savePoint();
+		this.failStackTops[0] = -1;
+		this.usedStackTop = 0;
+		this.stackRefs[0] = Accept;
 		this.memoTable = memoTable;
 		if (Verbose.PackratParsing) {
 			Verbose.println("MemoTable: " + this.memoTable.getClass().getSimpleName());
 		}
 	}
 
-	public final StackData getUsedStackTop() {
-		return stacks[usedStackTop];
+	/* starts over on a new input; see ByteArrayContext.reset */
+	protected final void restart() {
+		this.pos = 0;
+		this.head_pos = 0;
+		this.symbolTable.rollBack(0);
+	}
+
+	private void growStack() {
+		int newSize = stackValues.length * 2;
+		stackValues = Arrays.copyOf(stackValues, newSize);
+		stackRefs = Arrays.copyOf(stackRefs, newSize);
+	}
+
+	private void growFailStack() {
+		int newSize = failPositions.length * 2;
+		failPositions = Arrays.copyOf(failPositions, newSize);
+		failSavePoints = Arrays.copyOf(failSavePoints, newSize);
+		failStackTops = Arrays.copyOf(failStackTops, newSize);
+		failTargets = Arrays.copyOf(failTargets, newSize);
+		failTransactions = Arrays.copyOf(failTransactions, newSize);
+	}
+
+	public final void pushValue(long value) {
+		usedStackTop++;
+		if (usedStackTop == stackValues.length) {
+			growStack();
+		}
+		stackValues[usedStackTop] = value;
+		stackRefs[usedStackTop] = null;
+	}
+
+	public final long popValue() {
+		return stackValues[usedStackTop--];
 	}
 
-	public final StackData newUnusedStack() {
+	public final void pushRef(Object ref) {
 		usedStackTop++;
-		if (stacks.length == usedStackTop) {
-			StackData[] newstack = new StackData[stacks.length * 2];
-			System.arraycopy(stacks, 0, newstack, 0, stacks.length);
-			for (int i = this.stacks.length; i < newstack.length; i++) {
-				newstack[i] = new StackData();
-			}
-			stacks = newstack;
+		if (usedStackTop == stackValues.length) {
+			growStack();
 		}
-		return stacks[usedStackTop];
+		stackRefs[usedStackTop] = ref;
 	}
 
-	public final StackData popStack() {
-		StackData s = stacks[this.usedStackTop];
-		usedStackTop--;
-		// assert(this.catchStackTop <= this.usedStackTop);
-		return s;
+	public final Object popRef() {
+		return stackRefs[usedStackTop--];
+	}
+
+	/* return addresses on the value stack, innermost first (SamplingMachine) */
+	final int copyReturnAddresses(Instruction[] buf, int offset, int max) {
+		int n = 0;
+		for (int i = usedStackTop; i > 0 && n < max; i--) {
+			Object ref = stackRefs[i];
+			if (ref instanceof Instruction) {
+				buf[offset + n] = (Instruction) ref;
+				n++;
+			}
+		}
+		return n;
 	}
 
 	public final void pushAlt(Instruction failjump/* op.failjump */) {
-		StackData s0 = newUnusedStack();
-		StackData s1 = newUnusedStack();
-		StackData s2 = newUnusedStack();
-		s0.value = catchStackTop;
-		catchStackTop = usedStackTop - 2;
-		s1.ref = failjump;
-		s1.value = this.pos;
-		s2.ref = astMachine.saveTransactionPoint();
-		s2.value = symbolTable.savePoint();
+		int top = ++catchStackTop;
+		if (top == failPositions.length) {
+			growFailStack();
+		}
+		failPositions[top] = this.pos;
+		failSavePoints[top] = symbolTable.savePoint();
+		failStackTops[top] = usedStackTop;
+		failTargets[top] = failjump;
+		failTransactions[top] = astMachine.saveTransactionPoint();
 	}
 
 	public final long popAlt() {
-		StackData s0 = stacks[catchStackTop];
-		StackData s1 = stacks[catchStackTop + 1];
-		long pos = s1.value;
-		usedStackTop = catchStackTop - 1;
-		catchStackTop = (int) s0.value;
-		return pos;
+		int top = catchStackTop--;
+		usedStackTop = failStackTops[top];
+		return failPositions[top];
 	}
 
 	public final Instruction fail() {
-		StackData s0 = stacks[catchStackTop];
-		StackData s1 = stacks[catchStackTop + 1];
-		StackData s2 = stacks[catchStackTop + 2];
-		usedStackTop = catchStackTop - 1;
-		catchStackTop = (int) s0.value;
-		if (s1.value < this.pos) {
+		int top = catchStackTop--;
+		long failPosition = failPositions[top];
+		usedStackTop = failStackTops[top];
+		if (failPosition < this.pos) {
 			if (this.lprof != null) {
-				this.lprof.statBacktrack(s1.value, this.pos);
+				this.lprof.statBacktrack(failPosition, this.pos);
 			}
-			this.rollback(s1.value);
+			this.rollback(failPosition);
 		}
-		this.astMachine.rollTransactionPoint(s2.ref);
-		this.symbolTable.rollBack((int) s2.value);
-		assert (s1.ref != null);
-		return (Instruction) s1.ref;
+		this.astMachine.rollTransactionPoint(failTransactions[top]);
+		this.symbolTable.rollBack(failSavePoints[top]);
+		assert (failTargets[top] != null);
+		return (Instruction) failTargets[top];
 	}
 
 	public final Instruction skip(Instruction next) {
-		StackData s1 = stacks[catchStackTop + 1];
-		if (s1.value == this.pos) {
+		int top = catchStackTop;
+		if (failPositions[top] == this.pos) {
 			return fail();
 		}
-		s1.value = this.pos;
-		StackData s2 = stacks[catchStackTop + 2];
-		s2.ref = astMachine.saveTransactionPoint();
-		s2.value = symbolTable.savePoint();
+		failPositions[top] = this.pos;
+		failTransactions[top] = astMachine.saveTransactionPoint();
+		failSavePoints[top] = symbolTable.savePoint();
+		if (astMachine.isStreaming()) {
+			flushTreeStream();
+		}
 		return next;
 	}
 
+	/*
+	 * Only the logs below every live fail point are streamed, since no
+	 * backtracking (short of failing the whole parse) can undo them. The
+	 * streamed links are compacted if they reach the last log.
+	 */
+	private void flushTreeStream() {
+		int last = astMachine.saveTransactionPoint();
+		int limit = last;
+		for (int i = 1; i <= catchStackTop; i++) {
+			if (failTransactions[i] < limit) {
+				limit = failTransactions[i];
+			}
+		}
+		int root = astMachine.flushTreeStream(limit);
+		if (root > 0) {
+			int compacted = astMachine.compactTreeStream();
+			for (int i = 1; i <= catchStackTop; i++) {
+				if (failTransactions[i] == last) {
+					failTransactions[i] = compacted;
+				}
+			}
+		}
+	}
+
 	// // ----------------------------------------------------------------------
 	// // Instruction
 	//
@@ -394,6 +480,10 @@ public abstract class RuntimeContext implements Source {
 	// Memoization
 	MemoTable memoTable;
 
+	public final MemoTable getMemoTable() {
+		return this.memoTable;
+	}
+
 	public final void setMemo(long pos, int memoId, boolean failed, Object result, int consumed, boolean state) {
 		memoTable.setMemo(pos, memoId, failed, result, consumed, state ? symbolTable.getState() : 0);
 	}
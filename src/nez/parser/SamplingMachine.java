@@ -0,0 +1,177 @@
+package nez.parser;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import nez.io.SourceContext;
+
+/**
+ * SamplingMachine runs the parser like ParsingMachine, but every interval
+ * instructions (and at most once per period) it records the parsing position
+ * and the call stack into a fixed-size ring buffer. The stack is read from
+ * the return addresses on the value stack, so nothing is done per call or
+ * per instruction. Samples survive across inputs and can be dumped at any
+ * time, also from another thread (best effort, a racing sample may be torn).
+ * Tail calls fused by InstructionFusion do not leave a frame.
+ */
+
+public class SamplingMachine extends ParsingMachine {
+	public final static int DefaultInterval = 4096;
+	public final static int DefaultCapacity = 4096;
+	public final static int MaxDepth = 32;
+
+	private final int interval;
+	private final long period;
+	private final int capacity;
+	private final long[] positions;
+	private final int[] depths;
+	private final Instruction[] frames;
+	private long sampleCount = 0;
+	private long lastSampleTime = 0;
+	private IdentityHashMap<Instruction, String> callMap = null;
+
+	public SamplingMachine(int capacity, int interval, long periodMicros) {
+		this.capacity = capacity > 0 ? capacity : DefaultCapacity;
+		this.interval = interval > 0 ? interval : DefaultInterval;
+		this.period = periodMicros * 1000;
+		this.positions = new long[this.capacity];
+		this.depths = new int[this.capacity];
+		this.frames = new Instruction[this.capacity * MaxDepth];
+	}
+
+	public final void setCode(NezCode code) {
+		IdentityHashMap<Instruction, String> map = new IdentityHashMap<Instruction, String>();
+		for (Instruction inst : code.codeList) {
+			if (inst instanceof ICall) {
+				map.put(((ICall) inst).jump, ((ICall) inst).getNonTerminalName());
+			}
+			if (inst instanceof ITPushCall) {
+				map.put(((ITPushCall) inst).jump, ((ITPushCall) inst).name);
+			}
+		}
+		this.callMap = map;
+	}
+
+	@Override
+	public boolean run(Instruction code, SourceContext sc) {
+		boolean result = false;
+		try {
+			while (true) {
+				for (int i = interval; i > 0; i--) {
+					code = code.exec(sc);
+				}
+				sample(sc);
+			}
+		} catch (TerminationException e) {
+			result = e.status;
+		}
+		return result;
+	}
+
+	private void sample(RuntimeContext sc) {
+		if (period > 0) {
+			long t = System.nanoTime();
+			if (t - lastSampleTime < period) {
+				return;
+			}
+			lastSampleTime = t;
+		}
+		int slot = (int) (sampleCount % capacity);
+		positions[slot] = sc.getPosition();
+		depths[slot] = sc.copyReturnAddresses(frames, slot * MaxDepth, MaxDepth);
+		sampleCount++;
+	}
+
+	public final long getSampleCount() {
+		return this.sampleCount;
+	}
+
+	private String frameName(Instruction ret) {
+		String name = callMap == null ? null : callMap.get(ret);
+		return name == null ? "?" : name;
+	}
+
+	/* dump */
+
+	static class Stat {
+		final String name;
+		long self;
+		long total;
+
+		Stat(String name) {
+			this.name = name;
+		}
+	}
+
+	public final void dump(PrintStream out) {
+		long count = this.sampleCount;
+		int size = (int) Math.min(count, capacity);
+		HashMap<String, Stat> statMap = new HashMap<String, Stat>();
+		for (int s = 0; s < size; s++) {
+			int depth = depths[s];
+			String top = depth == 0 ? "(start)" : frameName(frames[s * MaxDepth]);
+			getStat(statMap, top).self++;
+			List<String> seen = new ArrayList<String>(depth);
+			for (int d = 0; d < depth; d++) {
+				String name = frameName(frames[s * MaxDepth + d]);
+				if (!seen.contains(name)) {
+					seen.add(name);
+					getStat(statMap, name).total++;
+				}
+			}
+			if (depth == 0) {
+				getStat(statMap, top).total++;
+			}
+		}
+		List<Stat> stats = new ArrayList<Stat>(statMap.values());
+		Collections.sort(stats, new Comparator<Stat>() {
+			@Override
+			public int compare(Stat a, Stat b) {
+				return a.self != b.self ? Long.compare(b.self, a.self) : a.name.compareTo(b.name);
+			}
+		});
+		out.println("# nez sampling profile: " + size + " of " + count + " samples (interval=" + interval + ", period=" + (period / 1000) + "us)");
+		out.println("# self\ttotal\tproduction");
+		for (Stat st : stats) {
+			out.println(st.self + "\t" + st.total + "\t" + st.name);
+		}
+		out.println("# position\tstack (innermost first)");
+		for (long n = count - size; n < count; n++) {
+			int s = (int) (n % capacity);
+			StringBuilder sb = new StringBuilder();
+			sb.append(positions[s]);
+			sb.append("\t");
+			for (int d = 0; d < depths[s]; d++) {
+				if (d > 0) {
+					sb.append(" < ");
+				}
+				sb.append(frameName(frames[s * MaxDepth + d]));
+			}
+			out.println(sb.toString());
+		}
+	}
+
+	private static Stat getStat(HashMap<String, Stat> statMap, String name) {
+		Stat st = statMap.get(name);
+		if (st == null) {
+			st = new Stat(name);
+			statMap.put(name, st);
+		}
+		return st;
+	}
+
+	public final void dump(String path) throws IOException {
+		PrintStream out = new PrintStream(path, "UTF-8");
+		try {
+			dump(out);
+		} finally {
+			out.close();
+		}
+	}
+}
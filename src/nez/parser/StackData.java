@@ -1,6 +0,0 @@
-package nez.parser;
-
-public class StackData {
-	public Object ref;
-	public long value;
-}
\ No newline at end of file
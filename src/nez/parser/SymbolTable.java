@@ -1,5 +1,6 @@
 package nez.parser;
 
+import nez.ast.Source;
 import nez.ast.Symbol;
 
 public class SymbolTable {
@@ -52,6 +53,70 @@ public class SymbolTable {
 		return false;
 	}
 
+	/* the byte at pos of a captured symbol; an indent keeps tabs only */
+	private static int symbolAt(Source s, long pos, boolean indent) {
+		int c = s.byteAt(pos);
+		return (indent && c != '\t') ? ' ' : c;
+	}
+
+	final static long hash(Source s, long start, long end, boolean indent) {
+		long hashCode = 1;
+		for (long pos = start; pos < end; pos++) {
+			hashCode = hashCode * 31 + symbolAt(s, pos, indent);
+		}
+		return hashCode;
+	}
+
+	static final boolean equals(byte[] utf8, Source s, long start, long end, boolean indent) {
+		if (utf8.length == end - start) {
+			for (int i = 0; i < utf8.length; i++) {
+				if ((utf8[i] & 0xff) != symbolAt(s, start + i, indent)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/** tests if the text in start..end of s equals utf8, without copying it */
+	public static final boolean equals(byte[] utf8, Source s, long start, long end) {
+		return equals(utf8, s, start, end, false);
+	}
+
+	// Captured symbols are interned in a small direct-mapped pool, so that a
+	// symbol that recurs (an indent, a delimiter) is copied from the input
+	// once rather than at every definition. Pooled arrays are never modified.
+
+	private final static int PoolSize = 256;
+	private final static int MaxPooledLength = 64;
+	private byte[][] pool = null;
+
+	private byte[] intern(Source s, long start, long end, long code, boolean indent) {
+		int length = (int) (end - start);
+		if (length <= MaxPooledLength) {
+			if (pool == null) {
+				pool = new byte[PoolSize][];
+			}
+			int index = (int) (code ^ (code >>> 32)) & (PoolSize - 1);
+			byte[] b = pool[index];
+			if (b == null || !equals(b, s, start, end, indent)) {
+				b = copy(s, start, length, indent);
+				pool[index] = b;
+			}
+			return b;
+		}
+		return copy(s, start, length, indent);
+	}
+
+	private static byte[] copy(Source s, long start, int length, boolean indent) {
+		byte[] b = new byte[length];
+		for (int i = 0; i < length; i++) {
+			b[i] = (byte) symbolAt(s, start + i, indent);
+		}
+		return b;
+	}
+
 	private void initEntry(int s, int e) {
 		for (int i = s; i < e; i++) {
 			this.tables[i] = new SymbolTableEntry2();
@@ -111,6 +176,18 @@ public class SymbolTable {
 		push(table, hash(utf8), utf8);
 	}
 
+	/* adds the text in start..end of s */
+	public final void addSymbol(Symbol table, Source s, long start, long end) {
+		long code = hash(s, start, end, false);
+		push(table, code, intern(s, start, end, code, false));
+	}
+
+	/* adds the text in start..end of s with every byte but a tab as a space */
+	public final void addIndent(Symbol table, Source s, long start, long end) {
+		long code = hash(s, start, end, true);
+		push(table, code, intern(s, start, end, code, true));
+	}
+
 	public final void addSymbolMask(Symbol table) {
 		push(table, 0, NullSymbol);
 	}
@@ -192,6 +269,22 @@ public class SymbolTable {
 		return false;
 	}
 
+	public final boolean contains(Symbol table, Source s, long start, long end) {
+		long code = hash(s, start, end, false);
+		for (int i = tableSize - 1; i >= 0; i--) {
+			SymbolTableEntry2 entry = tables[i];
+			if (entry.table == table) {
+				if (entry.symbol == null) {
+					return false; // masked
+				}
+				if (entry.code == code && equals(entry.symbol, s, start, end, false)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	public final void setCount(Symbol table, int number) {
 		push(table, number, NullSymbol);
 	}
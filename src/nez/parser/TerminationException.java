@@ -2,10 +2,18 @@ package nez.parser;
 
 @SuppressWarnings("serial")
 public class TerminationException extends Exception {
-	boolean status;
+	/* thrown at every exit, so they carry no stack trace and are shared */
+	public final static TerminationException Accepted = new TerminationException(true);
+	public final static TerminationException Rejected = new TerminationException(false);
+
+	final boolean status;
 
 	public TerminationException(boolean status) {
-		super();
+		super(null, null, false, false);
 		this.status = status;
 	}
+
+	public static TerminationException of(boolean status) {
+		return status ? Accepted : Rejected;
+	}
 }
@@ -1,6 +1,11 @@
 package nez.parser.generator;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -20,6 +25,7 @@ import nez.lang.expr.Pchoice;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Pone;
 import nez.lang.expr.Poption;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Psequence;
 import nez.lang.expr.Pzero;
 import nez.lang.expr.Tcapture;
@@ -40,8 +46,10 @@ import nez.lang.expr.Xlocal;
 import nez.lang.expr.Xmatch;
 import nez.lang.expr.Xon;
 import nez.parser.GenerativeGrammar;
+import nez.parser.ParseFunc;
 import nez.parser.ParserGenerator;
-import nez.util.StringUtils;
+import nez.util.ByteSet;
+import nez.util.ConsoleUtils;
 
 public class CParserGenerator extends ParserGenerator {
 
@@ -66,12 +74,14 @@ public class CParserGenerator extends ParserGenerator {
 		L("// If you want to fix something, you must edit " + __FILE__);
 		N();
 		L("#include \"cnez.h\"");
+		this.setGenerativeGrammar(grammar);
 		for (Production r : grammar.getProductionList()) {
-			if (!r.getLocalName().startsWith("\"")) {
-				L("int p" + r.getLocalName() + "(ParsingContext ctx);");
-			}
+			L("int " + funcName(r) + "(ParsingContext ctx);");
 		}
 		N();
+		if (grammar.memoPointList != null) {
+			this.memoSize = grammar.memoPointList.size();
+		}
 	}
 
 	@Override
@@ -81,13 +91,70 @@ public class CParserGenerator extends ParserGenerator {
 		int flagTableSize = this.flagTable.size();
 		int prodSize = grammar.getProductionList().size();
 		L("#define CNEZ_FLAG_TABLE_SIZE " + flagTableSize);
-		L("#define CNEZ_MEMO_SIZE       " + this.memoId);
+		L("#define CNEZ_MEMO_SIZE       " + this.memoSize);
 		// L("#define CNEZ_GRAMMAR_URN \"" + urn + "\"");
 		L("#define CNEZ_PRODUCTION_SIZE " + prodSize);
+		L("#define CNEZ_START           " + funcName(grammar.getStartProduction()));
 		if (this.enabledASTConstruction) {
 			L("#define CNEZ_ENABLE_AST_CONSTRUCTION 1");
 		}
 		L("#include \"cnez_main.c\"");
+		if (this.dir != null) {
+			copyRuntime("cnez.h");
+			copyRuntime("cnez_main.c");
+		}
+	}
+
+	/** copies the runtime next to the generated file */
+	private void copyRuntime(String name) {
+		InputStream in = CParserGenerator.class.getResourceAsStream(name);
+		if (in == null) {
+			ConsoleUtils.exit(1, "cannot find the runtime: " + name);
+		}
+		try {
+			Files.copy(in, Paths.get(this.dir, name), StandardCopyOption.REPLACE_EXISTING);
+			in.close();
+		} catch (IOException e) {
+			ConsoleUtils.exit(1, "cannot copy the runtime: " + e);
+		}
+	}
+
+	private String funcName(Production p) {
+		String name = funcMap.get(p.getLocalName());
+		if (name == null) {
+			StringBuilder sb = new StringBuilder("p");
+			for (char c : name(p).toCharArray()) {
+				sb.append(c < 128 && Character.isLetterOrDigit(c) ? c : '_');
+			}
+			name = sb.toString();
+			while (funcMap.containsValue(name)) {
+				name = name + "_";
+			}
+			funcMap.put(p.getLocalName(), name);
+		}
+		return name;
+	}
+
+	private HashMap<String, String> funcMap = new HashMap<String, String>();
+	private int memoSize = 0;
+
+	private int memoPoint(Production p, boolean linked) {
+		ParseFunc f = getParseFunc(p);
+		if (!this.enabledPackratParsing || memoSize == 0 || f == null || f.getMemoPoint() == null) {
+			return -1;
+		}
+		boolean tree = this.enabledASTConstruction && !p.isNoNTreeConstruction();
+		return tree == linked ? f.getMemoPoint().id : -1;
+	}
+
+	/** returns the memo point of a production that needs no AST log, or -1 */
+	private int memoPoint(Production p) {
+		return memoPoint(p, false);
+	}
+
+	/** returns the memo point of a linked production with a tree, or -1 */
+	private int linkMemoPoint(Expression e) {
+		return e instanceof NonTerminal ? memoPoint(((NonTerminal) e).getProduction(), true) : -1;
 	}
 
 	int fid = 0;
@@ -153,9 +220,31 @@ public class CParserGenerator extends ParserGenerator {
 		L(var + " = " + expr + ";");
 	}
 
+	/* a backtracking point saves the position and the AST log */
+
+	private void letBacktrack(String backtrack) {
+		this.let("char *", backtrack, "ctx->cur");
+		if (this.enabledASTConstruction) {
+			this.let("int", "t" + backtrack, "ast_save_tx(ctx->ast)");
+		}
+	}
+
+	private void updateBacktrack(String backtrack) {
+		this.assign(backtrack, "ctx->cur");
+		if (this.enabledASTConstruction) {
+			this.assign("t" + backtrack, "ast_save_tx(ctx->ast)");
+		}
+	}
+
+	private void backtrack(String backtrack) {
+		this.assign("ctx->cur", backtrack);
+		if (this.enabledASTConstruction) {
+			L("ast_rollback_tx(ctx->ast, t" + backtrack + ");");
+		}
+	}
+
 	private void memoize(Production rule, int id, String pos) {
-		String node = "ast_get_last_linked_node(ctx->ast)";
-		L("memo_set(ctx->memo, " + pos + ", " + id + ", " + node + ", ctx->cur - " + pos + ", 0);");
+		L("memo_set(ctx->memo, " + pos + ", " + id + ", NULL, ctx->cur - " + pos + ", 0);");
 	}
 
 	private void memoizeFail(Production rule, int id, String pos) {
@@ -176,11 +265,6 @@ public class CParserGenerator extends ParserGenerator {
 			L("else ");
 			Begin("{");
 			{
-				if (this.enabledASTConstruction) {
-					String tag = rule.getLocalName();
-					tag = StringUtils.quoteString('"', tag, '"');
-					L("ast_log_link(ctx->ast, " + tag + ", entry->result);");
-				}
 				L("ctx->cur += entry->consumed;");
 				L("return 0;");
 			}
@@ -197,7 +281,6 @@ public class CParserGenerator extends ParserGenerator {
 		// L("ctx->choiceCount++;");
 	}
 
-	int memoId = 0;
 
 	private Expression getNonTerminalRule(Expression e) {
 		while (e instanceof NonTerminal) {
@@ -246,7 +329,7 @@ public class CParserGenerator extends ParserGenerator {
 		}
 		int fid = this.fid++;
 		constructBmap(e, fid);
-		L("if(!bmap" + fid + "[(uint8_t)*ctx->cur])");
+		L("if(!" + testBmap(fid) + ")");
 		Begin("{");
 		this.jumpFailureJump();
 		End("}");
@@ -260,52 +343,43 @@ public class CParserGenerator extends ParserGenerator {
 
 		int fid = this.fid++;
 		constructBmap(e, fid);
-		L("if(bmap" + fid + "[(uint8_t)*ctx->cur])");
+		L("if(" + testBmap(fid) + ")");
 		Begin("{");
 		this.jumpFailureJump();
 		End("}");
 	}
 
-	private boolean[] constructBmap(Pchoice e) {
-		boolean[] map = new boolean[256];
+	private ByteSet constructBmap(Pchoice e) {
+		ByteSet map = new ByteSet();
 		for (int i = 0; i < e.size(); i++) {
 			Expression inner = e.get(i);
 			if (inner instanceof Cbyte) {
-				map[((Cbyte) inner).byteChar] = true;
+				map.set(((Cbyte) inner).byteChar);
 			} else if (inner instanceof Cset) {
-				boolean[] bmap = ((Cset) inner).byteMap;
-				for (int j = 0; j < bmap.length; j++) {
-					if (bmap[j]) {
-						map[j] = true;
-					}
-				}
+				map.union(((Cset) inner).byteMap);
 			}
 		}
 		return map;
 	}
 
 	private void constructBmap(Pchoice e, int fid) {
-		boolean[] map = constructBmap(e);
+		ByteSet map = constructBmap(e);
 		constructBmap(map, fid);
 	}
 
-	private void constructBmap(boolean[] map, int fid) {
-		L("unsigned long bmap" + fid + "[] = {");
-		for (int i = 0; i < map.length - 1; i++) {
-			if (map[i]) {
-				W("1, ");
-			} else {
-				W("0, ");
-			}
-		}
-		if (map[map.length - 1]) {
-			W("1");
-		} else {
-			W("0");
+	private void constructBmap(ByteSet map, int fid) {
+		L("static const uint64_t bmap" + fid + "[4] = {");
+		for (int i = 0; i < 4; i++) {
+			W(String.format("0x%016xULL", map.getWord(i)));
+			W(i < 3 ? ", " : "");
 		}
 		W("};");
 	}
 
+	private String testBmap(int fid) {
+		return "(bmap" + fid + "[(uint8_t)*ctx->cur >> 6] & (1ULL << ((uint8_t)*ctx->cur & 63)))";
+	}
+
 	public void specializeNotString(Psequence e) {
 		if (!this.enableOpt) {
 			return;
@@ -315,7 +389,7 @@ public class CParserGenerator extends ParserGenerator {
 			Expression inner = e.get(i);
 			if (inner instanceof Cbyte) {
 				Cbyte b = (Cbyte) inner;
-				L("if((int)*(ctx->cur + " + i + ") == " + b.byteChar + ")");
+				L("if((uint8_t)*(ctx->cur + " + i + ") == " + b.byteChar + ")");
 				Begin("{");
 			}
 		}
@@ -338,7 +412,7 @@ public class CParserGenerator extends ParserGenerator {
 			inner = getNonTerminalRule(inner);
 		}
 		if (inner instanceof Cbyte) {
-			L("if((int)*ctx->cur == " + ((Cbyte) inner).byteChar + ")");
+			L("if((uint8_t)*ctx->cur == " + ((Cbyte) inner).byteChar + ")");
 			Begin("{");
 			this.jumpFailureJump();
 			End("}");
@@ -346,9 +420,9 @@ public class CParserGenerator extends ParserGenerator {
 		}
 		if (inner instanceof Cset) {
 			int fid = this.fid++;
-			boolean[] map = ((Cset) inner).byteMap;
+			ByteSet map = ((Cset) inner).byteMap;
 			constructBmap(map, fid);
-			L("if(bmap" + fid + "[(uint8_t)*ctx->cur])");
+			L("if(" + testBmap(fid) + ")");
 			Begin("{");
 			this.jumpFailureJump();
 			End("}");
@@ -377,7 +451,7 @@ public class CParserGenerator extends ParserGenerator {
 
 		int fid = this.fid++;
 		constructBmap(e, fid);
-		L("if(bmap" + fid + "[(uint8_t)*ctx->cur])");
+		L("if(" + testBmap(fid) + ")");
 		Begin("{");
 		L("ctx->cur++;");
 		End("}");
@@ -395,7 +469,7 @@ public class CParserGenerator extends ParserGenerator {
 		for (int i = 0; i < e.size(); i++) {
 			Expression inner = e.get(i);
 			if (inner instanceof Cbyte) {
-				L("if((int)*(ctx->cur++) == " + ((Cbyte) inner).byteChar + ")");
+				L("if((uint8_t)*(ctx->cur++) == " + ((Cbyte) inner).byteChar + ")");
 				Begin("{");
 			}
 		}
@@ -420,7 +494,7 @@ public class CParserGenerator extends ParserGenerator {
 			inner = getNonTerminalRule(inner);
 		}
 		if (inner instanceof Cbyte) {
-			L("if((int)*ctx->cur == " + ((Cbyte) inner).byteChar + ")");
+			L("if((uint8_t)*ctx->cur == " + ((Cbyte) inner).byteChar + ")");
 			Begin("{");
 			L("ctx->cur++;");
 			End("}");
@@ -428,9 +502,9 @@ public class CParserGenerator extends ParserGenerator {
 		}
 		if (inner instanceof Cset) {
 			int fid = this.fid++;
-			boolean[] map = ((Cset) inner).byteMap;
+			ByteSet map = ((Cset) inner).byteMap;
 			constructBmap(map, fid);
-			L("if(bmap" + fid + "[(uint8_t)*ctx->cur])");
+			L("if(" + testBmap(fid) + ")");
 			Begin("{");
 			L("ctx->cur++;");
 			End("}");
@@ -457,7 +531,7 @@ public class CParserGenerator extends ParserGenerator {
 			return;
 		}
 
-		boolean[] b = constructBmap(e);
+		ByteSet b = constructBmap(e);
 		constructByteMapRep(b);
 	}
 
@@ -473,7 +547,7 @@ public class CParserGenerator extends ParserGenerator {
 		if (inner instanceof Cbyte) {
 			L("while(1)");
 			Begin("{");
-			L("if((int)*ctx->cur != " + ((Cbyte) inner).byteChar + ")");
+			L("if((uint8_t)*ctx->cur != " + ((Cbyte) inner).byteChar + ")");
 			Begin("{");
 			L("break;");
 			End("}");
@@ -482,7 +556,7 @@ public class CParserGenerator extends ParserGenerator {
 			return true;
 		}
 		if (inner instanceof Cset) {
-			boolean[] b = ((Cset) inner).byteMap;
+			ByteSet b = ((Cset) inner).byteMap;
 			constructByteMapRep(b);
 			return true;
 		}
@@ -496,20 +570,20 @@ public class CParserGenerator extends ParserGenerator {
 		return false;
 	}
 
-	private void constructByteMapRep(boolean[] b) {
+	private void constructByteMapRep(ByteSet b) {
 		L("while(1)");
 		Begin("{");
 		for (int start = 0; start < 256; start++) {
-			if (b[start]) {
+			if (b.is(start)) {
 				int end = searchEndChar(b, start + 1);
 				if (start == end) {
-					L("if((int)*ctx->cur == " + start + ")");
+					L("if((uint8_t)*ctx->cur == " + start + ")");
 					Begin("{");
 					this.consume();
 					L("continue;");
 					End("}");
 				} else {
-					L("if(" + start + "<= (int)*ctx->cur" + " && (int)*ctx->cur <= " + end + ")");
+					L("if(" + start + "<= (uint8_t)*ctx->cur" + " && (uint8_t)*ctx->cur <= " + end + ")");
 					Begin("{");
 					this.consume();
 					L("continue;");
@@ -525,30 +599,28 @@ public class CParserGenerator extends ParserGenerator {
 	@Override
 	public void visitProduction(GenerativeGrammar gg, Production rule) {
 		this.initFalureJumpPoint();
-		L("int p" + name(rule.getLocalName()) + "(ParsingContext ctx)");
+		int memoId = memoPoint(rule);
+		L("int " + funcName(rule) + "(ParsingContext ctx)");
 		Begin("{");
 		this.pushFailureJumpPoint();
-		if (this.enabledPackratParsing) {
-			lookup(rule, this.memoId);
+		if (memoId != -1) {
+			lookup(rule, memoId);
 		}
 		String pos = "c" + this.fid;
 		this.let("char *", pos, "ctx->cur");
 		Expression e = rule.getExpression();
 		visitExpression(e);
-		if (this.enabledPackratParsing) {
-			memoize(rule, this.memoId, pos);
+		if (memoId != -1) {
+			memoize(rule, memoId, pos);
 		}
 		L("return 0;");
 		this.popFailureJumpPoint(rule);
-		if (this.enabledPackratParsing) {
-			memoizeFail(rule, this.memoId, pos);
+		if (memoId != -1) {
+			memoizeFail(rule, memoId, pos);
 		}
 		L("return 1;");
 		End("}");
 		N();
-		if (this.enabledPackratParsing) {
-			this.memoId++;
-		}
 	}
 
 	@Override
@@ -572,7 +644,7 @@ public class CParserGenerator extends ParserGenerator {
 		// dephth--;
 		// return;
 		// }
-		L("if(p" + e.getLocalName() + "(ctx))");
+		L("if(" + funcName(e.getProduction()) + "(ctx))");
 		Begin("{");
 		this.jumpFailureJump();
 		End("}");
@@ -597,16 +669,19 @@ public class CParserGenerator extends ParserGenerator {
 
 	@Override
 	public void visitCbyte(Cbyte e) {
-		L("if((int)*ctx->cur != " + e.byteChar + ")");
+		if (e.byteChar == 0) {
+			failAtTail();
+		}
+		L("if((uint8_t)*ctx->cur != " + e.byteChar + ")");
 		Begin("{");
 		this.jumpFailureJump();
 		End("}");
 		this.consume();
 	}
 
-	private int searchEndChar(boolean[] b, int s) {
+	private int searchEndChar(ByteSet b, int s) {
 		for (; s < 256; s++) {
-			if (!b[s]) {
+			if (!b.is(s)) {
 				return s - 1;
 			}
 		}
@@ -617,18 +692,21 @@ public class CParserGenerator extends ParserGenerator {
 	public void visitCset(Cset e) {
 		int fid = this.fid++;
 		String label = "EXIT_BYTEMAP" + fid;
-		boolean b[] = e.byteMap;
+		ByteSet b = e.byteMap;
+		if (b.is(0)) {
+			failAtTail();
+		}
 		for (int start = 0; start < 256; start++) {
-			if (b[start]) {
+			if (b.is(start)) {
 				int end = searchEndChar(b, start + 1);
 				if (start == end) {
-					L("if((int)*ctx->cur == " + start + ")");
+					L("if((uint8_t)*ctx->cur == " + start + ")");
 					Begin("{");
 					this.consume();
 					this.gotoLabel(label);
 					End("}");
 				} else {
-					L("if(" + start + "<= (int)*ctx->cur" + " && (int)*ctx->cur <= " + end + ")");
+					L("if(" + start + "<= (uint8_t)*ctx->cur" + " && (uint8_t)*ctx->cur <= " + end + ")");
 					Begin("{");
 					this.consume();
 					this.gotoLabel(label);
@@ -641,27 +719,47 @@ public class CParserGenerator extends ParserGenerator {
 		Label(label);
 	}
 
+	/* the zero sentinel is not a byte of the input */
+	private void failAtTail() {
+		L("if(ctx->cur == TAIL(ctx))");
+		Begin("{");
+		this.jumpFailureJump();
+		End("}");
+	}
+
 	@Override
 	public void visitCany(Cany e) {
-		L("if(*ctx->cur == 0)");
+		L("if(ctx->cur == TAIL(ctx))");
 		Begin("{");
 		this.jumpFailureJump();
 		End("}");
 		this.consume();
 	}
 
+	private static String cstring(String s) {
+		return cstring(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/* a C literal of the bytes, with octal escapes */
+	private static String cstring(byte[] bytes) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (byte b : bytes) {
+			int c = b & 0xff;
+			if (c >= 0x20 && c < 0x7f && c != '"' && c != '\\' && c != '?') {
+				sb.append((char) c);
+			} else {
+				sb.append(String.format("\\%03o", c));
+			}
+		}
+		return sb.append("\"").toString();
+	}
+
 	@Override
 	public void visitCmulti(Cmulti p) {
 		int len = p.byteSeq.length;
 		L("if (TAIL(ctx) - ctx->cur >= " + len + ")");
 		Begin("{");
-		try {
-			String str = new String(p.byteSeq, StringUtils.DefaultEncoding);
-			str = StringUtils.quoteString('"', str, '"');
-			L("if (strncmp(ctx->cur, " + str + ", " + len + ") != 0)");
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		}
+		L("if (memcmp(ctx->cur, " + cstring(p.byteSeq) + ", " + len + ") != 0)");
 		Begin("{");
 		this.jumpFailureJump();
 		End("}");
@@ -675,11 +773,11 @@ public class CParserGenerator extends ParserGenerator {
 			this.pushFailureJumpPoint();
 			String label = "EXIT_OPTION" + this.fid;
 			String backtrack = "c" + this.fid;
-			this.let("char *", backtrack, "ctx->cur");
+			this.letBacktrack(backtrack);
 			visitExpression(e.get(0));
 			this.gotoLabel(label);
 			this.popFailureJumpPoint(e);
-			this.assign("ctx->cur", backtrack);
+			this.backtrack(backtrack);
 			Label(label);
 		}
 	}
@@ -689,14 +787,15 @@ public class CParserGenerator extends ParserGenerator {
 		if (!specializeRepetition(e)) {
 			this.pushFailureJumpPoint();
 			String backtrack = "c" + this.fid;
-			this.let("char *", backtrack, "ctx->cur");
+			this.letBacktrack(backtrack);
 			L("while(1)");
 			Begin("{");
 			visitExpression(e.get(0));
-			this.assign(backtrack, "ctx->cur");
+			this.failUnlessProgress(backtrack);
+			this.updateBacktrack(backtrack);
 			End("}");
 			this.popFailureJumpPoint(e);
-			this.assign("ctx->cur", backtrack);
+			this.backtrack(backtrack);
 		}
 	}
 
@@ -705,14 +804,23 @@ public class CParserGenerator extends ParserGenerator {
 		visitExpression(e.get(0));
 		this.pushFailureJumpPoint();
 		String backtrack = "c" + this.fid;
-		this.let("char *", backtrack, "ctx->cur");
+		this.letBacktrack(backtrack);
 		L("while(1)");
 		Begin("{");
 		visitExpression(e.get(0));
-		this.assign(backtrack, "ctx->cur");
+		this.failUnlessProgress(backtrack);
+		this.updateBacktrack(backtrack);
 		End("}");
 		this.popFailureJumpPoint(e);
-		this.assign("ctx->cur", backtrack);
+		this.backtrack(backtrack);
+	}
+
+	/* an iteration that consumes nothing fails */
+	private void failUnlessProgress(String backtrack) {
+		L("if(" + backtrack + " == ctx->cur)");
+		Begin("{");
+		this.jumpFailureJump();
+		End("}");
 	}
 
 	@Override
@@ -720,12 +828,12 @@ public class CParserGenerator extends ParserGenerator {
 		this.pushFailureJumpPoint();
 		String label = "EXIT_AND" + this.fid;
 		String backtrack = "c" + this.fid;
-		this.let("char *", backtrack, "ctx->cur");
+		this.letBacktrack(backtrack);
 		visitExpression(e.get(0));
 		this.assign("ctx->cur", backtrack);
 		this.gotoLabel(label);
 		this.popFailureJumpPoint(e);
-		this.assign("ctx->cur", backtrack);
+		this.backtrack(backtrack);
 		this.jumpFailureJump();
 		Label(label);
 	}
@@ -735,12 +843,12 @@ public class CParserGenerator extends ParserGenerator {
 		if (!specializeNot(e)) {
 			this.pushFailureJumpPoint();
 			String backtrack = "c" + this.fid;
-			this.let("char *", backtrack, "ctx->cur");
+			this.letBacktrack(backtrack);
 			visitExpression(e.get(0));
-			this.assign("ctx->cur", backtrack);
+			this.backtrack(backtrack);
 			this.jumpPrevFailureJump();
 			this.popFailureJumpPoint(e);
-			this.assign("ctx->cur", backtrack);
+			this.backtrack(backtrack);
 		}
 	}
 
@@ -848,64 +956,101 @@ public class CParserGenerator extends ParserGenerator {
 			this.fid++;
 			String label = "EXIT_CHOICE" + this.fid;
 			String backtrack = "c" + this.fid;
-			this.let("char *", backtrack, "ctx->cur");
+			this.letBacktrack(backtrack);
 			for (int i = 0; i < e.size(); i++) {
 				this.pushFailureJumpPoint();
 				this.choiceCount();
 				visitExpression(e.get(i));
 				this.gotoLabel(label);
 				this.popFailureJumpPoint(e.get(i));
-				this.assign("ctx->cur", backtrack);
+				this.backtrack(backtrack);
 			}
 			this.jumpFailureJump();
 			Label(label);
 		}
 	}
 
+	@Override
+	public void visitPperm(Pperm e) {
+		this.fid++;
+		String label = "PERM_LOOP" + this.fid;
+		String bits = "perm" + this.fid;
+		String backtrack = "c" + this.fid;
+		String matched = e.size() == 64 ? "~0ULL" : "((1ULL << " + e.size() + ") - 1)";
+		this.let("uint64_t", bits, "0");
+		this.letBacktrack(backtrack);
+		Label(label);
+		L("if(" + bits + " != " + matched + ")");
+		Begin("{");
+		this.updateBacktrack(backtrack);
+		for (int i = 0; i < e.size(); i++) {
+			this.pushFailureJumpPoint();
+			L("if(" + bits + " & (1ULL << " + i + "))");
+			Begin("{");
+			this.jumpFailureJump();
+			End("}");
+			visitExpression(e.get(i));
+			this.assign(bits, bits + " | (1ULL << " + i + ")");
+			this.gotoLabel(label);
+			this.popFailureJumpPoint(e.get(i));
+			this.backtrack(backtrack);
+		}
+		this.jumpFailureJump();
+		End("}");
+	}
+
 	Stack<String> markStack = new Stack<String>();
 
 	@Override
 	public void visitTnew(Tnew e) {
 		if (this.enabledASTConstruction) {
-			// this.pushFailureJumpPoint();
-			String mark = "mark" + this.fid++;
-			// this.markStack.push(mark);
-			L("int " + mark + " = ast_save_tx(ctx->ast);");
-			L("ast_log_new(ctx->ast, ctx->cur);");
+			L("ast_log_new(ctx->ast, ctx->cur" + shift(e.shift) + ");");
 		}
 	}
 
 	@Override
 	public void visitTcapture(Tcapture e) {
 		if (this.enabledASTConstruction) {
-			String label = "EXIT_CAPTURE" + this.fid++;
-			L("ast_log_capture(ctx->ast, ctx->cur);");
-			this.gotoLabel(label);
-			// this.popFailureJumpPoint(e);
-			// L("ast_rollback_tx(ctx->ast, " + this.markStack.pop() + ");");
-			// this.jumpFailureJump();
-			Label(label);
+			L("ast_log_capture(ctx->ast, ctx->cur" + shift(e.shift) + ");");
 		}
 	}
 
 	@Override
 	public void visitTtag(Ttag e) {
 		if (this.enabledASTConstruction) {
-			L("ast_log_tag(ctx->ast, \"" + e.tag.getSymbol() + "\");");
+			L("ast_log_tag(ctx->ast, " + cstring(e.tag.getSymbol()) + ");");
 		}
 	}
 
 	@Override
 	public void visitTreplace(Treplace e) {
 		if (this.enabledASTConstruction) {
-			L("ast_log_replace(ctx->ast, \"" + e.value + "\");");
+			L("ast_log_replace(ctx->ast, " + cstring(e.value) + ");");
 		}
 	}
 
+	private static String shift(int shift) {
+		return shift == 0 ? "" : shift > 0 ? " + " + shift : " - " + (-shift);
+	}
+
+	private static String label(Symbol label) {
+		return label == null ? "NULL" : cstring(label.getSymbol());
+	}
+
 	@Override
 	public void visitTlink(Tlink e) {
+		if (!this.enabledASTConstruction) {
+			visitExpression(e.get(0));
+			return;
+		}
+		int memoId = linkMemoPoint(e.get(0));
+		if (memoId != -1) {
+			linkMemo(e, memoId);
+			return;
+		}
 		this.pushFailureJumpPoint();
 		String mark = "mark" + this.fid;
+		String label = "EXIT_LINK" + this.fid;
 
 		if (this.enabledASTConstruction) {
 			L("int " + mark + " = ast_save_tx(ctx->ast);");
@@ -913,13 +1058,7 @@ public class CParserGenerator extends ParserGenerator {
 		visitExpression(e.get(0));
 		if (this.enabledASTConstruction) {
 			String po = "ctx->left";
-			String label = "EXIT_LINK" + this.fid;
-			Symbol sym = e.getLabel();
-			if (sym == null) {
-				sym = Symbol.NullSymbol;
-			}
-			String tag = sym.getSymbol();
-			L("ast_commit_tx(ctx->ast, \"" + tag + "\", " + mark + ");");
+			L("ast_commit_tx(ctx->ast, " + label(e.getLabel()) + ", " + mark + ");");
 			this.assign(po, "ast_get_last_linked_node(ctx->ast)");
 			this.gotoLabel(label);
 			this.popFailureJumpPoint(e);
@@ -929,6 +1068,38 @@ public class CParserGenerator extends ParserGenerator {
 		}
 	}
 
+	/* the tree of a memoized production is linked again on a hit */
+	private void linkMemo(Tlink e, int memoId) {
+		int id = this.fid++;
+		String entry = "entry" + id;
+		String pos = "c" + id;
+		String mark = "mark" + id;
+		String label = label(e.getLabel());
+		L("MemoEntry_t *" + entry + " = memo_get(ctx->memo, ctx->cur, " + memoId + ", 0);");
+		L("if(" + entry + " != NULL)");
+		Begin("{");
+		L("if(" + entry + "->failed == MEMO_ENTRY_FAILED)");
+		Begin("{");
+		this.jumpFailureJump();
+		End("}");
+		L("ast_log_link(ctx->ast, " + label + ", " + entry + "->result);");
+		L("ctx->cur += " + entry + "->consumed;");
+		End("}");
+		L("else");
+		Begin("{");
+		this.let("char *", pos, "ctx->cur");
+		this.let("int", mark, "ast_save_tx(ctx->ast)");
+		L("if(" + funcName(((NonTerminal) e.get(0)).getProduction()) + "(ctx))");
+		Begin("{");
+		this.memoizeFail(null, memoId, pos);
+		L("ast_rollback_tx(ctx->ast, " + mark + ");");
+		this.jumpFailureJump();
+		End("}");
+		L("ast_commit_tx(ctx->ast, " + label + ", " + mark + ");");
+		L("memo_set(ctx->memo, " + pos + ", " + memoId + ", ast_get_last_linked_node(ctx->ast), ctx->cur - " + pos + ", 0);");
+		End("}");
+	}
+
 	ArrayList<String> flagTable = new ArrayList<String>();
 
 	public void visitIfFlag(Xif e) {
@@ -951,78 +1122,79 @@ public class CParserGenerator extends ParserGenerator {
 		L("ctx->flags[" + this.flagTable.indexOf(p.getFlagName()) + "] = " + isPositive + ";");
 	}
 
+	/* symbol tables are not in the runtime */
+
+	private void unsupported(Expression e) {
+		ConsoleUtils.exit(1, "unsupported in the C parser: " + e);
+	}
+
 	@Override
 	public void visitXblock(Xblock p) {
-		String mark = "mark" + this.fid;
-		L("int " + mark + " = symtable_savepoint(ctx->table);");
-		visitExpression(p.get(0));
-		L("symtable_rollback(ctx->table, " + mark + ";");
+		unsupported(p);
 	}
 
 	@Override
 	public void visitXdef(Xsymbol p) {
-		// TODO Auto-generated method stub
-
+		unsupported(p);
 	}
 
 	@Override
 	public void visitXis(Xis p) {
-		// TODO Auto-generated method stub
-
+		unsupported(p);
 	}
 
 	@Override
 	public void visitXmatch(Xmatch p) {
-		// TODO Auto-generated method stub
-
+		unsupported(p);
 	}
 
 	@Override
 	public void visitXdefindent(Xdefindent p) {
-		// TODO Auto-generated method stub
-
+		unsupported(p);
 	}
 
 	@Override
 	public void visitXindent(Xindent p) {
-		// TODO Auto-generated method stub
-
+		unsupported(p);
 	}
 
 	@Override
 	public void visitXexists(Xexists p) {
-		// TODO Auto-generated method stub
-
+		unsupported(p);
 	}
 
 	@Override
 	public void visitXlocal(Xlocal p) {
-		// TODO Auto-generated method stub
-
+		unsupported(p);
 	}
 
 	@Override
 	public void visitTdetree(Tdetree p) {
-		// TODO Auto-generated method stub
-
+		if (this.enabledASTConstruction) {
+			String mark = "mark" + this.fid++;
+			L("int " + mark + " = ast_save_tx(ctx->ast);");
+			visitExpression(p.get(0));
+			L("ast_rollback_tx(ctx->ast, " + mark + ");");
+		} else {
+			visitExpression(p.get(0));
+		}
 	}
 
 	@Override
 	public void visitXif(Xif p) {
-		// TODO Auto-generated method stub
-
+		// flags are eliminated before generation
 	}
 
 	@Override
 	public void visitXon(Xon p) {
-		// TODO Auto-generated method stub
-
+		visitExpression(p.get(0));
 	}
 
 	@Override
 	public void visitTlfold(Tlfold p) {
-		// TODO Auto-generated method stub
-
+		if (this.enabledASTConstruction) {
+			L("ast_log_leftfold(ctx->ast, ctx->cur" + shift(p.shift) + ", " + label(p.getLabel()) + ");");
+		}
 	}
 
 }
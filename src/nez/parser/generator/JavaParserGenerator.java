@@ -0,0 +1,1333 @@
+package nez.parser.generator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import nez.Strategy;
+import nez.Verbose;
+import nez.ast.Symbol;
+import nez.lang.Expression;
+import nez.lang.Production;
+import nez.lang.Typestate;
+import nez.lang.expr.Cany;
+import nez.lang.expr.Cbyte;
+import nez.lang.expr.Cmulti;
+import nez.lang.expr.Cset;
+import nez.lang.expr.NonTerminal;
+import nez.lang.expr.Pand;
+import nez.lang.expr.Pchoice;
+import nez.lang.expr.Pnot;
+import nez.lang.expr.Pone;
+import nez.lang.expr.Poption;
+import nez.lang.expr.Pperm;
+import nez.lang.expr.Psequence;
+import nez.lang.expr.Pzero;
+import nez.lang.expr.Tcapture;
+import nez.lang.expr.Tdetree;
+import nez.lang.expr.Tlfold;
+import nez.lang.expr.Tlink;
+import nez.lang.expr.Tnew;
+import nez.lang.expr.Treplace;
+import nez.lang.expr.Ttag;
+import nez.lang.expr.Xblock;
+import nez.lang.expr.Xdefindent;
+import nez.lang.expr.Xexists;
+import nez.lang.expr.Xif;
+import nez.lang.expr.Xindent;
+import nez.lang.expr.Xis;
+import nez.lang.expr.Xlocal;
+import nez.lang.expr.Xmatch;
+import nez.lang.expr.Xon;
+import nez.lang.expr.Xsymbol;
+import nez.parser.GenerativeGrammar;
+import nez.parser.MemoTable;
+import nez.parser.ParseFunc;
+import nez.parser.ParserGenerator;
+import nez.util.ByteSet;
+import nez.util.ConsoleUtils;
+import nez.util.FileBuilder;
+import nez.util.StringUtils;
+
+/**
+ * JavaParserGenerator emits a standalone parser class that depends only on
+ * java.*. Each production is a boolean method over a byte array with a zero
+ * sentinel. A failure breaks to the label of the enclosing backtracking point
+ * (or returns false), like the failure labels of CParserGenerator.
+ *
+ * Byte sets are range tests or boolean tables, short strings are compared in
+ * place, and options, repetitions and predicates over them are inlined loops.
+ * Choices with a predicted first byte become a switch (Ofirst). Productions
+ * with a memo point are memoized in a direct-mapped table, and ASTs are built
+ * from a log as ASTMachine does, so the trees print as nez parse prints them.
+ * Symbol tables are not supported.
+ *
+ * nez parser.java -g json.nez -d DIR --option:package=NAME
+ */
+
+public class JavaParserGenerator extends ParserGenerator {
+
+	private String className;
+	private String packageName;
+
+	@Override
+	protected String getFileExtension() {
+		return "java";
+	}
+
+	/** the fully qualified name of the generated class */
+	public final String getClassName() {
+		return packageName == null ? className : packageName + "." + className;
+	}
+
+	@Override
+	protected void openOutputFile(String ext) {
+		this.className = toIdentifier(grammarName == null ? "grammar" : grammarName, true) + "Parser";
+		this.packageName = strategy.getString("package", null);
+		if (grammarName == null) {
+			this.file = new FileBuilder(null);
+		} else {
+			String path = className + "." + ext;
+			if (dir != null) {
+				path = dir + "/" + path;
+			}
+			this.file = new FileBuilder(path);
+			Verbose.println("generating " + path + " ... ");
+		}
+	}
+
+	private static String toIdentifier(String name, boolean upper) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			sb.append(Character.isJavaIdentifierPart(c) ? c : '_');
+		}
+		if (sb.length() == 0 || !Character.isJavaIdentifierStart(sb.charAt(0))) {
+			sb.insert(0, '_');
+		}
+		if (upper) {
+			sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	protected JavaParserGenerator L(String line) {
+		file.writeIndent(line);
+		return this;
+	}
+
+	@Override
+	protected JavaParserGenerator W(String word) {
+		file.write(word);
+		return this;
+	}
+
+	@Override
+	protected JavaParserGenerator Begin(String t) {
+		super.Begin(t);
+		return this;
+	}
+
+	@Override
+	protected JavaParserGenerator End(String t) {
+		super.End(t);
+		return this;
+	}
+
+	/* names */
+
+	private final HashMap<String, String> funcMap = new HashMap<String, String>();
+	private final HashMap<String, String> constMap = new HashMap<String, String>();
+	private final ArrayList<String> constList = new ArrayList<String>();
+	private int memoSize = 0;
+	private int varId = 0;
+
+	private String funcName(Production p) {
+		String name = funcMap.get(p.getLocalName());
+		if (name == null) {
+			name = "p" + toIdentifier(name(p), false);
+			while (funcMap.containsValue(name)) {
+				name = name + "_";
+			}
+			funcMap.put(p.getLocalName(), name);
+		}
+		return name;
+	}
+
+	private String var(String prefix) {
+		return prefix + (varId++);
+	}
+
+	private String constant(String prefix, String init) {
+		String name = constMap.get(init);
+		if (name == null) {
+			name = prefix + constMap.size();
+			constMap.put(init, name);
+			constList.add("private final static " + (prefix.equals("S") ? "boolean[] " : "byte[] ") + name + " = " + init + ";");
+		}
+		return name;
+	}
+
+	/** returns the memo point of p, or -1 */
+	private int memoPoint(Production p) {
+		ParseFunc f = getParseFunc(p);
+		if (memoSize == 0 || f == null || f.getMemoPoint() == null) {
+			return -1;
+		}
+		return f.getMemoPoint().id;
+	}
+
+	private boolean isMemoizedCall(Production p) {
+		return memoPoint(p) != -1 && (!enabledASTConstruction || p.isNoNTreeConstruction());
+	}
+
+	/* failure labels */
+
+	private static class Block {
+		final String name;
+		final Block prev;
+		boolean used = false;
+
+		Block(String name, Block prev) {
+			this.name = name;
+			this.prev = prev;
+		}
+	}
+
+	private Block fLabel = null;
+	private boolean dead = false; // the next statement is unreachable
+
+	private Block openBlock(String prefix, String head) {
+		Block b = new Block(var(prefix), fLabel);
+		L(b.name + ": " + head).Begin(" {");
+		return b;
+	}
+
+	private void closeBlock(Block b) {
+		End("}");
+		this.dead = this.dead && !b.used;
+	}
+
+	private Block pushFailure(String prefix, String head) {
+		this.fLabel = openBlock(prefix, head);
+		return this.fLabel;
+	}
+
+	private void popFailure(Block b) {
+		this.fLabel = b.prev;
+		closeBlock(b);
+	}
+
+	private void jump(Block b) {
+		if (!dead) {
+			L("break " + b.name + ";");
+			b.used = true;
+			this.dead = true;
+		}
+	}
+
+	private void fail() {
+		if (!dead) {
+			if (fLabel == null) {
+				L("return false;");
+				this.dead = true;
+			} else {
+				jump(fLabel);
+			}
+		}
+	}
+
+	private void failIf(String cond) {
+		if (!dead) {
+			L("if (" + cond + ")").Begin(" {");
+			fail();
+			End("}");
+			this.dead = false;
+		}
+	}
+
+	private void S(String stmt) {
+		if (!dead) {
+			L(stmt);
+		}
+	}
+
+	private void gen(Expression e) {
+		if (!dead) {
+			visitExpression(e);
+		}
+	}
+
+	/* backtracking */
+
+	private boolean isTreeConstruction(Expression e) {
+		return enabledASTConstruction && e.inferTypestate() != Typestate.BooleanType;
+	}
+
+	private String[] save(Expression e) {
+		String c = var("c");
+		S("int " + c + " = pos;");
+		if (isTreeConstruction(e)) {
+			String t = var("t");
+			S("int " + t + " = top;");
+			return new String[] { c, t };
+		}
+		return new String[] { c };
+	}
+
+	private void update(String[] saved) {
+		S(saved[0] + " = pos;");
+		if (saved.length > 1) {
+			S(saved[1] + " = top;");
+		}
+	}
+
+	private void restore(String[] saved) {
+		S("pos = " + saved[0] + ";");
+		if (saved.length > 1) {
+			S("top = " + saved[1] + ";");
+		}
+	}
+
+	/* specialization */
+
+	private Expression deref(Expression e) {
+		while (e instanceof NonTerminal) {
+			e = ((NonTerminal) e).deReference();
+		}
+		return e;
+	}
+
+	private ByteSet byteSet(Expression e) {
+		e = deref(e);
+		if (e instanceof Cbyte) {
+			ByteSet b = new ByteSet();
+			b.set(((Cbyte) e).byteChar);
+			return b;
+		}
+		if (e instanceof Cset) {
+			return ((Cset) e).byteMap;
+		}
+		if (e instanceof Pchoice) {
+			ByteSet b = new ByteSet();
+			for (Expression sub : e) {
+				ByteSet b2 = byteSet(sub);
+				if (b2 == null) {
+					return null;
+				}
+				b.union(b2);
+			}
+			return b;
+		}
+		return null;
+	}
+
+	/** returns a test of the next bytes for e, or null */
+	private String test(Expression e) {
+		ByteSet b = byteSet(e);
+		if (b != null) {
+			return testByteSet(b);
+		}
+		e = deref(e);
+		if (e instanceof Cany) {
+			return "pos < length";
+		}
+		if (e instanceof Cmulti) {
+			return testString(((Cmulti) e).byteSeq);
+		}
+		return null;
+	}
+
+	private int width(Expression e) {
+		e = deref(e);
+		return e instanceof Cmulti ? ((Cmulti) e).byteSeq.length : 1;
+	}
+
+	private String consume(int width) {
+		return width == 1 ? "pos++;" : "pos += " + width + ";";
+	}
+
+	private static String literal(int c) {
+		if (c >= 128) {
+			return String.format("(byte) 0x%02x", c);
+		}
+		if (c > 32 && c < 127 && c != '\'' && c != '\\') {
+			return "'" + (char) c + "'";
+		}
+		return String.valueOf(c);
+	}
+
+	private String at(int offset) {
+		return offset == 0 ? "inputs[pos]" : "inputs[pos + " + offset + "]";
+	}
+
+	private String testByteSet(ByteSet b) {
+		String test;
+		int c = b.getUniqueByte();
+		if (c != -1) {
+			test = at(0) + " == " + literal(c);
+		} else {
+			int ranges = 0;
+			boolean ascii = true;
+			for (int s = b.nextByte(0); s != -1; s = b.nextByte(endOfRange(b, s) + 1)) {
+				ranges++;
+				ascii &= endOfRange(b, s) < 128;
+			}
+			if (ranges <= 2 && ascii) {
+				StringBuilder sb = new StringBuilder();
+				for (int s = b.nextByte(0); s != -1; s = b.nextByte(endOfRange(b, s) + 1)) {
+					int e = endOfRange(b, s);
+					sb.append(sb.length() > 0 ? " || " : "");
+					if (s == e) {
+						sb.append(at(0) + " == " + literal(s));
+					} else if (s == 0) {
+						sb.append("(" + at(0) + " >= 0 && " + at(0) + " <= " + literal(e) + ")");
+					} else {
+						sb.append("(" + at(0) + " >= " + literal(s) + " && " + at(0) + " <= " + literal(e) + ")");
+					}
+				}
+				test = ranges == 1 ? sb.toString() : "(" + sb + ")";
+			} else {
+				String init = String.format("bits(0x%016xL, 0x%016xL, 0x%016xL, 0x%016xL)", b.getWord(0), b.getWord(1), b.getWord(2), b.getWord(3));
+				test = constant("S", init) + "[" + at(0) + " & 0xff]";
+			}
+		}
+		if (b.is(0)) { // the sentinel is not a byte
+			test = "pos < length && " + (test.contains("||") && !test.startsWith("(") ? "(" + test + ")" : test);
+		}
+		return test;
+	}
+
+	private static int endOfRange(ByteSet b, int s) {
+		while (s < 255 && b.is(s + 1)) {
+			s++;
+		}
+		return s;
+	}
+
+	private String testString(byte[] utf8) {
+		boolean hasZero = false;
+		for (byte c : utf8) {
+			hasZero |= c == 0;
+		}
+		if (utf8.length <= 4 && !hasZero) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < utf8.length; i++) {
+				sb.append(i > 0 ? " && " : "");
+				sb.append(at(i) + " == " + literal(utf8[i] & 0xff));
+			}
+			return sb.toString();
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("{ ");
+		for (int i = 0; i < utf8.length; i++) {
+			sb.append(i > 0 ? ", " : "");
+			sb.append(utf8[i]);
+		}
+		sb.append(" }");
+		return "matchString(" + constant("T", "new byte[] " + sb) + ")";
+	}
+
+	private static String not(String test) {
+		return "!(" + test + ")";
+	}
+
+	/** (!X .)* where X is a byte set or a string */
+	private Expression skipUntil(Expression e) {
+		e = deref(e);
+		if (e instanceof Psequence && e.size() == 2 && e.get(0) instanceof Pnot && deref(e.get(1)) instanceof Cany) {
+			Expression x = e.get(0).get(0);
+			if (test(x) != null) {
+				return x;
+			}
+		}
+		return null;
+	}
+
+	/* header and footer */
+
+	@Override
+	public void makeHeader(GenerativeGrammar gg) {
+		this.setGenerativeGrammar(gg);
+		if (gg.memoPointList != null) {
+			this.memoSize = gg.memoPointList.size();
+		}
+		final String __FILE__ = new Throwable().getStackTrace()[1].getFileName();
+		L("// This file is auto generated by nez.jar");
+		L("// If you want to fix something, you must edit " + __FILE__);
+		if (packageName != null) {
+			L("package " + packageName + ";");
+		}
+		L("");
+		L("import java.io.IOException;");
+		L("import java.nio.charset.StandardCharsets;");
+		L("import java.nio.file.Files;");
+		L("import java.nio.file.Paths;");
+		L("import java.util.Arrays;");
+		L("");
+		L("public class " + className).Begin(" {");
+		L("private final byte[] inputs; // followed by a 0 sentinel");
+		L("private final int length;");
+		L("private int pos = 0;");
+		L("");
+		L("public " + className + "(byte[] input)").Begin(" {");
+		L("this.inputs = Arrays.copyOf(input, input.length + 1);");
+		L("this.length = input.length;");
+		if (memoSize > 0) {
+			int window = strategy.getInt("Mwindow", MemoTable.DefaultWindowSize);
+			int size = 64;
+			while (size < window * memoSize) {
+				size *= 2;
+			}
+			L("this.memoKeys = new long[" + size + "];");
+			L("this.memoLengths = new int[" + size + "];");
+			if (enabledASTConstruction) {
+				L("this.memoNodes = new Tree[" + size + "];");
+			}
+		}
+		End("}");
+		L("");
+		L("public " + className + "(String input)").Begin(" {");
+		L("this(input.getBytes(StandardCharsets.UTF_8));");
+		End("}");
+		L("");
+		L("public final int getPosition()").Begin(" {");
+		L("return pos;");
+		End("}");
+		L("");
+		L("public final boolean hasUnconsumed()").Begin(" {");
+		L("return pos < length;");
+		End("}");
+		L("");
+		String start = funcName(gg.getStartProduction());
+		L("/** matches a prefix of the input */");
+		L("public final boolean match()").Begin(" {");
+		L("pos = 0;");
+		if (enabledASTConstruction) {
+			L("top = 0;");
+		}
+		L("return " + start + "();");
+		End("}");
+		if (enabledASTConstruction) {
+			L("");
+			L("/** parses a prefix of the input, or returns null */");
+			L("public final Tree parse()").Begin(" {");
+			L("if (!match())").Begin(" {");
+			L("return null;");
+			End("}");
+			L("return getParseResult(0);");
+			End("}");
+		}
+		L("");
+	}
+
+	@Override
+	public void makeFooter(GenerativeGrammar gg) {
+		for (String c : constList) {
+			L(c);
+		}
+		L("");
+		makeInputRuntime();
+		if (memoSize > 0) {
+			makeMemoRuntime();
+		}
+		if (enabledASTConstruction) {
+			makeTreeRuntime();
+			makeTreeClass();
+		}
+		makeMain();
+		End("}");
+	}
+
+	private void makeInputRuntime() {
+		L("private static boolean[] bits(long w0, long w1, long w2, long w3)").Begin(" {");
+		L("long[] w = { w0, w1, w2, w3 };");
+		L("boolean[] b = new boolean[256];");
+		L("for (int c = 0; c < 256; c++)").Begin(" {");
+		L("b[c] = (w[c >> 6] & (1L << c)) != 0;");
+		End("}");
+		L("return b;");
+		End("}");
+		L("");
+		L("private boolean matchString(byte[] text)").Begin(" {");
+		L("if (pos + text.length > length)").Begin(" {");
+		L("return false;");
+		End("}");
+		L("for (int i = 0; i < text.length; i++)").Begin(" {");
+		L("if (inputs[pos + i] != text[i])").Begin(" {");
+		L("return false;");
+		End("}");
+		End("}");
+		L("return true;");
+		End("}");
+		L("");
+	}
+
+	private void makeMemoRuntime() {
+		L("/* memo table: a direct-mapped slot for each (position, memo point) */");
+		L("private final static int MemoPoints = " + memoSize + ";");
+		L("private final static int MemoMiss = Integer.MIN_VALUE;");
+		L("private final static int MemoFailed = -1;");
+		L("private final long[] memoKeys;");
+		L("private final int[] memoLengths;");
+		if (enabledASTConstruction) {
+			L("private final Tree[] memoNodes;");
+			L("private Tree memoNode = null;");
+		}
+		L("");
+		L("private int memoLookup(int id)").Begin(" {");
+		L("long key = (long) pos * MemoPoints + id + 1;");
+		L("int slot = (int) (key & (memoKeys.length - 1));");
+		L("if (memoKeys[slot] == key)").Begin(" {");
+		if (enabledASTConstruction) {
+			L("memoNode = memoNodes[slot];");
+		}
+		L("return memoLengths[slot];");
+		End("}");
+		L("return MemoMiss;");
+		End("}");
+		L("");
+		L("private void memoStore(int id, int start, int consumed" + (enabledASTConstruction ? ", Tree node" : "") + ")").Begin(" {");
+		L("long key = (long) start * MemoPoints + id + 1;");
+		L("int slot = (int) (key & (memoKeys.length - 1));");
+		L("memoKeys[slot] = key;");
+		L("memoLengths[slot] = consumed;");
+		if (enabledASTConstruction) {
+			L("memoNodes[slot] = node;");
+		}
+		End("}");
+		L("");
+	}
+
+	private void makeTreeRuntime() {
+		L("/* AST log, as nez.ast.ASTMachine */");
+		L("private final static int Capture = 1, Tag = 2, Replace = 3, LeftFold = 4, Pop = 5, Push = 6, Link = 7, New = 8, Nested = 9;");
+		L("private int[] types = new int[256];");
+		L("private int[] values = new int[256];");
+		L("private String[] labels = new String[256];");
+		L("private Object[] refs = new Object[256];");
+		L("private int top = 0;");
+		L("");
+		L("private void log(int type, int value, String label, Object ref)").Begin(" {");
+		L("int n = ++top;");
+		L("if (n == types.length)").Begin(" {");
+		L("types = Arrays.copyOf(types, n * 2);");
+		L("values = Arrays.copyOf(values, n * 2);");
+		L("labels = Arrays.copyOf(labels, n * 2);");
+		L("refs = Arrays.copyOf(refs, n * 2);");
+		End("}");
+		L("types[n] = type;");
+		L("values[n] = value;");
+		L("labels[n] = label;");
+		L("refs[n] = ref;");
+		End("}");
+		L("");
+		L("private Tree commit(String label, int point)").Begin(" {");
+		L("Tree node = point < top ? createNode(point + 1, -1) : null;");
+		L("top = point;");
+		L("if (node != null)").Begin(" {");
+		L("log(Link, 0, label, node);");
+		End("}");
+		L("return node;");
+		End("}");
+		L("");
+		L("private Tree createNode(int start, int pushed)").Begin(" {");
+		L("int end = top + 1;");
+		L("int spos = values[start], epos = spos;");
+		L("String tag = null;");
+		L("Object value = null;");
+		L("int objectSize = 0;");
+		L("for (int cur = start; cur < end; cur++)").Begin(" {");
+		L("switch (types[cur])").Begin(" {");
+		L("case New:").Begin("");
+		L("spos = values[cur];");
+		L("epos = spos;");
+		L("objectSize = 0;");
+		L("tag = null;");
+		L("value = null;");
+		L("start = cur;");
+		L("break;");
+		End(null);
+		L("case Capture:").Begin("");
+		L("epos = values[cur];");
+		L("break;");
+		End(null);
+		L("case Tag:").Begin("");
+		L("tag = (String) refs[cur];");
+		L("break;");
+		End(null);
+		L("case Replace:").Begin("");
+		L("value = refs[cur];");
+		L("break;");
+		End(null);
+		L("case LeftFold:").Begin("");
+		L("refs[cur] = constructLeft(start, cur, spos, epos, objectSize, tag, value);");
+		L("types[cur] = Link;");
+		L("spos = values[cur];");
+		L("tag = null;");
+		L("value = null;");
+		L("objectSize = 1;");
+		L("start = cur;");
+		L("break;");
+		End(null);
+		L("case Pop:").Begin("");
+		L("types[pushed] = Nested;");
+		L("labels[pushed] = labels[cur];");
+		L("refs[pushed] = constructLeft(start, cur, spos, epos, objectSize, tag, value);");
+		L("values[pushed] = cur; // skip to the matching pop");
+		L("return (Tree) refs[pushed];");
+		End(null);
+		L("case Push:").Begin("");
+		L("createNode(cur + 1, cur);");
+		L("objectSize++;");
+		L("cur = values[cur];");
+		L("break;");
+		End(null);
+		L("case Nested:").Begin("");
+		L("objectSize++;");
+		L("cur = values[cur];");
+		L("break;");
+		End(null);
+		L("case Link:").Begin("");
+		L("objectSize++;");
+		L("break;");
+		End(null);
+		End("}");
+		End("}");
+		L("return constructLeft(start, end, spos, epos, objectSize, tag, value);");
+		End("}");
+		L("");
+		L("private Tree constructLeft(int start, int end, int spos, int epos, int objectSize, String tag, Object value)").Begin(" {");
+		L("if (tag == null)").Begin(" {");
+		L("tag = objectSize > 0 ? \"tree\" : \"token\";");
+		End("}");
+		L("Tree node = new Tree(tag, inputs, spos, epos - spos, objectSize, value);");
+		L("int n = 0;");
+		L("for (int cur = start; objectSize > 0 && cur < end; cur++)").Begin(" {");
+		L("if (types[cur] == Link || types[cur] == Nested)").Begin(" {");
+		L("node.subTree[n] = (Tree) refs[cur];");
+		L("node.labels[n] = labels[cur];");
+		L("n++;");
+		L("if (types[cur] == Nested)").Begin(" {");
+		L("cur = values[cur];");
+		End("}");
+		End("}");
+		End("}");
+		L("return node;");
+		End("}");
+		L("");
+		L("private Tree getParseResult(int startpos)").Begin(" {");
+		L("for (int cur = 1; cur <= top; cur++)").Begin(" {");
+		L("if (types[cur] == New)").Begin(" {");
+		L("return createNode(cur, -1);");
+		End("}");
+		End("}");
+		L("return new Tree(\"token\", inputs, startpos, 0, 0, null);");
+		End("}");
+		L("");
+	}
+
+	private void makeTreeClass() {
+		L("public final static class Tree").Begin(" {");
+		L("private final String tag;");
+		L("private final byte[] inputs;");
+		L("private final int pos;");
+		L("private final int length;");
+		L("private Object value;");
+		L("private final Tree[] subTree;");
+		L("private final String[] labels;");
+		L("");
+		L("Tree(String tag, byte[] inputs, int pos, int length, int size, Object value)").Begin(" {");
+		L("this.tag = tag;");
+		L("this.inputs = inputs;");
+		L("this.pos = pos;");
+		L("this.length = length;");
+		L("this.value = value;");
+		L("this.subTree = size > 0 ? new Tree[size] : null;");
+		L("this.labels = size > 0 ? new String[size] : null;");
+		End("}");
+		L("");
+		L("public final String getTag()").Begin(" {");
+		L("return tag;");
+		End("}");
+		L("");
+		L("public final int size()").Begin(" {");
+		L("return subTree == null ? 0 : subTree.length;");
+		End("}");
+		L("");
+		L("public final Tree get(int index)").Begin(" {");
+		L("return subTree[index];");
+		End("}");
+		L("");
+		L("public final String getLabel(int index)").Begin(" {");
+		L("return labels[index];");
+		End("}");
+		L("");
+		L("public final int getSourcePosition()").Begin(" {");
+		L("return pos;");
+		End("}");
+		L("");
+		L("public final int getLength()").Begin(" {");
+		L("return length;");
+		End("}");
+		L("");
+		L("public final String toText()").Begin(" {");
+		L("if (value == null)").Begin(" {");
+		L("value = new String(inputs, pos, length, StandardCharsets.UTF_8);");
+		End("}");
+		L("return value.toString();");
+		End("}");
+		L("");
+		L("@Override");
+		L("public String toString()").Begin(" {");
+		L("StringBuilder sb = new StringBuilder();");
+		L("stringfy(\"\", null, sb);");
+		L("return sb.toString();");
+		End("}");
+		L("");
+		L("private void stringfy(String indent, String label, StringBuilder sb)").Begin(" {");
+		L("if (indent.length() > 0)").Begin(" {");
+		L("sb.append(\"\\n\");");
+		End("}");
+		L("sb.append(indent);");
+		L("if (label != null)").Begin(" {");
+		L("sb.append(\"$\").append(label).append(\" \");");
+		End("}");
+		L("sb.append(\"#\").append(tag).append(\"[\");");
+		L("if (subTree == null)").Begin(" {");
+		L("sb.append(\" '\");");
+		L("String text = toText();");
+		L("for (int i = 0; i < text.length(); i++)").Begin(" {");
+		L("char ch = text.charAt(i);");
+		L("if (ch == '\\n')").Begin(" {");
+		L("sb.append(\"\\\\n\");");
+		End("}").W(" else if (ch == '\\t')").Begin(" {");
+		L("sb.append(\"\\\\t\");");
+		End("}").W(" else if (ch == '\\'' || ch == '\\\\')").Begin(" {");
+		L("sb.append('\\\\').append(ch);");
+		End("}").W(" else").Begin(" {");
+		L("sb.append(ch);");
+		End("}");
+		End("}");
+		L("sb.append(\"']\");");
+		End("}").W(" else").Begin(" {");
+		L("for (int i = 0; i < subTree.length; i++)").Begin(" {");
+		L("if (subTree[i] == null)").Begin(" {");
+		L("sb.append(\"\\n   \").append(indent).append(\"null\");");
+		End("}").W(" else").Begin(" {");
+		L("subTree[i].stringfy(\"   \" + indent, labels[i], sb);");
+		End("}");
+		End("}");
+		L("sb.append(\"\\n\").append(indent).append(\"]\");");
+		End("}");
+		End("}");
+		End("}");
+		L("");
+	}
+
+	private void makeMain() {
+		L("public static void main(String[] args) throws IOException").Begin(" {");
+		L("for (String path : args)").Begin(" {");
+		L(className + " p = new " + className + "(Files.readAllBytes(Paths.get(path)));");
+		if (enabledASTConstruction) {
+			L("Tree node = p.parse();");
+			L("System.out.println(node == null ? path + \": syntax error at \" + p.getPosition() : node.toString());");
+		} else {
+			L("boolean matched = p.match();");
+			L("System.out.println(path + (matched ? \": matched \" : \": syntax error at \") + p.getPosition());");
+		}
+		End("}");
+		End("}");
+	}
+
+	/* productions */
+
+	@Override
+	public void visitProduction(GenerativeGrammar gg, Production p) {
+		String func = funcName(p);
+		this.fLabel = null;
+		this.dead = false;
+		L("private boolean " + func + "()").Begin(" {");
+		gen(p.getExpression());
+		S("return true;");
+		End("}");
+		L("");
+		makeOutlinedMethods();
+		if (isMemoizedCall(p)) {
+			int id = memoPoint(p);
+			L("private boolean m" + func.substring(1) + "()").Begin(" {");
+			L("int consumed = memoLookup(" + id + ");");
+			L("if (consumed != MemoMiss)").Begin(" {");
+			L("pos += consumed;");
+			L("return consumed != MemoFailed;");
+			End("}");
+			L("int start = pos;");
+			L("boolean matched = " + func + "();");
+			L("memoStore(" + id + ", start, matched ? pos - start : MemoFailed" + (enabledASTConstruction ? ", null" : "") + ");");
+			L("return matched;");
+			End("}");
+			L("");
+		}
+	}
+
+	private String call(Production p) {
+		String func = funcName(p);
+		return isMemoizedCall(p) ? "m" + func.substring(1) + "()" : func + "()";
+	}
+
+	@Override
+	public void visitPempty(Expression e) {
+	}
+
+	@Override
+	public void visitPfail(Expression e) {
+		fail();
+	}
+
+	@Override
+	public void visitNonTerminal(NonTerminal e) {
+		failIf("!" + call(e.getProduction()));
+	}
+
+	@Override
+	public void visitCbyte(Cbyte e) {
+		String test = testByteSet(byteSet(e));
+		failIf(test.startsWith("pos < length") ? not(test) : test.replace(" == ", " != "));
+		S("pos++;");
+	}
+
+	@Override
+	public void visitCset(Cset e) {
+		failIf(not(testByteSet(e.byteMap)));
+		S("pos++;");
+	}
+
+	@Override
+	public void visitCany(Cany e) {
+		failIf("pos >= length");
+		S("pos++;");
+	}
+
+	@Override
+	public void visitCmulti(Cmulti e) {
+		failIf(not(testString(e.byteSeq)));
+		S(consume(e.byteSeq.length));
+	}
+
+	@Override
+	public void visitPoption(Poption e) {
+		Expression inner = e.get(0);
+		String test = test(inner);
+		if (test != null) {
+			L("if (" + test + ")").Begin(" {");
+			L(consume(width(inner)));
+			End("}");
+			return;
+		}
+		String[] saved = save(inner);
+		Block b = pushFailure("OPT", "");
+		gen(inner);
+		update(saved);
+		popFailure(b);
+		restore(saved);
+	}
+
+	@Override
+	public void visitPzero(Pzero e) {
+		generateRepetition(e.get(0));
+	}
+
+	private void generateRepetition(Expression inner) {
+		String test = test(inner);
+		if (test != null) {
+			if (deref(inner) instanceof Cany) {
+				S("pos = length;");
+				return;
+			}
+			L("while (" + test + ")").Begin(" {");
+			L(consume(width(inner)));
+			End("}");
+			return;
+		}
+		Expression x = skipUntil(inner);
+		if (x != null) {
+			L("while (pos < length && " + not(test(x)) + ")").Begin(" {");
+			L("pos++;");
+			End("}");
+			return;
+		}
+		String[] saved = save(inner);
+		Block b = pushFailure("REP", "while (true)");
+		gen(inner);
+		if (!dead) {
+			L("if (pos == " + saved[0] + ")").Begin(" {");
+			jump(b);
+			End("}");
+			this.dead = false;
+		}
+		update(saved);
+		popFailure(b);
+		restore(saved);
+	}
+
+	@Override
+	public void visitPone(Pone e) {
+		gen(e.get(0));
+		if (!dead) {
+			generateRepetition(e.get(0));
+		}
+	}
+
+	@Override
+	public void visitPand(Pand e) {
+		Expression inner = e.get(0);
+		String test = test(inner);
+		if (test != null) {
+			failIf(not(test));
+			return;
+		}
+		String c = var("c");
+		S("int " + c + " = pos;");
+		gen(inner);
+		S("pos = " + c + ";");
+	}
+
+	@Override
+	public void visitPnot(Pnot e) {
+		Expression inner = e.get(0);
+		String test = test(inner);
+		if (test != null) {
+			failIf(test);
+			return;
+		}
+		String[] saved = save(inner);
+		Block outer = this.fLabel;
+		Block b = pushFailure("NOT", "");
+		gen(inner);
+		this.fLabel = outer;
+		fail();
+		this.fLabel = b;
+		popFailure(b);
+		restore(saved);
+	}
+
+	@Override
+	public void visitPsequence(Psequence e) {
+		for (Expression sub : e) {
+			gen(sub);
+		}
+	}
+
+	@Override
+	public void visitPchoice(Pchoice e) {
+		ByteSet b = byteSet(e);
+		if (b != null) {
+			failIf(not(testByteSet(b)));
+			S("pos++;");
+			return;
+		}
+		if (e.predictedCase != null && strategy.isEnabled("Ofirst", Strategy.Ofirst)) {
+			generatePredictedChoice(e);
+		} else {
+			generateChoice(e);
+		}
+	}
+
+	private void generateChoice(Expression e) {
+		boolean outline = weight(e) > MaxWeight;
+		String[] saved = save(e);
+		Block exit = openBlock("CHOICE", "");
+		for (int i = 0; i < e.size() - 1; i++) {
+			Block alt = pushFailure("ALT", "");
+			generateAlternative(e.get(i), outline);
+			jump(exit);
+			popFailure(alt);
+			restore(saved);
+		}
+		generateAlternative(e.get(e.size() - 1), outline);
+		closeBlock(exit);
+	}
+
+	private void generatePredictedChoice(Pchoice e) {
+		boolean outline = weight(e) > MaxWeight;
+		ArrayList<Expression> cases = new ArrayList<Expression>();
+		HashMap<String, ByteSet> caseMap = new HashMap<String, ByteSet>();
+		for (int ch = 0; ch < 256; ch++) {
+			Expression pe = e.predictedCase[ch];
+			if (pe != null) {
+				ByteSet b = caseMap.get(unique(pe));
+				if (b == null) {
+					b = new ByteSet();
+					caseMap.put(unique(pe), b);
+					cases.add(pe);
+				}
+				b.set(ch);
+			}
+		}
+		Block exit = openBlock("SW", "switch (inputs[pos] & 0xff)");
+		for (Expression pe : cases) {
+			ByteSet b = caseMap.get(unique(pe));
+			StringBuilder sb = new StringBuilder();
+			for (int ch = b.nextByte(0); ch != -1; ch = b.nextByte(ch + 1)) {
+				sb.append(sb.length() > 0 ? " " : "").append("case " + ch + ":");
+			}
+			L(sb.toString()).Begin(" {");
+			this.dead = false;
+			if (pe instanceof Pchoice) {
+				generateChoice(pe);
+			} else {
+				generateCase(pe, b, outline);
+			}
+			jump(exit);
+			End("}");
+		}
+		L("default:");
+		this.dead = false;
+		fail();
+		closeBlock(exit);
+	}
+
+	/** the switch has tested the first byte of a case */
+	private void generateCase(Expression pe, ByteSet caseBytes, boolean outline) {
+		Expression first = pe instanceof Psequence ? pe.get(0) : pe;
+		ByteSet b = byteSet(first);
+		if (b != null && !caseBytes.is(0) && isSubset(caseBytes, b)) {
+			S("pos++;");
+			for (int i = 1; pe instanceof Psequence && i < pe.size(); i++) {
+				generateAlternative(pe.get(i), outline);
+			}
+			return;
+		}
+		generateAlternative(pe, outline);
+	}
+
+	private static boolean isSubset(ByteSet b, ByteSet of) {
+		for (int ch = b.nextByte(0); ch != -1; ch = b.nextByte(ch + 1)) {
+			if (!of.is(ch)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* large choices call their alternatives as methods */
+
+	private final static int MaxWeight = 256;
+	private final HashMap<String, Expression> outlineMap = new HashMap<String, Expression>();
+	private final ArrayList<Expression> outlineList = new ArrayList<Expression>();
+
+	private void generateAlternative(Expression e, boolean outline) {
+		if (outline && weight(e) > 8) {
+			String name = unique(e);
+			if (!outlineMap.containsKey(name)) {
+				outlineMap.put(name, e);
+				outlineList.add(e);
+			}
+			failIf("!" + name + "()");
+		} else {
+			gen(e);
+		}
+	}
+
+	private void makeOutlinedMethods() {
+		while (outlineList.size() > 0) {
+			Expression e = outlineList.remove(outlineList.size() - 1);
+			this.fLabel = null;
+			this.dead = false;
+			L("private boolean " + unique(e) + "()").Begin(" {");
+			gen(e);
+			S("return true;");
+			End("}");
+			L("");
+		}
+	}
+
+	/** estimates the code size of e */
+	private int weight(Expression e) {
+		if (e instanceof NonTerminal) {
+			return 1;
+		}
+		if (e instanceof Pchoice && ((Pchoice) e).predictedCase != null && strategy.isEnabled("Ofirst", Strategy.Ofirst)) {
+			HashMap<String, Expression> m = new HashMap<String, Expression>();
+			for (Expression pe : ((Pchoice) e).predictedCase) {
+				if (pe != null) {
+					m.put(unique(pe), pe);
+				}
+			}
+			int w = 1;
+			for (Expression pe : m.values()) {
+				w += weight(pe);
+			}
+			return w;
+		}
+		int w = 1;
+		for (Expression sub : e) {
+			w += weight(sub);
+		}
+		return w;
+	}
+
+	@Override
+	public void visitPperm(Pperm e) {
+		String bits = var("b");
+		String matched = e.size() == 64 ? "-1L" : "0x" + Long.toHexString((1L << e.size()) - 1) + "L";
+		S("long " + bits + " = 0;");
+		Block loop = openBlock("PERM", "while (" + bits + " != " + matched + ")");
+		String[] saved = save(e);
+		for (int i = 0; i < e.size(); i++) {
+			String bit = "0x" + Long.toHexString(1L << i) + "L";
+			Block alt = i < e.size() - 1 ? pushFailure("ALT", "") : null;
+			failIf("(" + bits + " & " + bit + ") != 0");
+			gen(e.get(i));
+			S(bits + " |= " + bit + ";");
+			if (alt != null) {
+				S("continue " + loop.name + ";");
+				this.dead = true;
+				popFailure(alt);
+				restore(saved);
+			}
+		}
+		End("}");
+		this.dead = false;
+	}
+
+	/* AST construction */
+
+	@Override
+	public void visitTnew(Tnew e) {
+		S("log(New, pos" + shift(e.shift) + ", null, null);");
+	}
+
+	@Override
+	public void visitTlfold(Tlfold e) {
+		S("log(LeftFold, pos" + shift(e.shift) + ", " + label(e.getLabel()) + ", null);");
+	}
+
+	@Override
+	public void visitTcapture(Tcapture e) {
+		S("log(Capture, pos" + shift(e.shift) + ", null, null);");
+	}
+
+	@Override
+	public void visitTtag(Ttag e) {
+		S("log(Tag, 0, null, " + StringUtils.quoteString('"', e.tag.getSymbol(), '"') + ");");
+	}
+
+	@Override
+	public void visitTreplace(Treplace e) {
+		S("log(Replace, 0, null, " + StringUtils.quoteString('"', e.value, '"') + ");");
+	}
+
+	private static String shift(int shift) {
+		return shift == 0 ? "" : shift > 0 ? " + " + shift : " - " + (-shift);
+	}
+
+	private static String label(Symbol label) {
+		return label == null ? "null" : StringUtils.quoteString('"', label.getSymbol(), '"');
+	}
+
+	@Override
+	public void visitTlink(Tlink e) {
+		Expression inner = e.get(0);
+		int id = inner instanceof NonTerminal ? memoPoint(((NonTerminal) inner).getProduction()) : -1;
+		if (id == -1) {
+			S("log(Push, 0, null, null);");
+			gen(inner);
+			S("log(Pop, 0, " + label(e.getLabel()) + ", null);");
+			return;
+		}
+		String consumed = var("m");
+		S("int " + consumed + " = memoLookup(" + id + ");");
+		if (dead) {
+			return;
+		}
+		L("if (" + consumed + " == MemoMiss)").Begin(" {");
+		String c = var("c");
+		String t = var("t");
+		L("int " + c + " = pos;");
+		L("int " + t + " = top;");
+		L("if (!" + funcName(((NonTerminal) inner).getProduction()) + "())").Begin(" {");
+		L("memoStore(" + id + ", " + c + ", MemoFailed, null);");
+		fail();
+		End("}");
+		this.dead = false;
+		L("memoStore(" + id + ", " + c + ", pos - " + c + ", commit(" + label(e.getLabel()) + ", " + t + "));");
+		End("}").W(" else").Begin(" {");
+		failIf(consumed + " == MemoFailed");
+		L("pos += " + consumed + ";");
+		L("if (memoNode != null)").Begin(" {");
+		L("log(Link, 0, " + label(e.getLabel()) + ", memoNode);");
+		End("}");
+		End("}");
+	}
+
+	@Override
+	public void visitTdetree(Tdetree e) {
+		String t = var("t");
+		S("int " + t + " = top;");
+		gen(e.get(0));
+		S("top = " + t + ";");
+	}
+
+	/* flags are eliminated by GrammarChecker */
+
+	@Override
+	public void visitXif(Xif e) {
+	}
+
+	@Override
+	public void visitXon(Xon e) {
+		gen(e.get(0));
+	}
+
+	/* symbol tables */
+
+	private void unsupported(Expression e) {
+		ConsoleUtils.exit(1, "unsupported in the Java parser: " + e);
+	}
+
+	@Override
+	public void visitXblock(Xblock e) {
+		unsupported(e);
+	}
+
+	@Override
+	public void visitXlocal(Xlocal e) {
+		unsupported(e);
+	}
+
+	@Override
+	public void visitXdef(Xsymbol e) {
+		unsupported(e);
+	}
+
+	@Override
+	public void visitXexists(Xexists e) {
+		unsupported(e);
+	}
+
+	@Override
+	public void visitXmatch(Xmatch e) {
+		unsupported(e);
+	}
+
+	@Override
+	public void visitXis(Xis e) {
+		unsupported(e);
+	}
+
+	@Override
+	public void visitXdefindent(Xdefindent e) {
+		unsupported(e);
+	}
+
+	@Override
+	public void visitXindent(Xindent e) {
+		unsupported(e);
+	}
+
+	@Override
+	public void visitUndefined(Expression e) {
+		unsupported(e);
+	}
+}
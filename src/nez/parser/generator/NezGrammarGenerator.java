@@ -14,6 +14,7 @@ import nez.lang.expr.Pchoice;
 import nez.lang.expr.Pnot;
 import nez.lang.expr.Pone;
 import nez.lang.expr.Poption;
+import nez.lang.expr.Pperm;
 import nez.lang.expr.Psequence;
 import nez.lang.expr.Pzero;
 import nez.lang.expr.Tcapture;
@@ -159,6 +160,22 @@ public class NezGrammarGenerator extends PEGGenerator {
 		}
 	}
 
+	@Override
+	public void visitPperm(Pperm e) {
+		W("<perm");
+		for (Expression sub : e) {
+			W(" ");
+			if (sub instanceof Psequence || sub instanceof Pchoice) {
+				W("(");
+				visitExpression(sub);
+				W(")");
+			} else {
+				visitExpression(sub);
+			}
+		}
+		W(">");
+	}
+
 	@Override
 	public void visitTnew(Tnew e) {
 		W("{");
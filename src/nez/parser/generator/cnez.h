@@ -0,0 +1,441 @@
+/*
+ * cnez.h: the runtime of the parsers that nez parser.c generates.
+ *
+ * A production is int pX(ParsingContext ctx), which returns 0 on success and
+ * 1 on failure. The input ends with a zero sentinel, so a byte test never
+ * reads past TAIL(ctx). AST nodes are built from a log as nez.ast.ASTMachine
+ * does, and they are allocated from an arena that is reset per input instead
+ * of being freed one by one.
+ */
+
+#ifndef CNEZ_H
+#define CNEZ_H
+
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#ifndef CNEZ_ARENA_CHUNK_SIZE
+#define CNEZ_ARENA_CHUNK_SIZE (256 * 1024)
+#endif
+
+#ifndef CNEZ_MEMO_WINDOW
+#define CNEZ_MEMO_WINDOW 32
+#endif
+
+/* arena */
+
+typedef struct ArenaChunk_t {
+	struct ArenaChunk_t *next;
+	size_t size;
+	char data[];
+} ArenaChunk_t;
+
+typedef struct Arena_t {
+	ArenaChunk_t *head;
+	ArenaChunk_t *chunk; // the chunk in use
+	char *cur;
+	char *end;
+	size_t used; // bytes in the chunks before chunk
+} Arena_t;
+
+static void *cnez_malloc(size_t size)
+{
+	void *p = malloc(size);
+	if(p == NULL) {
+		fprintf(stderr, "cnez: out of memory\n");
+		exit(1);
+	}
+	return p;
+}
+
+static void arena_init(Arena_t *a)
+{
+	memset(a, 0, sizeof(Arena_t));
+}
+
+static void *arena_alloc_slow(Arena_t *a, size_t size)
+{
+	ArenaChunk_t *next = a->chunk != NULL ? a->chunk->next : a->head;
+	while(next != NULL && next->size < size) {
+		next = next->next; // a large chunk is skipped until the next reset
+	}
+	if(next == NULL) {
+		size_t csize = size > CNEZ_ARENA_CHUNK_SIZE ? size : CNEZ_ARENA_CHUNK_SIZE;
+		next = (ArenaChunk_t *)cnez_malloc(sizeof(ArenaChunk_t) + csize);
+		next->size = csize;
+		next->next = NULL;
+		if(a->chunk == NULL) {
+			next->next = a->head;
+			a->head = next;
+		}
+		else {
+			next->next = a->chunk->next;
+			a->chunk->next = next;
+		}
+	}
+	if(a->chunk != NULL) {
+		a->used += a->chunk->size;
+	}
+	a->chunk = next;
+	a->cur = next->data + size;
+	a->end = next->data + next->size;
+	return next->data;
+}
+
+static inline void *arena_alloc(Arena_t *a, size_t size)
+{
+	size = (size + 7) & ~(size_t)7;
+	if((size_t)(a->end - a->cur) < size) {
+		return arena_alloc_slow(a, size);
+	}
+	void *p = a->cur;
+	a->cur += size;
+	return p;
+}
+
+/** keeps the chunks for the next input */
+static void arena_reset(Arena_t *a)
+{
+	a->chunk = NULL;
+	a->cur = a->end = NULL;
+	a->used = 0;
+}
+
+static size_t arena_size(Arena_t *a)
+{
+	return a->chunk == NULL ? 0 : a->used + (a->cur - a->chunk->data);
+}
+
+static void arena_free(Arena_t *a)
+{
+	ArenaChunk_t *c = a->head;
+	while(c != NULL) {
+		ArenaChunk_t *next = c->next;
+		free(c);
+		c = next;
+	}
+	arena_init(a);
+}
+
+/* AST */
+
+typedef struct AstNode_t {
+	const char *tag;
+	const char *text;
+	size_t len;
+	const char *value; // replaced text, or NULL
+	size_t size;
+	struct AstNode_t **childs;
+	const char **labels;
+} AstNode_t;
+
+enum AstLogType {
+	AST_NEW, AST_CAPTURE, AST_TAG, AST_REPLACE, AST_LEFTFOLD, AST_LINK
+};
+
+typedef struct AstLog_t {
+	int type;
+	const char *pos;
+	const char *str; // tag, replaced text or label
+	AstNode_t *node;
+} AstLog_t;
+
+typedef struct AstMachine_t {
+	AstLog_t *logs;
+	int top;
+	int capacity;
+	AstNode_t *last; // the last committed node
+	Arena_t arena;
+} AstMachine_t;
+
+static void ast_init(AstMachine_t *ast)
+{
+	ast->capacity = 256;
+	ast->logs = (AstLog_t *)cnez_malloc(sizeof(AstLog_t) * ast->capacity);
+	ast->top = 0;
+	ast->last = NULL;
+	arena_init(&ast->arena);
+}
+
+static void ast_reset(AstMachine_t *ast)
+{
+	ast->top = 0;
+	ast->last = NULL;
+	arena_reset(&ast->arena);
+}
+
+static void ast_free(AstMachine_t *ast)
+{
+	free(ast->logs);
+	arena_free(&ast->arena);
+}
+
+static inline void ast_log(AstMachine_t *ast, int type, const char *pos, const char *str, AstNode_t *node)
+{
+	if(ast->top == ast->capacity) {
+		ast->capacity *= 2;
+		ast->logs = (AstLog_t *)realloc(ast->logs, sizeof(AstLog_t) * ast->capacity);
+		if(ast->logs == NULL) {
+			fprintf(stderr, "cnez: out of memory\n");
+			exit(1);
+		}
+	}
+	AstLog_t *l = ast->logs + ast->top++;
+	l->type = type;
+	l->pos = pos;
+	l->str = str;
+	l->node = node;
+}
+
+static inline int ast_save_tx(AstMachine_t *ast)
+{
+	return ast->top;
+}
+
+static inline void ast_rollback_tx(AstMachine_t *ast, int tx)
+{
+	ast->top = tx;
+}
+
+static inline void ast_log_new(AstMachine_t *ast, const char *pos)
+{
+	ast_log(ast, AST_NEW, pos, NULL, NULL);
+}
+
+static inline void ast_log_capture(AstMachine_t *ast, const char *pos)
+{
+	ast_log(ast, AST_CAPTURE, pos, NULL, NULL);
+}
+
+static inline void ast_log_tag(AstMachine_t *ast, const char *tag)
+{
+	ast_log(ast, AST_TAG, NULL, tag, NULL);
+}
+
+static inline void ast_log_replace(AstMachine_t *ast, const char *value)
+{
+	ast_log(ast, AST_REPLACE, NULL, value, NULL);
+}
+
+static inline void ast_log_leftfold(AstMachine_t *ast, const char *pos, const char *label)
+{
+	ast_log(ast, AST_LEFTFOLD, pos, label, NULL);
+}
+
+static inline void ast_log_link(AstMachine_t *ast, const char *label, AstNode_t *node)
+{
+	ast_log(ast, AST_LINK, NULL, label, node);
+}
+
+static AstNode_t *ast_construct_left(AstMachine_t *ast, int start, int end, const char *spos, const char *epos, size_t size, const char *tag, const char *value)
+{
+	AstNode_t *node = (AstNode_t *)arena_alloc(&ast->arena, sizeof(AstNode_t));
+	node->tag = tag != NULL ? tag : (size > 0 ? "tree" : "token");
+	node->text = spos;
+	node->len = epos - spos;
+	node->value = value;
+	node->size = size;
+	node->childs = NULL;
+	node->labels = NULL;
+	if(size > 0) {
+		node->childs = (AstNode_t **)arena_alloc(&ast->arena, sizeof(AstNode_t *) * size);
+		node->labels = (const char **)arena_alloc(&ast->arena, sizeof(const char *) * size);
+		size_t n = 0;
+		for(int cur = start; cur < end; cur++) {
+			if(ast->logs[cur].type == AST_LINK) {
+				node->childs[n] = ast->logs[cur].node;
+				node->labels[n] = ast->logs[cur].str;
+				n++;
+			}
+		}
+	}
+	return node;
+}
+
+static AstNode_t *ast_create_node(AstMachine_t *ast, int start, int end)
+{
+	const char *spos = ast->logs[start].pos;
+	const char *epos = spos;
+	const char *tag = NULL;
+	const char *value = NULL;
+	size_t size = 0;
+	for(int cur = start; cur < end; cur++) {
+		AstLog_t *l = ast->logs + cur;
+		switch(l->type) {
+		case AST_NEW:
+			spos = epos = l->pos;
+			size = 0;
+			tag = value = NULL;
+			start = cur;
+			break;
+		case AST_CAPTURE:
+			epos = l->pos;
+			break;
+		case AST_TAG:
+			tag = l->str;
+			break;
+		case AST_REPLACE:
+			value = l->str;
+			break;
+		case AST_LEFTFOLD:
+			l->node = ast_construct_left(ast, start, cur, spos, epos, size, tag, value);
+			l->type = AST_LINK;
+			spos = l->pos;
+			tag = value = NULL;
+			size = 1;
+			start = cur;
+			break;
+		case AST_LINK:
+			size++;
+			break;
+		}
+	}
+	return ast_construct_left(ast, start, end, spos, epos, size, tag, value);
+}
+
+/** links the node built since tx with label (an empty token if none) */
+static void ast_commit_tx(AstMachine_t *ast, const char *label, int tx)
+{
+	AstNode_t *node = tx < ast->top ? ast_create_node(ast, tx, ast->top) : ast_construct_left(ast, tx, tx, NULL, NULL, 0, NULL, NULL);
+	ast->top = tx;
+	ast_log_link(ast, label, node);
+	ast->last = node;
+}
+
+static inline AstNode_t *ast_get_last_linked_node(AstMachine_t *ast)
+{
+	return ast->last;
+}
+
+static AstNode_t *ast_get_parse_result(AstMachine_t *ast, const char *pos)
+{
+	for(int cur = 0; cur < ast->top; cur++) {
+		if(ast->logs[cur].type == AST_NEW) {
+			return ast_create_node(ast, cur, ast->top);
+		}
+	}
+	return ast_construct_left(ast, 0, 0, pos, pos, 0, NULL, NULL);
+}
+
+/* memo */
+
+#define MEMO_ENTRY_FAILED 1
+
+typedef struct MemoEntry_t {
+	uint64_t key;
+	int consumed;
+	int failed;
+	AstNode_t *result;
+} MemoEntry_t;
+
+typedef struct MemoTable_t {
+	MemoEntry_t *entries;
+	size_t mask;
+	int points;
+	const char *inputs;
+} MemoTable_t;
+
+/** a direct-mapped table over a window of positions */
+static MemoTable_t *memo_new(int points)
+{
+	MemoTable_t *memo = (MemoTable_t *)cnez_malloc(sizeof(MemoTable_t));
+	size_t size = 64;
+	while(size < (size_t)CNEZ_MEMO_WINDOW * points) {
+		size *= 2;
+	}
+	memo->entries = (MemoEntry_t *)cnez_malloc(sizeof(MemoEntry_t) * size);
+	memo->mask = size - 1;
+	memo->points = points;
+	memo->inputs = NULL;
+	return memo;
+}
+
+static void memo_reset(MemoTable_t *memo, const char *inputs)
+{
+	memset(memo->entries, 0, sizeof(MemoEntry_t) * (memo->mask + 1));
+	memo->inputs = inputs;
+}
+
+static void memo_free(MemoTable_t *memo)
+{
+	free(memo->entries);
+	free(memo);
+}
+
+static inline uint64_t memo_key(MemoTable_t *memo, const char *pos, int id)
+{
+	return (uint64_t)(pos - memo->inputs) * memo->points + id + 1;
+}
+
+static inline MemoEntry_t *memo_get(MemoTable_t *memo, const char *pos, int id, int state)
+{
+	uint64_t key = memo_key(memo, pos, id);
+	MemoEntry_t *entry = memo->entries + (key & memo->mask);
+	return entry->key == key ? entry : NULL;
+}
+
+static inline void memo_set(MemoTable_t *memo, const char *pos, int id, AstNode_t *result, size_t consumed, int state)
+{
+	uint64_t key = memo_key(memo, pos, id);
+	MemoEntry_t *entry = memo->entries + (key & memo->mask);
+	entry->key = key;
+	entry->consumed = (int)consumed;
+	entry->failed = 0;
+	entry->result = result;
+}
+
+static inline void memo_fail(MemoTable_t *memo, const char *pos, int id)
+{
+	uint64_t key = memo_key(memo, pos, id);
+	MemoEntry_t *entry = memo->entries + (key & memo->mask);
+	entry->key = key;
+	entry->consumed = 0;
+	entry->failed = MEMO_ENTRY_FAILED;
+	entry->result = NULL;
+}
+
+/* context */
+
+typedef struct ParsingContextRec {
+	char *inputs;
+	size_t input_size;
+	char *cur;
+	AstMachine_t *ast;
+	MemoTable_t *memo;
+	AstNode_t *left;
+} *ParsingContext;
+
+#define TAIL(ctx) ((ctx)->inputs + (ctx)->input_size)
+
+static ParsingContext cnez_new_context(int memo_points)
+{
+	ParsingContext ctx = (ParsingContext)cnez_malloc(sizeof(struct ParsingContextRec));
+	memset(ctx, 0, sizeof(struct ParsingContextRec));
+	ctx->ast = (AstMachine_t *)cnez_malloc(sizeof(AstMachine_t));
+	ast_init(ctx->ast);
+	ctx->memo = memo_new(memo_points);
+	return ctx;
+}
+
+/** inputs must be followed by a zero byte */
+static void cnez_reset_context(ParsingContext ctx, char *inputs, size_t input_size)
+{
+	ctx->inputs = inputs;
+	ctx->input_size = input_size;
+	ctx->cur = inputs;
+	ctx->left = NULL;
+	ast_reset(ctx->ast);
+	memo_reset(ctx->memo, inputs);
+}
+
+static void cnez_free_context(ParsingContext ctx)
+{
+	ast_free(ctx->ast);
+	free(ctx->ast);
+	memo_free(ctx->memo);
+	free(ctx);
+}
+
+#endif
@@ -0,0 +1,223 @@
+/*
+ * cnez_main.c: the drivers of the parsers that nez parser.c generates. It is
+ * included at the end of the generated file, after CNEZ_START and the sizes
+ * are defined.
+ *
+ *   PARSER FILE...          prints the tree of each file (true/false without AST)
+ *   PARSER -b N FILE...     parses all files N times and prints MiB/s
+ *
+ * Inputs are mapped with mmap over a reserved region one page longer than
+ * the file, so the page after the last byte reads as the zero sentinel.
+ */
+
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <time.h>
+#include <unistd.h>
+
+typedef struct Input_t {
+	const char *path;
+	char *inputs;
+	size_t length;
+	size_t mapped;
+} Input_t;
+
+static int cnez_map_input(Input_t *in, const char *path)
+{
+	struct stat st;
+	int fd = open(path, O_RDONLY);
+	if(fd == -1 || fstat(fd, &st) == -1) {
+		perror(path);
+		if(fd != -1) {
+			close(fd);
+		}
+		return 0;
+	}
+	size_t page = (size_t)sysconf(_SC_PAGESIZE);
+	in->path = path;
+	in->length = (size_t)st.st_size;
+	in->mapped = (in->length / page + 1) * page;
+	char *base = (char *)mmap(NULL, in->mapped, PROT_READ, MAP_PRIVATE | MAP_ANONYMOUS, -1, 0);
+	if(base == MAP_FAILED) {
+		perror(path);
+		close(fd);
+		return 0;
+	}
+	if(in->length > 0 && mmap(base, in->length, PROT_READ, MAP_PRIVATE | MAP_FIXED, fd, 0) == MAP_FAILED) {
+		perror(path);
+		munmap(base, in->mapped);
+		close(fd);
+		return 0;
+	}
+	close(fd);
+	madvise(base, in->length, MADV_SEQUENTIAL);
+	in->inputs = base;
+	return 1;
+}
+
+static void cnez_unmap_input(Input_t *in)
+{
+	munmap(in->inputs, in->mapped);
+}
+
+/* returns the tree (or a non-null mark without AST), or NULL */
+static void *cnez_parse(ParsingContext ctx, Input_t *in)
+{
+	cnez_reset_context(ctx, in->inputs, in->length);
+	if(CNEZ_START(ctx)) {
+		return NULL;
+	}
+#ifdef CNEZ_ENABLE_AST_CONSTRUCTION
+	return ast_get_parse_result(ctx->ast, in->inputs);
+#else
+	return ctx;
+#endif
+}
+
+static void cnez_dump_text(FILE *out, const char *text, size_t len)
+{
+	for(size_t i = 0; i < len; i++) {
+		char c = text[i];
+		if(c == '\n') {
+			fputs("\\n", out);
+		}
+		else if(c == '\t') {
+			fputs("\\t", out);
+		}
+		else if(c == '\'' || c == '\\') {
+			fputc('\\', out);
+			fputc(c, out);
+		}
+		else {
+			fputc(c, out);
+		}
+	}
+}
+
+/* the format of nez.ast.Tree.toString() */
+static void cnez_dump(FILE *out, AstNode_t *node, int depth, const char *label)
+{
+	if(depth > 0) {
+		fputc('\n', out);
+	}
+	for(int i = 0; i < depth; i++) {
+		fputs("   ", out);
+	}
+	if(label != NULL) {
+		fprintf(out, "$%s ", label);
+	}
+	fprintf(out, "#%s[", node->tag);
+	if(node->size == 0) {
+		fputs(" '", out);
+		if(node->value != NULL) {
+			cnez_dump_text(out, node->value, strlen(node->value));
+		}
+		else {
+			cnez_dump_text(out, node->text, node->len);
+		}
+		fputs("']", out);
+		return;
+	}
+	for(size_t i = 0; i < node->size; i++) {
+		if(node->childs[i] == NULL) {
+			fputc('\n', out);
+			for(int j = 0; j <= depth; j++) {
+				fputs("   ", out);
+			}
+			fputs("null", out);
+		}
+		else {
+			cnez_dump(out, node->childs[i], depth + 1, node->labels[i]);
+		}
+	}
+	fputc('\n', out);
+	for(int i = 0; i < depth; i++) {
+		fputs("   ", out);
+	}
+	fputc(']', out);
+}
+
+static double cnez_now(void)
+{
+	struct timespec ts;
+	clock_gettime(CLOCK_MONOTONIC, &ts);
+	return ts.tv_sec + ts.tv_nsec / 1e9;
+}
+
+static void cnez_batch(ParsingContext ctx, Input_t *ins, int n, int repeat)
+{
+	size_t size = 0;
+	size_t arena = 0;
+	for(int i = 0; i < n; i++) {
+		size += ins[i].length;
+	}
+	int failed = 0;
+	double total = 0;
+	double best = 0;
+	for(int r = 0; r < repeat; r++) {
+		double t = cnez_now();
+		for(int i = 0; i < n; i++) {
+			if(cnez_parse(ctx, ins + i) == NULL && r == 0) {
+				failed++;
+			}
+			size_t used = arena_size(&ctx->ast->arena);
+			arena = used > arena ? used : arena;
+		}
+		t = cnez_now() - t;
+		total += t;
+		best = (r == 0 || t < best) ? t : best;
+	}
+	double mib = size / (1024.0 * 1024.0);
+	printf("%d files, %lu bytes, %d failed, arena %lu bytes at most\n", n, (unsigned long)size, failed, (unsigned long)arena);
+	printf("c: %.4f MiB/s (mean), %.4f MiB/s (best)\n", mib * repeat / total, mib / best);
+}
+
+int main(int argc, char **argv)
+{
+	int repeat = 0;
+	int start = 1;
+	if(argc > 2 && strcmp(argv[1], "-b") == 0) {
+		repeat = atoi(argv[2]);
+		start = 3;
+	}
+	if(start >= argc) {
+		fprintf(stderr, "usage: %s [-b N] FILE...\n", argv[0]);
+		return 1;
+	}
+	int n = argc - start;
+	Input_t *ins = (Input_t *)cnez_malloc(sizeof(Input_t) * n);
+	for(int i = 0; i < n; i++) {
+		if(!cnez_map_input(ins + i, argv[start + i])) {
+			return 1;
+		}
+	}
+	ParsingContext ctx = cnez_new_context(CNEZ_MEMO_SIZE);
+	int status = 0;
+	if(repeat > 0) {
+		cnez_batch(ctx, ins, n, repeat);
+	}
+	else {
+		for(int i = 0; i < n; i++) {
+			void *result = cnez_parse(ctx, ins + i);
+#ifdef CNEZ_ENABLE_AST_CONSTRUCTION
+			if(result == NULL) {
+				fputs("null", stdout);
+			}
+			else {
+				cnez_dump(stdout, (AstNode_t *)result, 0, NULL);
+			}
+#else
+			fputs(result == NULL ? "false" : "true", stdout);
+#endif
+			printf("\n");
+			status |= result == NULL;
+		}
+	}
+	cnez_free_context(ctx);
+	for(int i = 0; i < n; i++) {
+		cnez_unmap_input(ins + i);
+	}
+	free(ins);
+	return status;
+}
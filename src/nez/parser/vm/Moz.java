@@ -1,6 +1,10 @@
 package nez.parser.vm;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
 
 import nez.ast.ASTMachine;
@@ -10,9 +14,9 @@ import nez.parser.ByteCoder;
 import nez.parser.Instruction;
 import nez.parser.MemoEntry;
 import nez.parser.RuntimeContext;
-import nez.parser.StackData;
 import nez.parser.SymbolTable;
 import nez.parser.TerminationException;
+import nez.util.ByteSet;
 import nez.util.ConsoleUtils;
 import nez.util.StringUtils;
 import nez.util.UList;
@@ -75,6 +79,14 @@ public class Moz {
 	public final static byte Exit = 54;
 	public final static byte DFirst = 55;
 	public final static byte Label = 56;
+	public final static byte AndByte = 58;
+	public final static byte AndSet = 59;
+	public final static byte AndStr = 60;
+	public final static byte TPushCall = 61;
+	public final static byte PermBegin = 62;
+	public final static byte PermLoop = 63;
+	public final static byte PermTest = 64;
+	public final static byte PermSet = 65;
 
 	public final static void dump(byte[] code) {
 		MozLoader l = new MozLoader();
@@ -86,6 +98,16 @@ public class Moz {
 		}
 	}
 
+	public final static void dump(String path) throws IOException {
+		RandomAccessFile f = new RandomAccessFile(path, "r");
+		try {
+			FileChannel ch = f.getChannel();
+			new MozLoader().loadCode(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		} finally {
+			f.close();
+		}
+	}
+
 }
 
 abstract class MozInstruction extends Instruction {
@@ -134,7 +156,7 @@ abstract class MozInstruction extends Instruction {
 			int size = 0;
 			int lastch = -1;
 			boolean allowEOT = false;
-			boolean[] set = new boolean[256];
+			ByteSet set = new ByteSet();
 
 			void add(int ch) {
 				if (ch == 256) {
@@ -142,7 +164,7 @@ abstract class MozInstruction extends Instruction {
 				} else {
 					this.size++;
 					this.lastch = ch;
-					this.set[ch] = true;
+					this.set.set(ch);
 				}
 			}
 		}
@@ -197,7 +219,7 @@ abstract class MozInstruction extends Instruction {
 		sb.append(StringUtils.stringfyCharacter(a));
 	}
 
-	protected void formatBset(StringBuilder sb, boolean[] a) {
+	protected void formatBset(StringBuilder sb, ByteSet a) {
 		sb.append(' ');
 		sb.append(StringUtils.stringfyCharacterClass(a));
 	}
@@ -388,8 +410,7 @@ class Call extends Branch {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.newUnusedStack();
-		s.ref = this.jump;
+		sc.pushRef(this.jump);
 		return this.next;
 	}
 
@@ -411,8 +432,7 @@ class Ret extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.popStack();
-		return (Instruction) s.ref;
+		return (Instruction) sc.popRef();
 	}
 }
 
@@ -432,8 +452,7 @@ class Pos extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.newUnusedStack();
-		s.value = sc.getPosition();
+		sc.pushValue(sc.getPosition());
 		return this.next;
 	}
 
@@ -455,8 +474,7 @@ class Back extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.popStack();
-		sc.setPosition(s.value);
+		sc.setPosition(sc.popValue());
 		return this.next;
 	}
 
@@ -570,9 +588,9 @@ class Str extends MozInstruction {
 
 // Set
 class Set extends MozInstruction {
-	private boolean[] byteMap;
+	private ByteSet byteMap;
 
-	public Set(Expression e, Instruction next, boolean[] byteMap) {
+	public Set(Expression e, Instruction next, ByteSet byteMap) {
 		super(Moz.Set, e, next);
 		this.byteMap = byteMap;
 	}
@@ -590,7 +608,7 @@ class Set extends MozInstruction {
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		int byteChar = sc.byteAt(sc.getPosition());
-		if (byteMap[byteChar]) {
+		if (byteMap.is(byteChar)) {
 			sc.consume(1);
 			return this.next;
 		}
@@ -683,9 +701,9 @@ class NStr extends MozInstruction {
 
 // NSet
 class NSet extends MozInstruction {
-	private boolean[] byteMap;
+	private ByteSet byteMap;
 
-	public NSet(Expression e, Instruction next, boolean[] byteMap) {
+	public NSet(Expression e, Instruction next, ByteSet byteMap) {
 		super(Moz.NSet, e, next);
 		this.byteMap = byteMap;
 	}
@@ -703,7 +721,7 @@ class NSet extends MozInstruction {
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		int byteChar = sc.byteAt(sc.getPosition());
-		if (!byteMap[byteChar]) {
+		if (!byteMap.is(byteChar)) {
 			return this.next;
 		}
 		return sc.fail();
@@ -786,9 +804,9 @@ class OStr extends MozInstruction {
 
 // OSet
 class OSet extends MozInstruction {
-	private boolean[] byteMap;
+	private ByteSet byteMap;
 
-	public OSet(Expression e, Instruction next, boolean[] byteMap) {
+	public OSet(Expression e, Instruction next, ByteSet byteMap) {
 		super(Moz.OSet, e, next);
 		this.byteMap = byteMap;
 	}
@@ -806,7 +824,7 @@ class OSet extends MozInstruction {
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		int byteChar = sc.byteAt(sc.getPosition());
-		if (byteMap[byteChar]) {
+		if (byteMap.is(byteChar)) {
 			sc.consume(1);
 		}
 		return this.next;
@@ -889,9 +907,9 @@ class RStr extends MozInstruction {
 
 // RSet
 class RSet extends MozInstruction {
-	private boolean[] byteMap;
+	private ByteSet byteMap;
 
-	public RSet(Expression e, Instruction next, boolean[] byteMap) {
+	public RSet(Expression e, Instruction next, ByteSet byteMap) {
 		super(Moz.RSet, e, next);
 		this.byteMap = byteMap;
 	}
@@ -909,7 +927,7 @@ class RSet extends MozInstruction {
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
 		int byteChar = sc.byteAt(sc.getPosition());
-		while (byteMap[byteChar]) {
+		while (byteMap.is(byteChar)) {
 			sc.consume(1);
 			byteChar = sc.byteAt(sc.getPosition());
 		}
@@ -1293,9 +1311,8 @@ class TStart extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.newUnusedStack();
 		ASTMachine astMachine = sc.getAstMachine();
-		s.ref = astMachine.saveTransactionPoint();
+		sc.pushValue(astMachine.openTransactionPoint());
 		return this.next;
 	}
 
@@ -1322,9 +1339,8 @@ class TCommit extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.popStack();
 		ASTMachine astMachine = sc.getAstMachine();
-		astMachine.commitTransactionPoint(label, s.ref);
+		astMachine.commitTransactionPoint(label, (int) sc.popValue());
 		return this.next;
 	}
 
@@ -1445,8 +1461,7 @@ class SOpen extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.newUnusedStack();
-		s.value = sc.getSymbolTable().savePoint();
+		sc.pushValue(sc.getSymbolTable().savePoint());
 		return this.next;
 	}
 
@@ -1468,8 +1483,7 @@ class SClose extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.popStack();
-		sc.getSymbolTable().rollBack((int) s.value);
+		sc.getSymbolTable().rollBack((int) sc.popValue());
 		return this.next;
 	}
 
@@ -1496,9 +1510,8 @@ class SMask extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.newUnusedStack();
 		SymbolTable st = sc.getSymbolTable();
-		s.value = st.savePoint();
+		sc.pushValue(st.savePoint());
 		st.addSymbolMask(table);
 		return this.next;
 	}
@@ -1526,9 +1539,7 @@ class SDef extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData top = sc.popStack();
-		byte[] captured = sc.subbyte(top.value, sc.getPosition());
-		sc.getSymbolTable().addSymbol(this.table, captured);
+		sc.getSymbolTable().addSymbol(this.table, sc, sc.popValue(), sc.getPosition());
 		return this.next;
 	}
 
@@ -1652,10 +1663,7 @@ class SIs extends MozInstruction {
 		byte[] symbol = sc.getSymbolTable().getSymbol(table);
 		// System.out.println("symbol:" + new String(symbol));
 		if (symbol != null) {
-			StackData s = sc.popStack();
-			byte[] captured = sc.subbyte(s.value, sc.getPosition());
-			// System.out.println("captured:" + new String(captured));
-			if (symbol.length == captured.length && SymbolTable.equals(symbol, captured)) {
+			if (SymbolTable.equals(symbol, sc, sc.popValue(), sc.getPosition())) {
 				// sc.consume(symbol.length);
 				return this.next;
 			}
@@ -1686,10 +1694,7 @@ class SIsa extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		StackData s = sc.popStack();
-		byte[] captured = sc.subbyte(s.value, sc.getPosition());
-		if (sc.getSymbolTable().contains(this.table, captured)) {
-			// sc.consume(captured.length);
+		if (sc.getSymbolTable().contains(this.table, sc, sc.popValue(), sc.getPosition())) {
 			return this.next;
 
 		}
@@ -1757,7 +1762,7 @@ class Exit extends MozInstruction {
 
 	@Override
 	public Instruction exec(RuntimeContext sc) throws TerminationException {
-		throw new TerminationException(state);
+		throw TerminationException.of(state);
 	}
 
 }
@@ -1815,6 +1820,239 @@ class Label extends MozInstruction {
 	}
 }
 
+// AndByte
+class AndByte extends MozInstruction {
+	private int byteChar;
+
+	public AndByte(Expression e, Instruction next, int byteChar) {
+		super(Moz.AndByte, e, next);
+		this.byteChar = byteChar;
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder bc) {
+		bc.encodeByte(this.byteChar);
+	}
+
+	@Override
+	protected void formatImpl(StringBuilder sb) {
+		this.formatByte(sb, this.byteChar);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		if (sc.byteAt(sc.getPosition()) == this.byteChar) {
+			return this.next;
+		}
+		return sc.fail();
+	}
+
+}
+
+// AndSet
+class AndSet extends MozInstruction {
+	private ByteSet byteMap;
+
+	public AndSet(Expression e, Instruction next, ByteSet byteMap) {
+		super(Moz.AndSet, e, next);
+		this.byteMap = byteMap;
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder bc) {
+		bc.encodeBset(this.byteMap);
+	}
+
+	@Override
+	protected void formatImpl(StringBuilder sb) {
+		this.formatBset(sb, this.byteMap);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		if (byteMap.is(sc.byteAt(sc.getPosition()))) {
+			return this.next;
+		}
+		return sc.fail();
+	}
+
+}
+
+// AndStr
+class AndStr extends MozInstruction {
+	private byte[] utf8;
+
+	public AndStr(Expression e, Instruction next, byte[] utf8) {
+		super(Moz.AndStr, e, next);
+		this.utf8 = utf8;
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder bc) {
+		bc.encodeBstr(this.utf8);
+	}
+
+	@Override
+	protected void formatImpl(StringBuilder sb) {
+		this.formatBstr(sb, this.utf8);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		if (sc.match(sc.getPosition(), this.utf8)) {
+			return this.next;
+		}
+		return sc.fail();
+	}
+
+}
+
+// TPushCall
+class TPushCall extends Branch {
+	private String nonTerminal;
+
+	public TPushCall(Expression e, Instruction next, Instruction jump, String nonTerminal) {
+		super(Moz.TPushCall, e, next);
+		this.jump = jump;
+		this.nonTerminal = nonTerminal;
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder bc) {
+		bc.encodeJump(this.jump);
+		bc.encodeNonTerminal(this.nonTerminal);
+	}
+
+	@Override
+	protected void formatImpl(StringBuilder sb) {
+		this.formatJump(sb, this.jump);
+		this.formatNonTerminal(sb, this.nonTerminal);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		ASTMachine astMachine = sc.getAstMachine();
+		astMachine.logPush();
+		sc.pushRef(this.jump);
+		return this.next;
+	}
+
+}
+
+// PermBegin
+class PermBegin extends MozInstruction {
+	public PermBegin(Expression e, Instruction next) {
+		super(Moz.PermBegin, e, next);
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder bc) {
+	}
+
+	@Override
+	protected void formatImpl(StringBuilder sb) {
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		sc.pushValue(0);
+		return this.next;
+	}
+
+}
+
+// PermLoop
+class PermLoop extends Branch {
+	private int size;
+
+	public PermLoop(Expression e, Instruction next, int size, Instruction jump) {
+		super(Moz.PermLoop, e, next);
+		this.size = size;
+		this.jump = jump;
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder bc) {
+		bc.encodeByte(this.size);
+		bc.encodeJump(this.jump);
+	}
+
+	@Override
+	protected void formatImpl(StringBuilder sb) {
+		sb.append(' ').append(this.size);
+		this.formatJump(sb, this.jump);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		long bits = sc.popValue();
+		if (bits == (size == 64 ? -1L : (1L << size) - 1)) {
+			return this.jump;
+		}
+		sc.pushValue(bits);
+		return this.next;
+	}
+
+}
+
+// PermTest
+class PermTest extends MozInstruction {
+	private int index;
+
+	public PermTest(Expression e, Instruction next, int index) {
+		super(Moz.PermTest, e, next);
+		this.index = index;
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder bc) {
+		bc.encodeByte(this.index);
+	}
+
+	@Override
+	protected void formatImpl(StringBuilder sb) {
+		sb.append(' ').append(this.index);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		long bits = sc.popValue();
+		sc.pushValue(bits);
+		if ((bits & (1L << index)) != 0) {
+			return sc.fail();
+		}
+		return this.next;
+	}
+
+}
+
+// PermSet
+class PermSet extends MozInstruction {
+	private int index;
+
+	public PermSet(Expression e, Instruction next, int index) {
+		super(Moz.PermSet, e, next);
+		this.index = index;
+	}
+
+	@Override
+	protected void encodeImpl(ByteCoder bc) {
+		bc.encodeByte(this.index);
+	}
+
+	@Override
+	protected void formatImpl(StringBuilder sb) {
+		sb.append(' ').append(this.index);
+	}
+
+	@Override
+	public Instruction exec(RuntimeContext sc) throws TerminationException {
+		sc.pushValue(sc.popValue() | (1L << index));
+		return this.next;
+	}
+
+}
+
 class Ref extends Instruction {
 	public Ref(int id) {
 		super((byte) 0, null, null);
@@ -1835,27 +2073,22 @@ class Ref extends Instruction {
 
 class MozLoader {
 	UList<Instruction> codeList;
-	byte[] buf;
-	int pos = 0;
+	ByteBuffer buf;
 	private int instSize;
 	private int memoSize;
 	private String[] poolNonTerminal;
-	private boolean[][] poolBset;
+	private ByteSet[] poolBset;
 	private byte[][] poolBstr;
 	private Symbol[] poolTag;
 	private Symbol[] poolTable;
 	boolean debug;
 
 	int read() {
-		int ch = buf[pos];
-		pos++;
-		return ch;
+		return buf.get();
 	}
 
 	int uread() {
-		int ch = buf[pos] & 0xff;
-		pos++;
-		return ch;
+		return buf.get() & 0xff;
 	}
 
 	public boolean read_b() {
@@ -1904,22 +2137,14 @@ class MozLoader {
 		return StringUtils.newString(read_utf8());
 	}
 
-	public boolean[] read_byteMap() {
-		boolean[] b = new boolean[257];
-		for (int i = 0; i < 256; i += 32) {
-			read_bytemap(b, i);
-		}
-		return b;
-	}
-
-	private void read_bytemap(boolean[] b, int offset) {
-		int u = read_u32();
-		for (int i = 0; i < 32; i++) {
-			int flag = (1 << i);
-			if ((u & flag) == flag) {
-				b[offset + i] = true;
-			}
+	public ByteSet read_byteMap() {
+		long[] w = new long[4];
+		for (int i = 0; i < 4; i++) {
+			long lo = read_u32() & 0xffffffffL;
+			long hi = read_u32() & 0xffffffffL;
+			w[i] = (hi << 32) | lo;
 		}
+		return new ByteSet(w[0], w[1], w[2], w[3]);
 	}
 
 	//
@@ -1928,7 +2153,7 @@ class MozLoader {
 		return uread();
 	}
 
-	private boolean[] readBset() {
+	private ByteSet readBset() {
 		int id = read_u16();
 		return poolBset[id];
 	}
@@ -1998,8 +2223,26 @@ class MozLoader {
 	}
 
 	public void loadCode(byte[] buf) throws IOException {
+		loadCode(ByteBuffer.wrap(buf));
+	}
+
+	/* a truncated or corrupted file is reported as an IOException */
+	public void loadCode(ByteBuffer buf) throws IOException {
+		try {
+			load(buf);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Moz format error");
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Moz format error");
+		}
+	}
+
+	private void load(ByteBuffer buf) throws IOException {
+		if (MozImage.getVersion(buf) == ByteCoder.Version) {
+			loadImage(new MozImage(buf));
+			return;
+		}
 		this.buf = buf;
-		this.pos = 0;
 		if (read() != 'N' || read() != 'E' || read() != 'Z') {
 			throw new IOException("Non moz format");
 		}
@@ -2012,43 +2255,89 @@ class MozLoader {
 		int jumpTableSize = read_u16();
 		p("jumpTableSize: %d", jumpTableSize);
 
-		int pool = read_u16();
+		int pool = readCount();
 		poolNonTerminal = new String[pool];
 		p("NonTerminal: %d", pool);
 		for (int i = 0; i < pool; i++) {
 			poolNonTerminal[i] = readString();
 			// p("NonTerminal: %d %s", i, poolNonTerminal[i]);
 		}
-		pool = read_u16();
+		pool = readCount();
 		// p("BitmapSetPool: %d", pool);
-		poolBset = new boolean[pool][];
+		poolBset = new ByteSet[pool];
 		for (int i = 0; i < pool; i++) {
 			poolBset[i] = read_byteMap();
 		}
-		pool = read_u16();
+		pool = readCount();
 		// p("StringPool: %d", pool);
 		poolBstr = new byte[pool][];
 		for (int i = 0; i < pool; i++) {
 			poolBstr[i] = read_utf8();
 		}
-		pool = read_u16();
+		pool = readCount();
 		// p("SymbolPool: %d", pool);
 		poolTag = new Symbol[pool];
 		for (int i = 0; i < pool; i++) {
 			poolTag[i] = Symbol.tag(readString());
 		}
-		pool = read_u16();
+		pool = readCount();
 		p("TablePool: %d", pool);
 		poolTable = new Symbol[pool];
 		for (int i = 0; i < pool; i++) {
 			poolTable[i] = Symbol.tag(readString());
 		}
+		loadInstructions();
+	}
+
+	/* a pool entry takes one byte at least */
+	private int readCount() throws IOException {
+		int pool = read_u16();
+		if (pool > buf.remaining()) {
+			throw new IOException("Moz format error");
+		}
+		return pool;
+	}
+
+	private void loadImage(MozImage image) throws IOException {
+		p("Version: %d", image.getVersion());
+		this.instSize = image.getInstructionSize();
+		p("InstructionSize: %d", instSize);
+		this.memoSize = image.getMemoSize();
+		p("memoSize: %d", memoSize);
+		p("jumpTableSize: %d", image.getJumpTableSize());
+		p("Strings: %d", image.size(ByteCoder.Strings));
+		poolNonTerminal = new String[image.size(ByteCoder.NonTerminals)];
+		p("NonTerminal: %d", poolNonTerminal.length);
+		for (int i = 0; i < poolNonTerminal.length; i++) {
+			poolNonTerminal[i] = image.getString(image.getStringId(ByteCoder.NonTerminals, i));
+		}
+		poolBset = new ByteSet[image.size(ByteCoder.Sets)];
+		for (int i = 0; i < poolBset.length; i++) {
+			poolBset[i] = image.getByteSet(i);
+		}
+		poolBstr = new byte[image.size(ByteCoder.Bstrs)][];
+		for (int i = 0; i < poolBstr.length; i++) {
+			poolBstr[i] = image.getBytes(image.getStringId(ByteCoder.Bstrs, i));
+		}
+		poolTag = new Symbol[image.size(ByteCoder.Tags)];
+		for (int i = 0; i < poolTag.length; i++) {
+			poolTag[i] = Symbol.tag(image.getString(image.getStringId(ByteCoder.Tags, i)));
+		}
+		poolTable = new Symbol[image.size(ByteCoder.Tables)];
+		p("TablePool: %d", poolTable.length);
+		for (int i = 0; i < poolTable.length; i++) {
+			poolTable[i] = Symbol.tag(image.getString(image.getStringId(ByteCoder.Tables, i)));
+		}
+		this.buf = image.getCode();
+		loadInstructions();
+	}
 
+	private void loadInstructions() throws IOException {
 		this.codeList = new UList<Instruction>(new Instruction[instSize]);
 		for (int i = 0; i < instSize; i++) {
 			loadInstruction();
 		}
-		if (this.pos != this.buf.length) {
+		if (this.buf.hasRemaining()) {
 			throw new IOException("Moz format error");
 		}
 		for (int i = 0; i < instSize; i++) {
@@ -2076,11 +2365,14 @@ class MozLoader {
 
 	}
 
-	Instruction rev(Instruction[] code, Ref ref) {
+	Instruction rev(Instruction[] code, Ref ref) throws IOException {
+		if (!(ref.id < this.instSize)) {
+			throw new IOException("Moz format error: L" + ref.id);
+		}
 		return code[ref.id];
 	}
 
-	private void loadInstruction() {
+	private void loadInstruction() throws IOException {
 		int opcode = uread();
 		boolean jumpNext = ((opcode & 128) == 128);
 		// System.out.println("opcode=" + opcode + ",jump=" + jumpNext + "=> " +
@@ -2088,6 +2380,9 @@ class MozLoader {
 		opcode = 0b1111111 & opcode;
 
 		Instruction inst = newInstruction((byte) opcode);
+		if (inst == null) {
+			throw new IOException("Moz format error: opcode " + opcode);
+		}
 		inst.id = codeList.size();
 		codeList.add(inst);
 		if (jumpNext) {
@@ -2145,7 +2440,7 @@ class MozLoader {
 			return new Str(null, null, utf8);
 		}
 		case Moz.Set: {
-			boolean[] byteMap = this.readBset();
+			ByteSet byteMap = this.readBset();
 			return new Set(null, null, byteMap);
 		}
 		case Moz.NByte: {
@@ -2160,7 +2455,7 @@ class MozLoader {
 			return new NStr(null, null, utf8);
 		}
 		case Moz.NSet: {
-			boolean[] byteMap = this.readBset();
+			ByteSet byteMap = this.readBset();
 			return new NSet(null, null, byteMap);
 		}
 		case Moz.OByte: {
@@ -2175,7 +2470,7 @@ class MozLoader {
 			return new OStr(null, null, utf8);
 		}
 		case Moz.OSet: {
-			boolean[] byteMap = this.readBset();
+			ByteSet byteMap = this.readBset();
 			return new OSet(null, null, byteMap);
 		}
 		case Moz.RByte: {
@@ -2190,7 +2485,7 @@ class MozLoader {
 			return new RStr(null, null, utf8);
 		}
 		case Moz.RSet: {
-			boolean[] byteMap = this.readBset();
+			ByteSet byteMap = this.readBset();
 			return new RSet(null, null, byteMap);
 		}
 		case Moz.Consume: {
@@ -2318,6 +2613,39 @@ class MozLoader {
 			Instruction[] jumpTable = this.readJumpTable();
 			return new DFirst(null, null, jumpTable);
 		}
+		case Moz.AndByte: {
+			int byteChar = this.readByte();
+			return new AndByte(null, null, byteChar);
+		}
+		case Moz.AndSet: {
+			ByteSet byteMap = this.readBset();
+			return new AndSet(null, null, byteMap);
+		}
+		case Moz.AndStr: {
+			byte[] utf8 = this.readBstr();
+			return new AndStr(null, null, utf8);
+		}
+		case Moz.TPushCall: {
+			Instruction jump = this.readJump();
+			String nonTerminal = this.readNonTerminal();
+			return new TPushCall(null, null, jump, nonTerminal);
+		}
+		case Moz.PermBegin: {
+			return new PermBegin(null, null);
+		}
+		case Moz.PermLoop: {
+			int size = this.readByte();
+			Instruction jump = this.readJump();
+			return new PermLoop(null, null, size, jump);
+		}
+		case Moz.PermTest: {
+			int index = this.readByte();
+			return new PermTest(null, null, index);
+		}
+		case Moz.PermSet: {
+			int index = this.readByte();
+			return new PermSet(null, null, index);
+		}
 		case 127:
 		case Moz.Label: {
 			String nonTerminal = this.readNonTerminal();
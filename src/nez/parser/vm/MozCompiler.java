@@ -85,6 +85,9 @@ public class MozCompiler extends VisitorMap<DefaultVisitor> {
 			if (inst instanceof Alt) {
 				layoutCode(codeList, ((Alt) inst).jump);
 			}
+			if (inst instanceof PermLoop) {
+				layoutCode(codeList, ((PermLoop) inst).jump);
+			}
 			if (inst instanceof First) {
 				First match = (First) inst;
 				for (int ch = 0; ch < match.jumpTable.length; ch++) {
@@ -358,6 +361,25 @@ public class MozCompiler extends VisitorMap<DefaultVisitor> {
 		}
 	}
 
+	public class Pperm extends DefaultVisitor {
+		@Override
+		public Instruction accept(Expression e, Instruction next) {
+			nez.lang.expr.Pperm p = (nez.lang.expr.Pperm) e;
+			PermLoop loop = new PermLoop(p, null, p.size(), labeling(next));
+			Instruction nextMember = null;
+			for (int i = p.size() - 1; i >= 0; i--) {
+				Expression sub = p.get(i);
+				if (nextMember == null) {
+					nextMember = new PermTest(sub, generate(sub, new PermSet(sub, loop, i)), i);
+				} else {
+					nextMember = new Alt(sub, new PermTest(sub, generate(sub, new Succ(sub, new PermSet(sub, loop, i))), i), labeling(nextMember));
+				}
+			}
+			loop.next = nextMember;
+			return new PermBegin(p, loop);
+		}
+	}
+
 	public class Pzero extends DefaultVisitor {
 		@Override
 		public Instruction accept(Expression e, Instruction next) {
@@ -0,0 +1,176 @@
+package nez.parser.vm;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import nez.parser.ByteCoder;
+import nez.util.ByteSet;
+import nez.util.StringUtils;
+
+/**
+ * MozImage is a read-only view of a Moz container (version 1) written by
+ * ByteCoder. The file is mapped with FileChannel.map and nothing is copied on
+ * open; pools are read in place, so the pages of a compiled grammar are shared
+ * by every process that maps it.
+ */
+
+public class MozImage {
+	private final ByteBuffer buf;
+	private final int[] offset = new int[ByteCoder.SectionSize];
+	private final int[] count = new int[ByteCoder.SectionSize];
+
+	public MozImage(ByteBuffer buf) throws IOException {
+		this.buf = buf.duplicate(); // big endian
+		if (buf.limit() < ByteCoder.HeaderSize || buf.get(0) != 'N' || buf.get(1) != 'E' || buf.get(2) != 'Z') {
+			throw new IOException("Non moz format");
+		}
+		if (getVersion() != ByteCoder.Version) {
+			throw new IOException("unsupported moz version: " + getVersion());
+		}
+		int sections = buf.getInt(28);
+		if (sections < ByteCoder.SectionSize || 32 + sections * 8 > buf.limit()) {
+			throw new IOException("Moz format error");
+		}
+		for (int sec = 0; sec < ByteCoder.SectionSize; sec++) {
+			offset[sec] = buf.getInt(32 + sec * 8);
+			count[sec] = buf.getInt(36 + sec * 8);
+			if (offset[sec] < 0 || count[sec] < 0 || (offset[sec] & 7) != 0) {
+				throw new IOException("Moz format error");
+			}
+		}
+		checkSections();
+	}
+
+	/*
+	 * every count and section end is checked against the limit here, so that
+	 * the readers below can neither allocate nor slice past the file
+	 */
+	private void checkSections() throws IOException {
+		int limit = buf.limit();
+		int strings = count[ByteCoder.Strings];
+		long data = (long) offset[ByteCoder.Strings] + (strings + 1L) * 4;
+		checkEnd(data, limit);
+		int last = 0;
+		for (int id = 0; id <= strings; id++) {
+			int pos = buf.getInt(offset[ByteCoder.Strings] + id * 4);
+			if (pos < last || (id > 0 && pos == last)) { // NUL-terminated
+				throw new IOException("Moz format error");
+			}
+			last = pos;
+		}
+		checkEnd(data + last, limit);
+		checkEnd((long) offset[ByteCoder.Sets] + count[ByteCoder.Sets] * 32L, limit);
+		for (int sec = ByteCoder.NonTerminals; sec <= ByteCoder.Tables; sec++) {
+			checkEnd((long) offset[sec] + count[sec] * 4L, limit);
+			for (int n = 0; n < count[sec]; n++) {
+				int id = getStringId(sec, n);
+				if (id < 0 || id >= strings) {
+					throw new IOException("Moz format error");
+				}
+			}
+		}
+		checkEnd((long) offset[ByteCoder.Code] + count[ByteCoder.Code], limit);
+		/* an instruction takes one byte at least */
+		if (getInstructionSize() < 0 || getInstructionSize() > count[ByteCoder.Code] || getMemoSize() < 0 || getJumpTableSize() < 0 || getProductionSize() < 0) {
+			throw new IOException("Moz format error");
+		}
+	}
+
+	private static void checkEnd(long end, int limit) throws IOException {
+		if (end > limit) {
+			throw new IOException("Moz format error");
+		}
+	}
+
+	public final static MozImage map(String path) throws IOException {
+		RandomAccessFile f = new RandomAccessFile(path, "r");
+		try {
+			FileChannel ch = f.getChannel();
+			return new MozImage(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		} finally {
+			f.close(); // the mapping stays valid
+		}
+	}
+
+	public final static int getVersion(ByteBuffer buf) {
+		return buf.limit() > 3 ? buf.get(3) - '0' : -1;
+	}
+
+	public final int getVersion() {
+		return getVersion(buf);
+	}
+
+	public final int getInstructionSize() {
+		return buf.getInt(12);
+	}
+
+	public final int getMemoSize() {
+		return buf.getInt(16);
+	}
+
+	public final int getJumpTableSize() {
+		return buf.getInt(20);
+	}
+
+	public final int getProductionSize() {
+		return buf.getInt(24);
+	}
+
+	public final int size(int section) {
+		return count[section];
+	}
+
+	/* strings */
+
+	private int stringOffset(int id) {
+		return offset[ByteCoder.Strings] + (count[ByteCoder.Strings] + 1) * 4 + buf.getInt(offset[ByteCoder.Strings] + id * 4);
+	}
+
+	private int stringLength(int id) {
+		return buf.getInt(offset[ByteCoder.Strings] + (id + 1) * 4) - buf.getInt(offset[ByteCoder.Strings] + id * 4) - 1;
+	}
+
+	public final byte[] getBytes(int id) {
+		byte[] b = new byte[stringLength(id)];
+		ByteBuffer d = buf.duplicate();
+		d.position(stringOffset(id));
+		d.get(b);
+		return b;
+	}
+
+	public final String getString(int id) {
+		return StringUtils.newString(getBytes(id));
+	}
+
+	/** returns the string index of the n-th entry of a NonTerminals, Bstrs, Tags or Tables section */
+	public final int getStringId(int section, int n) {
+		return buf.getInt(offset[section] + n * 4);
+	}
+
+	/* sets */
+
+	public final boolean isSet(int id, int byteChar) {
+		int word = buf.getInt(offset[ByteCoder.Sets] + id * 32 + (byteChar >> 5) * 4);
+		return (word & (1 << (byteChar & 31))) != 0;
+	}
+
+	public final ByteSet getByteSet(int id) {
+		int base = offset[ByteCoder.Sets] + id * 32;
+		long[] w = new long[4];
+		for (int i = 0; i < 4; i++) {
+			w[i] = (buf.getInt(base + i * 8 + 4) & 0xffffffffL) << 32 | (buf.getInt(base + i * 8) & 0xffffffffL);
+		}
+		return new ByteSet(w[0], w[1], w[2], w[3]);
+	}
+
+	/* code */
+
+	public final ByteBuffer getCode() {
+		ByteBuffer d = buf.duplicate();
+		d.position(offset[ByteCoder.Code]);
+		d.limit(offset[ByteCoder.Code] + count[ByteCoder.Code]);
+		return d.slice();
+	}
+}
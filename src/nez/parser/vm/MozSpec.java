@@ -103,7 +103,7 @@ public class MozSpec {
 		javaMap.put("tJump", "Instruction");
 		javaMap.put("tJumpTable", "Instruction[]");
 		javaMap.put("tByte", "int");
-		javaMap.put("tBset", "boolean[]");
+		javaMap.put("tBset", "ByteSet");
 		javaMap.put("tBstr", "byte[]");
 		javaMap.put("tShift", "int");
 		javaMap.put("tMemoPoint", "int");
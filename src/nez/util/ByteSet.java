@@ -0,0 +1,181 @@
+package nez.util;
+
+/**
+ * ByteSet is a set of bytes (0-255) packed into four longs; byte c is bit
+ * (c % 64) of word (c / 64). Set operations work a word at a time.
+ */
+
+public final class ByteSet {
+	private long w0;
+	private long w1;
+	private long w2;
+	private long w3;
+
+	public ByteSet() {
+	}
+
+	public ByteSet(long w0, long w1, long w2, long w3) {
+		this.w0 = w0;
+		this.w1 = w1;
+		this.w2 = w2;
+		this.w3 = w3;
+	}
+
+	public ByteSet(int beginChar, int endChar) {
+		this.setRange(beginChar, endChar);
+	}
+
+	public final ByteSet copy() {
+		return new ByteSet(w0, w1, w2, w3);
+	}
+
+	public final long getWord(int index) {
+		switch (index) {
+		case 0:
+			return w0;
+		case 1:
+			return w1;
+		case 2:
+			return w2;
+		default:
+			return w3;
+		}
+	}
+
+	/* membership */
+
+	public final boolean is(int byteChar) {
+		long w = byteChar < 128 ? (byteChar < 64 ? w0 : w1) : (byteChar < 192 ? w2 : (byteChar < 256 ? w3 : 0)); // 256 is EOF
+		return (w & (1L << byteChar)) != 0;
+	}
+
+	public final boolean isEmpty() {
+		return (w0 | w1 | w2 | w3) == 0;
+	}
+
+	public final int size() {
+		return Long.bitCount(w0) + Long.bitCount(w1) + Long.bitCount(w2) + Long.bitCount(w3);
+	}
+
+	/** returns the only byte in this set, or -1 */
+	public final int getUniqueByte() {
+		if (size() != 1) {
+			return -1;
+		}
+		return nextByte(0);
+	}
+
+	/** returns the least byte c >= fromChar in this set, or -1 */
+	public final int nextByte(int fromChar) {
+		for (int i = fromChar >> 6; i < 4 && fromChar < 256; i++) {
+			long w = getWord(i) & (-1L << fromChar);
+			if (w != 0) {
+				return (i << 6) + Long.numberOfTrailingZeros(w);
+			}
+			fromChar = (i + 1) << 6;
+		}
+		return -1;
+	}
+
+	/* update */
+
+	public final void set(int byteChar) {
+		long bit = 1L << byteChar;
+		if (byteChar < 128) {
+			if (byteChar < 64) {
+				w0 |= bit;
+			} else {
+				w1 |= bit;
+			}
+		} else {
+			if (byteChar < 192) {
+				w2 |= bit;
+			} else {
+				w3 |= bit;
+			}
+		}
+	}
+
+	public final void set(int byteChar, boolean b) {
+		if (b) {
+			set(byteChar);
+		} else {
+			long mask = ~(1L << byteChar);
+			if (byteChar < 128) {
+				if (byteChar < 64) {
+					w0 &= mask;
+				} else {
+					w1 &= mask;
+				}
+			} else {
+				if (byteChar < 192) {
+					w2 &= mask;
+				} else {
+					w3 &= mask;
+				}
+			}
+		}
+	}
+
+	public final void setRange(int beginChar, int endChar) {
+		for (int c = beginChar; c <= endChar && c < 256; c++) {
+			set(c);
+		}
+	}
+
+	public final void clear() {
+		w0 = w1 = w2 = w3 = 0;
+	}
+
+	public final void fill() {
+		w0 = w1 = w2 = w3 = -1L;
+	}
+
+	public final void union(ByteSet o) {
+		w0 |= o.w0;
+		w1 |= o.w1;
+		w2 |= o.w2;
+		w3 |= o.w3;
+	}
+
+	public final void intersect(ByteSet o) {
+		w0 &= o.w0;
+		w1 &= o.w1;
+		w2 &= o.w2;
+		w3 &= o.w3;
+	}
+
+	public final boolean intersects(ByteSet o) {
+		return ((w0 & o.w0) | (w1 & o.w1) | (w2 & o.w2) | (w3 & o.w3)) != 0;
+	}
+
+	public final void reverse(boolean isBinary) {
+		w0 = ~w0;
+		w1 = ~w1;
+		w2 = ~w2;
+		w3 = ~w3;
+		if (!isBinary) {
+			w0 &= ~1L;
+		}
+	}
+
+	@Override
+	public final boolean equals(Object o) {
+		if (o instanceof ByteSet) {
+			ByteSet b = (ByteSet) o;
+			return w0 == b.w0 && w1 == b.w1 && w2 == b.w2 && w3 == b.w3;
+		}
+		return false;
+	}
+
+	@Override
+	public final int hashCode() {
+		long h = w0 ^ (w1 * 31) ^ (w2 * 961) ^ (w3 * 29791);
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@Override
+	public final String toString() {
+		return StringUtils.stringfyCharacterClass(this);
+	}
+}
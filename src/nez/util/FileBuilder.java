@@ -34,6 +34,11 @@ public class FileBuilder {
 		}
 	}
 
+	public final void setOutputStream(OutputStream out) {
+		this.out = out;
+		this.fileName = null;
+	}
+
 	public final void write(String text) {
 		try {
 			if (out == null) {
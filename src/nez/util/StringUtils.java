@@ -3,7 +3,6 @@ package nez.util;
 import java.io.UnsupportedEncodingException;
 
 import nez.Verbose;
-import nez.lang.expr.Cset;
 
 public abstract class StringUtils {
 
@@ -246,29 +245,25 @@ public abstract class StringUtils {
 		return sb.toString();
 	}
 
-	public final static String stringfyCharacterClass(boolean[] b) {
+	public final static String stringfyCharacterClass(ByteSet b) {
 		StringBuilder sb = new StringBuilder();
 		sb.append("[");
-		for (int s = 0; s < 256; s++) {
-			if (b[s]) {
-				int e = searchEndChar(b, s + 1);
-				if (s == e) {
-					appendCharClass(sb, s);
-				} else {
-					appendCharClass(sb, s);
-					sb.append("-");
-					appendCharClass(sb, e);
-					s = e;
-				}
+		for (int s = b.nextByte(0); s != -1; s = b.nextByte(s + 1)) {
+			int e = searchEndChar(b, s + 1);
+			appendCharClass(sb, s);
+			if (s != e) {
+				sb.append("-");
+				appendCharClass(sb, e);
+				s = e;
 			}
 		}
 		sb.append("]");
 		return sb.toString();
 	}
 
-	private final static int searchEndChar(boolean[] b, int s) {
+	private final static int searchEndChar(ByteSet b, int s) {
 		for (; s < 256; s++) {
-			if (!b[s]) {
+			if (!b.is(s)) {
 				return s - 1;
 			}
 		}
@@ -308,43 +303,8 @@ public abstract class StringUtils {
 		}
 	}
 
-	public final static String stringfyBitmap(boolean[] b) {
-		StringBuilder sb = new StringBuilder();
-		int end = 0;
-		for (int c = 0; c < b.length; c++) {
-			if (b[c]) {
-				end = c + 1;
-			}
-		}
-		for (int offset = 0; offset < end; offset += 4) {
-			if (offset + 3 < b.length) {
-				appendBitmap(sb, b, offset);
-			}
-		}
-		return sb.toString();
-	}
-
-	private final static char[] HexChar = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
-
-	private static void appendBitmap(StringBuilder sb, boolean[] b, int offset) {
-		int n = 0;
-		if (b[offset + 0]) {
-			n |= (1 << 3);
-		}
-		if (b[offset + 1]) {
-			n |= (1 << 2);
-		}
-		if (b[offset + 2]) {
-			n |= (1 << 1);
-		}
-		if (b[offset + 3]) {
-			n |= 1;
-		}
-		sb.append(HexChar[n]);
-	}
-
-	public static final boolean[] parseByteMap(String text) {
-		boolean[] b = Cset.newMap(false);
+	public static final ByteSet parseByteMap(String text) {
+		ByteSet b = new ByteSet();
 		CharReader r = new CharReader(text);
 		char ch = r.readChar();
 		while (ch != 0) {
@@ -352,12 +312,12 @@ public abstract class StringUtils {
 			if (next == '-') {
 				int ch2 = r.readChar();
 				if (ch > 0 && ch2 < 128) {
-					Cset.appendRange(b, ch, ch2);
+					b.setRange(ch, ch2);
 				}
 				ch = r.readChar();
 			} else {
 				if (ch > 0 && ch < 128) {
-					Cset.appendRange(b, ch, ch);
+					b.set(ch);
 				}
 				ch = next; // r.readChar();
 			}
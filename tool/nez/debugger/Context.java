@@ -9,8 +9,8 @@ import nez.ast.Source;
 import nez.ast.Symbol;
 import nez.ast.TreeTransducer;
 import nez.lang.Expression;
-import nez.lang.expr.Cset;
 import nez.parser.SymbolTable;
+import nez.util.ByteSet;
 
 public abstract class Context implements Source {
 	long pos;
@@ -43,11 +43,11 @@ public abstract class Context implements Source {
 		this.StackTop = 0;
 		this.callStackTop = 0;
 		this.treeTransducer = new CommonTreeTransducer();
-		this.WS = Cset.newMap(false);
-		this.WS[9] = true;
-		this.WS[10] = true;
-		this.WS[13] = true;
-		this.WS[32] = true;
+		this.WS = new ByteSet();
+		this.WS.set(9);
+		this.WS.set(10);
+		this.WS.set(13);
+		this.WS.set(32);
 	}
 
 	public final long getPosition() {
@@ -217,7 +217,7 @@ public abstract class Context implements Source {
 	}
 
 	boolean failOver = false;
-	boolean[] WS = null;
+	ByteSet WS = null;
 	ArrayList<FailOverInfo> failOverList = new ArrayList<FailOverInfo>();
 	DebugVMInstruction matchInst = null;
 
@@ -230,7 +230,7 @@ public abstract class Context implements Source {
 		}
 		if (this.failOver && !matchInst.equals(inst)) {
 			this.matchInst = inst;
-			if (this.WS[ch]) {
+			if (this.WS.is(ch)) {
 				this.failOverList.add(new FailOverInfo(this.pos, inst.expr));
 				this.consume(1);
 				return inst.next;
@@ -249,7 +249,7 @@ public abstract class Context implements Source {
 		}
 		if (this.failOver && !matchInst.equals(inst)) {
 			this.matchInst = inst;
-			if (this.WS[this.byteAt(this.pos)]) {
+			if (this.WS.is(this.byteAt(this.pos))) {
 				this.failOverList.add(new FailOverInfo(this.pos, inst.expr));
 				this.consume(1);
 				return inst.next;
@@ -262,14 +262,14 @@ public abstract class Context implements Source {
 
 	public final DebugVMInstruction opIcharclass(Icharclass inst) {
 		int byteChar = this.byteAt(this.pos);
-		if (inst.byteMap[byteChar]) {
+		if (inst.byteMap.is(byteChar)) {
 			this.matchInst = inst;
 			this.consume(1);
 			return inst.next;
 		}
 		if (this.failOver && !matchInst.equals(inst)) {
 			this.matchInst = inst;
-			if (this.WS[byteChar]) {
+			if (this.WS.is(byteChar)) {
 				this.failOverList.add(new FailOverInfo(this.pos, inst.expr));
 				this.consume(1);
 				return inst.next;
@@ -39,6 +39,7 @@ import nez.lang.expr.Xsymbol;
 import nez.parser.AbstractGenerator;
 import nez.parser.GenerativeGrammar;
 import nez.parser.Instruction;
+import nez.util.ByteSet;
 
 public class DebugVMCompiler extends AbstractGenerator {
 	GenerativeGrammar peg;
@@ -103,18 +104,13 @@ public class DebugVMCompiler extends AbstractGenerator {
 	boolean checkUnreachableChoice = true;
 
 	public boolean optimizeCharSet(Pchoice p) {
-		boolean[] map = Cset.newMap(false);
+		ByteSet map = new ByteSet();
 		for (int i = 0; i < p.size(); i++) {
 			Expression e = p.get(i);
 			if (e instanceof Cbyte) {
-				map[((Cbyte) e).byteChar] = true;
+				map.set(((Cbyte) e).byteChar);
 			} else if (e instanceof Cset) {
-				Cset bmap = (Cset) e;
-				for (int j = 0; j < bmap.byteMap.length; j++) {
-					if (bmap.byteMap[j]) {
-						map[j] = true;
-					}
-				}
+				map.union(((Cset) e).byteMap);
 			} else {
 				return false;
 			}
@@ -15,6 +15,7 @@ import nez.lang.expr.Xsymbol;
 import nez.lang.expr.Xexists;
 import nez.lang.expr.Xis;
 import nez.lang.expr.Xlocal;
+import nez.util.ByteSet;
 import nez.util.StringUtils;
 
 public abstract class DebugVMInstruction {
@@ -367,7 +368,7 @@ class Istr extends JumpInstruction {
 }
 
 class Icharclass extends JumpInstruction {
-	boolean[] byteMap;
+	ByteSet byteMap;
 
 	public Icharclass(Cset e, BasicBlock jump) {
 		super(e, jump);
@@ -375,7 +376,7 @@ class Icharclass extends JumpInstruction {
 		this.byteMap = e.byteMap;
 	}
 
-	public Icharclass(Expression e, BasicBlock jump, boolean[] byteMap) {
+	public Icharclass(Expression e, BasicBlock jump, ByteSet byteMap) {
 		super(e, jump);
 		this.op = Opcode.Icharclass;
 		this.byteMap = byteMap;
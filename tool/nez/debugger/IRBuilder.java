@@ -15,6 +15,7 @@ import nez.lang.expr.Xexists;
 import nez.lang.expr.Xis;
 import nez.lang.expr.Xlocal;
 import nez.parser.GenerativeGrammar;
+import nez.util.ByteSet;
 
 public class IRBuilder {
 	private BasicBlock curBB;
@@ -207,7 +208,7 @@ public class IRBuilder {
 		return this.curBB.append(new Icharclass(e, jump));
 	}
 
-	public DebugVMInstruction createIcharclass(Expression e, BasicBlock jump, boolean[] byteMap) {
+	public DebugVMInstruction createIcharclass(Expression e, BasicBlock jump, ByteSet byteMap) {
 		return this.curBB.append(new Icharclass(e, jump, byteMap));
 	}
 
@@ -0,0 +1,37 @@
+package nez.ext;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import nez.ast.BinaryTreeWriter;
+import nez.ast.Tree;
+import nez.io.SourceContext;
+import nez.main.CommandContext;
+
+/**
+ * nez bast saves the AST of each input in the binary format of
+ * BinaryTreeWriter (.bast), which BinaryTree.load maps without reparsing.
+ */
+
+public class Cbast extends Cparse {
+	@Override
+	protected boolean isStreamable() {
+		return false;
+	}
+
+	@Override
+	protected void makeOutputFile(CommandContext config, SourceContext source, Tree<?> node) throws IOException {
+		String path = config.getOutputFileName(source, "bast");
+		WritableByteChannel out = path == null ? Channels.newChannel(System.out) : FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		new BinaryTreeWriter(out).writeTree(node);
+		if (path == null) {
+			System.out.flush();
+		} else {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package nez.ext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import nez.Parser;
+import nez.io.SourceContext;
+import nez.main.Command;
+import nez.main.CommandContext;
+import nez.util.ConsoleUtils;
+import nez.util.StringUtils;
+import nez.util.UList;
+
+/**
+ * Cbench measures the matching throughput. It also reports the heap
+ * allocated per match after warmup, which should be zero: a context keeps its
+ * stacks and memo table from one match to the next. With maxalloc=N, bench
+ * fails if more than N bytes are allocated per match, so that an allocation
+ * on the hot path is caught as a regression.
+ *
+ * The JIT still allocates now and then while it compiles and deoptimizes the
+ * parser, so after warmup bench goes on until a few rounds in a row allocate
+ * the same. It then reports the round that allocated most, so that an
+ * allocation on one match in N is not hidden by the others.
+ */
+
+public class Cbench extends Command {
+	@Override
+	public void exec(CommandContext config) throws IOException {
+		config.getStrategy().setEnabled("ast", false);
+		int warmup = config.getStrategy().getInt("warmup", 5);
+		int repeat = config.getStrategy().getInt("repeat", 10);
+		int maxalloc = config.getStrategy().getInt("maxalloc", -1);
+		Parser g = config.newParser();
+		UList<SourceContext> inputs = new UList<SourceContext>(new SourceContext[4]);
+		while (config.hasInput()) {
+			inputs.add(config.nextInput());
+		}
+		for (int i = 0; i < warmup; i++) {
+			run(g, inputs);
+		}
+		com.sun.management.ThreadMXBean mx = getAllocationCounter();
+		if (mx != null) {
+			long last = -1;
+			int same = 0;
+			for (int i = 0; i < MaxSettleRounds && same < SettleRounds; i++) {
+				long a = allocatedBytes(mx);
+				run(g, inputs);
+				a = allocatedBytes(mx) - a;
+				same = (a == last) ? same + 1 : 0;
+				last = a;
+			}
+		}
+		long consumed = 0;
+		long time = 0;
+		long best = Long.MAX_VALUE;
+		long allocated = -1;
+		for (int i = 0; i < repeat; i++) {
+			long a = mx == null ? 0 : allocatedBytes(mx);
+			long t = System.nanoTime();
+			consumed += run(g, inputs);
+			long t2 = System.nanoTime();
+			if (mx != null) {
+				a = allocatedBytes(mx) - a;
+				if (a > allocated) {
+					allocated = a;
+				}
+			}
+			time += (t2 - t);
+			if (t2 - t < best) {
+				best = t2 - t;
+			}
+		}
+		long size = consumed / Math.max(repeat, 1);
+		ConsoleUtils.println(inputs.size() + " files, " + size + " bytes, " + StringUtils.formatMPS(consumed, time) + " MiB/s (mean), " + StringUtils.formatMPS(size, best) + " MiB/s (best)");
+		if (allocated >= 0 && inputs.size() > 0) {
+			long perMatch = allocated / inputs.size();
+			ConsoleUtils.println(perMatch + " bytes allocated per match");
+			if (maxalloc >= 0 && perMatch > maxalloc) {
+				ConsoleUtils.exit(1, "allocated " + perMatch + " bytes per match (maxalloc=" + maxalloc + ")");
+			}
+		}
+	}
+
+	private final static int MaxSettleRounds = 100;
+	private final static int SettleRounds = 3; // rounds in a row that allocate the same
+
+	private static long allocatedBytes(com.sun.management.ThreadMXBean mx) {
+		return mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/* null if the JVM does not count the bytes allocated by a thread */
+	private static com.sun.management.ThreadMXBean getAllocationCounter() {
+		java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if (mx instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) mx;
+			if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+				hotspot.getThreadAllocatedBytes(Thread.currentThread().getId()); // resolves the call once
+				return hotspot;
+			}
+		}
+		return null;
+	}
+
+	private long run(Parser g, UList<SourceContext> inputs) {
+		long consumed = 0;
+		for (int i = 0; i < inputs.size(); i++) {
+			SourceContext input = inputs.get(i);
+			input.setPosition(0);
+			if (!g.match(input)) {
+				ConsoleUtils.exit(1, input.getSyntaxErrorMessage());
+			}
+			consumed += input.getPosition();
+			g.logProfiler();
+		}
+		return consumed;
+	}
+}
@@ -0,0 +1,158 @@
+package nez.ext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import nez.Parser;
+import nez.Strategy;
+import nez.io.SourceContext;
+import nez.main.Command;
+import nez.main.CommandContext;
+import nez.parser.generator.CParserGenerator;
+import nez.util.ConsoleUtils;
+import nez.util.StringUtils;
+import nez.util.UList;
+
+/**
+ * nez cbench generates the C parser of a grammar (nez parser.c), compiles it
+ * with the local C compiler (cc=NAME) and runs it against the interpreter on
+ * the same inputs. Both must print the same trees (or the same match results
+ * with -ast) before the batch driver of the C parser and the interpreter are
+ * measured over repeat=N rounds. The generated files are kept in -d DIR, or
+ * in a temporary directory.
+ */
+
+public class Ccbench extends Command {
+	@Override
+	public void exec(CommandContext config) throws IOException {
+		Strategy strategy = config.getStrategy();
+		boolean ast = strategy.isEnabled("ast", Strategy.AST);
+		int warmup = strategy.getInt("warmup", 5);
+		int repeat = strategy.getInt("repeat", 10);
+		UList<String> files = config.getInputFileList();
+		if (files.size() == 0) {
+			ConsoleUtils.exit(1, "no input files");
+		}
+		Parser g = config.newParser();
+		String dir = config.outputDirName;
+		if (dir == null) {
+			dir = Files.createTempDirectory("nez").toString();
+		} else {
+			Files.createDirectories(Paths.get(dir));
+		}
+		String name = config.getGrammarName();
+		if (name == null) {
+			name = "grammar";
+		}
+		String cc = strategy.getString("cc", "cc");
+		String[] out = new String[1];
+		String exe = compile(out, g, strategy, dir, name, cc);
+		if (exe == null) {
+			ConsoleUtils.println(out[0]);
+			ConsoleUtils.exit(1, "cannot compile " + new File(dir, name + ".c"));
+		}
+		ConsoleUtils.println("generated " + exe + " with " + cc);
+
+		UList<SourceContext> inputs = new UList<SourceContext>(new SourceContext[4]);
+		long size = 0;
+		for (String f : files) {
+			byte[] text = Files.readAllBytes(new File(f).toPath());
+			inputs.add(SourceContext.newByteContext(f, 1, text, 0, text.length));
+			size += text.length;
+		}
+		boolean same = true;
+		for (SourceContext input : inputs) {
+			boolean ok = isSame(out, g, exe, input, ast);
+			ConsoleUtils.println(input.getResourceName() + ": " + (ok ? "same" : "MISMATCH"));
+			same &= ok;
+		}
+		if (!same) {
+			ConsoleUtils.exit(1, "the generated parser disagrees with the interpreter");
+		}
+
+		for (int i = 0; i < warmup; i++) {
+			runInterpreter(g, inputs, ast);
+		}
+		long[] nezTime = { 0, Long.MAX_VALUE };
+		for (int i = 0; i < repeat; i++) {
+			long t = System.nanoTime();
+			runInterpreter(g, inputs, ast);
+			t = System.nanoTime() - t;
+			nezTime[0] += t;
+			nezTime[1] = Math.min(nezTime[1], t);
+		}
+		List<String> args = new ArrayList<String>();
+		args.add(exe);
+		args.add("-b");
+		args.add(String.valueOf(repeat));
+		for (String f : files) {
+			args.add(f);
+		}
+		if (run(out, args.toArray(new String[args.size()])) != 0) {
+			ConsoleUtils.exit(1, out[0]);
+		}
+		ConsoleUtils.println(inputs.size() + " files, " + size + " bytes, " + (ast ? "parse" : "match"));
+		ConsoleUtils.println("nez:  " + StringUtils.formatMPS(size * repeat, nezTime[0]) + " MiB/s (mean), " + StringUtils.formatMPS(size, nezTime[1]) + " MiB/s (best)");
+		ConsoleUtils.print(out[0]);
+	}
+
+	/*
+	 * generates DIR/NAME.c and compiles it with cc; the path of the executable,
+	 * or null with the compiler messages in out[0]
+	 */
+	public static String compile(String[] out, Parser g, Strategy strategy, String dir, String name, String cc) throws IOException {
+		CParserGenerator gen = new CParserGenerator();
+		gen.init(strategy, dir, name);
+		gen.generate(g.getGrammar());
+		String exe = new File(dir, name).getAbsolutePath();
+		if (run(out, cc, "-O2", "-w", "-o", exe, exe + ".c") != 0) {
+			return null;
+		}
+		return exe;
+	}
+
+	/* whether the executable prints what the interpreter makes of the input */
+	public static boolean isSame(String[] out, Parser g, String exe, SourceContext input, boolean ast) throws IOException {
+		input.setPosition(0);
+		String expected = ast ? String.valueOf(g.parseCommonTree(input)) : String.valueOf(g.match(input));
+		run(out, exe, input.getResourceName());
+		return out[0].equals(expected + "\n");
+	}
+
+	/* runs a command and keeps its output in out[0] */
+	public static int run(String[] out, String... command) throws IOException {
+		Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		InputStream in = p.getInputStream();
+		byte[] b = new byte[8192];
+		int n;
+		while ((n = in.read(b)) != -1) {
+			buf.write(b, 0, n);
+		}
+		out[0] = buf.toString("UTF-8");
+		try {
+			return p.waitFor();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private int runInterpreter(Parser g, UList<SourceContext> inputs, boolean ast) {
+		int count = 0;
+		for (SourceContext input : inputs) {
+			input.setPosition(0);
+			if (ast) {
+				count += g.parseCommonTree(input) == null ? 0 : 1;
+			} else {
+				count += g.match(input) ? 1 : 0;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,363 @@
+package nez.ext;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nez.Grammar;
+import nez.Parser;
+import nez.ParserCache;
+import nez.Strategy;
+import nez.Verbose;
+import nez.ast.Tree;
+import nez.ast.TreeWriter;
+import nez.io.SourceContext;
+import nez.lang.NezGrammar1;
+import nez.lang.util.NezFileFormatter;
+import nez.main.Command;
+import nez.main.CommandContext;
+import nez.main.DaemonClient;
+import nez.util.ConsoleUtils;
+import nez.util.StringUtils;
+
+/**
+ * nez daemon --option:port=N:cache=N
+ *
+ * A resident server that keeps compiled parsers (and a warmed-up JIT) across
+ * requests. It listens on the loopback interface only and serves match,
+ * parse and format requests sent by `nez client`; `stat` lists the cache and
+ * `stop` shuts the daemon down. Requests run in parallel, but each cached
+ * parser serves one request at a time.
+ *
+ * A request reads and writes files with the rights of the daemon user, so
+ * it must start with the token that the daemon writes to a file readable by
+ * that user only (see DaemonClient); other requests are refused. Do not run
+ * the daemon on a machine where the home directory is shared.
+ */
+
+public class Cdaemon extends Command {
+	private ParserCache cache;
+	private Parser nezParser = null;
+	private ServerSocket server;
+	private ExecutorService pool;
+	private byte[] token;
+
+	@Override
+	public void exec(CommandContext config) throws IOException {
+		Strategy strategy = config.getStrategy();
+		int port = strategy.getInt("port", DaemonClient.DefaultPort);
+		this.cache = new ParserCache(strategy.getInt("cache", ParserCache.DefaultCapacity));
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		final Path tokenPath = writeToken(port);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					Files.deleteIfExists(tokenPath);
+				} catch (IOException e) {
+				}
+			}
+		});
+		this.pool = Executors.newFixedThreadPool(strategy.getInt("threads", Runtime.getRuntime().availableProcessors()));
+		ConsoleUtils.println("nez daemon listening on " + server.getLocalSocketAddress());
+		while (!server.isClosed()) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				break; // stopped
+			}
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					serve(socket);
+				}
+			});
+		}
+		pool.shutdown();
+	}
+
+	/* a fresh random token in a file that only this user can read */
+	private Path writeToken(int port) throws IOException {
+		byte[] b = new byte[32];
+		new SecureRandom().nextBytes(b);
+		StringBuilder sb = new StringBuilder();
+		for (byte x : b) {
+			sb.append(String.format("%02x", x & 0xff));
+		}
+		this.token = sb.toString().getBytes(StandardCharsets.UTF_8);
+		Path path = DaemonClient.getTokenPath(port);
+		Path dir = path.getParent();
+		boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+		if (!Files.isDirectory(dir)) {
+			if (posix) {
+				Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			} else {
+				Files.createDirectories(dir);
+			}
+		}
+		Files.deleteIfExists(path);
+		try {
+			if (posix) {
+				Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+			} else {
+				File f = Files.createFile(path).toFile();
+				f.setReadable(false, false);
+				f.setReadable(true, true);
+				f.setWritable(false, false);
+				f.setWritable(true, true);
+			}
+		} catch (FileAlreadyExistsException e) {
+			throw new IOException("cannot create " + path);
+		}
+		Files.write(path, this.token);
+		return path;
+	}
+
+	private boolean isAuthorized(String given) {
+		return MessageDigest.isEqual(this.token, given.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void serve(Socket socket) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			String line = in.readLine();
+			int status = 2;
+			if (line != null) {
+				/* buffered so that a closed client cannot abort FileBuilder */
+				Request req = new Request(new ByteArrayOutputStream());
+				String[] args = line.split("\t", -1);
+				try {
+					if (!isAuthorized(args[0])) {
+						throw new IOException("unauthorized request (no valid token)");
+					}
+					req.parse(args);
+					status = exec(req);
+				} catch (IOException e) {
+					req.println("error: " + e.getMessage());
+				} catch (RuntimeException e) {
+					Verbose.traceException(e);
+					req.println("error: " + e);
+				}
+				req.out.writeTo(out);
+			}
+			out.write((DaemonClient.Trailer + String.valueOf(status) + "\n").getBytes("UTF-8"));
+			out.flush();
+		} catch (IOException e) {
+			Verbose.println("daemon: " + e.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/* request */
+
+	static class Request {
+		final ByteArrayOutputStream out;
+		String cwd;
+		String command = null;
+		String grammarPath = null;
+		String start = null;
+		String text = null;
+		String outputDir = null;
+		final Strategy strategy = new Strategy();
+		final List<String> inputs = new ArrayList<String>();
+
+		Request(ByteArrayOutputStream out) {
+			this.out = out;
+		}
+
+		private String resolve(String path) {
+			File f = new File(path);
+			return f.isAbsolute() ? path : new File(cwd, path).getPath();
+		}
+
+		/* a grammar that is not in cwd may be bundled (nez/lib), as in the CLI */
+		private String resolveGrammar(String path) {
+			File f = new File(path);
+			if (f.isAbsolute() || !new File(cwd, path).isFile()) {
+				return path;
+			}
+			return new File(cwd, path).getPath();
+		}
+
+		/* args[0] is the token */
+		void parse(String[] args) throws IOException {
+			if (args.length < 2) {
+				throw new IOException("malformed request");
+			}
+			this.cwd = args[1];
+			int index = 2;
+			if (index < args.length && !args[index].startsWith("-")) {
+				this.command = args[index++];
+			}
+			while (index < args.length) {
+				String argument = args[index++];
+				boolean hasValue = index < args.length;
+				if ((argument.equals("-g") || argument.equals("-p") || argument.equals("--grammar") || argument.equals("--peg")) && hasValue) {
+					grammarPath = resolveGrammar(args[index++]);
+				} else if ((argument.equals("-s") || argument.equals("--start")) && hasValue) {
+					start = args[index++];
+				} else if ((argument.equals("-t") || argument.equals("--text")) && hasValue) {
+					text = args[index++];
+				} else if ((argument.equals("-d") || argument.equals("--dir")) && hasValue) {
+					outputDir = resolve(args[index++]);
+				} else if (argument.startsWith("--option:")) {
+					strategy.setOption(argument.substring(9));
+				} else if (argument.equals("-i") || argument.equals("--input")) {
+					continue;
+				} else if (argument.startsWith("-")) {
+					throw new IOException("unsupported option in daemon mode: " + argument);
+				} else {
+					inputs.add(resolve(argument));
+				}
+			}
+		}
+
+		final void println(String msg) throws IOException {
+			out.write(msg.getBytes("UTF-8"));
+			out.write('\n');
+		}
+
+		final String getOutputFileName(SourceContext input, String ext) {
+			return outputDir == null ? null : StringUtils.toFileName(input.getResourceName(), outputDir, ext);
+		}
+	}
+
+	private List<SourceContext> inputs(Request req) throws IOException {
+		List<SourceContext> l = new ArrayList<SourceContext>();
+		if (req.text != null) {
+			l.add(SourceContext.newStringContext(req.text));
+		}
+		for (String path : req.inputs) {
+			l.add(SourceContext.newFileContext(path));
+		}
+		return l;
+	}
+
+	private Parser getParser(Request req) throws IOException {
+		if (req.grammarPath == null) {
+			throw new IOException("daemon mode requires a grammar file (-g)");
+		}
+		return cache.getParser(req.grammarPath, req.start, req.strategy);
+	}
+
+	private int exec(Request req) throws IOException {
+		String cmd = req.command == null ? "" : req.command;
+		if (cmd.equals("match")) {
+			req.strategy.setEnabled("ast", false);
+			return match(req, getParser(req));
+		}
+		if (cmd.equals("parse")) {
+			return parse(req, getParser(req));
+		}
+		if (cmd.equals("format")) {
+			return format(req);
+		}
+		if (cmd.equals("stat")) {
+			for (String s : cache.stat()) {
+				req.println(s);
+			}
+			return 0;
+		}
+		if (cmd.equals("stop")) {
+			req.println("stopping nez daemon");
+			server.close();
+			return 0;
+		}
+		req.println("unsupported command in daemon mode: " + cmd);
+		return 2;
+	}
+
+	private int match(Request req, Parser g) throws IOException {
+		int failureCount = 0;
+		for (SourceContext file : inputs(req)) {
+			boolean result;
+			synchronized (g) {
+				result = g.match(file);
+				g.logProfiler();
+			}
+			if (!result) {
+				req.println(file.getSyntaxErrorMessage());
+				failureCount++;
+				continue;
+			}
+			if (file.hasUnconsumed()) {
+				req.println(file.getUnconsumedMessage());
+			}
+		}
+		return failureCount > 0 ? 1 : 0;
+	}
+
+	private int parse(Request req, Parser g) throws IOException {
+		for (SourceContext input : inputs(req)) {
+			Tree<?> node;
+			synchronized (g) {
+				node = g.parseCommonTree(input);
+				g.logProfiler();
+			}
+			if (node == null) {
+				req.println(input.getSyntaxErrorMessage());
+				continue;
+			}
+			if (input.hasUnconsumed()) {
+				req.println(input.getUnconsumedMessage());
+			}
+			String path = req.getOutputFileName(input, "ast");
+			TreeWriter w = path == null ? new TreeWriter(req.out) : new TreeWriter(path);
+			w.writeTree(node);
+			w.writeNewLine();
+			w.close();
+		}
+		return 0;
+	}
+
+	private synchronized Parser getNezParser() {
+		if (nezParser == null) {
+			nezParser = new NezGrammar1().load(new Grammar("nez"), "File").newParser(Strategy.newDefaultStrategy());
+		}
+		return nezParser;
+	}
+
+	private int format(Request req) throws IOException {
+		if (req.grammarPath == null) {
+			throw new IOException("format requires a grammar file (-g)");
+		}
+		SourceContext source = SourceContext.newFileContext(req.grammarPath);
+		Parser p = getNezParser();
+		Tree<?> node;
+		synchronized (p) {
+			node = p.parseCommonTree(source);
+		}
+		if (node == null) {
+			req.println(source.getSyntaxErrorMessage());
+			return 1;
+		}
+		TreeWriter w = new TreeWriter(req.out);
+		new NezFileFormatter(w).parse(node);
+		w.writeNewLine();
+		return 0;
+	}
+}
@@ -0,0 +1,202 @@
+package nez.ext;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import nez.Parser;
+import nez.Strategy;
+import nez.ast.Tree;
+import nez.io.SourceContext;
+import nez.main.Command;
+import nez.main.CommandContext;
+import nez.parser.generator.JavaParserGenerator;
+import nez.util.ConsoleUtils;
+import nez.util.StringUtils;
+import nez.util.UList;
+
+/**
+ * nez javabench generates the Java parser of a grammar (nez parser.java),
+ * compiles it with the system compiler and runs it against the interpreter on
+ * the same inputs. Both must build the same trees (or match the same length
+ * with -ast) before their throughput is measured over warmup=N:repeat=N
+ * rounds. The generated source is kept in -d DIR, or in a temporary directory.
+ */
+
+public class Cjavabench extends Command {
+	@Override
+	public void exec(CommandContext config) throws IOException {
+		Strategy strategy = config.getStrategy();
+		boolean ast = strategy.isEnabled("ast", Strategy.AST);
+		int warmup = strategy.getInt("warmup", 5);
+		int repeat = strategy.getInt("repeat", 10);
+		UList<String> files = config.getInputFileList();
+		if (files.size() == 0) {
+			ConsoleUtils.exit(1, "no input files");
+		}
+		Parser g = config.newParser();
+		String dir = config.outputDirName;
+		if (dir == null) {
+			dir = Files.createTempDirectory("nez").toString();
+		} else {
+			Files.createDirectories(Paths.get(dir));
+		}
+		String name = config.getGrammarName();
+		Generated p = null;
+		try {
+			p = compile(g, strategy, dir, name == null ? "grammar" : name, ast);
+		} catch (IOException e) {
+			ConsoleUtils.exit(1, e.getMessage());
+		}
+		ConsoleUtils.println("generated " + p.className + " in " + dir);
+
+		UList<SourceContext> inputs = new UList<SourceContext>(new SourceContext[4]);
+		UList<byte[]> texts = new UList<byte[]>(new byte[4][]);
+		long size = 0;
+		for (String f : files) {
+			byte[] text = Files.readAllBytes(Paths.get(f));
+			texts.add(text);
+			inputs.add(SourceContext.newByteContext(f, 1, text, 0, text.length));
+			size += text.length;
+		}
+		boolean same = true;
+		String[] out = new String[1];
+		for (int i = 0; i < inputs.size(); i++) {
+			SourceContext input = inputs.ArrayValues[i];
+			boolean ok = isSame(out, g, p, input, texts.ArrayValues[i], ast);
+			ConsoleUtils.println(input.getResourceName() + ": " + out[0]);
+			same &= ok;
+		}
+		if (!same) {
+			ConsoleUtils.exit(1, "the generated parser disagrees with the interpreter");
+		}
+
+		for (int i = 0; i < warmup; i++) {
+			runInterpreter(g, inputs, ast);
+			runGenerated(p, texts);
+		}
+		long[] nezTime = { 0, Long.MAX_VALUE };
+		long[] javaTime = { 0, Long.MAX_VALUE };
+		for (int i = 0; i < repeat; i++) {
+			long t = System.nanoTime();
+			runInterpreter(g, inputs, ast);
+			long t2 = System.nanoTime();
+			runGenerated(p, texts);
+			long t3 = System.nanoTime();
+			nezTime[0] += (t2 - t);
+			nezTime[1] = Math.min(nezTime[1], t2 - t);
+			javaTime[0] += (t3 - t2);
+			javaTime[1] = Math.min(javaTime[1], t3 - t2);
+		}
+		ConsoleUtils.println(inputs.size() + " files, " + size + " bytes, " + (ast ? "parse" : "match"));
+		ConsoleUtils.println("nez:  " + StringUtils.formatMPS(size * repeat, nezTime[0]) + " MiB/s (mean), " + StringUtils.formatMPS(size, nezTime[1]) + " MiB/s (best)");
+		ConsoleUtils.println("java: " + StringUtils.formatMPS(size * repeat, javaTime[0]) + " MiB/s (mean), " + StringUtils.formatMPS(size, javaTime[1]) + " MiB/s (best)");
+	}
+
+	/* generates DIR/NAME.java, compiles it with the system compiler and loads it */
+	public static Generated compile(Parser g, Strategy strategy, String dir, String name, boolean ast) throws IOException {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (javac == null) {
+			throw new IOException("no system Java compiler; run on a JDK");
+		}
+		JavaParserGenerator gen = new JavaParserGenerator();
+		gen.init(strategy, dir, name);
+		gen.generate(g.getGrammar());
+		String className = gen.getClassName();
+		String simpleName = className.substring(className.lastIndexOf('.') + 1);
+		String path = dir + "/" + simpleName + ".java";
+		if (javac.run(null, null, null, "-nowarn", "-d", dir, path) != 0) {
+			throw new IOException("cannot compile " + path);
+		}
+		URLClassLoader loader = new URLClassLoader(new URL[] { new File(dir).toURI().toURL() });
+		try {
+			return new Generated(loader.loadClass(className), ast);
+		} catch (Exception e) {
+			throw new IOException("cannot load " + className + ": " + e);
+		}
+	}
+
+	/*
+	 * whether the generated parser builds the same tree (or match result) and
+	 * stops at the same position as the interpreter; out[0] tells which
+	 */
+	public static boolean isSame(String[] out, Parser g, Generated p, SourceContext input, byte[] text, boolean ast) {
+		input.setPosition(0);
+		String expected = ast ? String.valueOf(g.parseCommonTree(input)) : String.valueOf(g.match(input));
+		Object parser = p.newParser(text);
+		String result = String.valueOf(p.run(parser));
+		boolean failed = result.equals("null") || result.equals("false");
+		boolean ok = expected.equals(result) && (failed || input.getPosition() == p.getPosition(parser));
+		out[0] = ok ? "same" : "MISMATCH at " + input.getPosition() + " and " + p.getPosition(parser);
+		return ok;
+	}
+
+	public static class Generated {
+		final String className;
+		final Constructor<?> ctor;
+		final Method run;
+		final Method getPosition;
+
+		Generated(Class<?> c, boolean ast) throws NoSuchMethodException {
+			this.className = c.getName();
+			this.ctor = c.getConstructor(byte[].class);
+			this.run = c.getMethod(ast ? "parse" : "match");
+			this.getPosition = c.getMethod("getPosition");
+		}
+
+		Object newParser(byte[] text) {
+			try {
+				return ctor.newInstance(text);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		Object run(Object parser) {
+			try {
+				return run.invoke(parser);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		int getPosition(Object parser) {
+			try {
+				return (Integer) getPosition.invoke(parser);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	private int runInterpreter(Parser g, UList<SourceContext> inputs, boolean ast) {
+		int count = 0;
+		for (SourceContext input : inputs) {
+			input.setPosition(0);
+			if (ast) {
+				Tree<?> node = g.parseCommonTree(input);
+				count += node == null ? 0 : 1;
+			} else {
+				count += g.match(input) ? 1 : 0;
+			}
+		}
+		return count;
+	}
+
+	private int runGenerated(Generated p, UList<byte[]> texts) {
+		int count = 0;
+		for (byte[] text : texts) {
+			Object result = p.run(p.newParser(text));
+			count += result == null || Boolean.FALSE.equals(result) ? 0 : 1;
+		}
+		return count;
+	}
+}
@@ -1,16 +1,17 @@
 package nez.ext;
 
-import nez.ast.Tree;
-import nez.ast.TreeWriter;
-import nez.io.SourceContext;
-import nez.main.CommandContext;
+import java.nio.channels.WritableByteChannel;
+
+import nez.ast.TreeStreamWriter;
 
 public class Cjson extends Cparse {
 	@Override
-	protected void makeOutputFile(CommandContext config, SourceContext source, Tree<?> node) {
-		TreeWriter w = new TreeWriter(config.getStrategy(), config.getOutputFileName(source, "json"));
-		w.writeTree(node);
-		w.writeNewLine();
-		w.close();
+	protected String getOutputExtension() {
+		return "json";
+	}
+
+	@Override
+	protected TreeStreamWriter newTreeStreamWriter(WritableByteChannel out) {
+		return new TreeStreamWriter.JSON(out);
 	}
 }
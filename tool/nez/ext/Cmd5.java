@@ -7,6 +7,10 @@ import nez.main.CommandContext;
 import nez.util.ConsoleUtils;
 
 public class Cmd5 extends Cparse {
+	@Override
+	protected boolean isStreamable() {
+		return false;
+	}
 
 	@Override
 	protected void makeOutputFile(CommandContext config, SourceContext source, Tree<?> node) {
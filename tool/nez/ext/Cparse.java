@@ -1,11 +1,17 @@
 package nez.ext;
 
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import nez.NezProfier;
 import nez.Parser;
 import nez.ast.Tree;
-import nez.ast.TreeWriter;
+import nez.ast.TreeCache;
+import nez.ast.TreeStreamWriter;
 import nez.io.SourceContext;
 import nez.main.Command;
 import nez.main.CommandContext;
@@ -15,8 +21,13 @@ public class Cparse extends Command {
 	@Override
 	public void exec(CommandContext config) throws IOException {
 		Parser g = config.newParser();
+		boolean stream = isStreamable() && config.getStrategy().isEnabled("stream", false);
 		while (config.hasInput()) {
 			SourceContext input = config.nextInput();
+			if (stream) {
+				streamOutputFile(config, g, input);
+				continue;
+			}
 			Tree<?> node = g.parseCommonTree(input);
 			if (node == null) {
 				ConsoleUtils.println(input.getSyntaxErrorMessage());
@@ -26,6 +37,7 @@ public class Cparse extends Command {
 				ConsoleUtils.println(input.getUnconsumedMessage());
 			}
 			record(g.getProfiler(), node);
+			share(g.getProfiler(), g.getTreeCache(), input);
 			g.logProfiler();
 			makeOutputFile(config, input, node);
 		}
@@ -42,10 +54,70 @@ public class Cparse extends Command {
 		}
 	}
 
-	protected void makeOutputFile(CommandContext config, SourceContext source, Tree<?> node) {
-		TreeWriter w = new TreeWriter(config.getStrategy(), config.getOutputFileName(source, "ast"));
+	private void share(NezProfier prof, TreeCache cache, SourceContext input) {
+		if (cache != null) {
+			System.err.println(input.getResourceName() + ": " + cache); // stdout may be the tree
+			if (prof != null) {
+				prof.setCount("O.Shared", cache.getHitCount());
+				prof.setCount("O.SavedBytes", cache.getSavedBytes());
+			}
+		}
+	}
+
+	protected String getOutputExtension() {
+		return "ast";
+	}
+
+	protected TreeStreamWriter newTreeStreamWriter(WritableByteChannel out) {
+		return new TreeStreamWriter.AST(out);
+	}
+
+	/* commands that need the whole tree return false */
+	protected boolean isStreamable() {
+		return true;
+	}
+
+	private WritableByteChannel openOutputChannel(String path) throws IOException {
+		if (path == null) {
+			return Channels.newChannel(System.out);
+		}
+		return FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	private void closeOutputChannel(String path, WritableByteChannel out) throws IOException {
+		if (path == null) {
+			System.out.flush();
+		} else {
+			out.close();
+		}
+	}
+
+	protected void makeOutputFile(CommandContext config, SourceContext source, Tree<?> node) throws IOException {
+		String path = config.getOutputFileName(source, getOutputExtension());
+		WritableByteChannel out = openOutputChannel(path);
+		TreeStreamWriter w = newTreeStreamWriter(out);
 		w.writeTree(node);
 		w.writeNewLine();
 		w.close();
+		closeOutputChannel(path, out);
+	}
+
+	/* writes the children of the root while parsing (--option:+stream) */
+	protected void streamOutputFile(CommandContext config, Parser g, SourceContext input) throws IOException {
+		String path = config.getOutputFileName(input, getOutputExtension());
+		WritableByteChannel out = openOutputChannel(path);
+		TreeStreamWriter w = newTreeStreamWriter(out);
+		boolean matched = g.parse(input, w);
+		if (matched) {
+			w.writeNewLine();
+		}
+		w.close();
+		closeOutputChannel(path, out);
+		if (!matched) {
+			ConsoleUtils.println(input.getSyntaxErrorMessage());
+		} else if (input.hasUnconsumed()) {
+			ConsoleUtils.println(input.getUnconsumedMessage());
+		}
+		g.logProfiler();
 	}
 }
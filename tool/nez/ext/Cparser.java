@@ -16,6 +16,7 @@ public class Cparser extends Command {
 		classMap.put("coffee", nez.x.generator.CoffeeParserGenerator.class);
 		classMap.put("peg", nez.parser.generator.PEGGenerator.class);
 		classMap.put("c", nez.parser.generator.CParserGenerator.class);
+		classMap.put("java", nez.parser.generator.JavaParserGenerator.class);
 	}
 
 	@Override
@@ -0,0 +1,35 @@
+package nez.ext;
+
+import java.io.IOException;
+
+import nez.Strategy;
+import nez.lang.ExampleRunner;
+import nez.main.Command;
+import nez.main.CommandContext;
+import nez.util.ConsoleUtils;
+
+/**
+ * nez testall --option:threads=N:report=FILE.xml|FILE.json a.nez b.nez ...
+ */
+
+public class Ctestall extends Command {
+	@Override
+	public void exec(CommandContext config) throws IOException {
+		Strategy strategy = config.getStrategy();
+		ExampleRunner runner = new ExampleRunner(strategy, strategy.getInt("threads", 0));
+		if (config.getGrammarPath() != null) {
+			runner.load(config.getGrammarPath());
+		}
+		for (String path : config.getInputFileList()) {
+			runner.load(path);
+		}
+		boolean passed = runner.run();
+		String report = strategy.getString("report", null);
+		if (report != null) {
+			runner.writeReport(report);
+		}
+		if (!passed) {
+			ConsoleUtils.exit(1, "failed");
+		}
+	}
+}
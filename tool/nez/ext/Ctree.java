@@ -0,0 +1,18 @@
+package nez.ext;
+
+import java.io.IOException;
+
+import nez.Parser;
+import nez.lang.schema.TypedTreeGenerator;
+import nez.main.Command;
+import nez.main.CommandContext;
+
+public class Ctree extends Command {
+	@Override
+	public void exec(CommandContext config) throws IOException {
+		Parser p = config.newParser();
+		String name = config.getGrammarName();
+		TypedTreeGenerator gen = new TypedTreeGenerator(name == null ? "grammar" : name, config.getStrategy().getString("package", null));
+		gen.generate(p.getGrammar(), config.outputDirName);
+	}
+}
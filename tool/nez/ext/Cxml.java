@@ -1,17 +1,18 @@
 package nez.ext;
 
-import nez.ast.Tree;
-import nez.ast.TreeWriter;
-import nez.io.SourceContext;
-import nez.main.CommandContext;
+import java.nio.channels.WritableByteChannel;
+
+import nez.ast.TreeStreamWriter;
 
 public class Cxml extends Cparse {
 	@Override
-	protected void makeOutputFile(CommandContext config, SourceContext source, Tree<?> node) {
-		TreeWriter w = new TreeWriter(config.getStrategy(), config.getOutputFileName(source, "ast"));
-		w.writeTree(node);
-		w.writeNewLine();
-		w.close();
+	protected String getOutputExtension() {
+		return "xml";
+	}
+
+	@Override
+	protected TreeStreamWriter newTreeStreamWriter(WritableByteChannel out) {
+		return new TreeStreamWriter.XML(out);
 	}
 
 }
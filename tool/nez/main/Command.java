@@ -13,6 +13,9 @@ public abstract class Command {
 	public final static int PatchLevel = nez.Version.REV;
 	public static void main(String[] args) {
 		try {
+			if (args.length > 0 && args[0].equals("client")) {
+				System.exit(DaemonClient.run(args));
+			}
 			CommandContext c = new CommandContext();
 			c.parseCommandOption(args, true/* nezCommand */);
 			Command com = c.newCommand();
@@ -126,8 +126,11 @@ public class CommandContext extends ParserFactory {
 		ConsoleUtils.println("  -d | --dir <dirname>       Specify an output dir");
 		ConsoleUtils.println("  --option:(+enable:-disable)*");
 		ConsoleUtils.println("     grammars: +ast +symbol");
-		ConsoleUtils.println("     optimize: +lex +inline predict dfa");
-		ConsoleUtils.println("     packrat:  packrat +sliding trace");
+		ConsoleUtils.println("     output:   +stream (write the root while parsing)");
+		ConsoleUtils.println("     optimize: +lex +inline predict dfa +Ointern +Oshare +Oentry");
+		ConsoleUtils.println("     packrat:  +Mpackrat +Msliding Mwindow=N (window; sized by the input by default)");
+		ConsoleUtils.println("     profile:  Pprofile=<file> (record) Oprofile=<file> (optimize)");
+		ConsoleUtils.println("     sample:   Psample=<file> Pinterval=N Pperiod=usec Pbuffer=N");
 		ConsoleUtils.println("  --verbose                  Printing Debug infomation");
 		ConsoleUtils.println("  --verbose:memo             Printing Memoization information");
 		ConsoleUtils.println("  -X <class>                 Specify an extension class");
@@ -135,11 +138,21 @@ public class CommandContext extends ParserFactory {
 		ConsoleUtils.println("The most commonly used nez commands are:");
 		ConsoleUtils.println("  shell      an interactive mode (by default)");
 		ConsoleUtils.println("  match      match an input");
+		ConsoleUtils.println("  bench      measure the matching throughput (warmup=N:repeat=N:maxalloc=N)");
 		ConsoleUtils.println("  parse      parse an input and construct ASTs (.ast)");
 		ConsoleUtils.println("    xml      parse an input and convert into XML (.xml)");
 		ConsoleUtils.println("    json     parse an input and convert into JSON (.json)");
-		ConsoleUtils.println("  compile    compile a grammar to Nez bytecode .nzc");
+		ConsoleUtils.println("    bast     parse an input and save the AST in a binary format (.bast)");
+		ConsoleUtils.println("  compile    compile a grammar to Moz bytecode .moz (moz=0 for the legacy NEZ0 layout)");
 		ConsoleUtils.println("    cnez     generate a C-based parser generator (.c)");
+		ConsoleUtils.println("  parser.c   generate a C parser with its runtime (.c, cnez.h and cnez_main.c)");
+		ConsoleUtils.println("  parser.java generate a standalone Java parser (.java, package=NAME)");
+		ConsoleUtils.println("  javabench  compare the generated Java parser with the interpreter (warmup=N:repeat=N)");
+		ConsoleUtils.println("  cbench     compare the generated C parser with the interpreter (cc=NAME:repeat=N)");
+		ConsoleUtils.println("  tree       generate typed AST classes for a grammar (.java, package=NAME)");
+		ConsoleUtils.println("  testall    test the examples of grammar files in parallel (threads=N:report=FILE.xml|json)");
+		ConsoleUtils.println("  daemon     serve match/parse/format from cached grammars (port=N:cache=N); token in ~/.nez");
+		ConsoleUtils.println("  client     send a command to the daemon ([--port N] command ...)");
 		ConsoleUtils.exit(0, Message);
 	}
 
@@ -0,0 +1,92 @@
+package nez.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * DaemonClient is the thin client of `nez daemon`. It does not load any
+ * grammar; it forwards the working directory and the command line to the
+ * daemon on the loopback interface and copies back the output and the exit
+ * status.
+ *
+ * <pre>
+ * request:  token TAB cwd TAB command TAB arg ... LF
+ * response: output lines, then NUL status LF
+ * </pre>
+ *
+ * The token is a random secret that the daemon writes to a file only its
+ * user can read (~/.nez/daemon-PORT.token). Without it, any local user could
+ * make the daemon read and write files with the daemon user's rights.
+ */
+
+public class DaemonClient {
+	public final static int DefaultPort = 5679;
+	public final static char Trailer = '\0';
+
+	public static Path getTokenPath(int port) {
+		return Paths.get(System.getProperty("user.home"), ".nez", "daemon-" + port + ".token");
+	}
+
+	static int run(String[] args) throws IOException {
+		int port = DefaultPort;
+		int index = 1; // skip "client"
+		if (index + 1 < args.length && args[index].equals("--port")) {
+			port = Integer.parseInt(args[index + 1]);
+			index += 2;
+		}
+		String token;
+		try {
+			token = new String(Files.readAllBytes(getTokenPath(port)), StandardCharsets.UTF_8).trim();
+		} catch (NoSuchFileException e) {
+			System.err.println("nez daemon is not running on port " + port + " (no " + getTokenPath(port) + ")");
+			return 2;
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(token);
+		sb.append('\t');
+		sb.append(System.getProperty("user.dir"));
+		for (; index < args.length; index++) {
+			sb.append('\t');
+			sb.append(args[index]);
+		}
+		sb.append('\n');
+		Socket socket;
+		try {
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		} catch (ConnectException e) {
+			System.err.println("nez daemon is not running on port " + port);
+			return 2;
+		}
+		try {
+			OutputStream out = socket.getOutputStream();
+			out.write(sb.toString().getBytes("UTF-8"));
+			out.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			PrintStream console = new PrintStream(System.out, false, "UTF-8");
+			int status = 2; // connection closed without a status
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.length() > 0 && line.charAt(0) == Trailer) {
+					status = Integer.parseInt(line.substring(1).trim());
+					break;
+				}
+				console.println(line);
+			}
+			console.flush();
+			return status;
+		} finally {
+			socket.close();
+		}
+	}
+}
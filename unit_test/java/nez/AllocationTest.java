@@ -0,0 +1,116 @@
+package nez;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+import nez.io.SourceContext;
+import nez.lang.GrammarFileLoader;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A parser keeps its context, stacks and memo table from one match to the
+ * next, so a repeated match must not allocate once the JIT has settled.
+ */
+
+public class AllocationTest {
+	private final static int Warmup = 20;
+	private final static int MaxSettleRounds = 100;
+	private final static int SettleRounds = 3; // rounds in a row that allocate the same
+	private final static int Repeat = 5;
+
+	private com.sun.management.ThreadMXBean mx;
+
+	@Before
+	public void setUp() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		mx = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled());
+	}
+
+	@Test
+	public void testJson() throws IOException {
+		assertEquals(0, allocatedPerMatch("json.nez", "sample.json", "-Mpackrat"));
+	}
+
+	@Test
+	public void testJsonPackrat() throws IOException {
+		assertEquals(0, allocatedPerMatch("json.nez", "sample.json", "+Mpackrat"));
+	}
+
+	@Test
+	public void testXml() throws IOException {
+		assertEquals(0, allocatedPerMatch("xml.nez", "sample.xml", "-Mpackrat"));
+	}
+
+	@Test
+	public void testXmlPackrat() throws IOException {
+		assertEquals(0, allocatedPerMatch("xml.nez", "sample.xml", "+Mpackrat"));
+	}
+
+	@Test
+	public void testJava() throws IOException {
+		assertEquals(0, allocatedPerMatch("java.nez", "Sample.java", "-Mpackrat"));
+	}
+
+	@Test
+	public void testJavaPackrat() throws IOException {
+		assertEquals(0, allocatedPerMatch("java.nez", "Sample.java", "+Mpackrat"));
+	}
+
+	/* the most bytes allocated by one match over Repeat matches, once settled */
+	private long allocatedPerMatch(String grammar, String resource, String option) throws IOException {
+		Strategy strategy = Strategy.newDefaultStrategy();
+		strategy.setEnabled("ast", false);
+		strategy.setOption(option);
+		Parser parser = GrammarFileLoader.loadGrammar(grammar, strategy).newParser(strategy);
+		byte[] text = readResource(resource);
+		SourceContext input = SourceContext.newByteContext(resource, 1, text, 0, text.length);
+		for (int i = 0; i < Warmup; i++) {
+			match(parser, input);
+		}
+		long last = -1;
+		int same = 0;
+		for (int i = 0; i < MaxSettleRounds && same < SettleRounds; i++) {
+			long a = match(parser, input);
+			same = (a == last) ? same + 1 : 0;
+			last = a;
+		}
+		long most = 0;
+		for (int i = 0; i < Repeat; i++) {
+			most = Math.max(most, match(parser, input));
+		}
+		return most;
+	}
+
+	private long match(Parser parser, SourceContext input) {
+		long tid = Thread.currentThread().getId();
+		long a = mx.getThreadAllocatedBytes(tid);
+		input.setPosition(0);
+		boolean matched = parser.match(input);
+		a = mx.getThreadAllocatedBytes(tid) - a;
+		assertTrue(input.getResourceName(), matched);
+		return a;
+	}
+
+	private static byte[] readResource(String name) throws IOException {
+		InputStream in = AllocationTest.class.getResourceAsStream("/" + name);
+		assertTrue(name, in != null);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			out.write(buf, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,77 @@
+package nez.ext;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+
+import nez.Parser;
+import nez.Strategy;
+import nez.io.SourceContext;
+import nez.lang.GrammarFileLoader;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * The C parser generated from a grammar and compiled with the local C
+ * compiler must print the same trees as the interpreter (see nez cbench).
+ */
+
+public class CcbenchTest {
+	private final static String CC = "cc";
+
+	@BeforeClass
+	public static void checkCompiler() {
+		boolean available;
+		try {
+			available = Ccbench.run(new String[1], CC, "--version") == 0;
+		} catch (IOException e) {
+			available = false;
+		}
+		Assume.assumeTrue(available);
+	}
+
+	@Test
+	public void testJson() throws Exception {
+		check("json.nez", "json", true, "sample.json");
+		check("json.nez", "json", false, "sample.json");
+	}
+
+	@Test
+	public void testXml() throws Exception {
+		check("xml.nez", "xml", true, "sample.xml");
+	}
+
+	@Test
+	public void testPerm() throws Exception {
+		String grammar = resource("perm.nez").getPath();
+		check(grammar, "perm", true, "perm.txt", "perm-error.txt");
+		check(grammar, "perm", false, "perm.txt", "perm-error.txt");
+	}
+
+	private void check(String grammar, String name, boolean ast, String... inputs) throws Exception {
+		Strategy strategy = Strategy.newDefaultStrategy();
+		strategy.setEnabled("ast", ast);
+		Parser g = GrammarFileLoader.loadGrammar(grammar, strategy).newParser(strategy);
+		String dir = Files.createTempDirectory("nez").toString();
+		String[] out = new String[1];
+		String exe = Ccbench.compile(out, g, strategy, dir, name, CC);
+		assertNotNull(out[0], exe);
+		for (String f : inputs) {
+			String path = resource(f).getPath();
+			byte[] text = Files.readAllBytes(new File(path).toPath());
+			SourceContext input = SourceContext.newByteContext(path, 1, text, 0, text.length);
+			boolean same = Ccbench.isSame(out, g, exe, input, ast);
+			assertTrue(f + ": " + out[0], same);
+		}
+	}
+
+	private static File resource(String name) throws URISyntaxException {
+		return new File(CcbenchTest.class.getResource("/" + name).toURI());
+	}
+}
@@ -0,0 +1,106 @@
+package nez.lang.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import nez.Grammar;
+import nez.Parser;
+import nez.Strategy;
+import nez.ast.Symbol;
+import nez.ast.Tree;
+import nez.io.SourceContext;
+import nez.lang.GrammarFileLoader;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * A typed tree generated by nez tree must compile, load and build the same
+ * tree as the common tree.
+ */
+
+public class TypedTreeGeneratorTest {
+
+	@Test
+	public void testJson() throws Exception {
+		check("json.nez", "Json", "sample.json");
+	}
+
+	@Test
+	public void testXml() throws Exception {
+		check("xml.nez", "Xml", "sample.xml");
+	}
+
+	/* a label missed by the schema is kept in a slot of its own */
+	@Test
+	public void testMissedLabel() throws Exception {
+		Strategy strategy = Strategy.newDefaultStrategy();
+		Tree<?> prototype = newPrototype(grammar("File = { $key(Name) ':' $value(Name) #Pair }\nName = { [a-z]+ #Name }", strategy), "Pair");
+		Parser p = grammar("File = { $key(Name) ':' $other(Name) #Pair }\nName = { [a-z]+ #Name }", strategy).newParser(strategy);
+		Tree<?> node = p.parse(SourceContext.newStringContext("a:b"), prototype);
+		assertNotNull(node);
+		assertEquals("PairTree$Pair", node.getClass().getName()); // typed node
+		assertEquals("a", node.get(Symbol.tag("key")).toText());
+		assertEquals("b", node.get(Symbol.tag("other")).toText());
+	}
+
+	private void check(String grammar, String name, String resource) throws Exception {
+		Strategy strategy = Strategy.newDefaultStrategy();
+		Grammar g = GrammarFileLoader.loadGrammar(grammar, strategy);
+		Tree<?> prototype = newPrototype(g, name);
+		Parser p = g.newParser(strategy);
+		byte[] text = readResource(resource);
+		Tree<?> expected = p.parseCommonTree(SourceContext.newByteContext(resource, 1, text, 0, text.length));
+		Tree<?> typed = p.parse(SourceContext.newByteContext(resource, 1, text, 0, text.length), prototype);
+		assertNotNull(typed);
+		assertTrue(typed.getClass().getName().startsWith(name + "Tree"));
+		assertEquals(String.valueOf(expected), String.valueOf(typed));
+		assertEquals(String.valueOf(expected), String.valueOf(typed.dup()));
+	}
+
+	private static Grammar grammar(String source, Strategy strategy) throws IOException {
+		File f = File.createTempFile("nez", ".nez");
+		f.deleteOnExit();
+		Files.write(f.toPath(), source.getBytes("UTF-8"));
+		return GrammarFileLoader.loadGrammar(f.getPath(), strategy);
+	}
+
+	/* generates NAMETree.java, compiles it and returns a new prototype */
+	private static Tree<?> newPrototype(Grammar g, String name) throws Exception {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeTrue(javac != null);
+		File dir = Files.createTempDirectory("nez").toFile();
+		TypedTreeGenerator gen = new TypedTreeGenerator(name, null);
+		gen.generate(g.newParser(Strategy.newDefaultStrategy()).getGrammar(), dir.getPath());
+		String src = new File(dir, gen.getClassName() + ".java").getPath();
+		int status = javac.run(null, null, null, "-nowarn", "-cp", System.getProperty("java.class.path"), "-d", dir.getPath(), src);
+		assertEquals(src, 0, status);
+		URLClassLoader loader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, TypedTreeGeneratorTest.class.getClassLoader());
+		return (Tree<?>) loader.loadClass(gen.getClassName()).newInstance();
+	}
+
+	private static byte[] readResource(String name) throws IOException {
+		InputStream in = TypedTreeGeneratorTest.class.getResourceAsStream("/" + name);
+		assertNotNull(name, in);
+		byte[] buf = new byte[4096];
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			out.write(buf, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+}
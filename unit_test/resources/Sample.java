@@ -0,0 +1,35 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Sample {
+	private final List<String> names = new ArrayList<String>();
+	private int count = 0;
+
+	public Sample(String... names) {
+		for (String name : names) {
+			this.add(name);
+		}
+	}
+
+	public void add(String name) {
+		if (name != null && name.length() > 0) {
+			names.add(name);
+			count++;
+		}
+	}
+
+	public int size() {
+		return count * 2 / 2 + (names.isEmpty() ? 0 : 0);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < names.size(); i++) {
+			sb.append(i > 0 ? ", " : "").append(names.get(i));
+		}
+		return sb.append(']').toString();
+	}
+}